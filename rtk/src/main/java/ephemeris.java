@@ -100,13 +100,15 @@ public class ephemeris {
             0,0,1,0,0,0
     };
 
-    /* variance by ura ephemeris -------------------------------------------------*/
-    static double var_uraeph(int sys, int ura)
-    {
-    final double ura_value[]={
+    /* ura values (ref [1] 20.3.3.3.1.1) -----------------------------------------*/
+    static final double ura_value[]={
             2.4,3.4,4.85,6.85,9.65,13.65,24.0,48.0,96.0,192.0,384.0,768.0,1536.0,
             3072.0,6144.0
     };
+
+    /* variance by ura ephemeris -------------------------------------------------*/
+    static double var_uraeph(int sys, int ura)
+    {
         if (sys==rtklib.SYS_GAL) { /* galileo sisa (ref [7] 5.1.11) */
             if (ura<= 49) return SQR(ura*0.01);
             if (ura<= 74) return SQR(0.5+(ura- 50)*0.02);
@@ -138,17 +140,19 @@ public class ephemeris {
      * return : none
      * notes  : see ref [1],[7],[8]
      *-----------------------------------------------------------------------------*/
-    void alm2pos(rtklib.gtime_t time, final rtklib.alm_t alm, double[] rs, Double dts)
+    public static void alm2pos(rtklib.gtime_t time, final rtklib.alm_t alm, double[] rs, double[] dts)
     {
         double tk,M,E,Ek,sinE,cosE,u,r,i,O,x,y,sinO,cosO,cosi,mu;
         int n;
 
-        rtkcmn.trace(4,"alm2pos : time=%s sat=%2d\n",rtkcmn.time_str(time,3),alm.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"alm2pos : time=%s sat=%2d\n",rtkcmn.time_str(time,3),alm.sat);
+        }
 
         tk=rtkcmn.timediff(time,alm.toa);
 
         if (alm.A<=0.0) {
-            rs[0]=rs[1]=rs[2]=*dts=0.0;
+            rs[0]=rs[1]=rs[2]=dts[0]=0.0;
             return;
         }
         mu=rtkcmn.satsys(alm.sat,null)==rtklib.SYS_GAL?MU_GAL:MU_GPS;
@@ -170,7 +174,7 @@ public class ephemeris {
         rs[0]=x*cosO-y*cosi*sinO;
         rs[1]=x*sinO+y*cosi*cosO;
         rs[2]=y*Math.sin(i);
-        dts=alm.f0+alm.f1*tk;
+        dts[0]=alm.f0+alm.f1*tk;
     }
 
     /* broadcast ephemeris to satellite clock bias ---------------------------------
@@ -182,13 +186,21 @@ public class ephemeris {
      *          satellite clock does not include relativity correction and tdg
      *-----------------------------------------------------------------------------*/
     static double eph2clk(rtklib.gtime_t time, final rtklib.eph_t eph)
+    {
+        return eph2clk(time.time,time.sec,eph);
+    }
+
+    /* broadcast ephemeris to satellite clock bias by primitive time -------------*/
+    static double eph2clk(long time, double sec, final rtklib.eph_t eph)
     {
         double t;
         int i;
 
-        rtkcmn.trace(4,"eph2clk : time=%s sat=%2d\n",rtkcmn.time_str(time,3),eph.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"eph2clk : time=%s sat=%2d\n",rtkcmn.time_str(time,sec,3),eph.sat);
+        }
 
-        t=rtkcmn.timediff(time,eph.toc);
+        t=rtkcmn.timediff(time,sec,eph.toc.time,eph.toc.sec);
 
         for (i=0;i<2;i++) {
             t-=eph.f0+eph.f1*t+eph.f2*t*t;
@@ -209,23 +221,31 @@ public class ephemeris {
      *          satellite clock includes relativity correction without code bias
      *          (tgd or bgd)
      *-----------------------------------------------------------------------------*/
-    public static void eph2pos(rtklib.gtime_t time, final rtklib.eph_t eph, Double[] rs, Double dts,
-                        Double var)
+    public static void eph2pos(rtklib.gtime_t time, final rtklib.eph_t eph, double[] rs, double[] dts,
+                        double[] var)
+    {
+        eph2pos(time.time,time.sec,eph,rs,dts,var);
+    }
+
+    /* broadcast ephemeris to satellite position by primitive time ---------------*/
+    public static void eph2pos(long time, double sec, final rtklib.eph_t eph, double[] rs, double[] dts,
+                        double[] var)
     {
         double tk,M,E,Ek,sinE,cosE,u,r,i,O,sin2u,cos2u,x,y,sinO,cosO,cosi,mu,omge;
         double xg,yg,zg,sino,coso;
         int n,sys;
-        Integer prn = new Integer();
 
-        rtkcmn.trace(4,"eph2pos : time=%s sat=%2d\n",rtkcmn.time_str(time,3),eph.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"eph2pos : time=%s sat=%2d\n",rtkcmn.time_str(time,sec,3),eph.sat);
+        }
 
         if (eph.A<=0.0) {
-            rs[0]=rs[1]=rs[2]=dts=var=0.0;
+            rs[0]=rs[1]=rs[2]=dts[0]=var[0]=0.0;
             return;
         }
-        tk=rtkcmn.timediff(time,eph.toe);
+        tk=rtkcmn.timediff(time,sec,eph.toe.time,eph.toe.sec);
 
-        switch ((sys=rtkcmn.satsys(eph.sat,prn))) {
+        switch ((sys=rtkcmn.satsys(eph.sat,null))) {
         case rtklib.SYS_GAL: mu=MU_GAL; omge=OMGE_GAL; break;
         case rtklib.SYS_CMP: mu=MU_CMP; omge=OMGE_CMP; break;
         default:      mu=MU_GPS; omge= rtklib.OMGE;     break;
@@ -241,7 +261,9 @@ public class ephemeris {
         }
         sinE=Math.sin(E); cosE=Math.cos(E);
 
-        rtkcmn.trace(4,"kepler: sat=%2d e=%8.5f n=%2d del=%10.3e\n",eph.sat,eph.e,n,E-Ek);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"kepler: sat=%2d e=%8.5f n=%2d del=%10.3e\n",eph.sat,eph.e,n,E-Ek);
+        }
 
         u=Math.atan2(Math.sqrt(1.0-eph.e*eph.e)*sinE,cosE-eph.e)+eph.omg;
         r=eph.A*(1.0-eph.e*cosE);
@@ -253,7 +275,7 @@ public class ephemeris {
         x=r*Math.cos(u); y=r*Math.sin(u); cosi=Math.cos(i);
 
         /* beidou geo satellite */
-        if (sys==rtklib.SYS_CMP&&(eph.flag==2||(eph.flag==0&&prn<=5))) {
+        if (sys==rtklib.SYS_CMP&&(eph.flag==2||(eph.flag==0&&rtkcmn.satprn(eph.sat)<=5))) {
             O=eph.OMG0+eph.OMGd*tk-omge*eph.toes;
             sinO=Math.sin(O); cosO=Math.cos(O);
             xg=x*cosO-y*cosi*sinO;
@@ -271,18 +293,18 @@ public class ephemeris {
             rs[1]=x*sinO+y*cosi*cosO;
             rs[2]=y*Math.sin(i);
         }
-        tk=rtkcmn.timediff(time,eph.toc);
-        dts=eph.f0+eph.f1*tk+eph.f2*tk*tk;
+        tk=rtkcmn.timediff(time,sec,eph.toc.time,eph.toc.sec);
+        dts[0]=eph.f0+eph.f1*tk+eph.f2*tk*tk;
 
         /* relativity correction */
-        dts-=2.0*Math.sqrt(mu*eph.A)*eph.e*sinE/SQR(rtklib.CLIGHT);
+        dts[0]-=2.0*Math.sqrt(mu*eph.A)*eph.e*sinE/SQR(rtklib.CLIGHT);
 
         /* position and clock error variance */
-        var=var_uraeph(sys,eph.sva);
+        var[0]=var_uraeph(sys,eph.sva);
     }
 
     /* glonass orbit differential equations --------------------------------------*/
-    static void deq(final Double[] x, Double[] xdot, final Double[] acc)
+    static void deq(final double[] x, double[] xdot, final double[] acc)
     {
         double a,b,c,r2=rtkcmn.dot(x,x,3),r3=r2*Math.sqrt(r2),omg2=SQR(OMGE_GLO);
 
@@ -300,14 +322,14 @@ public class ephemeris {
         xdot[5]=(c-2.0*a)*x[2]+acc[2];
     }
 
+    /* glonass orbit integration workspace by thread {x,k1,k2,k3,k4,w} -----------*/
+    static final ThreadLocal<double[][]> glows=
+        ThreadLocal.withInitial(() -> new double[6][6]);
+
     /* glonass position and velocity by numerical integration --------------------*/
-    static void glorbit(Double t, Double[] x, final Double[] acc)
+    static void glorbit(double t, double[] x, final double[] acc, double[][] ws)
     {
-        double[] k1 = new double[6];
-        double[] k2 = new double[6];
-        double[] k3 = new double[6];
-        double[] k4 = new double[6];
-        double[] w = new double[6];
+        double[] k1=ws[1],k2=ws[2],k3=ws[3],k4=ws[4],w=ws[5];
         int i;
 
         deq(x,k1,acc); for (i=0;i<6;i++) w[i]=x[i]+k1[i]*t/2.0;
@@ -327,13 +349,21 @@ public class ephemeris {
      * notes  : see ref [2]
      *-----------------------------------------------------------------------------*/
     public static double geph2clk(rtklib.gtime_t time, final rtklib.geph_t geph)
+    {
+        return geph2clk(time.time,time.sec,geph);
+    }
+
+    /* glonass ephemeris to satellite clock bias by primitive time ---------------*/
+    public static double geph2clk(long time, double sec, final rtklib.geph_t geph)
     {
         double t;
         int i;
 
-        rtkcmn.trace(4,"geph2clk: time=%s sat=%2d\n",rtkcmn.time_str(time,3),geph.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"geph2clk: time=%s sat=%2d\n",rtkcmn.time_str(time,sec,3),geph.sat);
+        }
 
-        t=rtkcmn.timediff(time,geph.toe);
+        t=rtkcmn.timediff(time,sec,geph.toe.time,geph.toe.sec);
 
         for (i=0;i<2;i++) {
             t-=-geph.taun+geph.gamn*t;
@@ -351,18 +381,28 @@ public class ephemeris {
      * return : none
      * notes  : see ref [2]
      *-----------------------------------------------------------------------------*/
-    public static void geph2pos(rtklib.gtime_t time, final rtklib.geph_t geph, Double[] rs, Double dts,
-                         Double var)
+    public static void geph2pos(rtklib.gtime_t time, final rtklib.geph_t geph, double[] rs, double[] dts,
+                         double[] var)
+    {
+        geph2pos(time.time,time.sec,geph,rs,dts,var);
+    }
+
+    /* glonass ephemeris to satellite position by primitive time -----------------*/
+    public static void geph2pos(long time, double sec, final rtklib.geph_t geph, double[] rs, double[] dts,
+                         double[] var)
     {
         double t,tt;
-        double[] x = new double[6];
+        double[][] ws=glows.get();
+        double[] x=ws[0];
         int i;
 
-        rtkcmn.trace(4,"geph2pos: time=%s sat=%2d\n",rtkcmn.time_str(time,3),geph.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"geph2pos: time=%s sat=%2d\n",rtkcmn.time_str(time,sec,3),geph.sat);
+        }
 
-        t=rtkcmn.timediff(time,geph.toe);
+        t=rtkcmn.timediff(time,sec,geph.toe.time,geph.toe.sec);
 
-        dts=-geph.taun+geph.gamn*t;
+        dts[0]=-geph.taun+geph.gamn*t;
 
         for (i=0;i<3;i++) {
             x[i  ]=geph.pos[i];
@@ -371,11 +411,11 @@ public class ephemeris {
         for (tt=t<0.0?-TSTEP:TSTEP;Math.abs(t)>1E-9;t-=tt) {
             if (Math.abs(t)<TSTEP)
                 tt=t;
-            glorbit(tt,x,geph.acc);
+            glorbit(tt,x,geph.acc,ws);
         }
         for (i=0;i<3;i++) rs[i]=x[i];
 
-        var=SQR(ERREPH_GLO);
+        var[0]=SQR(ERREPH_GLO);
     }
 
     /* sbas ephemeris to satellite clock bias --------------------------------------
@@ -386,13 +426,21 @@ public class ephemeris {
      * notes  : see ref [3]
      *-----------------------------------------------------------------------------*/
     public static double seph2clk(rtklib.gtime_t time, final rtklib.seph_t seph)
+    {
+        return seph2clk(time.time,time.sec,seph);
+    }
+
+    /* sbas ephemeris to satellite clock bias by primitive time ------------------*/
+    public static double seph2clk(long time, double sec, final rtklib.seph_t seph)
     {
         double t;
         int i;
 
-        rtkcmn.trace(4,"seph2clk: time=%s sat=%2d\n",rtkcmn.time_str(time,3),seph.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"seph2clk: time=%s sat=%2d\n",rtkcmn.time_str(time,sec,3),seph.sat);
+        }
 
-        t=rtkcmn.timediff(time,seph.t0);
+        t=rtkcmn.timediff(time,sec,seph.t0.time,seph.t0.sec);
 
         for (i=0;i<2;i++) {
             t-=seph.af0+seph.af1*t;
@@ -410,22 +458,31 @@ public class ephemeris {
      * return : none
      * notes  : see ref [3]
      *-----------------------------------------------------------------------------*/
-    public static void seph2pos(rtklib.gtime_t time, final rtklib.seph_t seph, Double[] rs, Double dts,
-                         Double var)
+    public static void seph2pos(rtklib.gtime_t time, final rtklib.seph_t seph, double[] rs, double[] dts,
+                         double[] var)
+    {
+        seph2pos(time.time,time.sec,seph,rs,dts,var);
+    }
+
+    /* sbas ephemeris to satellite position by primitive time --------------------*/
+    public static void seph2pos(long time, double sec, final rtklib.seph_t seph, double[] rs, double[] dts,
+                         double[] var)
     {
         double t;
         int i;
 
-        rtkcmn.trace(4,"seph2pos: time=%s sat=%2d\n",rtkcmn.time_str(time,3),seph.sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"seph2pos: time=%s sat=%2d\n",rtkcmn.time_str(time,sec,3),seph.sat);
+        }
 
-        t=rtkcmn.timediff(time,seph.t0);
+        t=rtkcmn.timediff(time,sec,seph.t0.time,seph.t0.sec);
 
         for (i=0;i<3;i++) {
             rs[i]=seph.pos[i]+seph.vel[i]*t+seph.acc[i]*t*t/2.0;
         }
-        dts=seph.af0+seph.af1*t;
+        dts[0]=seph.af0+seph.af1*t;
 
-        var=var_uraeph(rtklib.SYS_SBS,seph.sva);
+        var[0]=var_uraeph(rtklib.SYS_SBS,seph.sva);
     }
 
     /* select ephememeris --------------------------------------------------------*/
@@ -434,7 +491,9 @@ public class ephemeris {
         double t,tmax,tmin;
         int i,j=-1,sys,sel=0;
 
-        rtkcmn.trace(4,"seleph  : time=%s sat=%2d iode=%d\n",rtkcmn.time_str(time,3),sat,iode);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"seleph  : time=%s sat=%2d iode=%d\n",rtkcmn.time_str(time,3),sat,iode);
+        }
 
         sys=rtkcmn.satsys(sat,null);
         switch (sys) {
@@ -473,7 +532,9 @@ public class ephemeris {
         double t,tmax=rtklib.MAXDTOE_GLO,tmin=tmax+1.0;
         int i,j=-1;
 
-        rtkcmn.trace(4,"selgeph : time=%s sat=%2d iode=%2d\n",rtkcmn.time_str(time,3),sat,iode);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"selgeph : time=%s sat=%2d iode=%2d\n",rtkcmn.time_str(time,3),sat,iode);
+        }
 
         for (i=0;i<nav.ng;i++) {
             if (nav.geph.get(i).sat!=sat) continue;
@@ -496,7 +557,9 @@ public class ephemeris {
         double t,tmax=rtklib.MAXDTOE_SBS,tmin=tmax+1.0;
         int i,j=-1;
 
-        rtkcmn.trace(4,"selseph : time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"selseph : time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        }
 
         for (i=0;i<nav.ns;i++) {
             if (nav.seph.get(i).sat!=sat) continue;
@@ -512,34 +575,36 @@ public class ephemeris {
 
     /* satellite clock with broadcast ephemeris ----------------------------------*/
     static int ephclk(rtklib.gtime_t time, rtklib.gtime_t teph, int sat, final rtklib.nav_t nav,
-                      Double dts)
+                      double[] dts)
     {
         rtklib.eph_t  eph;
         rtklib.geph_t geph;
         rtklib.seph_t seph;
         int sys;
 
-        rtkcmn.trace(4,"ephclk  : time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"ephclk  : time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        }
 
         sys=rtkcmn.satsys(sat,null);
 
         if (sys==rtklib.SYS_GPS||sys==rtklib.SYS_GAL||sys==rtklib.SYS_QZS||sys==rtklib.SYS_CMP) {
             eph=seleph(teph,sat,-1,nav);
-            if (eph != null)
+            if (eph == null)
                 return 0;
-            dts=eph2clk(time,eph);
+            dts[0]=eph2clk(time,eph);
         }
         else if (sys==rtklib.SYS_GLO) {
             geph=selgeph(teph,sat,-1,nav);
-            if (geph != null)
+            if (geph == null)
                 return 0;
-            dts=geph2clk(time,geph);
+            dts[0]=geph2clk(time,geph);
         }
         else if (sys==rtklib.SYS_SBS) {
-            seph=selseph(teph,sat,nav)
-            if (seph != null)
+            seph=selseph(teph,sat,nav);
+            if (seph == null)
                 return 0;
-            dts=seph2clk(time,seph);
+            dts[0]=seph2clk(time,seph);
         }
         else return 0;
 
@@ -548,48 +613,47 @@ public class ephemeris {
 
     /* satellite position and clock by broadcast ephemeris -----------------------*/
     static int ephpos(rtklib.gtime_t time, rtklib.gtime_t teph, int sat, final rtklib.nav_t nav,
-                      int iode, Double[] rs, Double[] dts, Double[] var, Integer svh)
+                      int iode, double[] rs, double[] dts, double[] var, int[] svh)
     {
         rtklib.eph_t  eph;
         rtklib.geph_t geph;
         rtklib.seph_t seph;
-        Double[] rst = new Double[3];
-        Double dtst;
-        Double tt=1E-3;
+        double[] rst = new double[3];
+        double[] dtst = new double[1];
+        double tt=1E-3;
         int i,sys;
 
-        rtkcmn.trace(4,"ephpos  : time=%s sat=%2d iode=%d\n",rtkcmn.time_str(time,3),sat,iode);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"ephpos  : time=%s sat=%2d iode=%d\n",rtkcmn.time_str(time,3),sat,iode);
+        }
 
         sys=rtkcmn.satsys(sat,null);
 
-        svh=-1;
+        svh[0]=-1;
 
         if (sys==rtklib.SYS_GPS||sys==rtklib.SYS_GAL||sys==rtklib.SYS_QZS||sys==rtklib.SYS_CMP) {
-            eph=seleph(teph,sat,iode,nav)
-            if (eph != null)
+            eph=seleph(teph,sat,iode,nav);
+            if (eph == null)
                 return 0;
             eph2pos(time,eph,rs,dts,var);
-            time=rtkcmn.timeadd(time,tt);
-            eph2pos(time,eph,rst,dtst,var);
-            svh=eph.svh;
+            eph2pos(time.time,time.sec+tt,eph,rst,dtst,var);
+            svh[0]=eph.svh;
         }
         else if (sys==rtklib.SYS_GLO) {
             geph=selgeph(teph,sat,iode,nav);
-            if (geph != null)
+            if (geph == null)
                 return 0;
             geph2pos(time,geph,rs,dts,var);
-            time=rtkcmn.timeadd(time,tt);
-            geph2pos(time,geph,rst,dtst,var);
-            svh=geph.svh;
+            geph2pos(time.time,time.sec+tt,geph,rst,dtst,var);
+            svh[0]=geph.svh;
         }
         else if (sys==rtklib.SYS_SBS) {
             seph=selseph(teph,sat,nav);
-            if (seph != null)
+            if (seph == null)
                 return 0;
             seph2pos(time,seph,rs,dts,var);
-            time=rtkcmn.timeadd(time,tt);
-            seph2pos(time,seph,rst,dtst,var);
-            svh=seph.svh;
+            seph2pos(time.time,time.sec+tt,seph,rst,dtst,var);
+            svh[0]=seph.svh;
         }
         else return 0;
 
@@ -604,12 +668,14 @@ public class ephemeris {
 
     /* satellite position and clock with sbas correction -------------------------*/
     static int satpos_sbas(rtklib.gtime_t time, rtklib.gtime_t teph, int sat, final rtklib.nav_t nav,
-                           Double[] rs, Double[] dts, Double[] var, Integer svh)
+                           double[] rs, double[] dts, double[] var, int[] svh)
     {
     final rtklib.sbssatp_t sbs = new rtklib.sbssatp_t();
         int i;
 
-        rtkcmn.trace(4,"satpos_sbas: time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"satpos_sbas: time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        }
 
         /* search sbas satellite correciton */
         for (i=0;i<nav.sbssat.nsat;i++) {
@@ -619,7 +685,7 @@ public class ephemeris {
         if (i>=nav.sbssat.nsat) {
             rtkcmn.trace(2,"no sbas correction for orbit: %s sat=%2d\n",rtkcmn.time_str(time,0),sat);
             ephpos(time,teph,sat,nav,-1,rs,dts,var,svh);
-            svh=-1;
+            svh[0]=-1;
             return 0;
         }
         /* satellite postion and clock by broadcast ephemeris */
@@ -629,13 +695,13 @@ public class ephemeris {
         /* sbas satellite correction (long term and fast) */
         if (rtkcmn.sbssatcorr(time,sat,nav,rs,dts,var))
             return 1;
-        svh=-1;
+        svh[0]=-1;
         return 0;
     }
 
     /* satellite position and clock with ssr correction --------------------------*/
     public static int satpos_ssr(rtklib.gtime_t time, rtklib.gtime_t teph, int sat, final rtklib.nav_t nav,
-                          int opt, Double[] rs, Double[] dts, Double[] var, Integer svh)
+                          int opt, double[] rs, double[] dts, double[] var, int[] svh)
     {
         final rtklib.ssr_t ssr = new rtklib.ssr_t();
         rtklib.eph_t eph = new rtklib.eph_t();
@@ -651,15 +717,17 @@ public class ephemeris {
 
         int i,sys;
 
-        rtkcmn.trace(4,"satpos_ssr: time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"satpos_ssr: time=%s sat=%2d\n",rtkcmn.time_str(time,3),sat);
+        }
 
         ssr=nav.ssr[sat-1];
 
-        if (ssr.t0[0].time != null) {
+        if (ssr.t0[0].time==0) {
             rtkcmn.trace(2,"no ssr orbit correction: %s sat=%2d\n",rtkcmn.time_str(time,0),sat);
             return 0;
         }
-        if (ssr.t0[1].time != null) {
+        if (ssr.t0[1].time==0) {
             rtkcmn.trace(2,"no ssr clock correction: %s sat=%2d\n",rtkcmn.time_str(time,0),sat);
             return 0;
         }
@@ -667,7 +735,7 @@ public class ephemeris {
         if (ssr.iod[0]!=ssr.iod[1]) {
             rtkcmn.trace(2,"inconsist ssr correction: %s sat=%2d iod=%d %d\n",
                     time_str(time,0),sat,ssr.iod[0],ssr.iod[1]);
-            svh=-1;
+            svh[0]=-1;
             return 0;
         }
         t1=rtkcmn.timediff(time,ssr.t0[0]);
@@ -678,7 +746,7 @@ public class ephemeris {
         if (Math.abs(t1)>MAXAGESSR||Math.abs(t2)>MAXAGESSR) {
             rtkcmn.trace(2,"age of ssr error: %s sat=%2d t=%.0f %.0f\n",rtkcmn.time_str(time,0),
                     sat,t1,t2);
-            svh=-1;
+            svh[0]=-1;
             return 0;
         }
         if (ssr.udi[0]>=1.0) t1-=ssr.udi[0]/2.0;
@@ -689,13 +757,13 @@ public class ephemeris {
         dclk=ssr.dclk[0]+ssr.dclk[1]*t2+ssr.dclk[2]*t2*t2;
 
         /* ssr highrate clock correction (ref [4]) */
-        if (ssr.iod[0]==ssr.iod[2]&&ssr.t0[2].time&&Math.abs(t3)<MAXAGESSR_HRCLK) {
+        if (ssr.iod[0]==ssr.iod[2]&&ssr.t0[2].time!=0&&Math.abs(t3)<MAXAGESSR_HRCLK) {
             dclk+=ssr.hrclk;
         }
         if (norm(deph,3)>MAXECORSSR||Math.abs(dclk)>MAXCCORSSR) {
             rtkcmn.trace(3,"invalid ssr correction: %s deph=%.1f dclk=%.1f\n",
                     time_str(time,0),norm(deph,3),dclk);
-            svh=-1;
+            svh[0]=-1;
             return 0;
         }
         /* satellite postion and clock by broadcast ephemeris */
@@ -721,7 +789,7 @@ public class ephemeris {
             return 0;
         cross3(rs,rs+3,rc);
         if (!normv3(rc,ec)) {
-            svh=-1;
+            svh[0]=-1;
             return 0;
         }
         rtkcmn.cross3(ea,ec,er);
@@ -737,10 +805,12 @@ public class ephemeris {
         dts[0]+=dclk/rtklib.CLIGHT;
 
         /* variance by ssr ura */
-        var=var_urassr(ssr.ura);
+        var[0]=var_urassr(ssr.ura);
 
-        rtkcmn.trace(5,"satpos_ssr: %s sat=%2d deph=%6.3f %6.3f %6.3f er=%6.3f %6.3f %6.3f dclk=%6.3f var=%6.3f\n",
-                time_str(time,2),sat,deph[0],deph[1],deph[2],er[0],er[1],er[2],dclk,*var);
+        if (rtkcmn.gettracelevel()>=5) {
+            rtkcmn.trace(5,"satpos_ssr: %s sat=%2d deph=%6.3f %6.3f %6.3f er=%6.3f %6.3f %6.3f dclk=%6.3f var=%6.3f\n",
+                    rtkcmn.time_str(time,2),sat,deph[0],deph[1],deph[2],er[0],er[1],er[2],dclk,var[0]);
+        }
 
         return 1;
     }
@@ -761,12 +831,14 @@ public class ephemeris {
      *          satellite clock does not include code bias correction (tgd or bgd)
      *-----------------------------------------------------------------------------*/
     public static int satpos(rtklib.gtime_t time, rtklib.gtime_t teph, int sat, int ephopt,
-                  final rtklib.nav_t nav, Double[] rs, Double[] dts, Double[] var,
-                      Integer svh)
+                  final rtklib.nav_t nav, double[] rs, double[] dts, double[] var,
+                      int[] svh)
     {
-        rtkcmn.trace(4,"satpos  : time=%s sat=%2d ephopt=%d\n",rtkcmn.time_str(time,3),sat,ephopt);
+        if (rtkcmn.gettracelevel()>=4) {
+            rtkcmn.trace(4,"satpos  : time=%s sat=%2d ephopt=%d\n",rtkcmn.time_str(time,3),sat,ephopt);
+        }
 
-        svh=0;
+        svh[0]=0;
 
         switch (ephopt) {
             case rtklib.EPHOPT_BRDC  : return ephpos     (time,teph,sat,nav,-1,rs,dts,var,svh);
@@ -784,7 +856,7 @@ public class ephemeris {
                 else
                     return 1;
         }
-        svh=-1;
+        svh[0]=-1;
         return 0;
     }
 
@@ -813,13 +885,20 @@ public class ephemeris {
      *          signal transmission time
      *-----------------------------------------------------------------------------*/
     public static void satposs(rtklib.gtime_t teph, final rtklib.obsd_t[] obs, int n, final rtklib.nav_t nav,
-                        int ephopt, Double[] rs, Double[] dts, Double[] var, Integer[] svh)
+                        int ephopt, double[] rs, double[] dts, double[] var, int[] svh)
     {
-        rtklib.gtime_t[] time = new rtklib.gtime_t[2*rtklib.MAXOBS];
-        double dt,pr;
+        rtklib.gtime_t time = new rtklib.gtime_t();
+        double[] rsi = new double[6];
+        double[] dtsi = new double[2];
+        double[] vari = new double[1];
+        double[] dt = new double[1];
+        int[] svhi = new int[1];
+        double pr;
         int i,j;
 
-        rtkcmn.trace(3,"satposs : teph=%s n=%d ephopt=%d\n",rtkcmn.time_str(teph,3),n,ephopt);
+        if (rtkcmn.gettracelevel()>=3) {
+            rtkcmn.trace(3,"satposs : teph=%s n=%d ephopt=%d\n",rtkcmn.time_str(teph,3),n,ephopt);
+        }
 
         for (i=0;i<n&&i<2*rtklib.MAXOBS;i++) {
             for (j=0;j<6;j++)
@@ -837,32 +916,38 @@ public class ephemeris {
                 continue;
             }
             /* transmission time by satellite clock */
-            time[i]=rtkcmn.timeadd(obs[i].time,-pr/rtklib.CLIGHT);
+            rtkcmn.timeadd(obs[i].time,-pr/rtklib.CLIGHT,time);
 
             /* satellite clock bias by broadcast ephemeris */
-            if (!ephclk(time[i],teph,obs[i].sat,nav,&dt)) {
-                rtkcmn.trace(3,"no broadcast clock %s sat=%2d\n",rtkcmn.time_str(time[i],3),obs[i].sat);
+            if (ephclk(time,teph,obs[i].sat,nav,dt)==0) {
+                rtkcmn.trace(3,"no broadcast clock %s sat=%2d\n",rtkcmn.time_str(time,3),obs[i].sat);
                 continue;
             }
-            time[i]=rtkcmn.timeadd(time[i],-dt);
+            rtkcmn.timeadd(time,-dt[0],time);
 
             /* satellite position and clock at transmission time */
-            if (!satpos(time[i],teph,obs[i].sat,ephopt,nav,rs+i*6,dts+i*2,var[i],
-                    svh[i])) {
-                rtkcmn.trace(3,"no ephemeris %s sat=%2d\n",rtkcmn.time_str(time[i],3),obs[i].sat);
+            for (j=0;j<6;j++) rsi[j]=0.0;
+            dtsi[0]=dtsi[1]=vari[0]=0.0; svhi[0]=0;
+            j=satpos(time,teph,obs[i].sat,ephopt,nav,rsi,dtsi,vari,svhi);
+            System.arraycopy(rsi,0,rs,i*6,6);
+            System.arraycopy(dtsi,0,dts,i*2,2);
+            var[i]=vari[0]; svh[i]=svhi[0];
+            if (j==0) {
+                rtkcmn.trace(3,"no ephemeris %s sat=%2d\n",rtkcmn.time_str(time,3),obs[i].sat);
                 continue;
             }
             /* if no precise clock available, use broadcast clock instead */
             if (dts[i*2]==0.0) {
-                if (!ephclk(time[i],teph,obs[i].sat,nav,dts+i*2)) continue;
+                if (ephclk(time,teph,obs[i].sat,nav,dt)==0) continue;
+                dts[i*2]=dt[0];
                 dts[1+i*2]=0.0;
                 var[i]=SQR(STD_BRDCCLK);
             }
-        }
-        for (i=0;i<n&&i<2*rtklib.MAXOBS;i++) {
-            rtkcmn.trace(4,"%s sat=%2d rs=%13.3f %13.3f %13.3f dts=%12.3f var=%7.3f svh=%02X\n",
-                    rtkcmn.time_str(time[i],6),obs[i].sat,rs[i*6],rs[1+i*6],rs[2+i*6],
-                    dts[i*2]*1E9,var[i],svh[i]);
+            if (rtkcmn.gettracelevel()>=4) {
+                rtkcmn.trace(4,"%s sat=%2d rs=%13.3f %13.3f %13.3f dts=%12.3f var=%7.3f svh=%02X\n",
+                        rtkcmn.time_str(time,6),obs[i].sat,rs[i*6],rs[1+i*6],rs[2+i*6],
+                        dts[i*2]*1E9,var[i],svh[i]);
+            }
         }
     }
 
@@ -0,0 +1,460 @@
+/*------------------------------------------------------------------------------
+ * geoid.c : geoid models
+ *
+ *          Copyright (C) 2007-2015 by T.TAKASU, All rights reserved.
+ *
+ * reference :
+ *     [1] EGM96 The NASA GSFC and NIMA Joint Geopotential Model
+ *     [2] Earth Gravitational Model 2008 (EGM2008)
+ *     [3] GSI geoid 2000, Geospatial Information Authority of Japan
+ *     [4] ISG format specification, International Service for the Geoid
+ *
+ * notes   : geoid data files are converted once by geoidconv() to a binary
+ *           grid file, which is memory-mapped read-only by opengeoid(). no
+ *           geoid data file is read or parsed by geoidh() and the mapped pages
+ *           are shared by processes opening the same grid file.
+ *
+ *           binary grid file (little-endian):
+ *             header : magic "RTKG" (int), version (int), nlon, nlat (int),
+ *                      lon0, lat0, dlon, dlat (double, deg), wrap (int),
+ *                      reserved (to 64 bytes)
+ *             data   : geoid heights (float, m) [i+j*nlon] (i: lon, j: lat)
+ *                      from south-west grid point (NaN: no data)
+ *
+ *           the embedded 1x1 deg EGM96 table of geoid.c is not ported. without
+ *           geoid opened, geoidh() returns 0.0. RAF09 data is not supported by
+ *           geoidconv(), use the ISG format grid instead.
+ *
+ * version : $Revision:$ $Date:$
+ *-----------------------------------------------------------------------------*/
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class geoid {
+    /* constants -----------------------------------------------------------------*/
+    static final int GEOMAGIC = 0x474B5452;  /* grid file header magic ("RTKG") */
+    static final int GEOVER   = 1;           /* grid file version */
+    static final int GEOHEAD  = 64;          /* grid file header size (bytes) */
+
+    static volatile rtklib.geoid_t geoid_=null; /* opened geoid */
+
+    /* new grid file for output --------------------------------------------------*/
+    static rtklib.geoid_t newgrid(final String file, int nlon, int nlat, double lon0,
+                                  double lat0, double dlon, double dlat) throws IOException
+    {
+        rtklib.geoid_t g=new rtklib.geoid_t();
+        MappedByteBuffer buff;
+
+        if (nlon<2||nlat<2) throw new IOException("grid size error");
+        g.nlon=nlon; g.nlat=nlat;
+        g.lon0=lon0; g.lat0=lat0;
+        g.dlon=dlon; g.dlat=dlat;
+        g.wrap=Math.abs(nlon*dlon-360.0)<1E-9?1:0;
+
+        try (FileChannel ch=FileChannel.open(Paths.get(file),StandardOpenOption.CREATE,
+                                             StandardOpenOption.READ,StandardOpenOption.WRITE,
+                                             StandardOpenOption.TRUNCATE_EXISTING)) {
+            buff=ch.map(FileChannel.MapMode.READ_WRITE,0,GEOHEAD+4L*nlon*nlat);
+        }
+        g.map=buff;
+        buff.order(ByteOrder.LITTLE_ENDIAN);
+        buff.putInt(GEOMAGIC).putInt(GEOVER).putInt(nlon).putInt(nlat);
+        buff.putDouble(lon0).putDouble(lat0).putDouble(dlon).putDouble(dlat);
+        buff.putInt(g.wrap);
+        buff.position(GEOHEAD);
+        g.data=buff.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        return g;
+    }
+
+    /* map input file ------------------------------------------------------------*/
+    static ByteBuffer mapfile(final String file, ByteOrder order) throws IOException
+    {
+        try (FileChannel ch=FileChannel.open(Paths.get(file),StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY,0,ch.size()).order(order);
+        }
+    }
+
+    /* convert EGM96 15x15" (WW15MGH.DAC) ----------------------------------------*/
+    static rtklib.geoid_t conv_egm96(final String infile, final String outfile)
+            throws IOException
+    {
+        final int nlon=1440,nlat=721;
+        ByteBuffer in=mapfile(infile,ByteOrder.BIG_ENDIAN);
+        rtklib.geoid_t g;
+        int i,j,p=0;
+
+        if (in.limit()<2*nlon*nlat) return null;
+        g=newgrid(outfile,nlon,nlat,0.0,-90.0,0.25,0.25);
+
+        /* int16 (cm) from north to south, from 0 deg to east */
+        for (j=nlat-1;j>=0;j--) for (i=0;i<nlon;i++,p+=2) {
+            g.data.put(i+j*nlon,(float)(in.getShort(p)*0.01));
+        }
+        return g;
+    }
+
+    /* convert EGM2008 2.5x2.5" or 1.0x1.0" (fortran unformatted, small endian) --*/
+    static rtklib.geoid_t conv_egm08(final String infile, final String outfile, int nlon,
+                                     int nlat) throws IOException
+    {
+        ByteBuffer in=mapfile(infile,ByteOrder.LITTLE_ENDIAN);
+        rtklib.geoid_t g;
+        long p=0;
+        int i,j;
+
+        if (in.limit()<(long)nlat*(4L*nlon+8)) return null;
+        g=newgrid(outfile,nlon,nlat,0.0,-90.0,360.0/nlon,360.0/nlon);
+
+        /* float (m) from north to south, from 0 deg to east with record marks */
+        for (j=nlat-1;j>=0;j--) {
+            p+=4;
+            for (i=0;i<nlon;i++,p+=4) g.data.put(i+j*nlon,in.getFloat((int)p));
+            p+=4;
+        }
+        return g;
+    }
+
+    /* read text grid values -----------------------------------------------------*/
+    static int readvals(BufferedReader br, rtklib.geoid_t g, int north, double nodata)
+            throws IOException
+    {
+        String line;
+        double v;
+        int k,n=0,nall=g.nlon*g.nlat;
+
+        while (n<nall&&(line=br.readLine())!=null) {
+            for (String s:line.trim().split("\\s+")) {
+                if (s.isEmpty()||n>=nall) continue;
+                v=Double.parseDouble(s);
+                k=north!=0?n%g.nlon+(g.nlat-1-n/g.nlon)*g.nlon:n;
+                g.data.put(k,Math.abs(v-nodata)<1E-6?Float.NaN:(float)v);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /* grid interval of GSI geoid --------------------------------------------------
+     * grid interval of GSI geoid by grid extent
+     * args   : double d         I   grid interval in header (deg) (rounded)
+     *          int    n         I   number of grid points
+     * return : grid interval (deg)
+     * notes  : the interval is given rounded to 6 decimals (0.016667 for 1'). the
+     *          extent of the grid is in whole arc-minutes, so the interval is
+     *          derived from the extent rounded to arc-minutes
+     *-----------------------------------------------------------------------------*/
+    static double gsispan(double d, int n)
+    {
+        return n<2?d:Math.round((n-1)*d*60.0)/60.0/(n-1);
+    }
+
+    /* convert GSI geoid 2000 (gsigeome.ver4) ------------------------------------*/
+    static rtklib.geoid_t conv_gsi(final String infile, final String outfile)
+            throws IOException
+    {
+        rtklib.geoid_t g;
+        String[] head;
+        String line;
+        int nlon,nlat;
+
+        try (BufferedReader br=Files.newBufferedReader(Paths.get(infile))) {
+
+            /* header: glamn glomn dgla dglo nla nlo ikind vern */
+            if ((line=br.readLine())==null) return null;
+            head=line.trim().split("\\s+");
+            if (head.length<6) return null;
+            nlat=Integer.parseInt(head[4]);
+            nlon=Integer.parseInt(head[5]);
+            g=newgrid(outfile,nlon,nlat,Double.parseDouble(head[1]),Double.parseDouble(head[0]),
+                      gsispan(Double.parseDouble(head[3]),nlon),
+                      gsispan(Double.parseDouble(head[2]),nlat));
+
+            /* values from south to north, from west to east (999: no data) */
+            if (readvals(br,g,0,999.0)<g.nlon*g.nlat) return null;
+        }
+        return g;
+    }
+
+    /* convert ISG format grid ---------------------------------------------------*/
+    static rtklib.geoid_t conv_isg(final String infile, final String outfile)
+            throws IOException
+    {
+        rtklib.geoid_t g;
+        String line,key,val;
+        double latmin=0.0,lonmin=0.0,dlat=0.0,dlon=0.0,nodata=-9999.0;
+        int nrows=0,ncols=0,p;
+
+        try (BufferedReader br=Files.newBufferedReader(Paths.get(infile))) {
+
+            /* header: key = value until end_of_head */
+            while ((line=br.readLine())!=null&&!line.startsWith("end_of_head")) {
+                if ((p=line.indexOf('='))<0) continue;
+                key=line.substring(0,p).trim();
+                val=line.substring(p+1).trim();
+                switch (key) {
+                    case "lat min"    : latmin=Double.parseDouble(val); break;
+                    case "lon min"    : lonmin=Double.parseDouble(val); break;
+                    case "delta lat"  : dlat  =Double.parseDouble(val); break;
+                    case "delta lon"  : dlon  =Double.parseDouble(val); break;
+                    case "nrows"      : nrows =Integer.parseInt(val); break;
+                    case "ncols"      : ncols =Integer.parseInt(val); break;
+                    case "nodata"     : nodata=Double.parseDouble(val); break;
+                    case "coord units":
+                        if (!val.equals("deg")) {
+                            rtkcmn.trace(2,"isg coord units not supported: %s\n",val);
+                            return null;
+                        }
+                        break;
+                }
+            }
+            if (line==null||nrows<=0||ncols<=0||dlat<=0.0||dlon<=0.0) return null;
+            g=newgrid(outfile,ncols,nrows,lonmin,latmin,dlon,dlat);
+
+            /* values from north to south, from west to east */
+            if (readvals(br,g,1,nodata)<g.nlon*g.nlat) return null;
+        }
+        return g;
+    }
+
+    /* delete temporary grid file ------------------------------------------------*/
+    static void delfile(final String file)
+    {
+        try {
+            Files.deleteIfExists(Paths.get(file));
+        }
+        catch (IOException e) {
+            rtkcmn.trace(2,"grid file delete error: %s\n",file);
+        }
+    }
+
+    /* replace grid file by temporary file ---------------------------------------*/
+    static void movefile(final String src, final String dst) throws IOException
+    {
+        Path p=Paths.get(src),q=Paths.get(dst);
+
+        try {
+            Files.move(p,q,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(p,q,StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /* convert geoid data file to grid file ----------------------------------------
+     * convert geoid data file to binary grid file for opengeoid()
+     * args   : int    model     I   geoid model
+     *                                 GEOID_EGM96_M150 : EGM96 15x15"
+     *                                 GEOID_EGM2008_M25: EGM2008 2.5x2.5"
+     *                                 GEOID_EGM2008_M10: EGM2008 1.0x1.0"
+     *                                 GEOID_GSI2000_M15: GSI geoid 2000 1.0x1.5"
+     *                                 GEOID_ISG        : ISG format grid (deg)
+     *          char   *infile   I   geoid data file path
+     *          char   *outfile  I   grid file path
+     * return : status (1:ok,0:error)
+     * notes  : conversion is needed only once for a geoid data file
+     *          the grid is written to outfile+".tmp" and renamed to outfile only
+     *          after conversion succeeded, so a malformed data file leaves no
+     *          grid file (or the previous grid file) at outfile
+     *-----------------------------------------------------------------------------*/
+    public static int geoidconv(int model, final String infile, final String outfile)
+    {
+        rtklib.geoid_t g=null;
+        String tmpfile=outfile+".tmp";
+
+        rtkcmn.trace(3,"geoidconv: model=%d infile=%s outfile=%s\n",model,infile,outfile);
+
+        try {
+            switch (model) {
+                case rtklib.GEOID_EGM96_M150 : g=conv_egm96(infile,tmpfile); break;
+                case rtklib.GEOID_EGM2008_M25: g=conv_egm08(infile,tmpfile,8640,4321); break;
+                case rtklib.GEOID_EGM2008_M10: g=conv_egm08(infile,tmpfile,21600,10801); break;
+                case rtklib.GEOID_GSI2000_M15: g=conv_gsi(infile,tmpfile); break;
+                case rtklib.GEOID_ISG        : g=conv_isg(infile,tmpfile); break;
+                default:
+                    rtkcmn.trace(2,"geoid model not supported: model=%d\n",model);
+                    return 0;
+            }
+        }
+        catch (IOException|RuntimeException e) {
+            rtkcmn.trace(2,"geoid data file read error: %s\n",infile);
+            delfile(tmpfile);
+            return 0;
+        }
+        if (g==null) {
+            rtkcmn.trace(2,"geoid data file format error: %s\n",infile);
+            delfile(tmpfile);
+            return 0;
+        }
+        try {
+            g.map.force();
+            movefile(tmpfile,outfile);
+        }
+        catch (IOException|RuntimeException e) {
+            rtkcmn.trace(2,"geoid grid file write error: %s\n",outfile);
+            delfile(tmpfile);
+            return 0;
+        }
+        return 1;
+    }
+
+    /* open geoid model file -------------------------------------------------------
+     * open geoid model grid file
+     * args   : int    model     I   geoid model (GEOID_???)
+     *          char   *file     I   grid file path converted by geoidconv()
+     *          int    interp    I   interpolation (0:bilinear,1:bicubic)
+     *                               (omitted: bilinear)
+     * return : status (1:ok,0:error)
+     * notes  : the grid file is memory-mapped read-only and closed. the opened
+     *          geoid is used by geoidh() of all threads
+     *-----------------------------------------------------------------------------*/
+    public static int opengeoid(int model, final String file)
+    {
+        return opengeoid(model,file,0);
+    }
+    public static int opengeoid(int model, final String file, int interp)
+    {
+        rtklib.geoid_t g=new rtklib.geoid_t();
+        ByteBuffer buff;
+
+        rtkcmn.trace(3,"opengeoid: model=%d file=%s\n",model,file);
+
+        if (model==rtklib.GEOID_EMBEDDED) {
+            geoid_=null;
+            return 1;
+        }
+        try {
+            buff=mapfile(file,ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e) {
+            rtkcmn.trace(2,"geoid model file open error: model=%d file=%s\n",model,file);
+            return 0;
+        }
+        if (buff.limit()<GEOHEAD||buff.getInt(0)!=GEOMAGIC||buff.getInt(4)!=GEOVER) {
+            rtkcmn.trace(2,"geoid grid file format error: %s\n",file);
+            return 0;
+        }
+        g.model=model;
+        g.nlon=buff.getInt(8);
+        g.nlat=buff.getInt(12);
+        g.lon0=buff.getDouble(16);
+        g.lat0=buff.getDouble(24);
+        g.dlon=buff.getDouble(32);
+        g.dlat=buff.getDouble(40);
+        g.wrap=buff.getInt(48);
+        g.interp=interp;
+        if (g.nlon<2||g.nlat<2||buff.limit()<GEOHEAD+4L*g.nlon*g.nlat) {
+            rtkcmn.trace(2,"geoid grid file size error: %s\n",file);
+            return 0;
+        }
+        buff.position(GEOHEAD);
+        g.data=buff.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        geoid_=g;
+        return 1;
+    }
+
+    /* close geoid model file ------------------------------------------------------
+     * close geoid model file
+     * args   : none
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void closegeoid()
+    {
+        rtkcmn.trace(3,"closegoid:\n");
+
+        geoid_=null;
+    }
+
+    /* geoid height at grid point ------------------------------------------------*/
+    static double geoidval(final rtklib.geoid_t g, int i, int j)
+    {
+        if (g.wrap!=0) i=Math.floorMod(i,g.nlon);
+        else i=Math.max(0,Math.min(i,g.nlon-1));
+        j=Math.max(0,Math.min(j,g.nlat-1));
+        return g.data.get(i+j*g.nlon);
+    }
+
+    /* geoid heights of cell -----------------------------------------------------*/
+    static rtklib.geocell_t geoidcell(final rtklib.geoid_t g, int i, int j)
+    {
+        rtklib.geocell_t c=g.cell.get();
+        int k,l;
+
+        if (c.i==i&&c.j==j&&c.interp==g.interp) return c;
+
+        c.i=i; c.j=j; c.interp=g.interp;
+        if (g.interp==0) { /* {sw,se,nw,ne} */
+            c.v[0]=geoidval(g,i,j  ); c.v[1]=geoidval(g,i+1,j  );
+            c.v[2]=geoidval(g,i,j+1); c.v[3]=geoidval(g,i+1,j+1);
+        }
+        else { /* 4x4 points around cell [k+l*4] */
+            for (l=0;l<4;l++) for (k=0;k<4;k++) c.v[k+l*4]=geoidval(g,i-1+k,j-1+l);
+        }
+        return c;
+    }
+
+    /* cubic convolution ---------------------------------------------------------*/
+    static double cubic(double y0, double y1, double y2, double y3, double t)
+    {
+        return y1+0.5*t*(y2-y0+t*(2.0*y0-5.0*y1+4.0*y2-y3+t*(3.0*(y1-y2)+y3-y0)));
+    }
+
+    /* geoid height ----------------------------------------------------------------
+     * get geoid height from geoid model
+     * args   : double *pos      I   geodetic position {lat,lon} (rad)
+     * return : geoid height (m) (0.0:error or no geoid)
+     * notes  : geoid heights are interpolated by bilinear or bicubic (cubic
+     *          convolution) interpolation. the last used grid cell is cached and
+     *          refilled in place by thread, so consecutive calls in the same cell
+     *          read no grid point and a new cell allocates nothing
+     *-----------------------------------------------------------------------------*/
+    public static double geoidh(final double[] pos)
+    {
+        rtklib.geoid_t g=geoid_;
+        rtklib.geocell_t c;
+        double x,y,a,b,h;
+        double[] v;
+        int i,j;
+
+        if (g==null) return 0.0;
+
+        x=(pos[1]*rtklib.R2D-g.lon0)/g.dlon;
+        y=(pos[0]*rtklib.R2D-g.lat0)/g.dlat;
+        if (g.wrap!=0) x-=Math.floor(x/g.nlon)*g.nlon;
+        if (x<-1E-9||x>g.nlon-1+g.wrap+1E-9||y<-1E-9||y>g.nlat-1+1E-9) {
+            rtkcmn.trace(2,"out of geoid model range: lat=%.3f lon=%.3f\n",
+                         pos[0]*rtklib.R2D,pos[1]*rtklib.R2D);
+            return 0.0;
+        }
+        x=Math.max(x,0.0);
+        y=Math.max(y,0.0);
+        i=Math.min((int)x,g.nlon-2+g.wrap);
+        j=Math.min((int)y,g.nlat-2);
+        a=x-i; b=y-j;
+        c=geoidcell(g,i,j);
+        v=c.v;
+
+        if (c.interp==0) {
+            h=v[0]*(1.0-a)*(1.0-b)+v[1]*a*(1.0-b)+v[2]*(1.0-a)*b+v[3]*a*b;
+        }
+        else {
+            h=cubic(cubic(v[ 0],v[ 1],v[ 2],v[ 3],a),cubic(v[ 4],v[ 5],v[ 6],v[ 7],a),
+                    cubic(v[ 8],v[ 9],v[10],v[11],a),cubic(v[12],v[13],v[14],v[15],a),b);
+        }
+        if (Double.isNaN(h)) {
+            rtkcmn.trace(2,"geoid height no data: lat=%.3f lon=%.3f\n",
+                         pos[0]*rtklib.R2D,pos[1]*rtklib.R2D);
+            return 0.0;
+        }
+        return h;
+    }
+}
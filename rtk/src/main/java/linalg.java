@@ -0,0 +1,262 @@
+/*------------------------------------------------------------------------------
+ * linalg.java : linear algebra backends
+ *
+ * notes   : backends implement rtklib.la_t and are set to the process by
+ *           rtkcmn.setlabackend(). matrices are stored by column-major order
+ *           (fortran convention) as in rtkcmn.
+ *
+ *           builtin : built-in primitive kernels of rtkcmn
+ *           commons : apache commons-math3
+ *
+ *           the backend is used by rtkcmn.matmul(), matinv(), solve(), chol()
+ *           and ludcmp(). kalman filter and smoother updates with workspace use
+ *           the built-in kernels regardless of the backend. the commons adapter
+ *           allocates matrices on each call. lu() of commons uses partial
+ *           pivoting without implicit scaling, so the pivots may differ from
+ *           the built-in ludcmp(), but the factors solve the same system.
+ *
+ *           labench() measures the backends for given sizes of kalman filter
+ *           update and returns the fastest one. it can be run from command line:
+ *
+ *           java linalg [n [m [nloop]]]
+ *
+ * version : $Revision:$ $Date:$
+ *-----------------------------------------------------------------------------*/
+import org.apache.commons.math3.exception.MathIllegalArgumentException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.Random;
+
+public class linalg {
+    /* built-in kernels ----------------------------------------------------------*/
+    static class builtin implements rtklib.la_t {
+        public String name()
+        {
+            return "builtin";
+        }
+        public void matmul(final String tr, int n, int k, int m, double alpha,
+                           final double[] A, final double[] B, double beta, double[] C)
+        {
+            rtkcmn.gemm((tr.charAt(0)=='N'?0:2)+(tr.charAt(1)=='N'?0:1),n,k,m,alpha,A,B,
+                        beta,C);
+        }
+        public int matinv(double[] A, int n)
+        {
+            return rtkcmn.matinv(A,n,rtkcmn.mat(n,n),rtkcmn.imat(n,1),rtkcmn.mat(n,1),
+                                 new double[1]);
+        }
+        public int solve(final String tr, final double[] A, final double[] Y, int n, int m,
+                         double[] X)
+        {
+            double[] B=rtkcmn.mat(n,n);
+            int info;
+
+            rtkcmn.matcpy(B,A,n,n);
+            if ((info=matinv(B,n))==0)
+                rtkcmn.gemm(tr.charAt(0)=='N'?0:2,n,m,n,1.0,B,Y,0.0,X);
+            return info;
+        }
+        public int chol(double[] A, int n)
+        {
+            return rtkcmn.chol_(A,n);
+        }
+        public int lu(double[] A, int n, int[] indx, double[] d)
+        {
+            return rtkcmn.ludcmp(A,n,indx,d,rtkcmn.mat(n,1));
+        }
+    }
+
+    /* commons-math3 adapter -----------------------------------------------------*/
+    static class commons implements rtklib.la_t {
+        public String name()
+        {
+            return "commons";
+        }
+        public void matmul(final String tr, int n, int k, int m, double alpha,
+                           final double[] A, final double[] B, double beta, double[] C)
+        {
+            RealMatrix a=tr.charAt(0)=='N'?tomat(A,n,m):tomat(A,m,n).transpose();
+            RealMatrix b=tr.charAt(1)=='N'?tomat(B,m,k):tomat(B,k,m).transpose();
+            RealMatrix c=a.multiply(b);
+            int i,j;
+
+            for (j=0;j<k;j++) for (i=0;i<n;i++) {
+                if (beta==0.0) C[i+j*n]=alpha*c.getEntry(i,j);
+                else C[i+j*n]=alpha*c.getEntry(i,j)+beta*C[i+j*n];
+            }
+        }
+        public int matinv(double[] A, int n)
+        {
+            DecompositionSolver solver=new LUDecomposition(tomat(A,n,n)).getSolver();
+
+            if (!solver.isNonSingular()) return -1;
+            frommat(solver.getInverse(),A);
+            return 0;
+        }
+        public int solve(final String tr, final double[] A, final double[] Y, int n, int m,
+                         double[] X)
+        {
+            RealMatrix a=tr.charAt(0)=='N'?tomat(A,n,n):tomat(A,n,n).transpose();
+            DecompositionSolver solver;
+
+            /* X=A^-1*Y as solve() (tr[0]=='T': X=A'^-1*Y) */
+            solver=new LUDecomposition(a).getSolver();
+            if (!solver.isNonSingular()) return -1;
+            frommat(solver.solve(tomat(Y,n,m)),X);
+            return 0;
+        }
+        public int chol(double[] A, int n)
+        {
+            double[][] a=new double[n][n];
+            RealMatrix L;
+            int i,j;
+
+            /* symmetric matrix from lower triangle as chol() */
+            for (j=0;j<n;j++) for (i=j;i<n;i++) a[i][j]=a[j][i]=A[i+j*n];
+            try {
+                L=new CholeskyDecomposition(new Array2DRowRealMatrix(a,false),1E-12,0.0).getL();
+            }
+            catch (MathIllegalArgumentException e) {
+                return -1;
+            }
+            for (j=0;j<n;j++) for (i=j;i<n;i++) A[i+j*n]=L.getEntry(i,j);
+            return 0;
+        }
+        public int lu(double[] A, int n, int[] indx, double[] d)
+        {
+            LUDecomposition lu=new LUDecomposition(tomat(A,n,n));
+            int[] p=lu.getPivot(),perm=new int[n],pos=new int[n];
+            int i,j,r,t;
+
+            if (!lu.getSolver().isNonSingular()) return -1;
+            RealMatrix L=lu.getL(),U=lu.getU();
+
+            /* pivot permutation to sequence of row interchanges */
+            d[0]=1.0;
+            for (i=0;i<n;i++) perm[i]=pos[i]=i;
+            for (j=0;j<n;j++) {
+                r=pos[p[j]];
+                indx[j]=r;
+                if (r!=j) {
+                    t=perm[j]; perm[j]=perm[r]; perm[r]=t;
+                    pos[perm[j]]=j; pos[perm[r]]=r;
+                    d[0]=-d[0];
+                }
+            }
+            for (j=0;j<n;j++) for (i=0;i<n;i++) {
+                A[i+j*n]=i>j?L.getEntry(i,j):U.getEntry(i,j);
+            }
+            return 0;
+        }
+    }
+
+    /* column-major array to matrix ----------------------------------------------*/
+    static RealMatrix tomat(final double[] A, int n, int m)
+    {
+        double[][] a=new double[n][m];
+        int i,j;
+
+        for (i=0;i<n;i++) for (j=0;j<m;j++) a[i][j]=A[i+j*n];
+        return new Array2DRowRealMatrix(a,false);
+    }
+
+    /* matrix to column-major array ----------------------------------------------*/
+    static void frommat(final RealMatrix M, double[] A)
+    {
+        int i,j,n=M.getRowDimension(),m=M.getColumnDimension();
+
+        for (i=0;i<n;i++) for (j=0;j<m;j++) A[i+j*n]=M.getEntry(i,j);
+    }
+
+    public static final rtklib.la_t BUILTIN = new builtin();
+    public static final rtklib.la_t COMMONS = new commons();
+
+    /* get linear algebra backend ----------------------------------------------------
+     * get linear algebra backend by name
+     * args   : char   *name     I   backend name ("builtin","commons")
+     * return : backend (null: no backend)
+     *-----------------------------------------------------------------------------*/
+    public static rtklib.la_t getbackend(final String name)
+    {
+        if (BUILTIN.name().equals(name)) return BUILTIN;
+        if (COMMONS.name().equals(name)) return COMMONS;
+        return null;
+    }
+
+    /* kalman filter update by backend -------------------------------------------*/
+    static void labench_filter(rtklib.la_t la, final double[] P, final double[] H,
+                               int n, int m, double[] F, double[] Q, double[] K,
+                               double[] I, double[] Pp)
+    {
+        int i;
+
+        for (i=0;i<n*n;i++) I[i]=0.0;
+        for (i=0;i<n;i++) I[i+i*n]=1.0;
+        for (i=0;i<m*m;i++) Q[i]=0.0;
+        for (i=0;i<m;i++) Q[i+i*m]=1.0;
+        la.matmul("NN",n,m,n,1.0,P,H,0.0,F);       /* Q=H'*P*H+R */
+        la.matmul("TN",m,m,n,1.0,H,F,1.0,Q);
+        la.matinv(Q,m);
+        la.matmul("NN",n,m,m,1.0,F,Q,0.0,K);       /* K=P*H*Q^-1 */
+        la.matmul("NT",n,n,m,-1.0,K,H,1.0,I);      /* Pp=(I-K*H')*P */
+        la.matmul("NN",n,n,n,1.0,I,P,0.0,Pp);
+    }
+
+    /* benchmark linear algebra backends ---------------------------------------------
+     * measure kalman filter update time of linear algebra backends and select
+     * the fastest one
+     * args   : int    n,m       I   number of states and measurements
+     *          int    nloop     I   number of updates measured
+     *          double *t        O   update time of backends (s) {builtin,commons}
+     *                               (null: no output)
+     * return : fastest backend
+     *-----------------------------------------------------------------------------*/
+    public static rtklib.la_t labench(int n, int m, int nloop, double[] t)
+    {
+        final rtklib.la_t[] las={BUILTIN,COMMONS};
+        Random rand=new Random(0);
+        double[] P=rtkcmn.mat(n,n),H=rtkcmn.mat(n,m),A=rtkcmn.mat(n,n);
+        double[] F=rtkcmn.mat(n,m),Q=rtkcmn.mat(m,m),K=rtkcmn.mat(n,m);
+        double[] I=rtkcmn.mat(n,n),Pp=rtkcmn.mat(n,n);
+        double tmin=Double.MAX_VALUE,ti;
+        long t0;
+        int i,j,sel=0;
+
+        for (i=0;i<n*n;i++) A[i]=rand.nextGaussian();
+        for (i=0;i<n*m;i++) H[i]=rand.nextGaussian();
+        rtkcmn.gemm(1,n,n,n,1.0,A,A,0.0,P); /* P=A*A'+I */
+        for (i=0;i<n;i++) P[i+i*n]+=1.0;
+
+        for (j=0;j<las.length;j++) {
+            for (i=0;i<Math.max(nloop/10,1);i++) { /* warm up */
+                labench_filter(las[j],P,H,n,m,F,Q,K,I,Pp);
+            }
+            t0=System.nanoTime();
+            for (i=0;i<nloop;i++) {
+                labench_filter(las[j],P,H,n,m,F,Q,K,I,Pp);
+            }
+            ti=(System.nanoTime()-t0)*1E-9/Math.max(nloop,1);
+            if (t!=null) t[j]=ti;
+            if (ti<tmin) {tmin=ti; sel=j;}
+            rtkcmn.trace(3,"labench: %s n=%d m=%d t=%.6f ms\n",las[j].name(),n,m,ti*1E3);
+        }
+        return las[sel];
+    }
+
+    /* benchmark from command line -----------------------------------------------*/
+    public static void main(String[] args)
+    {
+        int n=args.length>0?Integer.parseInt(args[0]):100;
+        int m=args.length>1?Integer.parseInt(args[1]):20;
+        int nloop=args.length>2?Integer.parseInt(args[2]):100;
+        double[] t=new double[2];
+        rtklib.la_t la=labench(n,m,nloop,t);
+
+        System.out.printf("n=%d m=%d builtin=%.4f ms commons=%.4f ms select=%s\n",n,m,
+                          t[0]*1E3,t[1]*1E3,la.name());
+    }
+}
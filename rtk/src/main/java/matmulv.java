@@ -0,0 +1,83 @@
+/*------------------------------------------------------------------------------
+ * matmulv.java : simd matrix multiply kernels
+ *
+ * notes   : uses jdk.incubator.vector. the class is compiled only with the
+ *           maven profile "vector" and run with --add-modules jdk.incubator.vector.
+ *           rtkcmn.matmul() loads it at runtime and falls back to the scalar
+ *           kernels if it is not available.
+ *
+ * version : $Revision:$ $Date:$
+ *-----------------------------------------------------------------------------*/
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class matmulv implements rtklib.gemm_t {
+    static final VectorSpecies<Double> SP = DoubleVector.SPECIES_PREFERRED;
+
+    /* C=alpha*op(A)*op(B)+beta*C ------------------------------------------------*/
+    public void gemm(int tr, int n, int k, int m, double alpha, final double[] A,
+                     final double[] B, double beta, double[] C)
+    {
+        switch (tr) {
+            case 0: axpy(n,k,m,alpha,A,B,1,m,beta,C); break; /* NN: B(x,j)=B[x+j*m] */
+            case 1: axpy(n,k,m,alpha,A,B,k,1,beta,C); break; /* NT: B(x,j)=B[j+x*k] */
+            case 2: dotp(n,k,m,alpha,A,B,beta,C);     break;
+            default: rtkcmn.matmul_tt(n,k,m,alpha,A,B,beta,C); break;
+        }
+    }
+
+    /* C(:,j)=beta*C(:,j)+sum_x alpha*B(x,j)*A(:,x) ------------------------------*/
+    static void axpy(int n, int k, int m, double alpha, final double[] A,
+                     final double[] B, int sx, int sj, double beta, double[] C)
+    {
+        DoubleVector c,b;
+        double bs;
+        int i,i0,i1,j,x,x0,x1,a,cj,ub;
+
+        for (i0=0;i0<n;i0+=rtkcmn.MATMUL_NB) {
+            i1=Math.min(i0+rtkcmn.MATMUL_NB,n);
+            ub=i0+SP.loopBound(i1-i0);
+            x0=0;
+            do { /* tile of A (NB x KB) kept in cache over j */
+                x1=Math.min(x0+rtkcmn.MATMUL_KB,m);
+                for (j=0;j<k;j++) {
+                    cj=j*n;
+                    if (x0==0) rtkcmn.matscal(beta,C,cj+i0,i1-i0);
+                    for (x=x0;x<x1;x++) {
+                        bs=alpha*B[x*sx+j*sj];
+                        if (bs==0.0) continue;
+                        b=DoubleVector.broadcast(SP,bs);
+                        a=x*n;
+                        for (i=i0;i<ub;i+=SP.length()) {
+                            c=DoubleVector.fromArray(SP,C,cj+i);
+                            c=DoubleVector.fromArray(SP,A,a+i).fma(b,c);
+                            c.intoArray(C,cj+i);
+                        }
+                        for (;i<i1;i++) C[cj+i]+=A[a+i]*bs;
+                    }
+                }
+            } while ((x0+=rtkcmn.MATMUL_KB)<m);
+        }
+    }
+
+    /* C(i,j)=alpha*A(:,i)'*B(:,j)+beta*C(i,j) -----------------------------------*/
+    static void dotp(int n, int k, int m, double alpha, final double[] A,
+                     final double[] B, double beta, double[] C)
+    {
+        DoubleVector s;
+        double d;
+        int i,j,x,a,b,ub=SP.loopBound(m);
+
+        for (j=0;j<k;j++) for (i=0;i<n;i++) {
+            a=i*m; b=j*m;
+            s=DoubleVector.zero(SP);
+            for (x=0;x<ub;x+=SP.length()) {
+                s=DoubleVector.fromArray(SP,A,a+x).fma(DoubleVector.fromArray(SP,B,b+x),s);
+            }
+            d=s.reduceLanes(VectorOperators.ADD);
+            for (;x<m;x++) d+=A[a+x]*B[b+x];
+            if (beta==0.0) C[i+j*n]=alpha*d; else C[i+j*n]=alpha*d+beta*C[i+j*n];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*------------------------------------------------------------------------------
+ * postpos.c : post-processing positioning
+ *
+ *          Copyright (C) 2007-2016 by T.TAKASU, All rights reserved.
+ *
+ * notes   : only forward/backward combination of combined mode (soltype=2) is
+ *           ported. forward states are written to a state log file during the
+ *           forward pass and combined with the backward states epoch by epoch
+ *           by fixed-interval smoother, so memory usage does not depend on
+ *           length of the session. the log file is accessed through a window
+ *           buffer allocated once per log, not by mapping a window for each
+ *           part of the file (mapped buffers are only unmapped by gc).
+ *
+ * version : $Revision:$ $Date:$
+ *-----------------------------------------------------------------------------*/
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class postpos {
+    /* constants -----------------------------------------------------------------*/
+    static final int  LOGMAGIC = 0x52544B53;  /* state log header magic ("RTKS") */
+    static final int  LOGHEAD  = 16;          /* state log header size (bytes) */
+    static final long LOGWIN   = 1L<<26;      /* state log window size (bytes) */
+
+    /* record size of state log: time, x, P (lower triangle) ---------------------*/
+    static int logrecsize(int n)
+    {
+        return 16+8*n+8*(n*(n+1)/2);
+    }
+
+    /* write window of state log to file (forward pass) -------------------------*/
+    static void flushstatelog(rtklib.statelog_t log) throws IOException
+    {
+        long pos=LOGHEAD+log.seg*log.nseg*(long)log.recsize;
+
+        if (log.mode!=0||log.seg<0) return;
+        log.buff.clear().limit((int)Math.min(log.nrec-log.seg*log.nseg,log.nseg)*log.recsize);
+        while (log.buff.hasRemaining()) log.ch.write(log.buff,pos+log.buff.position());
+        log.buff.clear();
+    }
+
+    /* load window of state log containing record i ------------------------------*/
+    static int loadstatelog(rtklib.statelog_t log, long i) throws IOException
+    {
+        long seg=i/log.nseg,pos=LOGHEAD+seg*log.nseg*(long)log.recsize;
+
+        if (seg!=log.seg) {
+            if (log.mode==0) {
+                flushstatelog(log);
+            }
+            else {
+                log.buff.clear().limit((int)Math.min(log.nrec-seg*log.nseg,log.nseg)*log.recsize);
+                while (log.buff.hasRemaining()) {
+                    if (log.ch.read(log.buff,pos+log.buff.position())<0) throw new EOFException();
+                }
+            }
+            log.seg=seg;
+        }
+        return (int)(i-seg*log.nseg)*log.recsize;
+    }
+
+    /* open state log ------------------------------------------------------------
+     * open forward state log for writing
+     * args   : statelog_t *log  IO  state log
+     *          char   *file     I   state log file path
+     *          int    n         I   number of states
+     * return : status (1:ok,0:error)
+     *-----------------------------------------------------------------------------*/
+    public static int openstatelog(rtklib.statelog_t log, final String file, int n)
+    {
+        rtkcmn.trace(3,"openstatelog: file=%s n=%d\n",file,n);
+
+        try {
+            log.ch=FileChannel.open(Paths.get(file),StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        catch (IOException e) {
+            rtkcmn.trace(1,"state log open error: %s\n",file);
+            return 0;
+        }
+        log.n=n;
+        log.recsize=logrecsize(n);
+        log.nseg=(int)Math.max(1,LOGWIN/log.recsize);
+        log.seg=-1; log.nrec=log.cur=0; log.mode=0;
+        log.buff=ByteBuffer.allocateDirect(log.nseg*log.recsize).order(ByteOrder.nativeOrder());
+        log.xf=rtkcmn.zeros(n,1);
+        log.Qf=rtkcmn.zeros(n,n);
+        rtkcmn.init_filterws(log.ws,n,n);
+        return 1;
+    }
+
+    /* write states to state log -------------------------------------------------
+     * append forward states and covariance of an epoch to state log
+     * args   : statelog_t *log  IO  state log
+     *          gtime_t time     I   time of states
+     *          double *x        I   states (n x 1)
+     *          double *P        I   covariance of states (n x n)
+     * return : status (1:ok,0:error)
+     *-----------------------------------------------------------------------------*/
+    public static int writestatelog(rtklib.statelog_t log, rtklib.gtime_t time,
+                                    final double[] x, final double[] P)
+    {
+        int i,j,p,n=log.n;
+
+        if (log.mode!=0) return 0;
+        try {
+            p=loadstatelog(log,log.nrec);
+        }
+        catch (IOException e) {
+            rtkcmn.trace(1,"state log write error: nrec=%d\n",log.nrec);
+            return 0;
+        }
+        log.buff.putLong(p,time.time); p+=8;
+        log.buff.putDouble(p,time.sec); p+=8;
+        for (i=0;i<n;i++,p+=8) log.buff.putDouble(p,x[i]);
+        for (j=0;j<n;j++) for (i=j;i<n;i++,p+=8) log.buff.putDouble(p,P[i+j*n]);
+        log.nrec++;
+        return 1;
+    }
+
+    /* read states from state log ------------------------------------------------*/
+    static int readstatelog(rtklib.statelog_t log, long k, rtklib.gtime_t time,
+                            double[] x, double[] P)
+    {
+        int i,j,p,n=log.n;
+
+        if (k<0||k>=log.nrec) return 0;
+        try {
+            p=loadstatelog(log,k);
+        }
+        catch (IOException e) {
+            rtkcmn.trace(1,"state log read error: rec=%d\n",k);
+            return 0;
+        }
+        time.time=log.buff.getLong(p); p+=8;
+        time.sec=log.buff.getDouble(p); p+=8;
+        for (i=0;i<n;i++,p+=8) x[i]=log.buff.getDouble(p);
+        for (j=0;j<n;j++) for (i=j;i<n;i++,p+=8) P[i+j*n]=P[j+i*n]=log.buff.getDouble(p);
+        return 1;
+    }
+
+    /* rewind state log for backward pass ------------------------------------------
+     * finish forward pass and rewind state log to the last epoch for backward
+     * pass
+     * args   : statelog_t *log  IO  state log
+     * return : status (1:ok,0:error)
+     *-----------------------------------------------------------------------------*/
+    public static int rewindstatelog(rtklib.statelog_t log)
+    {
+        ByteBuffer head=ByteBuffer.allocate(LOGHEAD).order(ByteOrder.nativeOrder());
+
+        rtkcmn.trace(3,"rewindstatelog: nrec=%d\n",log.nrec);
+
+        try {
+            flushstatelog(log);
+            log.seg=-1;
+            log.ch.truncate(LOGHEAD+log.nrec*log.recsize);
+            head.putInt(LOGMAGIC).putInt(log.n).putLong(log.nrec);
+            head.flip();
+            log.ch.write(head,0);
+        }
+        catch (IOException e) {
+            rtkcmn.trace(1,"state log rewind error\n");
+            return 0;
+        }
+        log.mode=1;
+        log.cur=log.nrec-1;
+        return 1;
+    }
+
+    /* combine backward states with forward states ---------------------------------
+     * combine backward states of an epoch with forward states in state log by
+     * fixed-interval smoother. call it for each epoch of backward pass in
+     * reverse time order
+     * args   : statelog_t *log  IO  state log (rewound by rewindstatelog())
+     *          gtime_t time     I   time of backward states
+     *          double *xb       I   backward states (n x 1)
+     *          double *Qb       I   backward states covariance (n x n)
+     *          double *xs       O   smoothed states (n x 1)
+     *          double *Qs       O   smoothed states covariance (n x n)
+     * return : status (1:ok,0:no forward states at time,-1:error)
+     *-----------------------------------------------------------------------------*/
+    public static int combstatelog(rtklib.statelog_t log, rtklib.gtime_t time,
+                                   final double[] xb, final double[] Qb,
+                                   double[] xs, double[] Qs)
+    {
+        double tt;
+        int n=log.n;
+
+        if (log.mode!=1) return -1;
+
+        /* search forward states at time (forward records are in time order) */
+        for (;log.cur>=0;log.cur--) {
+            if (readstatelog(log,log.cur,log.tf,log.xf,log.Qf)==0) return -1;
+            if ((tt=rtkcmn.timediff(log.tf,time))<-rtklib.DTTOL) return 0;
+            if (tt<=rtklib.DTTOL) break;
+        }
+        if (log.cur<0) return 0;
+
+        if (rtkcmn.smoother(log.xf,log.Qf,xb,Qb,n,xs,Qs,log.ws)!=0) {
+            rtkcmn.trace(2,"smoother error: %s\n",rtkcmn.time_str(time,3));
+            return -1;
+        }
+        return 1;
+    }
+
+    /* close state log -----------------------------------------------------------*/
+    public static void closestatelog(rtklib.statelog_t log)
+    {
+        rtkcmn.trace(3,"closestatelog: nrec=%d\n",log.nrec);
+
+        log.buff=null; log.seg=-1;
+        try {
+            if (log.ch!=null) log.ch.close();
+        }
+        catch (IOException e) {
+            rtkcmn.trace(2,"state log close error\n");
+        }
+        log.ch=null;
+    }
+}
@@ -0,0 +1,164 @@
+/*------------------------------------------------------------------------------
+ * rtcm.c : RTCM functions
+ *
+ *          Copyright (C) 2009-2018 by T.TAKASU, All rights reserved.
+ *
+ * references :
+ *     [1] RTCM Recommended Standards for Differential GNSS (Global Navigation
+ *         Satellite Systems) Service version 3, RTCM 10403.3, 2016
+ *
+ * notes   : only the RTCM 3 framer is ported. frames are searched in input
+ *           ByteBuffer (heap or direct) and handed to the decoders of message
+ *           types in rtcm_t.dec3 as read-only slices of the input. only frames
+ *           spanning reads are copied to rtcm_t.buff. crc-24q is computed
+ *           incrementally on input bytes as they arrive.
+ *
+ * version : $Revision:$ $Date:$
+ *-----------------------------------------------------------------------------*/
+import java.nio.ByteBuffer;
+
+public class rtcm {
+    /* constants -----------------------------------------------------------------*/
+    static final int RTCM3PREAMB = 0xD3;    /* rtcm ver.3 frame preamble */
+
+    /* index of RTCM 3 message type (see rtcm_t.nmsg3) -----------------------------
+     * index of RTCM 3 message type for message counters and decoders
+     * args   : int    type      I   message type
+     * return : index (1-299:1001-1299,300-399:2000-2099,0:other)
+     *-----------------------------------------------------------------------------*/
+    public static int rtcm3idx(int type)
+    {
+        if (1001<=type&&type<=1299) return type-1000;
+        if (2000<=type&&type<=2099) return type-1700;
+        return 0;
+    }
+
+    /* decode RTCM 3 frame -------------------------------------------------------*/
+    static int decode_frame(rtklib.rtcm_t rtcm, ByteBuffer frm)
+    {
+        rtklib.rtcm3dec_t dec;
+        int type,i;
+
+        type=(int)rtkcmn.getbitl(frm,24,12);
+        rtcm.nmsg3[i=rtcm3idx(type)]++;
+
+        if (rtcm.dec3==null||(dec=rtcm.dec3[i])==null) return 0;
+        return dec.decode(rtcm,frm,type);
+    }
+
+    /* resynchronize frame in message buffer ---------------------------------------
+     * discard bytes in message buffer up to the next preamble after k bytes
+     * args   : rtcm_t *rtcm     IO  rtcm control struct
+     *          int    k         I   number of bytes to discard at least
+     * return : none
+     * notes  : crc of the remaining header is recomputed. the rest of the frame
+     *          is added to crc when the header is read
+     *-----------------------------------------------------------------------------*/
+    static void syncbuff(rtklib.rtcm_t rtcm, int k)
+    {
+        int i,n;
+
+        for (i=k;i<rtcm.nbyte&&(rtcm.buff[i]&0xFF)!=RTCM3PREAMB;i++) ;
+        n=rtcm.nbyte-i;
+        System.arraycopy(rtcm.buff,i,rtcm.buff,0,n);
+        rtcm.nbyte=n;
+        rtcm.len=0;
+        rtkcmn.crcinit(rtcm.crc,rtklib.CRC_24Q);
+        rtkcmn.crcupdate(rtcm.crc,rtcm.buff,0,Math.min(n,3));
+    }
+
+    /* input RTCM 3 message from stream buffer -------------------------------------
+     * search and decode RTCM 3 message in input buffer
+     * args   : rtcm_t *rtcm     IO  rtcm control struct
+     *          ByteBuffer in    IO  input data (from position to limit)
+     * return : status of decoder (-1: error message, 0: no message,
+     *                             1: input observation data, 2: ephemeris, ...)
+     * notes  : input is read until the end of a frame or the limit, and the
+     *          position of input is advanced to the next byte. call it while
+     *          input has remaining bytes to read all messages:
+     *
+     *          while (in.hasRemaining()) {
+     *              stat=input_rtcm3(rtcm,in); ...
+     *          }
+     *
+     *          a frame within input is passed to the decoder as a read-only slice
+     *          of input without copy, so the decoder must not retain it after
+     *          return. a frame spanning inputs is assembled in rtcm.buff. the
+     *          decoder of the message type is rtcm.dec3[rtcm3idx(type)]
+     *          (rtcm.dec3[0]: decoder of other message types). rtcm.nmsg3 counts
+     *          messages with valid crc
+     *
+     *          a preamble with non-zero reserved bits or a frame with crc error
+     *          is skipped by one byte and the frame is searched again from the
+     *          next byte (also in rtcm.buff), so a false preamble in data does
+     *          not drop the following frames
+     *-----------------------------------------------------------------------------*/
+    public static int input_rtcm3(rtklib.rtcm_t rtcm, ByteBuffer in)
+    {
+        ByteBuffer frm;
+        int p=in.position(),e=in.limit(),len,n,m,stat;
+
+        for (;;) {
+            if (rtcm.nbyte==0) {
+
+                /* synchronize frame */
+                for (;p<e&&(in.get(p)&0xFF)!=RTCM3PREAMB;p++) ;
+                if (p>=e) break;
+                if (e-p>=2&&(in.get(p+1)&0xFC)!=0) {p++; continue;}
+
+                /* frame within input */
+                if (e-p>=6&&e-p>=(len=(int)rtkcmn.getbitl(in,p*8+14,10)+3)+3) {
+                    if (rtkcmn.rtk_crc24q(in,p,len)!=rtkcmn.getbitl(in,(p+len)*8,24)) {
+                        rtkcmn.trace(2,"rtcm3 parity error: len=%d\n",len);
+                        p++;
+                        continue;
+                    }
+                    frm=in.slice(p,len+3).asReadOnlyBuffer();
+                    in.position(p+len+3);
+                    return decode_frame(rtcm,frm);
+                }
+                rtkcmn.crcinit(rtcm.crc,rtklib.CRC_24Q);
+                rtcm.len=0;
+            }
+            else if (rtcm.len==0&&rtcm.nbyte>=3) {
+
+                /* frame header in message buffer */
+                if ((rtcm.buff[1]&0xFC)!=0) {
+                    syncbuff(rtcm,1);
+                    continue;
+                }
+                rtcm.len=(int)rtkcmn.getbitu(rtcm.buff,14,10)+3; /* length without parity */
+                n=Math.min(rtcm.nbyte,rtcm.len);
+                rtkcmn.crcupdate(rtcm.crc,rtcm.buff,3,n-3);
+                continue;
+            }
+            else if (rtcm.len>0&&rtcm.nbyte>=rtcm.len+3) {
+
+                /* frame complete in message buffer */
+                len=rtcm.len;
+                if (rtkcmn.crcvalue(rtcm.crc)!=rtkcmn.getbitu(rtcm.buff,len*8,24)) {
+                    rtkcmn.trace(2,"rtcm3 parity error: len=%d\n",len);
+                    syncbuff(rtcm,1);
+                    continue;
+                }
+                in.position(p);
+                frm=ByteBuffer.wrap(rtcm.buff,0,len+3).slice().asReadOnlyBuffer();
+                stat=decode_frame(rtcm,frm);
+                syncbuff(rtcm,len+3);
+                return stat;
+            }
+            if (p>=e) break;
+
+            /* frame spanning inputs: append to message buffer */
+            n=rtcm.len==0?3:rtcm.len+3;
+            m=Math.min(n-rtcm.nbyte,e-p);
+            in.get(p,rtcm.buff,rtcm.nbyte,m);
+            n=rtcm.len==0?m:Math.max(Math.min(m,rtcm.len-rtcm.nbyte),0); /* bytes before parity */
+            rtkcmn.crcupdate(rtcm.crc,in,p,n);
+            rtcm.nbyte+=m;
+            p+=m;
+        }
+        in.position(p);
+        return 0;
+    }
+}
@@ -137,11 +137,17 @@ import org.apache.commons.math3.linear.RealVector;
 
 import java.io.File;
 import java.io.FileWriter;
-import java.time.Instant;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class rtkcmn{
     /* constants -----------------------------------------------------------------*/
-    public static final long POLYCRC32  = 0xEDB88320; /* CRC32 polynomial */
+    public static final long POLYCRC32  = 0xEDB88320L; /* CRC32 polynomial */
     public static final long POLYCRC24Q = 0x1864CFB;  /* CRC24Q polynomial */
     public static double SQR(double x){
         return Math.pow(x, 2);
@@ -151,6 +157,14 @@ public class rtkcmn{
     public static final double gpst0[]={1980,1, 6,0,0,0}; /* gps time reference */
     public static final double gst0 []={1999,8,22,0,0,0}; /* galileo system time reference */
     public static final double bdt0 []={2006,1, 1,0,0,0}; /* beidou time reference */
+    public static final long GPST0_TIME = 315964800L;  /* gps time reference (time_t) */
+    public static final long GST0_TIME  = 935280000L;  /* galileo system time reference (time_t) */
+    public static final long BDT0_TIME  = 1136073600L; /* beidou time reference (time_t) */
+    static final int doym[]={1,32,60,91,121,152,182,213,244,274,305,335}; /* doy at 1st of month */
+    static final long pow10[]={ /* 10^n (n=0-12) */
+        1L,10L,100L,1000L,10000L,100000L,1000000L,10000000L,100000000L,1000000000L,
+        10000000000L,100000000000L,1000000000000L
+    };
 
     public static double[][] leaps = new double[][]{ /* leap seconds (y,m,d,h,m,s,utc-gpst) */
         {2017,1,1,0,0,0,-18},
@@ -173,6 +187,7 @@ public class rtkcmn{
         {1981,7,1,0,0,0, -1},
         {0}
     };
+    static volatile rtklib.leapidx_t leapidx=newleapidx(leaps); /* leap seconds index */
 final double[] chisqr = new double[]{      /* chi-sqr(n) (alpha=0.001) */
         10.8,13.8,16.3,18.5,20.5,22.5,24.3,26.1,27.9,29.6,
         31.3,32.9,34.5,36.1,37.7,39.3,40.8,42.3,43.8,45.3,
@@ -343,6 +358,27 @@ final String[] formatstrs = new String[]{    /* stream format strings */
             0xE37B16,0x6537ED,0x69AE1B,0xEFE2E0,0x709DF7,0xF6D10C,0xFA48FA,0x7C0401,
             0x42FA2F,0xC4B6D4,0xC82F22,0x4E63D9,0xD11CCE,0x575035,0x5BC9C3,0xDD8538
     };
+    /* crc slicing-by-8 tables ---------------------------------------------------*/
+    static final int crc32_ [][]=new int[8][256]; /* crc-32 (reflected) */
+    static final int crc24q_[][]=new int[8][256]; /* crc-24q (left-aligned to 32 bits) */
+    static final int crc16_ [][]=new int[8][256]; /* crc-16 (left-aligned to 32 bits) */
+
+    static {
+        int i,j,k,c;
+
+        for (i=0;i<256;i++) {
+            for (c=i,j=0;j<8;j++) c=(c&1)!=0?(c>>>1)^(int)POLYCRC32:c>>>1;
+            crc32_ [0][i]=c;
+            crc24q_[0][i]=(int)tbl_CRC24Q[i]<<8;
+            crc16_ [0][i]=tbl_CRC16[i]<<16;
+        }
+        /* table k: crc of byte followed by k zero bytes */
+        for (k=1;k<8;k++) for (i=0;i<256;i++) {
+            c=crc32_ [k-1][i]; crc32_ [k][i]=(c>>>8)^crc32_[0][c&0xFF];
+            c=crc24q_[k-1][i]; crc24q_[k][i]=(c<<8)^crc24q_[0][c>>>24];
+            c=crc16_ [k-1][i]; crc16_ [k][i]=(c<<8)^crc16_[0][c>>>24];
+        }
+    }
     /* function prototypes -------------------------------------------------------*/
 
     /* fatal error ---------------------------------------------------------------*/
@@ -365,6 +401,41 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     {
         fatalfunc=func;
     }
+    /* satellite number tables --------------------------------------------------*/
+    static final int    satsys_[]=new int[rtklib.MAXSAT+1];     /* satellite system by sat */
+    static final int    satprn_[]=new int[rtklib.MAXSAT+1];     /* prn/slot number by sat */
+    static final int    satno_ []=new int[8*256];               /* sat by system and prn */
+    static final String satid_ []=new String[rtklib.MAXSAT+1];  /* satellite id by sat */
+    static final long   sysset_[][]=new long[8][rtklib.NSATW];  /* satellite set by system */
+
+    static {
+        final int sys[]={
+            rtklib.SYS_GPS,rtklib.SYS_GLO,rtklib.SYS_GAL,rtklib.SYS_QZS,rtklib.SYS_CMP,
+            rtklib.SYS_IRN,rtklib.SYS_LEO,rtklib.SYS_SBS
+        };
+        final int min[]={
+            rtklib.MINPRNGPS,rtklib.MINPRNGLO,rtklib.MINPRNGAL,rtklib.MINPRNQZS,
+            rtklib.MINPRNCMP,rtklib.MINPRNIRN,rtklib.MINPRNLEO,rtklib.MINPRNSBS
+        };
+        final int max[]={
+            rtklib.MAXPRNGPS,rtklib.MAXPRNGLO,rtklib.MAXPRNGAL,rtklib.MAXPRNQZS,
+            rtklib.MAXPRNCMP,rtklib.MAXPRNIRN,rtklib.MAXPRNLEO,rtklib.MAXPRNSBS
+        };
+        final char code[]={'G','R','E','J','C','I','L','\0'};
+        int i,prn,sat=1;
+
+        /* satellite numbers in order of gps,glo,gal,qzs,cmp,irn,leo,sbs */
+        for (i=0;i<sys.length;i++) for (prn=min[i];prn<=max[i];prn++,sat++) {
+            satsys_[sat]=sys[i];
+            satprn_[sat]=prn;
+            satno_[Integer.numberOfTrailingZeros(sys[i])*256+prn]=sat;
+            sysset_[Integer.numberOfTrailingZeros(sys[i])][(sat-1)>>6]|=1L<<(sat-1);
+            satid_[sat]=(code[i]!='\0'?String.format("%c%02d",code[i],prn-min[i]+1):
+                         String.format("%03d",prn)).intern();
+        }
+        satid_[0]="";
+    }
+
     /* satellite system+prn/slot number to satellite number ------------------------
      * convert satellite system+prn/slot number to satellite number
      * args   : int    sys       I   satellite system (SYS_GPS,SYS_GLO,...)
@@ -373,36 +444,8 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static int satno(int sys, int prn)
     {
-        if (prn<=0) return 0;
-        switch (sys) {
-            case rtklib.SYS_GPS:
-                if (prn<rtklib.MINPRNGPS||rtklib.MAXPRNGPS<prn) return 0;
-                return prn-rtklib.MINPRNGPS+1;
-            case rtklib.SYS_GLO:
-                if (prn<rtklib.MINPRNGLO||rtklib.MAXPRNGLO<prn) return 0;
-                return rtklib.NSATGPS+prn-rtklib.MINPRNGLO+1;
-            case rtklib.SYS_GAL:
-                if (prn<rtklib.MINPRNGAL||rtklib.MAXPRNGAL<prn) return 0;
-                return rtklib.NSATGPS+rtklib.NSATGLO+prn-rtklib.MINPRNGAL+1;
-            case rtklib.SYS_QZS:
-                if (prn<rtklib.MINPRNQZS||rtklib.MAXPRNQZS<prn) return 0;
-                return rtklib.NSATGPS+rtklib.NSATGLO+rtklib.NSATGAL+prn-rtklib.MINPRNQZS+1;
-            case rtklib.SYS_CMP:
-                if (prn<rtklib.MINPRNCMP||rtklib.MAXPRNCMP<prn) return 0;
-                return rtklib.NSATGPS+rtklib.NSATGLO+rtklib.NSATGAL+rtklib.NSATQZS+prn-rtklib.MINPRNCMP+1;
-            case rtklib.SYS_IRN:
-                if (prn<rtklib.MINPRNIRN||rtklib.MAXPRNIRN<prn) return 0;
-                return rtklib.NSATGPS+rtklib.NSATGLO+rtklib.NSATGAL+rtklib.NSATQZS+rtklib.NSATCMP+prn-rtklib.MINPRNIRN+1;
-            case rtklib.SYS_LEO:
-                if (prn<rtklib.MINPRNLEO||rtklib.MAXPRNLEO<prn) return 0;
-                return rtklib.NSATGPS+rtklib.NSATGLO+rtklib.NSATGAL+rtklib.NSATQZS+rtklib.NSATCMP+rtklib.NSATIRN+
-                        prn-rtklib.MINPRNLEO+1;
-            case rtklib.SYS_SBS:
-                if (prn<rtklib.MINPRNSBS||rtklib.MAXPRNSBS<prn) return 0;
-                return rtklib.NSATGPS+rtklib.NSATGLO+rtklib.NSATGAL+rtklib.NSATQZS+rtklib.NSATCMP+rtklib.NSATIRN+rtklib.NSATLEO+
-                        prn-rtklib.MINPRNSBS+1;
-        }
-        return 0;
+        if (prn<=0||255<prn||sys<=0||rtklib.SYS_LEO<sys||(sys&(sys-1))!=0) return 0;
+        return satno_[Integer.numberOfTrailingZeros(sys)*256+prn];
     }
     /* satellite number to satellite system ----------------------------------------
      * convert satellite number to satellite system
@@ -410,37 +453,17 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    *prn      IO  satellite prn/slot number (null: no output)
      * return : satellite system (rtklib.SYS_GPS,rtklib.SYS_GLO,...)
      *-----------------------------------------------------------------------------*/
-    public static int satsys(int sat, Integer prn)
+    public static int satsys(int sat, int[] prn)
     {
-        int sys=rtklib.SYS_NONE;
         if (sat<=0||rtklib.MAXSAT<sat) sat=0;
-        else if (sat<=rtklib.NSATGPS) {
-            sys=rtklib.SYS_GPS; sat+=rtklib.MINPRNGPS-1;
-        }
-        else if ((sat-=rtklib.NSATGPS)<=rtklib.NSATGLO) {
-            sys=rtklib.SYS_GLO; sat+=rtklib.MINPRNGLO-1;
-        }
-        else if ((sat-=rtklib.NSATGLO)<=rtklib.NSATGAL) {
-            sys=rtklib.SYS_GAL; sat+=rtklib.MINPRNGAL-1;
-        }
-        else if ((sat-=rtklib.NSATGAL)<=rtklib.NSATQZS) {
-            sys=rtklib.SYS_QZS; sat+=rtklib.MINPRNQZS-1;
-        }
-        else if ((sat-=rtklib.NSATQZS)<=rtklib.NSATCMP) {
-            sys=rtklib.SYS_CMP; sat+=rtklib.MINPRNCMP-1;
-        }
-        else if ((sat-=rtklib.NSATCMP)<=rtklib.NSATIRN) {
-            sys=rtklib.SYS_IRN; sat+=rtklib.MINPRNIRN-1;
-        }
-        else if ((sat-=rtklib.NSATIRN)<=rtklib.NSATLEO) {
-            sys=rtklib.SYS_LEO; sat+=rtklib.MINPRNLEO-1;
-        }
-        else if ((sat-=rtklib.NSATLEO)<=rtklib.NSATSBS) {
-            sys=rtklib.SYS_SBS; sat+=rtklib.MINPRNSBS-1;
-        }
-        else sat=0;
-        if (prn != 0 ) prn=sat;
-        return sys;
+        if (prn!=null) prn[0]=satprn_[sat];
+        return satsys_[sat];
+    }
+
+    /* satellite number to prn/slot number ---------------------------------------*/
+    public static int satprn(int sat)
+    {
+        return sat<=0||rtklib.MAXSAT<sat?0:satprn_[sat];
     }
     /* satellite id to satellite number --------------------------------------------
      * convert satellite id to satellite number
@@ -448,20 +471,43 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : satellite number (0: error)
      * notes  : 120-142 and 193-199 are also recognized as sbas and qzss
      *-----------------------------------------------------------------------------*/
-    public static int satid2no(final String id)
+    public static int satid2no(final CharSequence id)
+    {
+        return satid2no(null,id,0,id.length());
+    }
+
+    /* satellite id in span to satellite number ------------------------------------
+     * convert satellite id in substring or byte buffer to satellite number
+     * args   : char   *s        I   string          (satid2no(s,p,n))
+     *          byte   *buff     I   buffer (ascii)  (satid2no(buff,p,n))
+     *          int    p,n       I   position and length of satellite id
+     * return : satellite number (0: error)
+     * notes  : no object is created
+     *-----------------------------------------------------------------------------*/
+    public static int satid2no(final CharSequence s, int p, int n)
+    {
+        return satid2no(null,s,p,n);
+    }
+
+    public static int satid2no(final byte[] buff, int p, int n)
     {
-        int sys,prn;
-        char code;
+        return satid2no(buff,null,p,n);
+    }
+
+    static int satid2no(final byte[] buff, final CharSequence s, int p, int n)
+    {
+        int sys,prn,code,end=p+n;
 
-        if (sscanf(id,"%d",&prn)==1) {
+        if ((prn=scanint(buff,s,p,end))!=Integer.MIN_VALUE) {
             if      (rtklib.MINPRNGPS<=prn&&prn<=rtklib.MAXPRNGPS) sys=rtklib.SYS_GPS;
             else if (rtklib.MINPRNSBS<=prn&&prn<=rtklib.MAXPRNSBS) sys=rtklib.SYS_SBS;
             else if (rtklib.MINPRNQZS<=prn&&prn<=rtklib.MAXPRNQZS) sys=rtklib.SYS_QZS;
             else return 0;
             return satno(sys,prn);
         }
-
-        if (sscanf(id,"%c%d",&code,&prn)<2) return 0;
+        if (n<2) return 0;
+        code=buff!=null?buff[p]&0xFF:s.charAt(p);
+        if ((prn=scanint(buff,s,p+1,end))==Integer.MIN_VALUE) return 0;
 
         switch (code) {
             case 'G': sys=rtklib.SYS_GPS; prn+=rtklib.MINPRNGPS-1; break;
@@ -476,26 +522,38 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         }
         return satno(sys,prn);
     }
+
+    /* scan integer as sscanf("%d") (MIN_VALUE: no integer) ----------------------*/
+    static int scanint(final byte[] buff, final CharSequence s, int p, int end)
+    {
+        long val=0;
+        int c=0,sign=1,nd=0;
+
+        for (;p<end;p++) {
+            c=buff!=null?buff[p]&0xFF:s.charAt(p);
+            if (c!=' '&&(c<'\t'||'\r'<c)) break;
+        }
+        if (p<end&&(c=='+'||c=='-')) {
+            if (c=='-') sign=-1;
+            p++;
+        }
+        for (;p<end;p++,nd++) {
+            c=buff!=null?buff[p]&0xFF:s.charAt(p);
+            if (c<'0'||'9'<c) break;
+            if (val<Integer.MAX_VALUE) val=val*10+(c-'0');
+        }
+        if (nd==0) return Integer.MIN_VALUE;
+        return (int)Math.max(Math.min(sign*val,Integer.MAX_VALUE),Integer.MIN_VALUE+1);
+    }
     /* satellite number to satellite id --------------------------------------------
      * convert satellite number to satellite id
      * args   : int    sat       I   satellite number
-     *          char   *id       O   satellite id (Gnn,Rnn,Enn,Jnn,Cnn,Inn or nnn)
-     * return : none
+     * return : satellite id (Gnn,Rnn,Enn,Jnn,Cnn,Inn or nnn) ("": error)
+     * notes  : the ids are interned strings of a table, so no object is created
      *-----------------------------------------------------------------------------*/
-    public static void satno2id(int sat, String id)
+    public static String satno2id(int sat)
     {
-        Integer prn = new Integer(0);
-        switch (satsys(sat, prn)) {
-        case rtklib.SYS_GPS: String.format(id,"G%02d",prn-rtklib.MINPRNGPS+1); return;
-        case rtklib.SYS_GLO: String.format(id,"R%02d",prn-rtklib.MINPRNGLO+1); return;
-        case rtklib.SYS_GAL: String.format(id,"E%02d",prn-rtklib.MINPRNGAL+1); return;
-        case rtklib.SYS_QZS: String.format(id,"J%02d",prn-rtklib.MINPRNQZS+1); return;
-        case rtklib.SYS_CMP: String.format(id,"C%02d",prn-rtklib.MINPRNCMP+1); return;
-        case rtklib.SYS_IRN: String.format(id,"I%02d",prn-rtklib.MINPRNIRN+1); return;
-        case rtklib.SYS_LEO: String.format(id,"L%02d",prn-rtklib.MINPRNLEO+1); return;
-        case rtklib.SYS_SBS: String.format(id,"%03d" ,prn); return;
-        }
-        id = "";
+        return sat<=0||rtklib.MAXSAT<sat?"":satid_[sat];
     }
     /* test excluded satellite -----------------------------------------------------
      * test excluded satellite
@@ -511,10 +569,10 @@ final String[] formatstrs = new String[]{    /* stream format strings */
 
         if (svh<0) return 1; /* ephemeris unavailable */
 
-        if (opt) {
+        if (opt!=null) {
             if (opt.exsats[sat-1]==1) return 1; /* excluded satellite */
             if (opt.exsats[sat-1]==2) return 0; /* included satellite */
-            if (!(sys&opt.navsys)) return 1; /* unselected sat sys */
+            if ((sys&opt.navsys)==0) return 1; /* unselected sat sys */
         }
         if (sys==rtklib.SYS_QZS) svh&=0xFE; /* mask QZSS LEX health */
         if (svh==1) {
@@ -527,6 +585,186 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         }
         return 0;
     }
+    /* clear satellite set ---------------------------------------------------------
+     * clear satellite set, add/delete satellite to/from set and test satellite in
+     * set
+     * args   : satset_t *s      IO  satellite set
+     *          int    sat       I   satellite number (1-MAXSAT)
+     * return : satsetin(): status (1:in set,0:not in set or out of range)
+     * notes  : satellite out of range is ignored by satsetadd() and satsetdel()
+     *-----------------------------------------------------------------------------*/
+    public static void satsetzero(rtklib.satset_t s)
+    {
+        int i;
+
+        for (i=0;i<rtklib.NSATW;i++) s.w[i]=0L;
+    }
+    public static void satsetadd(rtklib.satset_t s, int sat)
+    {
+        if (sat<=0||rtklib.MAXSAT<sat) return;
+        s.w[(sat-1)>>6]|=1L<<(sat-1);
+    }
+    public static void satsetdel(rtklib.satset_t s, int sat)
+    {
+        if (sat<=0||rtklib.MAXSAT<sat) return;
+        s.w[(sat-1)>>6]&=~(1L<<(sat-1));
+    }
+    public static int satsetin(final rtklib.satset_t s, int sat)
+    {
+        if (sat<=0||rtklib.MAXSAT<sat) return 0;
+        return (int)(s.w[(sat-1)>>6]>>>(sat-1))&1;
+    }
+    /* copy satellite set --------------------------------------------------------*/
+    public static void satsetcpy(rtklib.satset_t dst, final rtklib.satset_t src)
+    {
+        System.arraycopy(src.w,0,dst.w,0,rtklib.NSATW);
+    }
+    /* operations of satellite sets ------------------------------------------------
+     * union, intersection and difference of satellite sets
+     * args   : satset_t *a,*b   I   satellite sets
+     *          satset_t *s      O   satellite set  satsetor() : a|b
+     *                                              satsetand(): a&b
+     *                                              satsetdif(): a&~b
+     * return : number of satellites in output set
+     * notes  : output set can be the same as input set
+     *-----------------------------------------------------------------------------*/
+    public static int satsetor(final rtklib.satset_t a, final rtklib.satset_t b,
+                               rtklib.satset_t s)
+    {
+        int i,n=0;
+
+        for (i=0;i<rtklib.NSATW;i++) n+=Long.bitCount(s.w[i]=a.w[i]|b.w[i]);
+        return n;
+    }
+    public static int satsetand(final rtklib.satset_t a, final rtklib.satset_t b,
+                                rtklib.satset_t s)
+    {
+        int i,n=0;
+
+        for (i=0;i<rtklib.NSATW;i++) n+=Long.bitCount(s.w[i]=a.w[i]&b.w[i]);
+        return n;
+    }
+    public static int satsetdif(final rtklib.satset_t a, final rtklib.satset_t b,
+                                rtklib.satset_t s)
+    {
+        int i,n=0;
+
+        for (i=0;i<rtklib.NSATW;i++) n+=Long.bitCount(s.w[i]=a.w[i]&~b.w[i]);
+        return n;
+    }
+    /* number of satellites in satellite set -------------------------------------*/
+    public static int satsetcount(final rtklib.satset_t s)
+    {
+        int i,n=0;
+
+        for (i=0;i<rtklib.NSATW;i++) n+=Long.bitCount(s.w[i]);
+        return n;
+    }
+    /* next satellite in satellite set ---------------------------------------------
+     * get next satellite in satellite set in order of satellite number
+     * args   : satset_t *s      I   satellite set
+     *          int    sat       I   satellite number (0: first satellite)
+     * return : satellite number next to sat in set (0: no satellite)
+     * notes  : satellites in set are iterated as follows:
+     *
+     *          for (sat=satsetnext(s,0);sat>0;sat=satsetnext(s,sat)) ...
+     *-----------------------------------------------------------------------------*/
+    public static int satsetnext(final rtklib.satset_t s, int sat)
+    {
+        long w;
+        int i;
+
+        if (sat<0) sat=0;
+        if (sat>=rtklib.MAXSAT) return 0;
+        i=sat>>6;
+        w=s.w[i]&(-1L<<(sat&63)); /* bits of satellites > sat */
+        while (w==0L) {
+            if (++i>=rtklib.NSATW) return 0;
+            w=s.w[i];
+        }
+        return (i<<6)+Long.numberOfTrailingZeros(w)+1;
+    }
+    /* satellite set of navigation systems -----------------------------------------
+     * generate satellite set of all satellites of navigation systems
+     * args   : int    navsys    I   navigation systems (SYS_GPS|SYS_GLO|...)
+     *          satset_t *s      O   satellite set
+     * return : number of satellites in set
+     *-----------------------------------------------------------------------------*/
+    public static int satsetsys(int navsys, rtklib.satset_t s)
+    {
+        int i,j,n=0;
+        long w;
+
+        for (i=0;i<rtklib.NSATW;i++) {
+            for (j=0,w=0L;j<8;j++) if ((navsys&(1<<j))!=0) w|=sysset_[j][i];
+            n+=Long.bitCount(s.w[i]=w);
+        }
+        return n;
+    }
+    /* satellite set of excluded satellites ----------------------------------------
+     * generate satellite set from excluded satellites array
+     * args   : byte   *exsats   I   excluded satellites (MAXSAT) (prcopt_t.exsats,
+     *                               rnxopt_t.exsats)
+     *          int    val       I   value of satellites in set (1:excluded,
+     *                               2:included)
+     *          satset_t *s      O   satellite set
+     * return : number of satellites in set
+     *-----------------------------------------------------------------------------*/
+    public static int satsetex(final byte[] exsats, int val, rtklib.satset_t s)
+    {
+        int i,n=0;
+
+        satsetzero(s);
+        for (i=0;i<rtklib.MAXSAT;i++) {
+            if (exsats[i]!=val) continue;
+            s.w[i>>6]|=1L<<i;
+            n++;
+        }
+        return n;
+    }
+    /* satellite set selected by processing options --------------------------------
+     * generate satellite set selected by navigation systems and excluded
+     * satellites of processing options
+     * args   : prcopt_t *opt    I   processing options
+     *          satset_t *s      O   satellite set
+     * return : number of satellites in set
+     * notes  : same selection as satexclude() with opt without sv health and ura.
+     *          generate once for options and select satellites of each epoch by
+     *          satsetand() with satellites observed
+     *-----------------------------------------------------------------------------*/
+    public static int satsetopt(final rtklib.prcopt_t opt, rtklib.satset_t s)
+    {
+        rtklib.satset_t ex=new rtklib.satset_t(),in=new rtklib.satset_t();
+
+        satsetex(opt.exsats,1,ex);
+        satsetex(opt.exsats,2,in);
+        satsetsys(opt.navsys,s);
+        satsetdif(s,ex,s);
+        return satsetor(s,in,s);
+    }
+    /* satellite set of observation data -------------------------------------------
+     * generate satellite set of observation data of a receiver
+     * args   : obsd_t *obs      I   observation data
+     *          int    n         I   number of observation data
+     *          int    rcv       I   receiver number (0: all receivers)
+     *          satset_t *s      O   satellite set
+     * return : number of satellites in set
+     * notes  : common satellites of rover and base are selected as follows:
+     *
+     *          satsetobs(obs,n,1,sr); satsetobs(obs,n,2,sb); satsetand(sr,sb,s);
+     *-----------------------------------------------------------------------------*/
+    public static int satsetobs(final rtklib.obsd_t[] obs, int n, int rcv,
+                                rtklib.satset_t s)
+    {
+        int i;
+
+        satsetzero(s);
+        for (i=0;i<n;i++) {
+            if (rcv!=0&&(obs[i].rcv&0xFF)!=rcv) continue;
+            satsetadd(s,obs[i].sat&0xFF);
+        }
+        return satsetcount(s);
+    }
     /* test SNR mask ---------------------------------------------------------------
      * test SNR mask
      * args   : int    base      I   rover or base-station (0:rover,1:base station)
@@ -552,6 +790,18 @@ final String[] formatstrs = new String[]{    /* stream format strings */
 
         return snr<minsnr?1:0;
     }
+    /* obs code lookup table ----------------------------------------------------*/
+    static final byte obscode_[]=new byte[1<<14]; /* obs code by obs code string */
+
+    static {
+        int i;
+
+        for (i=1;i<=rtklib.MAXCODE;i++) {
+            if (obscodes[i].length()!=2) continue;
+            obscode_[(obscodes[i].charAt(0)&0x7F)<<7|(obscodes[i].charAt(1)&0x7F)]=(byte)i;
+        }
+    }
+
     /* obs type string to obs code -------------------------------------------------
      * convert obs code type string to obs code
      * args   : char   *str   I      obs code string ("1C","1P","1Y",...)
@@ -560,22 +810,22 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : obs code (CODE_???)
      * notes  : obs codes are based on reference [6] and qzss extension
      *-----------------------------------------------------------------------------*/
-    public static int obs2code(final String obs, Integer freq)
+    public static int obs2code(final String obs, int[] freq)
     {
-        int i;
-        if (freq == null) {
-            freq=0;
-        }
-        for (i=1;obscodes[i];i++) {
-            if (obscodes[i].equals(obs)){
-                continue;
-            }
-            if (freq != null){
-                freq=obsfreqs[i];
-            }
-            return (byte)i;
+        if (obs==null||obs.length()!=2) {
+            if (freq!=null) freq[0]=0;
+            return rtklib.CODE_NONE;
         }
-        return rtklib.CODE_NONE;
+        return obs2code(obs.charAt(0),obs.charAt(1),freq);
+    }
+
+    /* obs type characters to obs code -------------------------------------------*/
+    public static int obs2code(int c1, int c2, int[] freq)
+    {
+        int code=c1<0||0x7F<c1||c2<0||0x7F<c2?rtklib.CODE_NONE:obscode_[c1<<7|c2];
+
+        if (freq!=null) freq[0]=obsfreqs[code];
+        return code;
     }
 /* obs code to obs code string -------------------------------------------------
 * convert obs code to obs code string
@@ -586,13 +836,83 @@ final String[] formatstrs = new String[]{    /* stream format strings */
 * return : obs code string ("1C","1P","1P",...)
 * notes  : obs codes are based on reference [6] and qzss extension
 *-----------------------------------------------------------------------------*/
-    public static String code2obs(int code, Integer freq)
+    public static String code2obs(int code, int[] freq)
     {
-        if (freq == null) freq=0;
+        if (freq!=null) freq[0]=0;
         if (code<=rtklib.CODE_NONE||rtklib.MAXCODE<code) return "";
-        if (freq) freq=obsfreqs[code];
+        if (freq!=null) freq[0]=obsfreqs[code];
         return obscodes[code];
     }
+
+    /* code priority matrices (replaced as a whole) ------------------------------*/
+    static volatile rtklib.codepri_t codepri_=newcodepri(null,null); /* by codepris */
+    static volatile rtklib.codepri_t[] codepriopt_=new rtklib.codepri_t[0]; /* by options */
+    static final int NCODEPRIOPT=8;     /* max number of matrices by options */
+
+    /* system to index of code priority table ------------------------------------*/
+    static int codesys(int sys)
+    {
+        switch (sys) {
+            case rtklib.SYS_GPS: return 0;
+            case rtklib.SYS_GLO: return 1;
+            case rtklib.SYS_GAL: return 2;
+            case rtklib.SYS_QZS: return 3;
+            case rtklib.SYS_SBS: return 4;
+            case rtklib.SYS_CMP: return 5;
+            case rtklib.SYS_IRN: return 6;
+        }
+        return -1;
+    }
+
+    /* build code priority matrix --------------------------------------------------
+     * build code priority matrix by code priority table and code options
+     * args   : codepri_t *base  I   matrix without options (null: build by codepris)
+     *          char   *opt      I   code options (null: no option)
+     * return : code priority matrix
+     * notes  : a code option "-GL1C" ("-RL2P" etc.) sets the code to the highest
+     *          and others in the frequency to 0 for the system
+     *-----------------------------------------------------------------------------*/
+    static rtklib.codepri_t newcodepri(rtklib.codepri_t base, final String opt)
+    {
+        final char sysc[]={'G','R','E','J','S','C','I'};
+        rtklib.codepri_t cp=new rtklib.codepri_t();
+        String obs,pri;
+        int i,code,k,p,q,n=rtklib.MAXCODE+1;
+        char c1,c2;
+
+        cp.pri=new byte[7*n];
+        cp.opt=opt;
+        cp.base=base;
+
+        for (i=0;i<7;i++) for (code=1;code<n;code++) {
+            obs=obscodes[code];
+            if (obs.length()!=2||obsfreqs[code]<=0) continue;
+            if (base!=null) {
+                cp.pri[i*n+code]=base.pri[i*n+code];
+            }
+            else {
+                pri=codepris[i][obsfreqs[code]-1];
+                k=pri!=null?pri.indexOf(obs.charAt(1)):-1;
+                cp.pri[i*n+code]=(byte)(k>=0?14-k:0);
+            }
+            if (opt==null) continue;
+
+            /* parse code options (the first option for the frequency is used) */
+            for (p=opt.indexOf('-');p>=0;p=opt.indexOf('-',p+1)) {
+                if (!opt.startsWith("L",p+2)||p+1>=opt.length()||opt.charAt(p+1)!=sysc[i]) {
+                    continue;
+                }
+                for (q=p+3;q<opt.length()&&Character.isWhitespace(opt.charAt(q));q++) ;
+                if (q>=opt.length()) continue;
+                c1=opt.charAt(q);
+                c2=q+1<opt.length()&&!Character.isWhitespace(opt.charAt(q+1))?opt.charAt(q+1):'\0';
+                if (c1!=obs.charAt(0)) continue;
+                cp.pri[i*n+code]=(byte)(c2==obs.charAt(1)?15:0);
+                break;
+            }
+        }
+        return cp;
+    }
     /* set code priority -----------------------------------------------------------
      * set code priority for multiple codes in a frequency
      * args   : int    sys     I     system (or of rtklib.SYS_???)
@@ -600,19 +920,23 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          char   *pri    I     priority of codes (series of code characters)
      *                               (higher priority precedes lower)
      * return : none
+     * notes  : code priority matrix is rebuilt and replaced as a whole
      *-----------------------------------------------------------------------------*/
-    public static void setcodepri(int sys, int freq, final String pri)
+    public static synchronized void setcodepri(int sys, int freq, final String pri)
     {
         trace(3,"setcodepri:sys=%d freq=%d pri=%s\n",sys,freq,pri);
 
         if (freq<=0||rtklib.MAXFREQ<freq) return;
-        if (sys == rtklib.SYS_GPS) codepris[0][freq-1] = pri;
-        if (sys == rtklib.SYS_GLO) codepris[1][freq-1] = pri;
-        if (sys == rtklib.SYS_GAL) codepris[2][freq-1] = pri;
-        if (sys == rtklib.SYS_QZS) codepris[3][freq-1] = pri;
-        if (sys == rtklib.SYS_SBS) codepris[4][freq-1] = pri;
-        if (sys == rtklib.SYS_CMP) codepris[5][freq-1] = pri;
-        if (sys == rtklib.SYS_IRN) codepris[6][freq-1] = pri;
+        if ((sys&rtklib.SYS_GPS)!=0) codepris[0][freq-1] = pri;
+        if ((sys&rtklib.SYS_GLO)!=0) codepris[1][freq-1] = pri;
+        if ((sys&rtklib.SYS_GAL)!=0) codepris[2][freq-1] = pri;
+        if ((sys&rtklib.SYS_QZS)!=0) codepris[3][freq-1] = pri;
+        if ((sys&rtklib.SYS_SBS)!=0) codepris[4][freq-1] = pri;
+        if ((sys&rtklib.SYS_CMP)!=0) codepris[5][freq-1] = pri;
+        if ((sys&rtklib.SYS_IRN)!=0) codepris[6][freq-1] = pri;
+
+        codepri_=newcodepri(null,null);
+        codepriopt_=new rtklib.codepri_t[0];
     }
     /* get code priority -----------------------------------------------------------
      * get code priority for multiple codes in a frequency
@@ -620,35 +944,88 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          unsigned char code I obs code (CODE_???)
      *          char   *opt    I     code options (null:no option)
      * return : priority (15:highest-1:lowest,0:error)
+     * notes  : the matrices for the last NCODEPRIOPT code options are kept (per
+     *          options string), so streams with different options (rover, base,
+     *          corrections) do not rebuild them on every call. they are rebuilt
+     *          only when new code options are given or code priorities are
+     *          changed
      *-----------------------------------------------------------------------------*/
-    public static int getcodepri(int sys, short code, final String opt)
+    public static int getcodepri(int sys, int code, final String opt)
     {
-        final String p = new String();
-        String optstr = new String();
+        rtklib.codepri_t cp=codepri_;
+        int i=codesys(sys);
 
-        String obs = new String();
-        String str = new String();
-        Integer i,j;
+        if (i<0||code<=rtklib.CODE_NONE||rtklib.MAXCODE<code) return 0;
 
-        switch (sys) {
-            case rtklib.SYS_GPS: i=0; optstr="-GL%2s"; break;
-            case rtklib.SYS_GLO: i=1; optstr="-RL%2s"; break;
-            case rtklib.SYS_GAL: i=2; optstr="-EL%2s"; break;
-            case rtklib.SYS_QZS: i=3; optstr="-JL%2s"; break;
-            case rtklib.SYS_SBS: i=4; optstr="-SL%2s"; break;
-            case rtklib.SYS_CMP: i=5; optstr="-CL%2s"; break;
-            case rtklib.SYS_IRN: i=6; optstr="-IL%2s"; break;
-            default: return 0;
+        if (opt!=null&&opt.indexOf('-')>=0) {
+            cp=codepriopt(cp,opt);
+        }
+        return cp.pri[i*(rtklib.MAXCODE+1)+code];
+    }
+    /* code priority matrix with code options ------------------------------------*/
+    static rtklib.codepri_t codepriopt(rtklib.codepri_t base, final String opt)
+    {
+        rtklib.codepri_t[] cache=codepriopt_,next;
+        rtklib.codepri_t co;
+        int j,n=0;
+
+        for (rtklib.codepri_t c:cache) {
+            if (c.base==base&&opt.equals(c.opt)) return c;
+        }
+        co=newcodepri(base,opt);
+
+        /* replace the cache as a whole (the oldest or stale matrices dropped) */
+        next=new rtklib.codepri_t[Math.min(cache.length+1,NCODEPRIOPT)];
+        next[n++]=co;
+        for (j=0;j<cache.length&&n<next.length;j++) {
+            if (cache[j].base==base) next[n++]=cache[j];
         }
-        obs=code2obs(code,j);
+        codepriopt_=n<next.length?Arrays.copyOf(next,n):next;
+        return co;
+    }
+    /* word views of byte array ---------------------------------------------------*/
+    static final VarHandle BE64=MethodHandles.byteArrayViewVarHandle(long[].class,
+                                                                    ByteOrder.BIG_ENDIAN);
+    static final VarHandle BE32=MethodHandles.byteArrayViewVarHandle(int[].class,
+                                                                    ByteOrder.BIG_ENDIAN);
+    static final VarHandle LE32=MethodHandles.byteArrayViewVarHandle(int[].class,
+                                                                    ByteOrder.LITTLE_ENDIAN);
+
+    /* extract unsigned bits -------------------------------------------------------
+     * extract unsigned bits up to 64 bits from byte data
+     * args   : byte   *buff     I   byte data
+     *          int    pos       I   bit position from start of data (bits)
+     *          int    len       I   bit length (bits) (len<=64)
+     * return : extracted unsigned bits
+     * notes  : bits are loaded by a 64 bit word and extracted by shift. bits over
+     *          end of data are extracted as 0
+     *-----------------------------------------------------------------------------*/
+    public static long getbitl(final byte[] buff, int pos, int len)
+    {
+        long w;
+        int i=pos>>3,off=pos&7,j;
+
+        if (len<=0) return 0L;
+        if (i+8<=buff.length) w=(long)BE64.get(buff,i);
+        else for (w=0L,j=0;j<8;j++) w=(w<<8)|(i+j<buff.length?buff[i+j]&0xFFL:0L);
+        w<<=off;
+        if (off+len>64&&i+8<buff.length) w|=(buff[i+8]&0xFFL)>>>(8-off);
+        return w>>>(64-len);
+    }
+    public static long getbitl(final ByteBuffer buff, int pos, int len)
+    {
+        long w;
+        int i=pos>>3,off=pos&7,j,n=buff.limit();
 
-        /* parse code options */
-        for (p=opt;p&&(p=strchr(p,'-'));p++) {
-            if (sscanf(p,optstr,str)<1||str[0]!=obs[0]) continue;
-            return str[1]==obs[1]?15:0;
+        if (len<=0) return 0L;
+        if (i+8<=n) {
+            w=buff.getLong(i);
+            if (buff.order()==ByteOrder.LITTLE_ENDIAN) w=Long.reverseBytes(w);
         }
-        /* search code priority */
-        return (p=strchr(codepris[i][j-1],obs[1]))?14-(int)(p-codepris[i][j-1]):0;
+        else for (w=0L,j=0;j<8;j++) w=(w<<8)|(i+j<n?buff.get(i+j)&0xFFL:0L);
+        w<<=off;
+        if (off+len>64&&i+8<n) w|=(buff.get(i+8)&0xFFL)>>>(8-off);
+        return w>>>(64-len);
     }
     /* extract unsigned/signed bits ------------------------------------------------
      * extract unsigned/signed bits from byte data
@@ -657,18 +1034,65 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    len    I      bit length (bits) (len<=32)
      * return : extracted unsigned/signed bits
      *-----------------------------------------------------------------------------*/
+    public static long getbitu(final byte[] buff, int pos, int len)
+    {
+        return getbitl(buff,pos,len);
+    }
+    public static int getbits(final byte[] buff, int pos, int len)
+    {
+        if (len<=0) return 0;
+        return (int)(getbitl(buff,pos,len)<<(64-len)>>(64-len)); /* extend sign */
+    }
     public static long getbitu(final short[] buff, int pos, int len)
     {
         long bits=0;
-        int i;
-        for (i=pos;i<pos+len;i++) bits=(bits<<1)+((buff[i/8]>>(7-i%8))&1);
-        return bits;
+        int i=pos>>3,n=(pos&7)+len;
+
+        if (len<=0) return 0L;
+        for (;n>0;i++,n-=8) bits=(bits<<8)|(buff[i]&0xFF);
+        return (bits>>>-n)&(-1L>>>(64-len));
     }
     public static int getbits(final short[] buff, int pos, int len)
     {
-        long bits=getbitu(buff,pos,len);
-        if (len<=0||32<=len||!(bits&(1<<(len-1)))) return (int)bits;
-        return (int)(bits|(~0<<len)); /* extend sign */
+        if (len<=0) return 0;
+        return (int)(getbitu(buff,pos,len)<<(64-len)>>(64-len)); /* extend sign */
+    }
+    /* set unsigned bits -----------------------------------------------------------
+     * set unsigned bits up to 64 bits to byte data
+     * args   : byte   *buff     IO  byte data
+     *          int    pos       I   bit position from start of data (bits)
+     *          int    len       I   bit length (bits) (len<=64)
+     *          long   data      I   unsigned data (lower len bits are set)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void setbitl(byte[] buff, int pos, int len, long data)
+    {
+        long w,mask;
+        int i=pos>>3,off=pos&7,n;
+
+        if (len<=0||64<len) return;
+        if (off+len<=64&&i+8<=buff.length) { /* set in a word */
+            mask=(-1L>>>(64-len))<<(64-off-len);
+            w=(long)BE64.get(buff,i);
+            BE64.set(buff,i,(w&~mask)|((data<<(64-off-len))&mask));
+            return;
+        }
+        for (;len>0;i++,off=0,len-=n) {
+            n=Math.min(8-off,len);
+            mask=((1<<n)-1)<<(8-off-n);
+            buff[i]=(byte)((buff[i]&~mask)|((data>>>(len-n)<<(8-off-n))&mask));
+        }
+    }
+    public static void setbitl(ByteBuffer buff, int pos, int len, long data)
+    {
+        int i=pos>>3,off=pos&7,n,mask;
+
+        if (len<=0||64<len) return;
+        for (;len>0;i++,off=0,len-=n) {
+            n=Math.min(8-off,len);
+            mask=((1<<n)-1)<<(8-off-n);
+            buff.put(i,(byte)((buff.get(i)&~mask)|((int)(data>>>(len-n)<<(8-off-n))&mask)));
+        }
     }
     /* set unsigned/signed bits ----------------------------------------------------
      * set unsigned/signed bits to byte data
@@ -678,123 +1102,385 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *         (unsigned) int I      unsigned/signed data
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void setbitu(unsigned char *buff, int pos, int len, unsigned int data)
+    public static void setbitu(byte[] buff, int pos, int len, long data)
     {
-        unsigned int mask=1u<<(len-1);
-        int i;
         if (len<=0||32<len) return;
-        for (i=pos;i<pos+len;i++,mask>>=1) {
-            if (data&mask) buff[i/8]|=1u<<(7-i%8); else buff[i/8]&=~(1u<<(7-i%8));
-        }
+        setbitl(buff,pos,len,data);
     }
-    public static void setbits(unsigned char *buff, int pos, int len, int data)
+    public static void setbits(byte[] buff, int pos, int len, int data)
     {
+        if (len<=0||32<len) return;
         if (data<0) data|=1<<(len-1); else data&=~(1<<(len-1)); /* set sign bit */
-        setbitu(buff,pos,len,(unsigned int)data);
+        setbitl(buff,pos,len,data&0xFFFFFFFFL);
+    }
+    /* initialize bit stream buffer ------------------------------------------------
+     * initialize bit stream buffer to read/write bits with cursor
+     * args   : bitbuf_t *b      O   bit stream buffer
+     *          ByteBuffer buff  I   byte data (indexed from 0 regardless of position)
+     *          int    pos       I   start bit position from start of data (bits)
+     *          int    end       I   end of data (bits)
+     * return : none
+     * notes  : bytes are not copied. use ByteBuffer.wrap() for byte array
+     *-----------------------------------------------------------------------------*/
+    public static void initbitbuf(rtklib.bitbuf_t b, ByteBuffer buff, int pos, int end)
+    {
+        b.buff=buff;
+        b.pos=pos;
+        b.end=end;
+        b.err=0;
+    }
+    /* read bits from bit stream buffer --------------------------------------------
+     * read unsigned/signed bits from bit stream buffer and advance cursor
+     * args   : bitbuf_t *b      IO  bit stream buffer
+     *          int    len       I   bit length (bits) (len<=64)
+     * return : read unsigned/signed bits
+     * notes  : if read over end of data, 0 is returned and b.err is set to 1. the
+     *          cursor is advanced anyway, so test b.err after reading all fields
+     *-----------------------------------------------------------------------------*/
+    public static long readbitu(rtklib.bitbuf_t b, int len)
+    {
+        int pos=b.pos;
+
+        b.pos+=len;
+        if (b.pos>b.end) {b.err=1; return 0L;}
+        return getbitl(b.buff,pos,len);
+    }
+    public static long readbits(rtklib.bitbuf_t b, int len)
+    {
+        if (len<=0) return 0L;
+        return readbitu(b,len)<<(64-len)>>(64-len); /* extend sign */
+    }
+    /* write bits to bit stream buffer ---------------------------------------------
+     * write unsigned/signed bits to bit stream buffer and advance cursor
+     * args   : bitbuf_t *b      IO  bit stream buffer
+     *          int    len       I   bit length (bits) (len<=64)
+     *          long   data      I   unsigned/signed data (lower len bits are written)
+     * return : none
+     * notes  : if written over end of data, nothing is written and b.err is set
+     *          to 1
+     *-----------------------------------------------------------------------------*/
+    public static void writebitu(rtklib.bitbuf_t b, int len, long data)
+    {
+        int pos=b.pos;
+
+        b.pos+=len;
+        if (b.pos>b.end) {b.err=1; return;}
+        setbitl(b.buff,pos,len,data);
+    }
+    /* update crc by slicing-by-8 ---------------------------------------------------
+     * update crc register by data with slicing-by-8 tables
+     * args   : int[][] t        I   slicing tables (crc32_,crc24q_,crc16_)
+     *          int    crc       I   crc register
+     *          byte   *buff     I   data
+     *          int    p         I   start index of data
+     *          int    n         I   data length (bytes)
+     * return : updated crc register
+     * notes  : crc32u() for reflected crc, crcmsbu() for msb-first crc left-aligned
+     *          to 32 bits. 8 bytes are processed by a 32 bit word load and 8
+     *          table lookups
+     *-----------------------------------------------------------------------------*/
+    static int crc32u(final int[][] t, int crc, final byte[] buff, int p, int n)
+    {
+        int w,e=p+n;
+
+        for (;p+8<=e;p+=8) {
+            w=crc^(int)LE32.get(buff,p);
+            crc=t[7][w&0xFF]^t[6][(w>>>8)&0xFF]^t[5][(w>>>16)&0xFF]^t[4][w>>>24]^
+                t[3][buff[p+4]&0xFF]^t[2][buff[p+5]&0xFF]^t[1][buff[p+6]&0xFF]^
+                t[0][buff[p+7]&0xFF];
+        }
+        for (;p<e;p++) crc=(crc>>>8)^t[0][(crc^buff[p])&0xFF];
+        return crc;
+    }
+    static int crc32u(final int[][] t, int crc, final ByteBuffer buff, int p, int n)
+    {
+        boolean le=buff.order()==ByteOrder.LITTLE_ENDIAN;
+        int w,e=p+n;
+
+        for (;p+8<=e;p+=8) {
+            w=buff.getInt(p);
+            w=crc^(le?w:Integer.reverseBytes(w));
+            crc=t[7][w&0xFF]^t[6][(w>>>8)&0xFF]^t[5][(w>>>16)&0xFF]^t[4][w>>>24]^
+                t[3][buff.get(p+4)&0xFF]^t[2][buff.get(p+5)&0xFF]^
+                t[1][buff.get(p+6)&0xFF]^t[0][buff.get(p+7)&0xFF];
+        }
+        for (;p<e;p++) crc=(crc>>>8)^t[0][(crc^buff.get(p))&0xFF];
+        return crc;
+    }
+    static int crcmsbu(final int[][] t, int crc, final byte[] buff, int p, int n)
+    {
+        int w,e=p+n;
+
+        for (;p+8<=e;p+=8) {
+            w=crc^(int)BE32.get(buff,p);
+            crc=t[7][w>>>24]^t[6][(w>>>16)&0xFF]^t[5][(w>>>8)&0xFF]^t[4][w&0xFF]^
+                t[3][buff[p+4]&0xFF]^t[2][buff[p+5]&0xFF]^t[1][buff[p+6]&0xFF]^
+                t[0][buff[p+7]&0xFF];
+        }
+        for (;p<e;p++) crc=(crc<<8)^t[0][(crc>>>24)^(buff[p]&0xFF)];
+        return crc;
+    }
+    static int crcmsbu(final int[][] t, int crc, final ByteBuffer buff, int p, int n)
+    {
+        boolean le=buff.order()==ByteOrder.LITTLE_ENDIAN;
+        int w,e=p+n;
+
+        for (;p+8<=e;p+=8) {
+            w=buff.getInt(p);
+            w=crc^(le?Integer.reverseBytes(w):w);
+            crc=t[7][w>>>24]^t[6][(w>>>16)&0xFF]^t[5][(w>>>8)&0xFF]^t[4][w&0xFF]^
+                t[3][buff.get(p+4)&0xFF]^t[2][buff.get(p+5)&0xFF]^
+                t[1][buff.get(p+6)&0xFF]^t[0][buff.get(p+7)&0xFF];
+        }
+        for (;p<e;p++) crc=(crc<<8)^t[0][(crc>>>24)^(buff.get(p)&0xFF)];
+        return crc;
     }
     /* crc-32 parity ---------------------------------------------------------------
      * compute crc-32 parity for novatel raw
      * args   : unsigned char *buff I data
+     *          int    p      I      start index of data (omitted: 0)
      *          int    len    I      data length (bytes)
      * return : crc-32 parity
      * notes  : see NovAtel OEMV firmware manual 1.7 32-bit CRC
      *-----------------------------------------------------------------------------*/
+    public static long rtk_crc32(final byte[] buff, int len)
+    {
+        return rtk_crc32(buff,0,len);
+    }
+    public static long rtk_crc32(final byte[] buff, int p, int len)
+    {
+        return crc32u(crc32_,0,buff,p,len)&0xFFFFFFFFL;
+    }
+    public static long rtk_crc32(final ByteBuffer buff, int p, int len)
+    {
+        return crc32u(crc32_,0,buff,p,len)&0xFFFFFFFFL;
+    }
     public static long rtk_crc32(final short[] buff, int len)
     {
-        long int crc=0;
-        int i,j;
+        int crc=0,i;
 
-        trace(4,"rtk_crc32: len=%d\n",len);
-
-        for (i=0;i<len;i++) {
-            crc^=buff[i];
-            for (j=0;j<8;j++) {
-                if (crc&1) crc=(crc>>1)^POLYCRC32; else crc>>=1;
-            }
-        }
-        return crc;
+        for (i=0;i<len;i++) crc=(crc>>>8)^crc32_[0][(crc^buff[i])&0xFF];
+        return crc&0xFFFFFFFFL;
     }
     /* crc-24q parity --------------------------------------------------------------
      * compute crc-24q parity for sbas, rtcm3
      * args   : unsigned char *buff I data
+     *          int    p      I      start index of data (omitted: 0)
      *          int    len    I      data length (bytes)
      * return : crc-24Q parity
      * notes  : see reference [2] A.4.3.3 Parity
      *-----------------------------------------------------------------------------*/
+    public static long rtk_crc24q(final byte[] buff, int len)
+    {
+        return rtk_crc24q(buff,0,len);
+    }
+    public static long rtk_crc24q(final byte[] buff, int p, int len)
+    {
+        return crcmsbu(crc24q_,0,buff,p,len)>>>8;
+    }
+    public static long rtk_crc24q(final ByteBuffer buff, int p, int len)
+    {
+        return crcmsbu(crc24q_,0,buff,p,len)>>>8;
+    }
     public static long rtk_crc24q(final short[] buff, int len)
     {
         long crc=0;
         int i;
 
-        trace(4,"rtk_crc24q: len=%d\n",len);
-
-        for (i=0;i<len;i++) crc=((crc<<8)&0xFFFFFF)^tbl_CRC24Q[(crc>>16)^buff[i]];
+        for (i=0;i<len;i++) crc=((crc<<8)&0xFFFFFF)^tbl_CRC24Q[(int)(crc>>16)^(buff[i]&0xFF)];
         return crc;
     }
     /* crc-16 parity ---------------------------------------------------------------
      * compute crc-16 parity for binex, nvs
      * args   : unsigned char *buff I data
+     *          int    p      I      start index of data (omitted: 0)
      *          int    len    I      data length (bytes)
      * return : crc-16 parity
      * notes  : see reference [10] A.3.
      *-----------------------------------------------------------------------------*/
+    public static int rtk_crc16(final byte[] buff, int len)
+    {
+        return rtk_crc16(buff,0,len);
+    }
+    public static int rtk_crc16(final byte[] buff, int p, int len)
+    {
+        return crcmsbu(crc16_,0,buff,p,len)>>>16;
+    }
+    public static int rtk_crc16(final ByteBuffer buff, int p, int len)
+    {
+        return crcmsbu(crc16_,0,buff,p,len)>>>16;
+    }
     public static int rtk_crc16(final short[] buff, int len)
     {
         int crc=0;
         int i;
 
-        trace(4,"rtk_crc16: len=%d\n",len);
-
         for (i=0;i<len;i++) {
-            crc=(crc<<8)^tbl_CRC16[((crc>>8)^buff[i])&0xFF];
+            crc=((crc<<8)^tbl_CRC16[((crc>>8)^buff[i])&0xFF])&0xFFFF;
         }
         return crc;
     }
+    /* initialize incremental crc --------------------------------------------------
+     * initialize incremental crc to compute crc of data fed in chunks
+     * args   : crc_t  *c        O   incremental crc
+     *          int    type      I   crc type (CRC_32,CRC_24Q,CRC_16)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void crcinit(rtklib.crc_t c, int type)
+    {
+        c.type=type;
+        c.crc=0;
+        c.n=0;
+    }
+    /* update incremental crc ------------------------------------------------------
+     * feed a chunk of data to incremental crc
+     * args   : crc_t  *c        IO  incremental crc
+     *          byte   *buff     I   data (byte[] or ByteBuffer)
+     *          int    p         I   start index of chunk
+     *          int    len       I   chunk length (bytes)
+     * return : none
+     * notes  : crc of data is the same regardless of how the data is chunked
+     *-----------------------------------------------------------------------------*/
+    public static void crcupdate(rtklib.crc_t c, final byte[] buff, int p, int len)
+    {
+        switch (c.type) {
+            case rtklib.CRC_32 : c.crc=crc32u (crc32_ ,c.crc,buff,p,len); break;
+            case rtklib.CRC_24Q: c.crc=crcmsbu(crc24q_,c.crc,buff,p,len); break;
+            case rtklib.CRC_16 : c.crc=crcmsbu(crc16_ ,c.crc,buff,p,len); break;
+            default: return;
+        }
+        c.n+=len;
+    }
+    public static void crcupdate(rtklib.crc_t c, final ByteBuffer buff, int p, int len)
+    {
+        switch (c.type) {
+            case rtklib.CRC_32 : c.crc=crc32u (crc32_ ,c.crc,buff,p,len); break;
+            case rtklib.CRC_24Q: c.crc=crcmsbu(crc24q_,c.crc,buff,p,len); break;
+            case rtklib.CRC_16 : c.crc=crcmsbu(crc16_ ,c.crc,buff,p,len); break;
+            default: return;
+        }
+        c.n+=len;
+    }
+    /* value of incremental crc ----------------------------------------------------
+     * get crc of data fed to incremental crc
+     * args   : crc_t  *c        I   incremental crc
+     * return : crc parity (same as rtk_crc32(),rtk_crc24q(),rtk_crc16())
+     *-----------------------------------------------------------------------------*/
+    public static long crcvalue(final rtklib.crc_t c)
+    {
+        switch (c.type) {
+            case rtklib.CRC_32 : return c.crc&0xFFFFFFFFL;
+            case rtklib.CRC_24Q: return c.crc>>>8;
+            case rtklib.CRC_16 : return c.crc>>>16;
+        }
+        return 0;
+    }
+    /* lnav parity check masks (D29*,D30*,D1-D24) for D25-D30 ------------------*/
+    static final long hamming_[]={
+        0xBB1F3480L,0x5D8F9A40L,0xAEC7CD00L,0x5763E680L,0x6BB1F340L,0x8B7A89C0L
+    };
+
     /* decode navigation data word -------------------------------------------------
      * check party and decode navigation data word
      * args   : unsigned int word I navigation data word (2+30bit)
      *                              (previous word D29*-30* + current word D1-30)
      *          unsigned char *data O decoded navigation data without parity
      *                              (8bitx3)
+     *          int    p      I      start index of data (omitted: 0)
      * return : status (1:ok,0:parity error)
      * notes  : see reference [1] 20.3.5.2 user parity algorithm
      *-----------------------------------------------------------------------------*/
-    public static int decode_word(long word, short[] data)
+    public static int decode_word(long word, byte[] data, int p)
     {
-        final long hamming[]={
-            0xBB1F3480,0x5D8F9A40,0xAEC7CD00,0x5763E680,0x6BB1F340,0x8B7A89C0 };
-        long parity=0,w;
         int i;
 
-        trace(5,"decodeword: word=%08x\n",word);
-
-        if ((word&0x40000000) > 0) word^=0x3FFFFFC0;
-
-        for (i=0;i<6;i++) {
-            parity<<=1;
-            for (w=(word&hamming[i])>>6;w;w>>=1) parity^=w&1;
-        }
-        if (parity!=(word&0x3F)) return 0;
-
-        for (i=0;i<3;i++) data[i]=(short)(word>>(22-i*8));
+        if ((word=lnavword(word))<0) return 0;
+        for (i=0;i<3;i++) data[p+i]=(byte)(word>>(16-i*8));
         return 1;
     }
-
-    /* new matrix ------------------------------------------------------------------
+    public static int decode_word(long word, short[] data)
+    {
+        int i;
+
+        if ((word=lnavword(word))<0) return 0;
+        for (i=0;i<3;i++) data[i]=(short)((word>>(16-i*8))&0xFF);
+        return 1;
+    }
+    /* check parity of lnav word and extract data bits (-1: parity error) --------*/
+    static long lnavword(long word)
+    {
+        long parity=0;
+        int i;
+
+        if ((word&0x40000000L)!=0) word^=0x3FFFFFC0L;
+
+        for (i=0;i<6;i++) {
+            parity=(parity<<1)|(Long.bitCount(word&hamming_[i])&1);
+        }
+        if (parity!=(word&0x3F)) return -1;
+        return (word>>6)&0xFFFFFF;
+    }
+    /* decode lnav subframe --------------------------------------------------------
+     * check parity of all words of gps lnav subframe and decode subframe
+     * args   : long   *words    I   navigation data words of subframe (10 words)
+     *                               (D1-D30 in bit 29-0 of each word)
+     *          int    d         I   D29*-D30* of last word of previous subframe
+     *                               (bit 1-0)
+     *          byte   *subfrm   IO  subframe buffer (raw_t.subfrm[sat-1])
+     * return : subframe id (1-5,0:parity error or invalid subframe id)
+     * notes  : decoded subframe (24bit x 10 words without parity) is written to
+     *          subfrm[(id-1)*30] to subfrm[(id-1)*30+29] as decode_word() for each
+     *          word. subfrm is not changed for parity error
+     *-----------------------------------------------------------------------------*/
+    public static int decode_subfrm(final long[] words, int d, byte[] subfrm)
+    {
+        long w,prev=d;
+        int i,id,p;
+
+        for (i=0;i<10;i++) { /* check parity of all words before output */
+            w=((prev&3)<<30)|(words[i]&0x3FFFFFFF);
+            if (lnavword(w)<0) {
+                trace(4,"decode_subfrm: parity error word=%d\n",i+1);
+                return 0;
+            }
+            prev=words[i];
+        }
+        id=(int)(((words[1]>>8)^((words[0]&1)!=0?0xFFFFFF:0))&7); /* HOW */
+        if (id<1||5<id) {
+            trace(4,"decode_subfrm: subframe id error id=%d\n",id);
+            return 0;
+        }
+        for (i=0,p=(id-1)*30,prev=d;i<10;i++,p+=3) { /* D1-D24 xor D30* */
+            w=(words[i]>>6)^((prev&1)!=0?0xFFFFFF:0);
+            subfrm[p  ]=(byte)(w>>16);
+            subfrm[p+1]=(byte)(w>> 8);
+            subfrm[p+2]=(byte) w;
+            prev=words[i];
+        }
+        return id;
+    }
+    public static int decode_subfrm(rtklib.raw_t raw, int sat, final long[] words, int d)
+    {
+        if (sat<=0||rtklib.MAXSAT<sat) return 0;
+        return decode_subfrm(words,d,raw.subfrm[sat-1]);
+    }
+
+    /* new matrix ------------------------------------------------------------------
      * allocate memory of matrix
      * args   : int    n,m       I   number of rows and columns of matrix
      * return : matrix pointer (if n<=0 or m<=0, return null)
+     * notes  : matrix is a primitive array stored by column-major order
      *-----------------------------------------------------------------------------*/
-    public static Double[] mat(int n, int m)
+    public static double[] mat(int n, int m)
     {
-        Double[] p = null;
+        double[] p = null;
 
         if (n<=0||m<=0)
             return null;
 
         try{
-            p = new Double[n*m];
-        }catch (Exception e){
+            p = new double[n*m];
+        }catch (OutOfMemoryError e){
             fatalerr("matrix memory allocation error: n=%d,m=%d\n",n,m);
         }
 
@@ -806,16 +1492,16 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : int    n,m       I   number of rows and columns of matrix
      * return : matrix pointer (if n<=0 or m<=0, return null)
      *-----------------------------------------------------------------------------*/
-    public static Integer[] imat(int n, int m)
+    public static int[] imat(int n, int m)
     {
-        Integer[] p = null;
+        int[] p = null;
 
         if (n<=0||m<=0)
             return null;
 
         try{
-            p = new Integer[n*m];
-        }catch (Exception e){
+            p = new int[n*m];
+        }catch (OutOfMemoryError e){
             fatalerr("integer memory allocation error: n=%d,m=%d\n",n,m);
         }
 
@@ -826,17 +1512,11 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * generate new zero matrix
      * args   : int    n,m       I   number of rows and columns of matrix
      * return : matrix pointer (if n<=0 or m<=0, return null)
+     * notes  : primitive arrays are zero-cleared by allocation
      *-----------------------------------------------------------------------------*/
-    public static Double[] zeros(int n, int m)
+    public static double[] zeros(int n, int m)
     {
-        Double[] p;
-
-        if ((p=mat(n,m)) != null) {
-            for (n = n * m - 1; n >= 0; n--)
-                p[n] = 0.0;
-        }
-
-        return p;
+        return mat(n,m);
     }
 
     /* identity matrix -------------------------------------------------------------
@@ -844,9 +1524,9 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : int    n         I   number of rows and columns of matrix
      * return : matrix pointer (if n<=0, return null)
      *-----------------------------------------------------------------------------*/
-    public static Double[] eye(int n)
+    public static double[] eye(int n)
     {
-        Double[] p;
+        double[] p;
         int i;
 
         if ((p=zeros(n,n)) != null) {
@@ -863,7 +1543,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    n         I   size of vector a,b
      * return : a'*b
      *-----------------------------------------------------------------------------*/
-    public static Double dot(final Double[] a, final Double[] b, int n)
+    public static double dot(final double[] a, final double[] b, int n)
     {
         double c=0.0;
 
@@ -879,7 +1559,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    n         I   size of vector a
      * return : || a ||
      *-----------------------------------------------------------------------------*/
-    public static double norm(final Double[] a, int n)
+    public static double norm(final double[] a, int n)
     {
         return Math.sqrt(dot(a,a,n));
     }
@@ -890,7 +1570,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *c        O   outer product (a x b) (3 x 1)
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void cross3(final Double[] a, final Double[] b, Double[] c)
+    public static void cross3(final double[] a, final double[] b, double[] c)
     {
         c[0]=a[1]*b[2]-a[2]*b[1];
         c[1]=a[2]*b[0]-a[0]*b[2];
@@ -903,7 +1583,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *b        O   normlized vector (3 x 1) || b || = 1
      * return : status (1:ok,0:error)
      *-----------------------------------------------------------------------------*/
-    public static int normv3(final Double[] a, Double[] b)
+    public static int normv3(final double[] a, double[] b)
     {
         double r;
         if ((r=norm(a,3))<=0.0) return 0;
@@ -920,37 +1600,334 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    n,m       I   number of rows and columns of matrix
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void matcpy(Double[] A, final Double[] B, int n, int m)
+    public static void matcpy(double[] A, final double[] B, int n, int m)
     {
-        A = B;
+        System.arraycopy(B,0,A,0,n*m);
     }
     /* matrix routines -----------------------------------------------------------*/
 
 
-    /* multiply matrix -----------------------------------------------------------*/
-    public static void matmul(final char [] tr, int n, int k, int m, double alpha,
-                   final Double[] A, final Double[] B, double beta, Double[] C)
+    static final int MATMUL_NB     = 64;  /* row block size of matmul kernels */
+    static final int MATMUL_KB     = 128; /* inner dimension block size of matmul kernels (4n) */
+    static final int MATMUL_VECMIN = 16;  /* min rows to use simd kernels */
+
+    /* linear algebra backend (null: built-in kernels) --------------------------*/
+    static volatile rtklib.la_t la = null;
+
+    /* simd matmul kernels (null: not available) ---------------------------------*/
+    static final rtklib.gemm_t gemm_vec = loadgemm("matmulv");
+
+    /* load optional matmul kernels ----------------------------------------------*/
+    static rtklib.gemm_t loadgemm(final String name)
+    {
+        try {
+            return (rtklib.gemm_t)Class.forName(name).getDeclaredConstructor().newInstance();
+        }
+        catch (Throwable e) { /* class or jdk.incubator.vector module not available */
+            return null;
+        }
+    }
+
+    /* set linear algebra backend ----------------------------------------------------
+     * set linear algebra backend used by matmul(), matinv(), solve(), chol() and
+     * ludcmp() in the process
+     * args   : la_t   *backend  I   linear algebra backend (null: built-in kernels)
+     *                               (see linalg.getbackend(), linalg.labench())
+     * return : none
+     * notes  : kalman filter (filter(), filter_()) and smoother with workspace
+     *          always use the built-in kernels, so the updates stay allocation-
+     *          free with any backend
+     *-----------------------------------------------------------------------------*/
+    public static void setlabackend(rtklib.la_t backend)
+    {
+        la=backend;
+    }
+
+    /* multiply matrix -------------------------------------------------------------
+     * multiply matrix by matrix (C=alpha*A*B+beta*C)
+     * args   : char   *tr       I  transpose flags ("N":normal,"T":transpose)
+     *          int    n,k,m     I  size of (transposed) matrix A,B
+     *          double alpha     I  alpha
+     *          double *A,*B     I  (transposed) matrix A (n x m), B (m x k)
+     *          double beta      I  beta
+     *          double *C        IO matrix C (n x k)
+     * return : none
+     * notes  : dispatches to the kernel for the transpose case. simd kernels
+     *          (jdk.incubator.vector) are used if available and n is large.
+     *          if linear algebra backend is set by setlabackend(), it is used
+     *-----------------------------------------------------------------------------*/
+    public static void matmul(final String tr, int n, int k, int m, double alpha,
+                   final double[] A, final double[] B, double beta, double[] C)
+    {
+        rtklib.la_t lab=la;
+
+        if (lab!=null) {
+            lab.matmul(tr,n,k,m,alpha,A,B,beta,C);
+            return;
+        }
+        gemm((tr.charAt(0)=='N'?0:2)+(tr.charAt(1)=='N'?0:1),n,k,m,alpha,A,B,beta,C);
+    }
+
+    /* multiply matrix by built-in kernels (f: 0:NN,1:NT,2:TN,3:TT) --------------*/
+    static void gemm(int f, int n, int k, int m, double alpha, final double[] A,
+                     final double[] B, double beta, double[] C)
+    {
+        if (n<=0||k<=0) return;
+
+        if (gemm_vec!=null&&n>=MATMUL_VECMIN) {
+            gemm_vec.gemm(f,n,k,m,alpha,A,B,beta,C);
+            return;
+        }
+        switch (f) {
+            case 0: matmul_nn(n,k,m,alpha,A,B,beta,C); break;
+            case 1: matmul_nt(n,k,m,alpha,A,B,beta,C); break;
+            case 2: matmul_tn(n,k,m,alpha,A,B,beta,C); break;
+            case 3: matmul_tt(n,k,m,alpha,A,B,beta,C); break;
+        }
+    }
+
+    /* scale column of C by beta -------------------------------------------------*/
+    static void matscal(double beta, double[] C, int off, int n)
+    {
+        int i;
+
+        if (beta==0.0) for (i=0;i<n;i++) C[off+i]=0.0;
+        else if (beta!=1.0) for (i=0;i<n;i++) C[off+i]*=beta;
+    }
+
+    /* C=alpha*A*B+beta*C (A:n x m, B:m x k) -------------------------------------*/
+    static void matmul_nn(int n, int k, int m, double alpha, final double[] A,
+                          final double[] B, double beta, double[] C)
+    {
+        double b0,b1,b2,b3;
+        int i,i0,i1,j,x,x0,x1,a0,c;
+
+        for (i0=0;i0<n;i0+=MATMUL_NB) {
+            i1=Math.min(i0+MATMUL_NB,n);
+            x0=0;
+            do { /* tile of A (NB x KB) kept in cache over j */
+                x1=Math.min(x0+MATMUL_KB,m);
+                for (j=0;j<k;j++) {
+                    c=j*n;
+                    if (x0==0) matscal(beta,C,c+i0,i1-i0);
+                    for (x=x0;x+3<x1;x+=4) {
+                        b0=alpha*B[x  +j*m]; b1=alpha*B[x+1+j*m];
+                        b2=alpha*B[x+2+j*m]; b3=alpha*B[x+3+j*m];
+                        a0=x*n;
+                        for (i=i0;i<i1;i++) {
+                            C[c+i]+=A[a0+i]*b0+A[a0+n+i]*b1+A[a0+2*n+i]*b2+A[a0+3*n+i]*b3;
+                        }
+                    }
+                    for (;x<x1;x++) {
+                        b0=alpha*B[x+j*m]; a0=x*n;
+                        for (i=i0;i<i1;i++) C[c+i]+=A[a0+i]*b0;
+                    }
+                }
+            } while ((x0+=MATMUL_KB)<m);
+        }
+    }
+
+    /* C=alpha*A*B'+beta*C (A:n x m, B:k x m) ------------------------------------*/
+    static void matmul_nt(int n, int k, int m, double alpha, final double[] A,
+                          final double[] B, double beta, double[] C)
+    {
+        double b0,b1,b2,b3;
+        int i,i0,i1,j,x,x0,x1,a0,c;
+
+        for (i0=0;i0<n;i0+=MATMUL_NB) {
+            i1=Math.min(i0+MATMUL_NB,n);
+            x0=0;
+            do {
+                x1=Math.min(x0+MATMUL_KB,m);
+                for (j=0;j<k;j++) {
+                    c=j*n;
+                    if (x0==0) matscal(beta,C,c+i0,i1-i0);
+                    for (x=x0;x+3<x1;x+=4) {
+                        b0=alpha*B[j+x*k]; b1=alpha*B[j+(x+1)*k];
+                        b2=alpha*B[j+(x+2)*k]; b3=alpha*B[j+(x+3)*k];
+                        a0=x*n;
+                        for (i=i0;i<i1;i++) {
+                            C[c+i]+=A[a0+i]*b0+A[a0+n+i]*b1+A[a0+2*n+i]*b2+A[a0+3*n+i]*b3;
+                        }
+                    }
+                    for (;x<x1;x++) {
+                        b0=alpha*B[j+x*k]; a0=x*n;
+                        for (i=i0;i<i1;i++) C[c+i]+=A[a0+i]*b0;
+                    }
+                }
+            } while ((x0+=MATMUL_KB)<m);
+        }
+    }
+
+    /* C=alpha*A'*B+beta*C (A:m x n, B:m x k) ------------------------------------*/
+    static void matmul_tn(int n, int k, int m, double alpha, final double[] A,
+                          final double[] B, double beta, double[] C)
+    {
+        double d0,d1,d2,d3;
+        int i,i0,i1,j,x,x0,x1,a,b;
+
+        for (i0=0;i0<n;i0+=MATMUL_NB/4) {
+            i1=Math.min(i0+MATMUL_NB/4,n);
+            x0=0;
+            do { /* tile of A (KB x NB/4) kept in cache over j */
+                x1=Math.min(x0+MATMUL_KB,m);
+                for (j=0;j<k;j++) for (i=i0;i<i1;i++) {
+                    a=i*m; b=j*m;
+                    d0=d1=d2=d3=0.0;
+                    for (x=x0;x+3<x1;x+=4) {
+                        d0+=A[a+x  ]*B[b+x  ]; d1+=A[a+x+1]*B[b+x+1];
+                        d2+=A[a+x+2]*B[b+x+2]; d3+=A[a+x+3]*B[b+x+3];
+                    }
+                    for (;x<x1;x++) d0+=A[a+x]*B[b+x];
+                    d0=alpha*((d0+d1)+(d2+d3));
+                    if (x0>0) C[i+j*n]+=d0;
+                    else if (beta==0.0) C[i+j*n]=d0; else C[i+j*n]=d0+beta*C[i+j*n];
+                }
+            } while ((x0+=MATMUL_KB)<m);
+        }
+    }
+
+    /* C=alpha*A'*B'+beta*C (A:m x n, B:k x m) -----------------------------------*/
+    static void matmul_tt(int n, int k, int m, double alpha, final double[] A,
+                          final double[] B, double beta, double[] C)
     {
         double d;
-        int i,j,x,f=tr[0]=='N'?(tr[1]=='N'?1:2):(tr[1]=='N'?3:4);
-
-        for (i=0;i<n;i++) for (j=0;j<k;j++) {
-            d=0.0;
-            switch (f) {
-                case 1: for (x=0;x<m;x++) d+=A[i+x*n]*B[x+j*m]; break;
-                case 2: for (x=0;x<m;x++) d+=A[i+x*n]*B[j+x*k]; break;
-                case 3: for (x=0;x<m;x++) d+=A[x+i*m]*B[x+j*m]; break;
-                case 4: for (x=0;x<m;x++) d+=A[x+i*m]*B[j+x*k]; break;
-            }
+        int i,j,x,a;
+
+        for (j=0;j<k;j++) for (i=0;i<n;i++) {
+            a=i*m; d=0.0;
+            for (x=0;x<m;x++) d+=A[a+x]*B[j+x*k];
             if (beta==0.0) C[i+j*n]=alpha*d; else C[i+j*n]=alpha*d+beta*C[i+j*n];
         }
     }
 
-    /* LU decomposition ----------------------------------------------------------*/
-    static int ludcmp(Double[] A, int n, Integer[] indx, Double[] d)
+    /* multiply 3x3 matrix (C=A*B) -------------------------------------------------
+     * args   : double *A,*B     I   matrix A,B (3 x 3)
+     *          double *C        O   matrix C=A*B (3 x 3) (C may be B, not A)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void matmul3(final double[] A, final double[] B, double[] C)
+    {
+        double b0,b1,b2;
+        int j;
+
+        for (j=0;j<9;j+=3) {
+            b0=B[j]; b1=B[j+1]; b2=B[j+2];
+            C[j  ]=A[0]*b0+A[3]*b1+A[6]*b2;
+            C[j+1]=A[1]*b0+A[4]*b1+A[7]*b2;
+            C[j+2]=A[2]*b0+A[5]*b1+A[8]*b2;
+        }
+    }
+
+    /* congruence transform of 3x3 matrix (Q=E*P*E') -------------------------------
+     * args   : double *E        I   transformation matrix (3 x 3)
+     *          double *P        I   matrix P (3 x 3)
+     *          double *Q        O   matrix Q=E*P*E' (3 x 3) (Q must not be E or P)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void matcong3(final double[] E, final double[] P, double[] Q)
+    {
+        double t0,t1,t2,t3,t4,t5,t6,t7,t8; /* T=E*P */
+
+        t0=E[0]*P[0]+E[3]*P[1]+E[6]*P[2];
+        t1=E[1]*P[0]+E[4]*P[1]+E[7]*P[2];
+        t2=E[2]*P[0]+E[5]*P[1]+E[8]*P[2];
+        t3=E[0]*P[3]+E[3]*P[4]+E[6]*P[5];
+        t4=E[1]*P[3]+E[4]*P[4]+E[7]*P[5];
+        t5=E[2]*P[3]+E[5]*P[4]+E[8]*P[5];
+        t6=E[0]*P[6]+E[3]*P[7]+E[6]*P[8];
+        t7=E[1]*P[6]+E[4]*P[7]+E[7]*P[8];
+        t8=E[2]*P[6]+E[5]*P[7]+E[8]*P[8];
+        Q[0]=t0*E[0]+t3*E[3]+t6*E[6];
+        Q[1]=t1*E[0]+t4*E[3]+t7*E[6];
+        Q[2]=t2*E[0]+t5*E[3]+t8*E[6];
+        Q[3]=t0*E[1]+t3*E[4]+t6*E[7];
+        Q[4]=t1*E[1]+t4*E[4]+t7*E[7];
+        Q[5]=t2*E[1]+t5*E[4]+t8*E[7];
+        Q[6]=t0*E[2]+t3*E[5]+t6*E[8];
+        Q[7]=t1*E[2]+t4*E[5]+t7*E[8];
+        Q[8]=t2*E[2]+t5*E[5]+t8*E[8];
+    }
+
+    /* transposed congruence transform of 3x3 matrix (P=E'*Q*E) ---------------------
+     * args   : double *E        I   transformation matrix (3 x 3)
+     *          double *Q        I   matrix Q (3 x 3)
+     *          double *P        O   matrix P=E'*Q*E (3 x 3) (P must not be E or Q)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void matcong3t(final double[] E, final double[] Q, double[] P)
+    {
+        double t0,t1,t2,t3,t4,t5,t6,t7,t8; /* T=E'*Q */
+
+        t0=E[0]*Q[0]+E[1]*Q[1]+E[2]*Q[2];
+        t1=E[3]*Q[0]+E[4]*Q[1]+E[5]*Q[2];
+        t2=E[6]*Q[0]+E[7]*Q[1]+E[8]*Q[2];
+        t3=E[0]*Q[3]+E[1]*Q[4]+E[2]*Q[5];
+        t4=E[3]*Q[3]+E[4]*Q[4]+E[5]*Q[5];
+        t5=E[6]*Q[3]+E[7]*Q[4]+E[8]*Q[5];
+        t6=E[0]*Q[6]+E[1]*Q[7]+E[2]*Q[8];
+        t7=E[3]*Q[6]+E[4]*Q[7]+E[5]*Q[8];
+        t8=E[6]*Q[6]+E[7]*Q[7]+E[8]*Q[8];
+        P[0]=t0*E[0]+t3*E[1]+t6*E[2];
+        P[1]=t1*E[0]+t4*E[1]+t7*E[2];
+        P[2]=t2*E[0]+t5*E[1]+t8*E[2];
+        P[3]=t0*E[3]+t3*E[4]+t6*E[5];
+        P[4]=t1*E[3]+t4*E[4]+t7*E[5];
+        P[5]=t2*E[3]+t5*E[4]+t8*E[5];
+        P[6]=t0*E[6]+t3*E[7]+t6*E[8];
+        P[7]=t1*E[6]+t4*E[7]+t7*E[8];
+        P[8]=t2*E[6]+t5*E[7]+t8*E[8];
+    }
+
+    /* inverse of symmetric 4x4 matrix ---------------------------------------------
+     * inverse of symmetric 4x4 matrix by closed-form cofactor expansion
+     * args   : double *A        IO  symmetric matrix A (4 x 4), replaced by A^-1
+     * return : status (0:ok,-1:singular)
+     * notes  : only upper triangle of A is referenced
+     *-----------------------------------------------------------------------------*/
+    public static int matinv4(double[] A)
+    {
+        double a00=A[0],a01=A[4],a02=A[ 8],a03=A[12];
+        double          a11=A[5],a12=A[ 9],a13=A[13];
+        double                   a22=A[10],a23=A[14];
+        double                             a33=A[15];
+        double s0,s1,s2,s3,s4,s5,c0,c1,c2,c3,c4,c5,det;
+
+        s0=a00*a11-a01*a01; s1=a00*a12-a01*a02; s2=a00*a13-a01*a03;
+        s3=a01*a12-a11*a02; s4=a01*a13-a11*a03; s5=a02*a13-a12*a03;
+        c5=a22*a33-a23*a23; c4=a12*a33-a13*a23; c3=a12*a23-a13*a22;
+        c2=a02*a33-a03*a23; c1=a02*a23-a03*a22; c0=a02*a13-a03*a12;
+
+        det=s0*c5-s1*c4+s2*c3+s3*c2-s4*c1+s5*c0;
+        if (det==0.0||Double.isNaN(det)) return -1;
+        det=1.0/det;
+
+        A[ 0]=( a11*c5-a12*c4+a13*c3)*det;
+        A[ 4]=A[ 1]=(-a01*c5+a02*c4-a03*c3)*det;
+        A[ 8]=A[ 2]=( a13*s5-a23*s4+a33*s3)*det;
+        A[12]=A[ 3]=(-a12*s5+a22*s4-a23*s3)*det;
+        A[ 5]=( a00*c5-a02*c2+a03*c1)*det;
+        A[ 9]=A[ 6]=(-a03*s5+a23*s2-a33*s1)*det;
+        A[13]=A[ 7]=( a02*s5-a22*s2+a23*s1)*det;
+        A[10]=( a03*s4-a13*s2+a33*s0)*det;
+        A[14]=A[11]=(-a02*s4+a12*s2-a23*s0)*det;
+        A[15]=( a02*s3-a12*s1+a22*s0)*det;
+        return 0;
+    }
+
+    /* LU decomposition (by backend if set) --------------------------------------*/
+    static int ludcmp(double[] A, int n, int[] indx, double[] d)
+    {
+        rtklib.la_t lab=la;
+
+        if (lab!=null) return lab.lu(A,n,indx,d);
+        return ludcmp(A,n,indx,d,mat(n,1));
+    }
+
+    /* LU decomposition with caller supplied scaling buffer vv (n x 1) -----------*/
+    static int ludcmp(double[] A, int n, int[] indx, double[] d, double[] vv)
     {
         double big,s,tmp;
-        Double[] vv=mat(n,1);
         int i,imax=0,j,k;
 
         d[0] = 1.0;
@@ -987,7 +1964,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
                 for (k=0;k<n;k++) {
                     tmp=A[imax+k*n]; A[imax+k*n]=A[j+k*n]; A[j+k*n]=tmp;
                 }
-            *d=-(*d); vv[imax]=vv[j];
+                d[0]=-d[0]; vv[imax]=vv[j];
             }
             indx[j]=imax;
             if (A[j+j*n]==0.0)
@@ -1003,55 +1980,70 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     }
 
     /* LU back-substitution ------------------------------------------------------*/
-    public static void lubksb(final Double[] A, int n, final Integer[] indx, Double[] b)
+    public static void lubksb(final double[] A, int n, final int[] indx, double[] b)
+    {
+        lubksb(A,n,indx,b,0);
+    }
+
+    /* LU back-substitution for b[off:off+n-1] -----------------------------------*/
+    static void lubksb(final double[] A, int n, final int[] indx, double[] b, int off)
     {
         double s;
         int i,ii=-1,ip,j;
 
         for (i=0;i<n;i++) {
-            ip=indx[i]; s=b[ip]; b[ip]=b[i];
-            if (ii>=0) for (j=ii;j<i;j++) s-=A[i+j*n]*b[j]; else if (s) ii=i;
-            b[i]=s;
+            ip=indx[i]; s=b[off+ip]; b[off+ip]=b[off+i];
+            if (ii>=0) for (j=ii;j<i;j++) s-=A[i+j*n]*b[off+j]; else if (s!=0.0) ii=i;
+            b[off+i]=s;
         }
         for (i=n-1;i>=0;i--) {
-            s=b[i]; for (j=i+1;j<n;j++) s-=A[i+j*n]*b[j]; b[i]=s/A[i+i*n];
+            s=b[off+i]; for (j=i+1;j<n;j++) s-=A[i+j*n]*b[off+j]; b[off+i]=s/A[i+i*n];
         }
     }
 
     /* inverse of matrix ---------------------------------------------------------*/
-    public static int matinv(Double[] A, int n)
+    public static int matinv(double[] A, int n)
+    {
+        rtklib.la_t lab=la;
+
+        if (lab!=null) return lab.matinv(A,n);
+        return matinv(A,n,mat(n,n),imat(n,1),mat(n,1),new double[1]);
+    }
+
+    /* inverse of matrix with caller supplied work buffers -----------------------*/
+    static int matinv(double[] A, int n, double[] B, int[] indx, double[] vv,
+                      double[] d)
     {
-        double d;
-        Double[] B = new Double[];
         int i,j;
-        Integer[] indx = new Integer[];
 
-        indx=imat(n,1);
-        B=mat(n,n);
         matcpy(B,A,n,n);
 
-        if (ludcmp(B,n,indx,&d))
+        if (ludcmp(B,n,indx,d,vv) != 0)
             return -1;
         for (j=0;j<n;j++) {
             for (i=0;i<n;i++)
                 A[i+j*n]=0.0;
             A[j+j*n]=1.0;
-            lubksb(B,n,indx,A[j*n]);
+            lubksb(B,n,indx,A,j*n);
         }
 
         return 0;
     }
 
     /* solve linear equation -----------------------------------------------------*/
-    public static int solve(final char[] tr, final Double[] A, final Double[] Y, int n,
-                     int m, Double[] X)
+    public static int solve(final String tr, final double[] A, final double[] Y, int n,
+                     int m, double[] X)
     {
-        Double[] B=mat(n,n);
+        rtklib.la_t lab=la;
+        double[] B;
         int info;
 
+        if (lab!=null) return lab.solve(tr,A,Y,n,m,X);
+
+        B=mat(n,n);
         matcpy(B,A,n,n);
         if ((info=matinv(B,n))==0)
-            matmul(tr[0]=='N'?"NN":"TN",n,m,n,1.0,B,Y,0.0,X);
+            matmul(tr.charAt(0)=='N'?"NN":"TN",n,m,n,1.0,B,Y,0.0,X);
 
         return info;
     }
@@ -1068,10 +2060,10 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * notes  : for weighted least square, replace A and y by A*w and w*y (w=W^(1/2))
      *          matirix stored by column-major order (fortran convention)
      *-----------------------------------------------------------------------------*/
-    int lsq(final Double[] A, final Double[] y, int n, int m, Double[] x,
-                   Double[] Q)
+    public static int lsq(final double[] A, final double[] y, int n, int m, double[] x,
+                   double[] Q)
     {
-        Double[] Ay;
+        double[] Ay;
         int info;
 
         if (m<n)
@@ -1086,6 +2078,165 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         return info;
     }
 
+    /* initialize incremental least square ------------------------------------------
+     * initialize incremental least square estimation by QR factorization
+     * args   : lsqinc_t *S      O   incremental least square
+     *          int    n         I   number of parameters
+     * return : none
+     * notes  : measurement rows are added/removed by lsqinc_add()/lsqinc_del() in
+     *          O(n^2) and solved by lsqinc_solve() without forming A*A'
+     *-----------------------------------------------------------------------------*/
+    public static void lsqinc_init(rtklib.lsqinc_t S, int n)
+    {
+        int i;
+
+        if (S.R==null||S.n!=n) {
+            S.R=zeros(n,n); S.z=zeros(n,1); S.W=zeros(n,n);
+            S.w=zeros(n,1); S.c=zeros(n,1); S.s=zeros(n,1);
+        }
+        else {
+            for (i=0;i<n*n;i++) S.R[i]=0.0;
+            for (i=0;i<n;i++) S.z[i]=0.0;
+        }
+        S.n=n; S.m=0; S.rss=0.0;
+    }
+
+    /* copy incremental least square ---------------------------------------------*/
+    public static void lsqinc_copy(rtklib.lsqinc_t D, final rtklib.lsqinc_t S)
+    {
+        if (D.R==null||D.n!=S.n) lsqinc_init(D,S.n);
+        matcpy(D.R,S.R,S.n,S.n);
+        matcpy(D.z,S.z,S.n,1);
+        D.m=S.m; D.rss=S.rss;
+    }
+
+    /* add measurement to incremental least square -----------------------------------
+     * add a (weighted) measurement row by givens rotations
+     * args   : lsqinc_t *S      IO  incremental least square
+     *          double *a        I   (weighted) design vector (n x 1)
+     *          int    off       I   offset of design vector in a (e.g. j*n for
+     *                               column j of transposed design matrix of lsq())
+     *          double y         I   (weighted) measurement
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void lsqinc_add(rtklib.lsqinc_t S, final double[] a, int off, double y)
+    {
+        double[] R=S.R,z=S.z,r=S.w;
+        double c,s,t,rho;
+        int i,j,n=S.n;
+
+        for (i=0;i<n;i++) r[i]=a[off+i];
+
+        for (i=0;i<n;i++) {
+            if (r[i]==0.0) continue;
+            rho=Math.hypot(R[i+i*n],r[i]);
+            c=R[i+i*n]/rho; s=r[i]/rho;
+            R[i+i*n]=rho;
+            for (j=i+1;j<n;j++) {
+                t=R[i+j*n];
+                R[i+j*n]= c*t+s*r[j];
+                r[j]    =-s*t+c*r[j];
+            }
+            t=z[i];
+            z[i]= c*t+s*y;
+            y   =-s*t+c*y;
+        }
+        S.rss+=y*y;
+        S.m++;
+    }
+
+    /* remove measurement from incremental least square --------------------------
+     * remove a (weighted) measurement row added before by downdating the QR
+     * factor (see LINPACK dchdd)
+     * args   : lsqinc_t *S      IO  incremental least square
+     *          double *a        I   (weighted) design vector (n x 1)
+     *          int    off       I   offset of design vector in a
+     *          double y         I   (weighted) measurement
+     * return : status (0:ok,<0:error (system becomes singular))
+     *-----------------------------------------------------------------------------*/
+    public static int lsqinc_del(rtklib.lsqinc_t S, final double[] a, int off, double y)
+    {
+        double[] R=S.R,z=S.z,p=S.w,c=S.c,s=S.s;
+        double alpha,nrm,scale,aa,bb,t,xx,zeta,rho;
+        int i,j,n=S.n;
+
+        /* solve R'*p=a */
+        for (j=0;j<n;j++) {
+            if (R[j+j*n]==0.0) return -1;
+            for (i=0,t=a[off+j];i<j;i++) t-=R[i+j*n]*p[i];
+            p[j]=t/R[j+j*n];
+        }
+        if ((nrm=norm(p,n))>=1.0) return -1;
+
+        /* determine the transformations */
+        alpha=Math.sqrt(1.0-nrm*nrm);
+        for (i=n-1;i>=0;i--) {
+            scale=alpha+Math.abs(p[i]);
+            aa=alpha/scale; bb=p[i]/scale;
+            nrm=Math.sqrt(aa*aa+bb*bb);
+            c[i]=aa/nrm; s[i]=bb/nrm;
+            alpha=scale*nrm;
+        }
+        /* apply the transformations to R */
+        for (j=0;j<n;j++) {
+            for (i=j,xx=0.0;i>=0;i--) {
+                t=c[i]*xx+s[i]*R[i+j*n];
+                R[i+j*n]=c[i]*R[i+j*n]-s[i]*xx;
+                xx=t;
+            }
+        }
+        /* downdate z and residual */
+        for (i=0,zeta=y;i<n;i++) {
+            z[i]=(z[i]-s[i]*zeta)/c[i];
+            zeta=c[i]*zeta-s[i]*z[i];
+        }
+        rho=Math.sqrt(S.rss);
+        S.rss=Math.abs(zeta)<rho?S.rss-zeta*zeta:0.0;
+        S.m--;
+        return 0;
+    }
+
+    /* solve incremental least square --------------------------------------------
+     * solve incremental least square estimation (R*x=z)
+     * args   : lsqinc_t *S      I   incremental least square
+     *          double *x        O   estmated parameters (n x 1)
+     *          double *Q        O   esimated parameters covariance matrix (n x n)
+     *                               (null: no output)
+     * return : status (0:ok,0>:error)
+     * notes  : x is O(n^2), Q=R^-1*R^-T is O(n^3)
+     *-----------------------------------------------------------------------------*/
+    public static int lsqinc_solve(final rtklib.lsqinc_t S, double[] x, double[] Q)
+    {
+        double[] R=S.R,Ri=S.W;
+        double t;
+        int i,j,k,n=S.n;
+
+        if (S.m<n) return -1;
+        for (i=0;i<n;i++) if (R[i+i*n]==0.0) return -1;
+
+        for (i=n-1;i>=0;i--) {
+            for (j=i+1,t=S.z[i];j<n;j++) t-=R[i+j*n]*x[j];
+            x[i]=t/R[i+i*n];
+        }
+        if (Q==null) return 0;
+
+        /* Ri=R^-1 (upper triangular) */
+        for (i=0;i<n*n;i++) Ri[i]=0.0;
+        for (j=0;j<n;j++) {
+            Ri[j+j*n]=1.0/R[j+j*n];
+            for (i=j-1;i>=0;i--) {
+                for (k=i+1,t=0.0;k<=j;k++) t+=R[i+k*n]*Ri[k+j*n];
+                Ri[i+j*n]=-t/R[i+i*n];
+            }
+        }
+        /* Q=Ri*Ri' */
+        for (i=0;i<n;i++) for (j=0;j<=i;j++) {
+            for (k=i,t=0.0;k<n;k++) t+=Ri[i+k*n]*Ri[j+k*n];
+            Q[i+j*n]=Q[j+i*n]=t;
+        }
+        return 0;
+    }
+
     /* kalman filter ---------------------------------------------------------------
      * kalman filter state update as follows:
      *
@@ -1103,48 +2254,484 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * notes  : matirix stored by column-major order (fortran convention)
      *          if state x[i]==0.0, not updates state x[i]/P[i+i*n]
      *-----------------------------------------------------------------------------*/
-    public static int filter_(final Double[] x, final Double[] P, final Double[] H,
-                   final Double[] v, final Double[] R, int n, int m,
-                       Double[] xp, Double[] Pp)
+    public static int filter_(final double[] x, final double[] P, final double[] H,
+                   final double[] v, final double[] R, int n, int m,
+                       double[] xp, double[] Pp)
     {
-        Double[] F=mat(n,m),Q=mat(m,m),K=mat(n,m),I=eye(n);
-        int info;
+        rtklib.filterws_t ws=new rtklib.filterws_t();
+
+        init_filterws(ws,n,m);
+        return filter_(x,P,H,v,R,n,m,xp,Pp,ws);
+    }
 
+    static int filter_(final double[] x, final double[] P, final double[] H,
+                       final double[] v, final double[] R, int n, int m,
+                       double[] xp, double[] Pp, rtklib.filterws_t ws)
+    {
+        double[] F=ws.F,Q=ws.Q,K=ws.K,I=ws.I;
+        int i,info;
+
+        if (ws.mode==rtklib.FILTER_CHOL)
+            return filter_chol(x,P,H,v,R,n,m,xp,Pp,ws);
+
+        for (i=0;i<n*n;i++) I[i]=0.0;
+        for (i=0;i<n;i++) I[i+i*n]=1.0;
         matcpy(Q,R,m,m);
         matcpy(xp,x,n,1);
-        matmul("NN",n,m,n,1.0,P,H,0.0,F);       /* Q=H'*P*H+R */
-        matmul("TN",m,m,n,1.0,H,F,1.0,Q);
-        if ((info=matinv(Q,m)) == 0) {
-            matmul("NN",n,m,m,1.0,F,Q,0.0,K);   /* K=P*H*Q^-1 */
-            matmul("NN",n,1,m,1.0,K,v,1.0,xp);  /* xp=x+K*v */
-            matmul("NT",n,n,m,-1.0,K,H,1.0,I);  /* Pp=(I-K*H')*P */
-            matmul("NN",n,n,n,1.0,I,P,0.0,Pp);
+        gemm(0,n,m,n,1.0,P,H,0.0,F);            /* Q=H'*P*H+R */
+        gemm(2,m,m,n,1.0,H,F,1.0,Q);
+        if ((info=matinv(Q,m,ws.B,ws.indx,ws.vv,ws.d)) == 0) {
+            gemm(0,n,m,m,1.0,F,Q,0.0,K);        /* K=P*H*Q^-1 */
+            gemm(0,n,1,m,1.0,K,v,1.0,xp);       /* xp=x+K*v */
+            gemm(1,n,n,m,-1.0,K,H,1.0,I);       /* Pp=(I-K*H')*P */
+            gemm(0,n,n,n,1.0,I,P,0.0,Pp);
         }
 
         return info;
     }
 
-    public static int filter(Double[] x, Double[] P, final Double[] H, final Double[] v,
-                  final Double[] R, int n, int m)
+    /* cholesky decomposition ------------------------------------------------------
+     * cholesky decomposition of symmetric positive definite matrix (A=L*L')
+     * args   : double *A        IO  matrix A (n x n) (lower triangle used)
+     *                               factor L is stored into lower triangle
+     *          int    n         I   number of rows and columns of A
+     * return : status (0:ok,<0:not positive definite)
+     * notes  : upper triangle of A is not referenced nor modified
+     *          if linear algebra backend is set by setlabackend(), it is used
+     *-----------------------------------------------------------------------------*/
+    public static int chol(double[] A, int n)
+    {
+        rtklib.la_t lab=la;
+
+        if (lab!=null) return lab.chol(A,n);
+        return chol_(A,n);
+    }
+
+    /* cholesky decomposition by built-in kernel ---------------------------------*/
+    static int chol_(double[] A, int n)
+    {
+        double s,t;
+        int i,j,k;
+
+        for (j=0;j<n;j++) {
+            s=A[j+j*n];
+            for (k=0;k<j;k++) s-=A[j+k*n]*A[j+k*n];
+            if (s<=0.0) return -1;
+            A[j+j*n]=s=Math.sqrt(s);
+            for (i=j+1;i<n;i++) {
+                t=A[i+j*n];
+                for (k=0;k<j;k++) t-=A[i+k*n]*A[j+k*n];
+                A[i+j*n]=t/s;
+            }
+        }
+        return 0;
+    }
+
+    /* forward substitution by cholesky factor -----------------------------------*/
+    static void cholfwd(final double[] L, int n, double[] b, int off)
+    {
+        double s;
+        int i,k;
+
+        for (i=0;i<n;i++) {
+            s=b[off+i];
+            for (k=0;k<i;k++) s-=L[i+k*n]*b[off+k];
+            b[off+i]=s/L[i+i*n];
+        }
+    }
+
+    /* backward substitution by cholesky factor ----------------------------------*/
+    static void cholbwd(final double[] L, int n, double[] b, int off)
+    {
+        double s;
+        int i,k;
+
+        for (i=n-1;i>=0;i--) {
+            s=b[off+i];
+            for (k=i+1;k<n;k++) s-=L[k+i*n]*b[off+k];
+            b[off+i]=s/L[i+i*n];
+        }
+    }
+
+    /* kalman filter by cholesky factorization ---------------------------------------
+     * kalman filter state update without explicit inverse as follows:
+     *
+     *   L*L'=H'*P*H+R, W=L^-1*H'*P, xp=x+W'*L^-1*v, Pp=P-W'*W
+     *
+     * args   : same as filter_()
+     * return : status (0:ok,<0:error)
+     * notes  : Pp is computed on lower triangle and mirrored, so Pp stays exactly
+     *          symmetric. it needs about half of flops of LU inverse and (I-K*H')*P
+     *-----------------------------------------------------------------------------*/
+    static int filter_chol(final double[] x, final double[] P, final double[] H,
+                           final double[] v, final double[] R, int n, int m,
+                           double[] xp, double[] Pp, rtklib.filterws_t ws)
     {
-        Double[] x_,xp_,P_,Pp_,H_;
+        double[] F=ws.F,Q=ws.Q,W=ws.K,y=ws.vv;
+        double s;
+        int i,j,k;
+
+        matcpy(Q,R,m,m);
+        gemm(0,n,m,n,1.0,P,H,0.0,F);            /* F=P*H */
+        gemm(2,m,m,n,1.0,H,F,1.0,Q);            /* Q=H'*P*H+R */
+        if (chol_(Q,m)!=0) return -1;            /* Q=L*L' */
+
+        for (j=0;j<n;j++) {                     /* W=L^-1*F' */
+            for (i=0;i<m;i++) W[i+j*m]=F[j+i*n];
+            cholfwd(Q,m,W,j*m);
+        }
+        for (i=0;i<m;i++) y[i]=v[i];            /* y=L^-1*v */
+        cholfwd(Q,m,y,0);
+
+        for (i=0;i<n;i++) {
+            for (k=0,s=0.0;k<m;k++) s+=W[k+i*m]*y[k];
+            xp[i]=x[i]+s;                       /* xp=x+W'*y */
+            for (j=0;j<=i;j++) {                /* Pp=P-W'*W */
+                for (k=0,s=0.0;k<m;k++) s+=W[k+i*m]*W[k+j*m];
+                Pp[i+j*n]=Pp[j+i*n]=0.5*(P[i+j*n]+P[j+i*n])-s;
+            }
+        }
+        return 0;
+    }
+
+    public static int filter(double[] x, double[] P, final double[] H, final double[] v,
+                  final double[] R, int n, int m)
+    {
+        rtklib.filterws_t ws=new rtklib.filterws_t();
+
+        init_filterws(ws,n,m);
+        return filter(x,P,H,v,R,n,m,ws);
+    }
+
+    /* kalman filter with workspace ------------------------------------------------
+     * kalman filter state update using preallocated work buffers
+     * args   : double *x,*P,*H,*v,*R  same as filter()
+     *          int    n,m       I   number of states and measurements
+     *          filterws_t *ws   IO  kalman filter workspace
+     * return : status (0:ok,<0:error (x and P are not updated))
+     * notes  : no allocation is done as long as n<=ws->nmax and m<=ws->mmax,
+     *          otherwise the workspace is enlarged before the update
+     *          ws->mode selects LU (FILTER_LU) or cholesky (FILTER_CHOL) update
+     *-----------------------------------------------------------------------------*/
+    public static int filter(double[] x, double[] P, final double[] H, final double[] v,
+                  final double[] R, int n, int m, rtklib.filterws_t ws)
+    {
+        double[] x_=ws.x_,xp_=ws.xp_,P_=ws.P_,Pp_=ws.Pp_,H_=ws.H_;
         int i,j,k,info;
-        Integer[] ix;
+        int[] ix=ws.ix;
 
-        ix=imat(n,1); for (i=k=0;i<n;i++) if (x[i]!=0.0&&P[i+i*n]>0.0) ix[k++]=i;
-        x_=mat(k,1); xp_=mat(k,1); P_=mat(k,k); Pp_=mat(k,k); H_=mat(k,m);
+        if (n>ws.nmax||m>ws.mmax) {
+            init_filterws(ws,Math.max(n,ws.nmax),Math.max(m,ws.mmax));
+            return filter(x,P,H,v,R,n,m,ws);
+        }
+        for (i=k=0;i<n;i++) if (x[i]!=0.0&&P[i+i*n]>0.0) ix[k++]=i;
         for (i=0;i<k;i++) {
             x_[i]=x[ix[i]];
             for (j=0;j<k;j++) P_[i+j*k]=P[ix[i]+ix[j]*n];
             for (j=0;j<m;j++) H_[i+j*k]=H[ix[i]+j*n];
         }
-        info=filter_(x_,P_,H_,v,R,k,m,xp_,Pp_);
+        if ((info=filter_(x_,P_,H_,v,R,k,m,xp_,Pp_,ws))!=0) return info;
+
         for (i=0;i<k;i++) {
             x[ix[i]]=xp_[i];
             for (j=0;j<k;j++) P[ix[i]+ix[j]*n]=Pp_[i+j*k];
         }
+        return 0;
+    }
 
-        return info;
+    /* initialize state store -------------------------------------------------------
+     * initialize contiguous state store
+     * args   : xstore_t *st     O   state store
+     *          int    nmax      I   initial capacity of states (e.g. rtk->nx)
+     * return : none
+     * notes  : states in use are kept in slots 0..st->n-1. P and Pa are stored by
+     *          column-major order with leading dimension st->nmax, so filter() can
+     *          be called with x=st->x, P=st->P and n=st->nmax (unused slots have
+     *          x=0 and are not estimated)
+     *-----------------------------------------------------------------------------*/
+    public static void init_xstore(rtklib.xstore_t st, int nmax)
+    {
+        int i;
+
+        nmax=Math.max(nmax,1);
+        st.n=0; st.nmax=nmax;
+        st.x=zeros(nmax,1); st.P=zeros(nmax,nmax);
+        st.xa=zeros(nmax,1); st.Pa=zeros(nmax,nmax);
+        st.key=imat(nmax,1);
+        for (i=0;i<st.slot.length;i++) st.slot[i]=-1;
+    }
+
+    /* state key (-1: out of range) ----------------------------------------------*/
+    static int xstore_key(int kind, int sat, int idx)
+    {
+        if (kind<0||kind>=rtklib.NXKIND||sat<0||sat>rtklib.MAXSAT||idx<0||idx>=rtklib.NXIDX) {
+            return -1;
+        }
+        return (kind*(rtklib.MAXSAT+1)+sat)*rtklib.NXIDX+idx;
+    }
+
+    /* system index of state key ---------------------------------------------------
+     * state index of receiver clock (XK_CLK) of navigation system
+     * args   : int    sys       I   navigation system (SYS_???)
+     * return : state index (0:gps,1:sbs,2:glo,3:gal,4:qzs,5:cmp,6:irn,7:leo)
+     *-----------------------------------------------------------------------------*/
+    public static int xstore_sysidx(int sys)
+    {
+        return Integer.numberOfTrailingZeros(sys);
+    }
+
+    /* state slot ------------------------------------------------------------------
+     * get slot of state in state store
+     * args   : xstore_t *st     I   state store
+     *          int    kind      I   state kind (XK_???)
+     *          int    sat       I   satellite number or receiver (see XK_???)
+     *          int    idx       I   axis, system or frequency index (see XK_???)
+     * return : slot index (-1: state not in store)
+     *-----------------------------------------------------------------------------*/
+    public static int xstore_slot(final rtklib.xstore_t st, int kind, int sat, int idx)
+    {
+        int k=xstore_key(kind,sat,idx);
+
+        return k<0?-1:st.slot[k];
+    }
+
+    /* resize state store --------------------------------------------------------*/
+    static void xstore_resize(rtklib.xstore_t st, int nmax)
+    {
+        double[] P=zeros(nmax,nmax),Pa=zeros(nmax,nmax);
+        double[] x=zeros(nmax,1),xa=zeros(nmax,1);
+        int[] key=imat(nmax,1);
+        int j,n=st.n;
+
+        System.arraycopy(st.x,0,x,0,n);
+        System.arraycopy(st.xa,0,xa,0,n);
+        System.arraycopy(st.key,0,key,0,n);
+        for (j=0;j<n;j++) {
+            System.arraycopy(st.P ,j*st.nmax,P ,j*nmax,n);
+            System.arraycopy(st.Pa,j*st.nmax,Pa,j*nmax,n);
+        }
+        st.x=x; st.xa=xa; st.P=P; st.Pa=Pa; st.key=key; st.nmax=nmax;
+    }
+
+    /* add state to state store ------------------------------------------------------
+     * add state to the end of state store (initialize state if exists)
+     * args   : xstore_t *st     IO  state store
+     *          int    kind,sat,idx I state key (see xstore_slot())
+     *          double x0        I   initial state
+     *          double var       I   initial variance
+     * return : slot index of state (-1: invalid state key)
+     * notes  : covariances to other states are cleared. O(n), the capacity is
+     *          doubled if full
+     *-----------------------------------------------------------------------------*/
+    public static int xstore_add(rtklib.xstore_t st, int kind, int sat, int idx, double x0,
+                                 double var)
+    {
+        int i,s,k=xstore_key(kind,sat,idx),N;
+
+        if (k<0) return -1;
+        if ((s=st.slot[k])<0) {
+            if (st.n>=st.nmax) xstore_resize(st,st.nmax*2);
+            s=st.n++;
+            st.slot[k]=s; st.key[s]=k;
+        }
+        N=st.nmax;
+        for (i=0;i<st.n;i++) {
+            st.P [i+s*N]=st.P [s+i*N]=0.0;
+            st.Pa[i+s*N]=st.Pa[s+i*N]=0.0;
+        }
+        st.x[s]=x0; st.P[s+s*N]=var;
+        st.xa[s]=0.0;
+        return s;
+    }
+
+    /* remove state from state store ---------------------------------------------------
+     * remove state from state store. the last state is moved to the removed slot
+     * args   : xstore_t *st     IO  state store
+     *          int    kind,sat,idx I state key (see xstore_slot())
+     * return : status (1:removed,0:state not in store)
+     * notes  : O(n). slot of the last state is changed, so slot indices should be
+     *          looked up by xstore_slot() after removal
+     *-----------------------------------------------------------------------------*/
+    public static int xstore_del(rtklib.xstore_t st, int kind, int sat, int idx)
+    {
+        int i,s,t,k=xstore_key(kind,sat,idx),N=st.nmax;
+
+        if (k<0||(s=st.slot[k])<0) return 0;
+        t=--st.n;
+
+        if (s!=t) { /* move last state to removed slot */
+            st.x[s]=st.x[t]; st.xa[s]=st.xa[t];
+            for (i=0;i<=t;i++) {
+                st.P [i+s*N]=st.P [i+t*N];
+                st.Pa[i+s*N]=st.Pa[i+t*N];
+            }
+            for (i=0;i<=t;i++) {
+                st.P [s+i*N]=st.P [t+i*N];
+                st.Pa[s+i*N]=st.Pa[t+i*N];
+            }
+            st.key[s]=st.key[t];
+            st.slot[st.key[s]]=s;
+        }
+        for (i=0;i<=t;i++) {
+            st.P [i+t*N]=st.P [t+i*N]=0.0;
+            st.Pa[i+t*N]=st.Pa[t+i*N]=0.0;
+        }
+        st.x[t]=st.xa[t]=0.0;
+        st.slot[k]=-1;
+        return 1;
+    }
+
+    /* sparse design matrix ----------------------------------------------------------
+     * pack transpose of design matrix into sparse form (nonzero index lists for
+     * each measurement)
+     * args   : double *H        I   transpose of design matrix (n x m)
+     *          int    n,m       I   number of states and measurements
+     *          sph_t  *S        IO  sparse design matrix
+     * return : number of nonzero elements
+     *-----------------------------------------------------------------------------*/
+    public static int sparseh(final double[] H, int n, int m, rtklib.sph_t S)
+    {
+        int i,j,nz;
+
+        for (i=nz=0;i<n*m;i++) if (H[i]!=0.0) nz++;
+        if (S.p==null||S.p.length<m+1) S.p=imat(m+1,1);
+        if (S.nzmax<nz) {
+            S.nzmax=nz;
+            S.idx=imat(nz,1);
+            S.val=mat(nz,1);
+        }
+        S.n=n; S.m=m;
+        for (j=nz=0;j<m;j++) {
+            S.p[j]=nz;
+            for (i=0;i<n;i++) {
+                if (H[i+j*n]==0.0) continue;
+                S.idx[nz]=i; S.val[nz++]=H[i+j*n];
+            }
+        }
+        S.p[m]=S.nz=nz;
+        return nz;
+    }
+
+    /* kalman filter with sparse design matrix -------------------------------------
+     * kalman filter state update with sparse design matrix. the update is done
+     * in place and only rows/columns of P correlated with measured states are
+     * touched
+     * args   : double *x        IO  states vector (n x 1)
+     *          double *P        IO  covariance matrix of states (n x n)
+     *          sph_t  *H        I   sparse design matrix (n x m)
+     *          double *v        I   innovation (measurement - model) (m x 1)
+     *          double *R        I   covariance matrix of measurement error (m x m)
+     *          int    n,m       I   number of states and measurements
+     *          filterws_t *ws   IO  kalman filter workspace
+     * return : status (0:ok,<0:error)
+     * notes  : P*H and H'*P*H are O(n*nz) instead of O(n^2*m). P-K*H'*P is
+     *          accumulated only over nonzero elements of P*H, O(nr^2+nr*nf)
+     *          (nr: number of states correlated with measured states, nf: number
+     *          of nonzero elements of P*H) instead of O(n^3)
+     *          if state x[i]==0.0, not updates state x[i]/P[i+i*n] (as filter())
+     *-----------------------------------------------------------------------------*/
+    public static int filter(double[] x, double[] P, final rtklib.sph_t H, final double[] v,
+                  final double[] R, int n, int m, rtklib.filterws_t ws)
+    {
+        double[] F,Q,K,S,y;
+        double s;
+        int i,j,k,l,r,nr;
+        int[] ix,jp,jx;
+
+        if (H.n!=n||H.m!=m||H.p==null||H.p[m]>H.nzmax) return -1;
+
+        if (n>ws.nmax||m>ws.mmax) {
+            init_filterws(ws,Math.max(n,ws.nmax),Math.max(m,ws.mmax));
+        }
+        F=ws.F; Q=ws.Q; K=ws.K; S=ws.I; y=ws.vv; ix=ws.ix; jp=ws.jp; jx=ws.jx;
+
+        /* F=P*H using nonzero elements of H (inactive states excluded) */
+        for (i=0;i<n*m;i++) F[i]=0.0;
+        for (j=0;j<m;j++) for (l=H.p[j];l<H.p[j+1];l++) {
+            k=H.idx[l];
+            if (x[k]==0.0||P[k+k*n]<=0.0) continue;
+            for (i=0;i<n;i++) {
+                if (x[i]!=0.0&&P[i+i*n]>0.0) F[i+j*n]+=P[i+k*n]*H.val[l];
+            }
+        }
+        /* rows of F affected by measurements */
+        for (i=nr=0;i<n;i++) {
+            for (j=0;j<m;j++) if (F[i+j*n]!=0.0) {ix[nr++]=i; break;}
+        }
+        /* nonzero elements of F by measurement (index of affected rows in ix) */
+        for (j=l=0;j<m;j++) {
+            jp[j]=l;
+            for (r=0;r<nr;r++) if (F[ix[r]+j*n]!=0.0) jx[l++]=r;
+        }
+        jp[m]=l;
+
+        /* Q=H'*P*H+R */
+        matcpy(Q,R,m,m);
+        for (j=0;j<m;j++) for (i=0;i<m;i++) {
+            for (l=H.p[i],s=0.0;l<H.p[i+1];l++) s+=H.val[l]*F[H.idx[l]+j*n];
+            Q[i+j*m]+=s;
+        }
+        /* K=F*Q^-1 */
+        if (ws.mode==rtklib.FILTER_CHOL) {
+            if (chol_(Q,m)!=0) return -1;
+            for (l=0;l<nr;l++) {
+                i=ix[l];
+                for (j=0;j<m;j++) y[j]=F[i+j*n];
+                cholfwd(Q,m,y,0);
+                cholbwd(Q,m,y,0);
+                for (j=0;j<m;j++) K[i+j*n]=y[j];
+            }
+        }
+        else {
+            if (matinv(Q,m,ws.B,ws.indx,ws.vv,ws.d)!=0) return -1;
+            for (l=0;l<nr;l++) {
+                i=ix[l];
+                for (j=0;j<m;j++) {
+                    for (k=0,s=0.0;k<m;k++) s+=F[i+k*n]*Q[k+j*m];
+                    K[i+j*n]=s;
+                }
+            }
+        }
+        /* x=x+K*v on affected rows */
+        for (l=0;l<nr;l++) {
+            i=ix[l];
+            for (k=0,s=0.0;k<m;k++) s+=K[i+k*n]*v[k];
+            x[i]+=s;
+        }
+        /* S=K*F' over nonzero elements of F (nr x nr) */
+        for (i=0;i<nr*nr;i++) S[i]=0.0;
+        for (k=0;k<m;k++) for (l=jp[k];l<jp[k+1];l++) {
+            r=jx[l]; j=ix[r];
+            for (i=0;i<nr;i++) S[i+r*nr]+=K[ix[i]+k*n]*F[j+k*n];
+        }
+        /* P=P-S on affected rows/columns (symmetrized) */
+        for (l=0;l<nr;l++) for (r=0;r<=l;r++) {
+            i=ix[l]; j=ix[r];
+            P[i+j*n]=P[j+i*n]=0.5*(P[i+j*n]+P[j+i*n]-S[l+r*nr]-S[r+l*nr]);
+        }
+        return 0;
+    }
+
+    /* initialize kalman filter workspace ------------------------------------------
+     * allocate kalman filter work buffers for the max number of states and
+     * measurements
+     * args   : filterws_t *ws   IO  kalman filter workspace
+     *          int    n,m       I   max number of states and measurements
+     *                               (e.g. rtk->nx and number of double-differences)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void init_filterws(rtklib.filterws_t ws, int n, int m)
+    {
+        n=Math.max(n,1); m=Math.max(m,1);
+        ws.nmax=n; ws.mmax=m;
+        ws.ix=imat(n,1);
+        ws.x_=mat(n,1); ws.xp_=mat(n,1);
+        ws.P_=mat(n,n); ws.Pp_=mat(n,n);
+        ws.H_=mat(n,m);
+        ws.F=mat(n,m); ws.K=mat(n,m);
+        ws.Q=mat(m,m); ws.I=mat(n,n);
+        ws.B=mat(m,m); ws.indx=imat(m,1); ws.vv=mat(m,1);
+        ws.jp=imat(m+1,1); ws.jx=imat(n,m);
     }
 
     /* smoother --------------------------------------------------------------------
@@ -1163,24 +2750,45 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * notes  : see reference [4] 5.2
      *          matirix stored by column-major order (fortran convention)
      *-----------------------------------------------------------------------------*/
-    public static int smoother(final Double[] xf, final Double[] Qf, final Double[] xb,
-                    final Double[] Qb, int n, Double[] xs, Double[] Qs)
+    public static int smoother(final double[] xf, final double[] Qf, final double[] xb,
+                    final double[] Qb, int n, double[] xs, double[] Qs)
     {
-        Double[] invQf=mat(n,n),invQb=mat(n,n),xx=mat(n,1);
-        int i,info=-1;
+        rtklib.filterws_t ws=new rtklib.filterws_t();
 
-        matcpy(invQf,Qf,n,n);
-        matcpy(invQb,Qb,n,n);
-        if ((matinv(invQf,n)!= 0) && (matinv(invQb,n)!=0) {
-            for (i=0;i<n*n;i++) Qs[i]=invQf[i]+invQb[i];
-            if ((info=matinv(Qs,n)) == 0) {
-                matmul("NN",n,1,n,1.0,invQf,xf,0.0,xx);
-                matmul("NN",n,1,n,1.0,invQb,xb,1.0,xx);
-                matmul("NN",n,1,n,1.0,Qs,xx,0.0,xs);
-            }
-        }
+        init_filterws(ws,n,n);
+        return smoother(xf,Qf,xb,Qb,n,xs,Qs,ws);
+    }
 
-        return info;
+    /* smoother with workspace -----------------------------------------------------
+     * smoother using preallocated work buffers and single matrix inverse as
+     * follows (equivalent to smoother()):
+     *
+     *   K=Qf*(Qf+Qb)^-1, xs=xf+K*(xb-xf), Qs=Qf-K*Qf
+     *
+     * args   : double *xf,*Qf,*xb,*Qb,*xs,*Qs  same as smoother()
+     *          int    n         I   number of solutions
+     *          filterws_t *ws   IO  workspace (nmax>=n, mmax>=n)
+     * return : status (0:ok,0>:error)
+     *-----------------------------------------------------------------------------*/
+    public static int smoother(final double[] xf, final double[] Qf, final double[] xb,
+                    final double[] Qb, int n, double[] xs, double[] Qs, rtklib.filterws_t ws)
+    {
+        double[] S,K,dx;
+        int i,info;
+
+        if (n>ws.nmax||n>ws.mmax) init_filterws(ws,n,n);
+        S=ws.P_; K=ws.I; dx=ws.x_;
+
+        for (i=0;i<n*n;i++) S[i]=Qf[i]+Qb[i];
+        if ((info=matinv(S,n,ws.B,ws.indx,ws.vv,ws.d))!=0) return info;
+
+        gemm(0,n,n,n,1.0,Qf,S,0.0,K);           /* K=Qf*(Qf+Qb)^-1 */
+        for (i=0;i<n;i++) dx[i]=xb[i]-xf[i];
+        matcpy(xs,xf,n,1);
+        gemm(0,n,1,n,1.0,K,dx,1.0,xs);          /* xs=xf+K*(xb-xf) */
+        matcpy(Qs,Qf,n,n);
+        gemm(0,n,n,n,-1.0,K,Qf,1.0,Qs);         /* Qs=Qf-K*Qf */
+        return 0;
     }
 
     /* print matrix ----------------------------------------------------------------
@@ -1192,22 +2800,20 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : none
      * notes  : matirix stored by column-major order (fortran convention)
      *-----------------------------------------------------------------------------*/
-    public static void matfprint(final Double[] A, int n, int m, int p, int q, File fp)
+    public static void matfprint(final double[] A, int n, int m, int p, int q, PrintStream fp)
     {
+        final String fmt=" %"+p+"."+q+"f";
         int i,j;
-        String matrixEntry = new String();
-        FileWriter fileWriter = new FileWriter(fp);
 
         for (i=0;i<n;i++) {
             for (j=0;j<m;j++) {
-                fileWriter.write(String.format(matrixEntry," %*.*f",p,q,A[i+j*n]));
+                fp.printf(fmt,A[i+j*n]);
             }
-            fileWriter.write("\n");
+            fp.print("\n");
         }
-        fileWriter.close();
     }
 
-    public static void matprint(final Double[] A, int n, int m, int p, int q)
+    public static void matprint(final double[] A, int n, int m, int p, int q)
     {
         matfprint(A,n,m,p,q,System.out);
     }
@@ -1266,21 +2872,31 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * convert calendar day/time to gtime_t struct
      * args   : double *ep       I   day/time {year,month,day,hour,min,sec}
      * return : gtime_t struct
-     * notes  : proper in 1970-2037 or 1970-2099 (64bit time_t)
+     * notes  : proper in 1970-2099
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t epoch2time(final double[] ep)
     {
-        final int doy[]={1,32,60,91,121,152,182,213,244,274,305,335};
-        rtklib.gtime_t time = new rtklib.gtime_t();
+        return epoch2time(ep,new rtklib.gtime_t());
+    }
+
+    /* convert calendar day/time to time without allocation ------------------------
+     * args   : double *ep       I   day/time {year,month,day,hour,min,sec}
+     *          gtime_t *time    O   gtime_t struct
+     * return : time
+     *-----------------------------------------------------------------------------*/
+    public static rtklib.gtime_t epoch2time(final double[] ep, rtklib.gtime_t time)
+    {
         int days,sec,year=(int)ep[0],mon=(int)ep[1],day=(int)ep[2];
 
+        time.time=0; time.sec=0.0;
+
         if (year<1970||2099<year||mon<1||12<mon)
             return time;
 
         /* leap year if year%4==0 in 1901-2099 */
-        days=(year-1970)*365+(year-1969)/4+doy[mon-1]+day-2+(year%4==0&&mon>=3?1:0);
+        days=(year-1970)*365+(year-1969)/4+doym[mon-1]+day-2+(year%4==0&&mon>=3?1:0);
         sec=(int)Math.floor(ep[5]);
-        time.time=(Instant) days*86400+(int)ep[3]*3600+(int)ep[4]*60+sec;
+        time.time=(long)days*86400+(int)ep[3]*3600+(int)ep[4]*60+sec;
         time.sec=ep[5]-sec;
         return time;
     }
@@ -1290,28 +2906,50 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : gtime_t t        I   gtime_t struct
      *          double *ep       O   day/time {year,month,day,hour,min,sec}
      * return : none
-     * notes  : proper in 1970-2037 or 1970-2099 (64bit time_t)
+     * notes  : proper in proleptic gregorian calendar
      *-----------------------------------------------------------------------------*/
-    public static void time2epoch(rtklib.gtime_t t, Double[] ep)
+    public static void time2epoch(rtklib.gtime_t t, double[] ep)
     {
-        final int mday[]={ /* # of days in a month */
-            31,28,31,30,31,30,31,31,30,31,30,31,31,28,31,30,31,30,31,31,30,31,30,31,
-            31,29,31,30,31,30,31,31,30,31,30,31,31,28,31,30,31,30,31,31,30,31,30,31
-        };
-        int days,sec,mon,day;
+        time2epoch(t.time,t.sec,ep);
+    }
 
-        /* leap year if year%4==0 in 1901-2099 */
-        days=(int)(t.time/86400);
-        sec=(int)(t.time-(time_t)days*86400);
-        for (day=days%1461,mon=0;mon<48;mon++) {
-            if (day>=mday[mon]) day-=mday[mon]; else break;
-        }
-        ep[0]=(double)(1970+days/1461*4+mon/12);
-        ep[1]=(double)(mon%12+1);
-        ep[2]=(double)(day+1);
-        ep[3]=(double)(sec/3600);
-        ep[4]=(double)(sec%3600/60);
-        ep[5]=(double)(sec%60+t.sec);
+    public static void time2epoch(long time, double sec, double[] ep)
+    {
+        long days,ymd,ds=(long)Math.floor(sec);
+        int sod;
+
+        time+=ds; sec-=ds; /* fraction to [0,1) */
+        days=Math.floorDiv(time,86400L); ymd=days2civil(days);
+        sod=(int)(time-days*86400);
+
+        ep[0]=(double)(ymd/10000);
+        ep[1]=(double)(ymd/100%100);
+        ep[2]=(double)(ymd%100);
+        ep[3]=(double)(sod/3600);
+        ep[4]=(double)(sod%3600/60);
+        ep[5]=(double)(sod%60)+sec;
+    }
+
+    /* days to civil date ----------------------------------------------------------
+     * convert days from 1970/1/1 to civil date in constant time
+     * args   : long   days      I   days from 1970/1/1
+     * return : date (yyyymmdd)
+     * notes  : days in 400 year era of proleptic gregorian calendar starting from
+     *          march 1 are converted to year, month and day by integer arithmetic
+     *          without table
+     *-----------------------------------------------------------------------------*/
+    public static long days2civil(long days)
+    {
+        long z=days+719468,era=Math.floorDiv(z,146097L),doe,yoe,doy,mp,y,m,d;
+
+        doe=z-era*146097;                               /* day of era [0,146096] */
+        yoe=(doe-doe/1460+doe/36524-doe/146096)/365;    /* year of era [0,399] */
+        doy=doe-(365*yoe+yoe/4-yoe/100);                /* day of year from mar 1 */
+        mp=(5*doy+2)/153;                               /* month from mar [0,11] */
+        d=doy-(153*mp+2)/5+1;
+        m=mp<10?mp+3:mp-9;
+        y=yoe+era*400+(m<=2?1:0);
+        return y*10000+m*100+d;
     }
 
     /* gps time to time ------------------------------------------------------------
@@ -1322,10 +2960,13 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t gpst2time(int week, double sec)
     {
-        rtklib.gtime_t t=epoch2time(gpst0);
+        return gpst2time(week,sec,new rtklib.gtime_t());
+    }
 
+    public static rtklib.gtime_t gpst2time(int week, double sec, rtklib.gtime_t t)
+    {
         if (sec<-1E9||1E9<sec) sec=0.0;
-        t.time+=(time_t)86400*7*week+(int)sec;
+        t.time=GPST0_TIME+86400L*7*week+(int)sec;
         t.sec=sec-(int)sec;
         return t;
     }
@@ -1336,16 +2977,23 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    *week     IO  week number in gps time (null: no output)
      * return : time of week in gps time (s)
      *-----------------------------------------------------------------------------*/
-    public static double time2gpst(rtklib.gtime_t t, Integer week)
+    public static double time2gpst(rtklib.gtime_t t, int[] week)
     {
-        rtklib.gtime_t t0=epoch2time(gpst0);
-        time_t sec=t.time-t0.time;
-        int w=(int)(sec/(86400*7));
+        return time2tow(t.time-GPST0_TIME,t.sec,week);
+    }
 
-        if (week != null)
-            week=w;
+    public static double time2gpst(long time, double sec, int[] week)
+    {
+        return time2tow(time-GPST0_TIME,sec,week);
+    }
 
-        return (double)(sec-(double)w*86400*7)+t.sec;
+    /* seconds from time reference to week and tow -------------------------------*/
+    static double time2tow(long sec, double frac, int[] week)
+    {
+        int w=(int)(sec/(86400*7));
+
+        if (week!=null) week[0]=w;
+        return (double)(sec-(long)w*86400*7)+frac;
     }
 
     /* galileo system time to time -------------------------------------------------
@@ -1356,10 +3004,13 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t gst2time(int week, double sec)
     {
-        rtklib.gtime_t t=epoch2time(gst0);
+        return gst2time(week,sec,new rtklib.gtime_t());
+    }
 
+    public static rtklib.gtime_t gst2time(int week, double sec, rtklib.gtime_t t)
+    {
         if (sec<-1E9||1E9<sec) sec=0.0;
-        t.time+=(time_t)86400*7*week+(int)sec;
+        t.time=GST0_TIME+86400L*7*week+(int)sec;
         t.sec=sec-(int)sec;
         return t;
     }
@@ -1370,14 +3021,9 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    *week     IO  week number in gst (null: no output)
      * return : time of week in gst (s)
      *-----------------------------------------------------------------------------*/
-    public static double time2gst(rtklib.gtime_t t, Integer week)
+    public static double time2gst(rtklib.gtime_t t, int[] week)
     {
-        rtklib.gtime_t t0=epoch2time(gst0);
-        time_t sec=t.time-t0.time;
-        int w=(int)(sec/(86400*7));
-
-        if (week) *week=w;
-        return (double)(sec-(double)w*86400*7)+t.sec;
+        return time2tow(t.time-GST0_TIME,t.sec,week);
     }
 
     /* beidou time (bdt) to time ---------------------------------------------------
@@ -1388,10 +3034,13 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t bdt2time(int week, double sec)
     {
-        rtklib.gtime_t t=epoch2time(bdt0);
+        return bdt2time(week,sec,new rtklib.gtime_t());
+    }
 
+    public static rtklib.gtime_t bdt2time(int week, double sec, rtklib.gtime_t t)
+    {
         if (sec<-1E9||1E9<sec) sec=0.0;
-        t.time+=(time_t)86400*7*week+(int)sec;
+        t.time=BDT0_TIME+86400L*7*week+(int)sec;
         t.sec=sec-(int)sec;
         return t;
     }
@@ -1402,14 +3051,9 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    *week     IO  week number in bdt (null: no output)
      * return : time of week in bdt (s)
      *-----------------------------------------------------------------------------*/
-    public static double time2bdt(rtklib.gtime_t t, Integer week)
+    public static double time2bdt(rtklib.gtime_t t, int[] week)
     {
-        rtklib.gtime_t t0=epoch2time(bdt0);
-        time_t sec=t.time-t0.time;
-        int w=(int)(sec/(86400*7));
-
-        if (week) *week=w;
-        return (double)(sec-(double)w*86400*7)+t.sec;
+        return time2tow(t.time-BDT0_TIME,t.sec,week);
     }
 
     /* add time --------------------------------------------------------------------
@@ -1417,13 +3061,25 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : gtime_t t        I   gtime_t struct
      *          double sec       I   time to add (s)
      * return : gtime_t struct (t+sec)
+     * notes  : t is not modified
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t timeadd(rtklib.gtime_t t, double sec)
+    {
+        return timeadd(t,sec,new rtklib.gtime_t());
+    }
+
+    /* add time without allocation -------------------------------------------------
+     * args   : gtime_t t        I   gtime_t struct
+     *          double sec       I   time to add (s)
+     *          gtime_t *out     O   gtime_t struct (t+sec) (out==t: add in place)
+     * return : out
+     *-----------------------------------------------------------------------------*/
+    public static rtklib.gtime_t timeadd(rtklib.gtime_t t, double sec, rtklib.gtime_t out)
     {
         double tt;
 
-        t.sec+=sec; tt=Math.floor(t.sec); t.time+=(int)tt; t.sec-=tt;
-        return t;
+        out.sec=t.sec+sec; tt=Math.floor(out.sec); out.time=t.time+(long)tt; out.sec-=tt;
+        return out;
     }
 
     /* time difference -------------------------------------------------------------
@@ -1431,9 +3087,37 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : gtime_t t1,t2    I   gtime_t structs
      * return : time difference (t1-t2) (s)
      *-----------------------------------------------------------------------------*/
-    public static double timediff(rtklib.gtime_t t1, rtklib.gtime_t t2)
+    public static double timediff(rtklib.gtime_t t1, rtklib.gtime_t t2)
+    {
+        return (double)(t1.time-t2.time)+t1.sec-t2.sec;
+    }
+
+    /* time difference by primitive time -------------------------------------------
+     * difference between times expressed by primitives {time,sec} as gtime_t
+     * args   : long   t1,t2     I   time (s) expressed by standard time_t
+     *          double s1,s2     I   fraction of second (need not be normalized)
+     * return : time difference (t1+s1-t2-s2) (s)
+     * notes  : no object is created. a time shifted by dt can be given as
+     *          {t.time,t.sec+dt} without timeadd()
+     *-----------------------------------------------------------------------------*/
+    public static double timediff(long t1, double s1, long t2, double s2)
+    {
+        return (double)(t1-t2)+s1-s2;
+    }
+
+    /* time source and time offset (replaced at once, read once per call) */
+    static volatile timesrc.timeref timeref_=new timesrc.timeref(timesrc.MONOTONIC,0.0);
+
+    /* set time source -------------------------------------------------------------
+     * set time source of timeget(), timeset(), tickget() and sleepms()
+     * args   : timesrc_t src    I   time source (null: monotonic time source)
+     * return : none
+     * notes  : time offset by timeset() is cleared
+     *          see timesrc.MONOTONIC and timesrc.simtime()
+     *-----------------------------------------------------------------------------*/
+    public static synchronized void settimesrc(rtklib.timesrc_t src)
     {
-        return difftime(t1.time,t2.time)+t1.sec-t2.sec;
+        timeref_=new timesrc.timeref(src!=null?src:timesrc.MONOTONIC,0.0);
     }
 
     /* get current time in utc -----------------------------------------------------
@@ -1441,24 +3125,17 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : none
      * return : current time in utc
      *-----------------------------------------------------------------------------*/
-    static double timeoffset_=0.0;        /* time offset (s) */
-
-    public static rtklib.gtime_t timeget(void)
+    public static rtklib.gtime_t timeget()
     {
-        rtklib.gtime_t time;
-        double ep[6]={0};
-
-        struct timeval tv;
-        struct tm *tt;
-
-        if (!gettimeofday(&tv,null)&&(tt=gmtime(&tv.tv_sec))) {
-            ep[0]=tt.tm_year+1900; ep[1]=tt.tm_mon+1; ep[2]=tt.tm_mday;
-            ep[3]=tt.tm_hour; ep[4]=tt.tm_min; ep[5]=tt.tm_sec+tv.tv_usec*1E-6;
-        }
+        return timeget(new rtklib.gtime_t());
+    }
 
-            time=epoch2time(ep);
+    public static rtklib.gtime_t timeget(rtklib.gtime_t t)
+    {
+        timesrc.timeref ref=timeref_;
 
-        return timeadd(time,timeoffset_);
+        ref.src.now(t);
+        return timeadd(t,ref.offset,t);
     }
 
     /* set current time in utc -----------------------------------------------------
@@ -1467,15 +3144,20 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : none
      * notes  : just set time offset between cpu time and current time
      *          the time offset is reflected to only timeget()
-     *          not reentrant
+     *          the time source and the time offset are replaced at once
+     *          (thread-safe)
      *-----------------------------------------------------------------------------*/
-    public static void timeset(rtklib.gtime_t t)
+    public static synchronized void timeset(rtklib.gtime_t t)
     {
-        timeoffset_+=timediff(t,timeget());
+        timesrc.timeref ref=timeref_;
+        rtklib.gtime_t now=new rtklib.gtime_t();
+
+        ref.src.now(now);
+        timeref_=new timesrc.timeref(ref.src,timediff(t,now));
     }
 
     /* read leap seconds table by text -------------------------------------------*/
-    static int read_leaps_text(File fp)
+    static int read_leaps_text(File fp, double[][] leaps)
     {
         char buff[256],*p;
         int i,n=0,ep[6],ls;
@@ -1492,7 +3174,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         return n;
     }
     /* read leap seconds table by usno -------------------------------------------*/
-    static int read_leaps_usno(File fp)
+    static int read_leaps_usno(File fp, double[][] leaps)
     {
         static final char[] months={
         "JAN","FEB","MAR","APR","MAY","JUN","JUL","AUG","SEP","OCT","NOV","DEC"};
@@ -1530,23 +3212,85 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *              year month day hour min sec UTC-GPST(s)
      *          (2) The date and time indicate the start UTC time for the UTC-GPST
      *          (3) The date and time should be descending order.
+     *          the table and its index are replaced at once after reading, so
+     *          conversions in other threads use either old or new table
      *-----------------------------------------------------------------------------*/
     public static int read_leaps(final char file)
     {
+        double[][] ls=new double[rtklib.MAXLEAPS+1][7];
         File fp;
-        int i,n;
+        int n;
 
         if (!(fp=fopen(file,"r"))) return 0;
 
         /* read leap seconds table by text or usno */
-        if (!(n=read_leaps_text(fp))&&!(n=read_leaps_usno(fp))) {
+        if (!(n=read_leaps_text(fp,ls))&&!(n=read_leaps_usno(fp,ls))) {
             fclose(fp);
             return 0;
         }
-        for (i=0;i<7;i++) leaps[n][i]=0.0;
         fclose(fp);
+        leaps=ls;
+        leapidx=newleapidx(ls);
         return 1;
     }
+
+    /* build leap seconds index ----------------------------------------------------
+     * build sorted index of leap seconds from leap seconds table
+     * args   : double **leaps   I   leap seconds table {y,m,d,h,m,s,utc-gpst}
+     *                               (terminated by y<=0)
+     * return : leap seconds index
+     * notes  : the index is not modified except the search hint after built
+     *-----------------------------------------------------------------------------*/
+    public static rtklib.leapidx_t newleapidx(final double[][] leaps)
+    {
+        rtklib.leapidx_t idx=new rtklib.leapidx_t();
+        rtklib.gtime_t t=new rtklib.gtime_t();
+        double ls;
+        long tt;
+        int i,j,n;
+
+        for (n=0;n<leaps.length&&leaps[n][0]>0;n++) ;
+
+        idx.tutc=new long[n]; idx.tgps=new long[n]; idx.ls=new double[n];
+
+        /* sort by start time in utc (table is in descending order) */
+        for (i=0;i<n;i++) {
+            tt=epoch2time(leaps[i],t).time; ls=leaps[i][6];
+            for (j=i;j>0&&idx.tutc[j-1]>tt;j--) {
+                idx.tutc[j]=idx.tutc[j-1]; idx.ls[j]=idx.ls[j-1];
+            }
+            idx.tutc[j]=tt; idx.ls[j]=ls;
+        }
+        for (i=0;i<n;i++) idx.tgps[i]=idx.tutc[i]-(long)idx.ls[i];
+        idx.n=n;
+        idx.hit=n-1;
+        return idx;
+    }
+
+    /* search leap seconds index ---------------------------------------------------
+     * search the last start of leap seconds before time
+     * args   : leapidx_t *idx   IO  leap seconds index
+     *          long   *ts       I   start times of leap seconds (idx.tutc or idx.tgps)
+     *          long   time      I   time (s) expressed by standard time_t
+     *          double sec       I   fraction of second
+     * return : index of leap seconds (-1: before the first leap seconds)
+     * notes  : the last hit interval is examined before binary search
+     *-----------------------------------------------------------------------------*/
+    static int leapsearch(rtklib.leapidx_t idx, final long[] ts, long time, double sec)
+    {
+        int i=idx.hit,lo=0,hi=idx.n-1,mid;
+
+        if (i>=0&&i<idx.n&&timediff(time,sec,ts[i],0.0)>=0.0&&
+            (i+1>=idx.n||timediff(time,sec,ts[i+1],0.0)<0.0)) {
+            return i;
+        }
+        for (i=-1;lo<=hi;) {
+            mid=(lo+hi)>>>1;
+            if (timediff(time,sec,ts[mid],0.0)>=0.0) {i=mid; lo=mid+1;} else hi=mid-1;
+        }
+        if (i>=0) idx.hit=i;
+        return i;
+    }
     /* gpstime to utc --------------------------------------------------------------
      * convert gpstime to utc considering leap seconds
      * args   : gtime_t t        I   time expressed in gpstime
@@ -1555,14 +3299,16 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t gpst2utc(rtklib.gtime_t t)
     {
-        rtklib.gtime_t tu;
-        int i;
+        return gpst2utc(t,new rtklib.gtime_t());
+    }
 
-        for (i=0;leaps[i][0]>0;i++) {
-            tu=timeadd(t,leaps[i][6]);
-            if (timediff(tu,epoch2time(leaps[i]))>=0.0) return tu;
-        }
-        return t;
+    public static rtklib.gtime_t gpst2utc(rtklib.gtime_t t, rtklib.gtime_t out)
+    {
+        rtklib.leapidx_t idx=leapidx;
+        int i=leapsearch(idx,idx.tgps,t.time,t.sec);
+
+        if (i<0) {out.time=t.time; out.sec=t.sec; return out;}
+        return timeadd(t,idx.ls[i],out);
     }
 
     /* utc to gpstime --------------------------------------------------------------
@@ -1573,12 +3319,16 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static rtklib.gtime_t utc2gpst(rtklib.gtime_t t)
     {
-        int i;
+        return utc2gpst(t,new rtklib.gtime_t());
+    }
 
-        for (i=0;leaps[i][0]>0;i++) {
-            if (timediff(t,epoch2time(leaps[i]))>=0.0) return timeadd(t,-leaps[i][6]);
-        }
-        return t;
+    public static rtklib.gtime_t utc2gpst(rtklib.gtime_t t, rtklib.gtime_t out)
+    {
+        rtklib.leapidx_t idx=leapidx;
+        int i=leapsearch(idx,idx.tutc,t.time,t.sec);
+
+        if (i<0) {out.time=t.time; out.sec=t.sec; return out;}
+        return timeadd(t,-idx.ls[i],out);
     }
 
     /* gpstime to bdt --------------------------------------------------------------
@@ -1604,16 +3354,177 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         return timeadd(t,14.0);
     }
 
+    /* week and tow to times -------------------------------------------------------
+     * convert arrays of week and tow to times by primitive arrays
+     * args   : int    *week     I   week numbers (n)
+     *          double *tow      I   time of weeks (s) (n)
+     *          int    n         I   number of epochs
+     *          long   *time     O   times (s) expressed by standard time_t (n)
+     *          double *sec      O   fractions of second (n)
+     * return : none
+     * notes  : gpst2times(), gst2times() and bdt2times() are batch variants of
+     *          gpst2time(), gst2time() and bdt2time()
+     *-----------------------------------------------------------------------------*/
+    public static void gpst2times(final int[] week, final double[] tow, int n, long[] time,
+                                  double[] sec)
+    {
+        tow2times(GPST0_TIME,week,tow,n,time,sec);
+    }
+
+    public static void gst2times(final int[] week, final double[] tow, int n, long[] time,
+                                 double[] sec)
+    {
+        tow2times(GST0_TIME,week,tow,n,time,sec);
+    }
+
+    public static void bdt2times(final int[] week, final double[] tow, int n, long[] time,
+                                 double[] sec)
+    {
+        tow2times(BDT0_TIME,week,tow,n,time,sec);
+    }
+
+    static void tow2times(long t0, final int[] week, final double[] tow, int n, long[] time,
+                          double[] sec)
+    {
+        double s;
+        int i;
+
+        for (i=0;i<n;i++) {
+            s=tow[i];
+            if (s<-1E9||1E9<s) s=0.0;
+            time[i]=t0+86400L*7*week[i]+(int)s;
+            sec[i]=s-(int)s;
+        }
+    }
+
+    /* times to week and tow -------------------------------------------------------
+     * convert times by primitive arrays to arrays of week and tow
+     * args   : long   *time     I   times (s) expressed by standard time_t (n)
+     *          double *sec      I   fractions of second (n)
+     *          int    n         I   number of epochs
+     *          int    *week     O   week numbers (n) (null: no output)
+     *          double *tow      O   time of weeks (s) (n)
+     * return : none
+     * notes  : time2gpsts(), time2gsts() and time2bdts() are batch variants of
+     *          time2gpst(), time2gst() and time2bdt()
+     *-----------------------------------------------------------------------------*/
+    public static void time2gpsts(final long[] time, final double[] sec, int n, int[] week,
+                                  double[] tow)
+    {
+        times2tow(GPST0_TIME,time,sec,n,week,tow);
+    }
+
+    public static void time2gsts(final long[] time, final double[] sec, int n, int[] week,
+                                 double[] tow)
+    {
+        times2tow(GST0_TIME,time,sec,n,week,tow);
+    }
+
+    public static void time2bdts(final long[] time, final double[] sec, int n, int[] week,
+                                 double[] tow)
+    {
+        times2tow(BDT0_TIME,time,sec,n,week,tow);
+    }
+
+    static void times2tow(long t0, final long[] time, final double[] sec, int n, int[] week,
+                          double[] tow)
+    {
+        long t;
+        int i,w;
+
+        for (i=0;i<n;i++) {
+            t=time[i]-t0;
+            w=(int)(t/(86400*7));
+            if (week!=null) week[i]=w;
+            tow[i]=(double)(t-(long)w*86400*7)+sec[i];
+        }
+    }
+
+    /* add time to times -----------------------------------------------------------
+     * add time to times by primitive arrays
+     * args   : long   *time     IO  times (s) expressed by standard time_t (n)
+     *          double *sec      IO  fractions of second (n)
+     *          int    n         I   number of epochs
+     *          double dt        I   time to add (s)
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void timeadds(long[] time, double[] sec, int n, double dt)
+    {
+        double tt;
+        int i;
+
+        for (i=0;i<n;i++) {
+            sec[i]+=dt; tt=Math.floor(sec[i]); time[i]+=(long)tt; sec[i]-=tt;
+        }
+    }
+
+    /* gpstime to bdt and bdt to gpstime for times ---------------------------------
+     * batch variants of gpst2bdt() and bdt2gpst() by primitive arrays
+     * args   : long   *time     IO  times (s) expressed by standard time_t (n)
+     *          double *sec      IO  fractions of second (n)
+     *          int    n         I   number of epochs
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void gpst2bdts(long[] time, double[] sec, int n)
+    {
+        timeadds(time,sec,n,-14.0);
+    }
+
+    public static void bdt2gpsts(long[] time, double[] sec, int n)
+    {
+        timeadds(time,sec,n,14.0);
+    }
+
+    /* gpstime to utc and utc to gpstime for times ---------------------------------
+     * batch variants of gpst2utc() and utc2gpst() by primitive arrays
+     * args   : long   *time     I   times (s) expressed by standard time_t (n)
+     *          double *sec      I   fractions of second (n)
+     *          int    n         I   number of epochs
+     *          long   *tout     O   converted times (s) (n) (tout==time: in place)
+     *          double *sout     O   converted fractions of second (n)
+     * return : none
+     * notes  : the leap seconds table is fixed during conversion. the interval of
+     *          the previous epoch is examined first, so conversion of times in
+     *          time order does not search the table except across leap seconds
+     *-----------------------------------------------------------------------------*/
+    public static void gpst2utcs(final long[] time, final double[] sec, int n, long[] tout,
+                                 double[] sout)
+    {
+        leapconvs(leapidx,false,time,sec,n,tout,sout);
+    }
+
+    public static void utc2gpsts(final long[] time, final double[] sec, int n, long[] tout,
+                                 double[] sout)
+    {
+        leapconvs(leapidx,true,time,sec,n,tout,sout);
+    }
+
+    static void leapconvs(rtklib.leapidx_t idx, boolean utc, final long[] time,
+                          final double[] sec, int n, long[] tout, double[] sout)
+    {
+        double s,tt;
+        int i,j;
+
+        for (i=0;i<n;i++) {
+            j=leapsearch(idx,utc?idx.tutc:idx.tgps,time[i],sec[i]);
+            if (j<0) {
+                tout[i]=time[i]; sout[i]=sec[i];
+                continue;
+            }
+            s=sec[i]+(utc?-idx.ls[j]:idx.ls[j]);
+            tt=Math.floor(s);
+            tout[i]=time[i]+(long)tt;
+            sout[i]=s-tt;
+        }
+    }
+
     /* time to day and sec -------------------------------------------------------*/
     static double time2sec(rtklib.gtime_t time, rtklib.gtime_t day)
     {
-        double[] ep = new double[6];
-        double sec;
-        time2epoch(time,ep);
-        sec=ep[3]*3600.0+ep[4]*60.0+ep[5];
-        ep[3]=ep[4]=ep[5]=0.0;
-        day=epoch2time(ep);
-        return sec;
+        long sod=Math.floorMod(time.time,86400L);
+
+        day.time=time.time-sod; day.sec=0.0;
+        return (double)sod+time.sec;
     }
 
     /* utc to gmst -----------------------------------------------------------------
@@ -1624,36 +3535,106 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static double utc2gmst(rtklib.gtime_t t, double ut1_utc)
     {
-        final double ep2000[]={2000,1,1,12,0,0};
-        rtklib.gtime_t tut,tut0;
-        double ut,t1,t2,t3,gmst0,gmst;
+        return utc2gmst(t.time,t.sec,ut1_utc);
+    }
+
+    /* utc to gmst by primitive time ---------------------------------------------*/
+    static double utc2gmst(long time, double sec, double ut1_utc)
+    {
+        double tt,ut,t1,t2,t3,gmst0,gmst;
+        long sod;
 
-        tut=timeadd(t,ut1_utc);
-        ut=time2sec(tut,&tut0);
-        t1=timediff(tut0,epoch2time(ep2000))/86400.0/36525.0;
+        sec+=ut1_utc; tt=Math.floor(sec); time+=(long)tt; sec-=tt; /* ut1 */
+        sod=Math.floorMod(time,86400L);
+        ut=(double)sod+sec;
+        t1=(double)(time-sod-J2000_TIME)/86400.0/36525.0;
         t2=t1*t1; t3=t2*t1;
         gmst0=24110.54841+8640184.812866*t1+0.093104*t2-6.2E-6*t3;
         gmst=gmst0+1.002737909350795*ut;
 
-        return Math.fmod(gmst,86400.0)*rtklib.PI/43200.0; /* 0 <= gmst <= 2*PI */
+        return (gmst%86400.0)*rtklib.PI/43200.0; /* 0 <= gmst <= 2*PI */
     }
 
     /* time to string --------------------------------------------------------------
      * convert gtime_t struct to string
      * args   : gtime_t t        I   gtime_t struct
-     *          char   *s        O   string ("yyyy/mm/dd hh:mm:ss.ssss")
+     *          StringBuilder s  IO  string ("yyyy/mm/dd hh:mm:ss.ssss" appended)
      *          int    n         I   number of decimals
-     * return : none
+     * return : s
+     * notes  : no object is created except growing s
      *-----------------------------------------------------------------------------*/
-    public static void time2str(rtklib.gtime_t t, String s, int n)
+    public static StringBuilder time2str(rtklib.gtime_t t, StringBuilder s, int n)
     {
-        double[] ep = new double[6];
+        return time2str(t.time,t.sec,s,n);
+    }
+
+    /* time to string by primitive time ------------------------------------------*/
+    public static StringBuilder time2str(long time, double sec, StringBuilder s, int n)
+    {
+        long f,days,ymd;
+        int sod;
 
         if (n<0) n=0; else if (n>12) n=12;
-        if (1.0-t.sec<0.5/Math.pow(10.0,n)) {t.time++; t.sec=0.0;};
-        time2epoch(t,ep);
-        String.format(s,"%04.0f/%02.0f/%02.0f %02.0f:%02.0f:%0*.*f",ep[0],ep[1],ep[2],
-                ep[3],ep[4],n<=0?2:n+3,n<=0?0:n,ep[5]);
+        f=Math.round(sec*pow10[n]); /* carry or borrow fraction rounded to n */
+        time+=Math.floorDiv(f,pow10[n]); f=Math.floorMod(f,pow10[n]);
+        days=Math.floorDiv(time,86400L); ymd=days2civil(days);
+        sod=(int)(time-days*86400);
+
+        putdigit(s,ymd/10000,4);      s.append('/');
+        putdigit(s,ymd/100%100,2);    s.append('/');
+        putdigit(s,ymd%100,2);        s.append(' ');
+        putdigit(s,sod/3600,2);       s.append(':');
+        putdigit(s,sod%3600/60,2);    s.append(':');
+        putdigit(s,sod%60,2);
+        if (n>0) {s.append('.'); putdigit(s,f,n);}
+        return s;
+    }
+
+    /* time to string in byte buffer -----------------------------------------------
+     * convert gtime_t struct to string in byte buffer (ascii)
+     * args   : gtime_t t        I   gtime_t struct
+     *          byte   *buff     O   buffer ("yyyy/mm/dd hh:mm:ss.ssss")
+     *          int    p         I   output position in buffer
+     *          int    n         I   number of decimals
+     * return : position after string in buffer
+     * notes  : buffer needs 20+n bytes (n>0) or 19 bytes (n<=0) from p
+     *-----------------------------------------------------------------------------*/
+    public static int time2str(rtklib.gtime_t t, byte[] buff, int p, int n)
+    {
+        long time=t.time,f,days,ymd;
+        int sod;
+
+        if (n<0) n=0; else if (n>12) n=12;
+        f=Math.round(t.sec*pow10[n]); /* carry or borrow fraction rounded to n */
+        time+=Math.floorDiv(f,pow10[n]); f=Math.floorMod(f,pow10[n]);
+        days=Math.floorDiv(time,86400L); ymd=days2civil(days);
+        sod=(int)(time-days*86400);
+
+        p=putdigit(buff,p,ymd/10000,4);   buff[p++]='/';
+        p=putdigit(buff,p,ymd/100%100,2); buff[p++]='/';
+        p=putdigit(buff,p,ymd%100,2);     buff[p++]=' ';
+        p=putdigit(buff,p,sod/3600,2);    buff[p++]=':';
+        p=putdigit(buff,p,sod%3600/60,2); buff[p++]=':';
+        p=putdigit(buff,p,sod%60,2);
+        if (n>0) {buff[p++]='.'; p=putdigit(buff,p,f,n);}
+        return p;
+    }
+
+    /* put zero-padded decimal digits --------------------------------------------*/
+    static void putdigit(StringBuilder s, long v, int w)
+    {
+        int i,p=s.length();
+
+        s.setLength(p+w);
+        for (i=w-1;i>=0;i--,v/=10) s.setCharAt(p+i,(char)('0'+v%10));
+    }
+
+    static int putdigit(byte[] buff, int p, long v, int w)
+    {
+        int i;
+
+        for (i=w-1;i>=0;i--,v/=10) buff[p+i]=(byte)('0'+v%10);
+        return p+w;
     }
 
     /* get time string -------------------------------------------------------------
@@ -1661,14 +3642,21 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : gtime_t t        I   gtime_t struct
      *          int    n         I   number of decimals
      * return : time string
-     * notes  : not reentrant, do not use multiple in a function
+     * notes  : use time2str() with a reused buffer to avoid creating string
+     *          a string is created for each call. for trace arguments, check
+     *          gettracelevel() before calling to skip formatting with trace off
      *-----------------------------------------------------------------------------*/
     public static String time_str(rtklib.gtime_t t, int n)
     {
-        static char buff[64];
-        time2str(t,buff,n);
-        return buff;
+        return time2str(t.time,t.sec,new StringBuilder(32),n).toString();
     }
+
+    /* get time string by primitive time -----------------------------------------*/
+    public static String time_str(long time, double sec, int n)
+    {
+        return time2str(time,sec,new StringBuilder(32),n).toString();
+    }
+
     /* time to day of year ---------------------------------------------------------
      * convert time to day of year
      * args   : gtime_t t        I   gtime_t struct
@@ -1676,7 +3664,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static double time2doy(rtklib.gtime_t t)
     {
-        double ep[6];
+        double[] ep = new double[6];
 
         time2epoch(t,ep);
         ep[1]=ep[2]=1.0; ep[3]=ep[4]=ep[5]=0.0;
@@ -1699,10 +3687,9 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : none
      * return : current tick in ms
      *-----------------------------------------------------------------------------*/
-    public static long tickget(void)
+    public static long tickget()
     {
-        return 0;
-
+        return timeref_.src.tick();
     }
     /* sleep ms --------------------------------------------------------------------
      * sleep ms
@@ -1711,7 +3698,8 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *-----------------------------------------------------------------------------*/
     public static void sleepms(int ms)
     {
-
+        if (ms<0) return;
+        timeref_.src.sleep(ms);
     }
 
     /* convert degree to deg-min-sec -----------------------------------------------
@@ -1721,7 +3709,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          int    ndec      I   number of decimals of second
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void deg2dms(double deg, Double[] dms, int ndec)
+    public static void deg2dms(double deg, double[] dms, int ndec)
     {
         double sign=deg<0.0?-1.0:1.0,a=Math.abs(deg);
         double unit=Math.pow(0.1,ndec);
@@ -1744,7 +3732,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * args   : double *dms      I   degree-minute-second {deg,min,sec}
      * return : degree
      *-----------------------------------------------------------------------------*/
-    public static double dms2deg(final Double[] dms)
+    public static double dms2deg(final double[] dms)
     {
         double sign=dms[0]<0.0?-1.0:1.0;
         return sign*(Math.abs(dms[0])+dms[1]/60.0+dms[2]/3600.0);
@@ -1756,23 +3744,71 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *pos      O   geodetic position {lat,lon,h} (rad,m)
      * return : none
      * notes  : WGS84, ellipsoidal height
+     *          closed-form solution by Vermeille (2004). only within about
+     *          a*e^2 (~43 km) of the center of the earth (p+q<=e^4), where the
+     *          solution is not unique, the iterative solution is used
      *-----------------------------------------------------------------------------*/
-    public static void ecef2pos(final Double[] r, Double[] pos)
+    public static void ecef2pos(final double[] r, double[] pos)
+    {
+        ecef2pos(r,0,pos,0);
+    }
+    static void ecef2pos(final double[] r, int i, double[] pos, int j)
+    {
+        final double a2=rtklib.RE_WGS84*rtklib.RE_WGS84;
+        final double e2=rtklib.FE_WGS84*(2.0-rtklib.FE_WGS84),e4=e2*e2;
+        double x=r[i],y=r[i+1],z=r[i+2],r2=x*x+y*y;
+        double p,q,t,u,v,w,k,d,s;
+
+        p=r2/a2;
+        q=(1.0-e2)/a2*z*z;
+        t=(p+q-e4)/6.0;
+        if (t>0.0) {
+            s=e4*p*q/(4.0*t*t*t);
+            u=t*(1.0+(v=Math.cbrt(1.0+s+Math.sqrt(s*(2.0+s))))+1.0/v);
+            v=Math.sqrt(u*u+e4*q);
+            w=e2*(u+v-q)/(2.0*v);
+            k=Math.sqrt(u+v+w*w)-w;
+            d=k*Math.sqrt(r2)/(k+e2);
+            s=Math.sqrt(d*d+z*z);
+            pos[j  ]=2.0*Math.atan(z/(d+s));
+            pos[j+1]=r2>1E-12?Math.atan2(y,x):0.0;
+            pos[j+2]=(k+e2-1.0)/k*s;
+            return;
+        }
+        ecef2pos_iter(x,y,z,pos,j);
+    }
+    /* transform ecef to geodetic postion by iteration ---------------------------*/
+    static void ecef2pos_iter(double x, double y, double z0, double[] pos, int j)
     {
         double e2=rtklib.FE_WGS84*(2.0-rtklib.FE_WGS84);
-        double r2=dot(r,r,2);
+        double r2=x*x+y*y;
         double z,zk,v=rtklib.RE_WGS84;
         double sinp;
 
-        for (z=r[2],zk=0.0;Math.abs(z-zk)>=1E-4;) {
+        /* converged to 1E-9 m (slow near the evolute of the ellipsoid) */
+        for (z=z0,zk=0.0;Math.abs(z-zk)>=1E-9;) {
             zk=z;
             sinp=z/Math.sqrt(r2+z*z);
             v=rtklib.RE_WGS84/Math.sqrt(1.0-e2*sinp*sinp);
-            z=r[2]+v*e2*sinp;
+            z=z0+v*e2*sinp;
         }
-        pos[0]=r2>1E-12?Math.atan(z/Math.sqrt(r2)):(r[2]>0.0?rtklib.PI/2.0:-rtklib.PI/2.0);
-        pos[1]=r2>1E-12?Math.atan2(r[1],r[0]):0.0;
-        pos[2]=Math.sqrt(r2+z*z)-v;
+        pos[j  ]=r2>1E-12?Math.atan(z/Math.sqrt(r2)):(z0>0.0?rtklib.PI/2.0:-rtklib.PI/2.0);
+        pos[j+1]=r2>1E-12?Math.atan2(y,x):0.0;
+        pos[j+2]=Math.sqrt(r2+z*z)-v;
+    }
+    /* transform ecef to geodetic postions -----------------------------------------
+     * transform ecef positions to geodetic positions
+     * args   : double *r        I   ecef positions {x,y,z} (m) (3 x n)
+     *          double *pos      O   geodetic positions {lat,lon,h} (rad,m) (3 x n)
+     *          int    n         I   number of positions
+     * return : none
+     * notes  : same as ecef2pos() for each position
+     *-----------------------------------------------------------------------------*/
+    public static void ecef2poss(final double[] r, double[] pos, int n)
+    {
+        int i;
+
+        for (i=0;i<n*3;i+=3) ecef2pos(r,i,pos,i);
     }
 
     /* transform geodetic to ecef position -----------------------------------------
@@ -1782,14 +3818,31 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : none
      * notes  : WGS84, ellipsoidal height
      *-----------------------------------------------------------------------------*/
-    public static void pos2ecef(final Double[] pos, Double[] r)
+    public static void pos2ecef(final double[] pos, double[] r)
     {
-        double sinp=Math.sin(pos[0]),cosp=Math.cos(pos[0]),sinl=Math.sin(pos[1]),cosl=Math.cos(pos[1]);
+        pos2ecef(pos,0,r,0);
+    }
+    static void pos2ecef(final double[] pos, int i, double[] r, int j)
+    {
+        double sinp=Math.sin(pos[i]),cosp=Math.cos(pos[i]),sinl=Math.sin(pos[i+1]),cosl=Math.cos(pos[i+1]);
         double e2=rtklib.FE_WGS84*(2.0-rtklib.FE_WGS84),v=rtklib.RE_WGS84/Math.sqrt(1.0-e2*sinp*sinp);
 
-        r[0]=(v+pos[2])*cosp*cosl;
-        r[1]=(v+pos[2])*cosp*sinl;
-        r[2]=(v*(1.0-e2)+pos[2])*sinp;
+        r[j  ]=(v+pos[i+2])*cosp*cosl;
+        r[j+1]=(v+pos[i+2])*cosp*sinl;
+        r[j+2]=(v*(1.0-e2)+pos[i+2])*sinp;
+    }
+    /* transform geodetic to ecef positions ----------------------------------------
+     * transform geodetic positions to ecef positions
+     * args   : double *pos      I   geodetic positions {lat,lon,h} (rad,m) (3 x n)
+     *          double *r        O   ecef positions {x,y,z} (m) (3 x n)
+     *          int    n         I   number of positions
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void pos2ecefs(final double[] pos, double[] r, int n)
+    {
+        int i;
+
+        for (i=0;i<n*3;i+=3) pos2ecef(pos,i,r,i);
     }
 
     /* ecef to local coordinate transfromation matrix ------------------------------
@@ -1799,7 +3852,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : none
      * notes  : matirix stored by column-major order (fortran convention)
      *-----------------------------------------------------------------------------*/
-    public static void xyz2enu(final Double[] pos, Double[] E)
+    public static void xyz2enu(final double[] pos, double[] E)
     {
         double sinp=Math.sin(pos[0]),cosp=Math.cos(pos[0]),sinl=Math.sin(pos[1]),cosl=Math.cos(pos[1]);
 
@@ -1815,12 +3868,14 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *e        O   vector in local tangental coordinate {e,n,u}
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void ecef2enu(final Double[] pos, final Double[] r, Double[] e)
+    public static void ecef2enu(final double[] pos, final double[] r, double[] e)
     {
-        Double[] E = new Double[9];
+        double sinp=Math.sin(pos[0]),cosp=Math.cos(pos[0]),sinl=Math.sin(pos[1]),cosl=Math.cos(pos[1]);
+        double t=cosl*r[0]+sinl*r[1];
 
-        xyz2enu(pos,E);
-        matmul("NN",3,1,3,1.0,E,r,0.0,e);
+        e[0]=-sinl*r[0]+cosl*r[1];
+        e[1]=-sinp*t+cosp*r[2];
+        e[2]= cosp*t+sinp*r[2];
     }
 
     /* transform local vector to ecef coordinate -----------------------------------
@@ -1830,12 +3885,14 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *r        O   vector in ecef coordinate {x,y,z}
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void enu2ecef(final Double[] pos, final Double[] e, Double[] r)
+    public static void enu2ecef(final double[] pos, final double[] e, double[] r)
     {
-        Double[] E = new Double[9];
+        double sinp=Math.sin(pos[0]),cosp=Math.cos(pos[0]),sinl=Math.sin(pos[1]),cosl=Math.cos(pos[1]);
+        double t=-sinp*e[1]+cosp*e[2],e0=e[0];
 
-        xyz2enu(pos,E);
-        matmul("TN",3,1,3,1.0,E,e,0.0,r);
+        r[0]=-sinl*e0+cosl*t;
+        r[1]= cosl*e0+sinl*t;
+        r[2]= cosp*e[1]+sinp*e[2];
     }
 
     /* transform covariance to local tangental coordinate --------------------------
@@ -1845,14 +3902,12 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *Q        O   covariance in local tangental coordinate
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void covenu(final Double[] pos, final Double[] P, Double[] Q)
+    public static void covenu(final double[] pos, final double[] P, double[] Q)
     {
-        Double[] E = new Double[9];
-        Double[] EP = new Double[9];
+        double[] E = new double[9];
 
         xyz2enu(pos,E);
-        matmul("NN",3,3,3,1.0,E,P,0.0,EP);
-        matmul("NT",3,3,3,1.0,EP,E,0.0,Q);
+        matcong3(E,P,Q);
     }
 
     /* transform local enu coordinate covariance to xyz-ecef -----------------------
@@ -1862,34 +3917,145 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *P        O   covariance in xyz-ecef coordinate
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void covecef(final Double[] pos, final Double[] Q, Double[] P)
+    public static void covecef(final double[] pos, final double[] Q, double[] P)
     {
-        Double[] E = new Double[9];
-        Double[] EQ = new Double[9];
+        double[] E = new double[9];
 
         xyz2enu(pos,E);
-        matmul("TN",3,3,3,1.0,E,Q,0.0,EQ);
-        matmul("NN",3,3,3,1.0,EQ,E,0.0,P);
+        matcong3t(E,Q,P);
+    }
+
+    /* initialize local coordinate frame -------------------------------------------
+     * initialize local tangental coordinate frame at origin
+     * args   : locframe_t *f    O   local coordinate frame
+     *          double *pos      I   geodetic position of origin {lat,lon,h} (rad,m)
+     * return : none
+     * notes  : the transformation matrix is computed once for the origin and used
+     *          by loc*() functions for a fixed origin as base station or static
+     *          rover instead of ecef2enu(),enu2ecef(),covenu(),covecef() and
+     *          satazel()
+     *-----------------------------------------------------------------------------*/
+    public static void initlocframe(rtklib.locframe_t f, final double[] pos)
+    {
+        matcpy(f.pos,pos,3,1);
+        pos2ecef(pos,f.rr);
+        xyz2enu(pos,f.E);
+    }
+    /* transform vector/covariance by local coordinate frame -----------------------
+     * transform ecef vector to local tangental coordinate and vice versa, and
+     * ecef position to local tangental coordinate relative to origin
+     * args   : locframe_t *f    I   local coordinate frame
+     *          double *r        I   vector in ecef coordinate {x,y,z} or
+     *                               ecef position {x,y,z} (m) (locpos2enu())
+     *          double *e        IO  vector in local tangental coordinate {e,n,u}
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void locecef2enu(final rtklib.locframe_t f, final double[] r, double[] e)
+    {
+        final double[] E=f.E;
+        double r0=r[0],r1=r[1],r2=r[2];
+
+        e[0]=E[0]*r0+E[3]*r1+E[6]*r2;
+        e[1]=E[1]*r0+E[4]*r1+E[7]*r2;
+        e[2]=E[2]*r0+E[5]*r1+E[8]*r2;
+    }
+    public static void locenu2ecef(final rtklib.locframe_t f, final double[] e, double[] r)
+    {
+        final double[] E=f.E;
+        double e0=e[0],e1=e[1],e2=e[2];
+
+        r[0]=E[0]*e0+E[1]*e1+E[2]*e2;
+        r[1]=E[3]*e0+E[4]*e1+E[5]*e2;
+        r[2]=E[6]*e0+E[7]*e1+E[8]*e2;
+    }
+    public static void locpos2enu(final rtklib.locframe_t f, final double[] r, double[] e)
+    {
+        locpos2enus(f,r,e,1);
+    }
+    /* transform ecef positions to local tangental coordinate ----------------------
+     * transform ecef positions to local tangental coordinate relative to origin
+     * args   : locframe_t *f    I   local coordinate frame
+     *          double *r        I   ecef positions {x,y,z} (m) (3 x n)
+     *          double *e        O   positions in local coordinate {e,n,u} (m) (3 x n)
+     *          int    n         I   number of positions
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void locpos2enus(final rtklib.locframe_t f, final double[] r, double[] e,
+                                   int n)
+    {
+        final double[] E=f.E;
+        double d0,d1,d2;
+        int i;
+
+        for (i=0;i<n*3;i+=3) {
+            d0=r[i]-f.rr[0]; d1=r[i+1]-f.rr[1]; d2=r[i+2]-f.rr[2];
+            e[i  ]=E[0]*d0+E[3]*d1+E[6]*d2;
+            e[i+1]=E[1]*d0+E[4]*d1+E[7]*d2;
+            e[i+2]=E[2]*d0+E[5]*d1+E[8]*d2;
+        }
+    }
+    /* transform covariance by local coordinate frame ------------------------------
+     * transform ecef covariance to local tangental coordinate (loccovenu()) and
+     * vice versa (loccovecef())
+     * args   : locframe_t *f    I   local coordinate frame
+     *          double *P        I   covariance in ecef coordinate
+     *          double *Q        O   covariance in local tangental coordinate
+     * return : none
+     *-----------------------------------------------------------------------------*/
+    public static void loccovenu(final rtklib.locframe_t f, final double[] P, double[] Q)
+    {
+        matcong3(f.E,P,Q);
+    }
+    public static void loccovecef(final rtklib.locframe_t f, final double[] Q, double[] P)
+    {
+        matcong3t(f.E,Q,P);
+    }
+    /* satellite azimuth/elevation angle by local coordinate frame -----------------
+     * compute satellite azimuth/elevation angle at origin of local coordinate frame
+     * args   : locframe_t *f    I   local coordinate frame
+     *          double *e        I   receiver-to-satellilte unit vevtor (ecef)
+     *          double *azel     IO  azimuth/elevation {az,el} (rad) (null: no output)
+     * return : elevation angle (rad)
+     * notes  : same as satazel() with f.pos
+     *-----------------------------------------------------------------------------*/
+    public static double locsatazel(final rtklib.locframe_t f, final double[] e,
+                                    double[] azel)
+    {
+        final double[] E=f.E;
+        double az=0.0,el=rtklib.PI/2.0,ee,en;
+
+        if (f.pos[2]>-rtklib.RE_WGS84) {
+            ee=E[0]*e[0]+E[3]*e[1]+E[6]*e[2];
+            en=E[1]*e[0]+E[4]*e[1]+E[7]*e[2];
+            az=ee*ee+en*en<1E-12?0.0:Math.atan2(ee,en);
+            if (az<0.0) az+=2*rtklib.PI;
+            el=Math.asin(E[2]*e[0]+E[5]*e[1]+E[8]*e[2]);
+        }
+        if (azel!=null) {azel[0]=az; azel[1]=el;}
+        return el;
     }
 
     /* coordinate rotation matrix ------------------------------------------------*/
-#define Rx(t,X) do { \
-        (X)[0]=1.0; (X)[1]=(X)[2]=(X)[3]=(X)[6]=0.0; \
-        (X)[4]=(X)[8]=Math.cos(t); (X)[7]=Math.sin(t); (X)[5]=-(X)[7]; \
-    } while (0)
+    static void Rx(double t, double[] X)
+    {
+        X[0]=1.0; X[1]=X[2]=X[3]=X[6]=0.0;
+        X[4]=X[8]=Math.cos(t); X[7]=Math.sin(t); X[5]=-X[7];
+    }
 
-            #define Ry(t,X) do { \
-        (X)[4]=1.0; (X)[1]=(X)[3]=(X)[5]=(X)[7]=0.0; \
-        (X)[0]=(X)[8]=Math.cos(t); (X)[2]=Math.sin(t); (X)[6]=-(X)[2]; \
-    } while (0)
+    static void Ry(double t, double[] X)
+    {
+        X[4]=1.0; X[1]=X[3]=X[5]=X[7]=0.0;
+        X[0]=X[8]=Math.cos(t); X[2]=Math.sin(t); X[6]=-X[2];
+    }
 
-            #define Rz(t,X) do { \
-        (X)[8]=1.0; (X)[2]=(X)[5]=(X)[6]=(X)[7]=0.0; \
-        (X)[0]=(X)[4]=Math.cos(t); (X)[3]=Math.sin(t); (X)[1]=-(X)[3]; \
-    } while (0)
+    static void Rz(double t, double[] X)
+    {
+        X[8]=1.0; X[2]=X[5]=X[6]=X[7]=0.0;
+        X[0]=X[4]=Math.cos(t); X[3]=Math.sin(t); X[1]=-X[3];
+    }
 
     /* astronomical arguments: f={l,l',F,D,OMG} (rad) ----------------------------*/
-    static void ast_args(double t, Double[] f)
+    static void ast_args(double t, double[] f)
     {
         final double[][] fc=new double[][]{ /* coefficients for iau 1980 nutation */
             { 134.96340251, 1717915923.2178,  31.8792,  0.051635, -0.00024470},
@@ -1907,12 +4073,12 @@ final String[] formatstrs = new String[]{    /* stream format strings */
             f[i]=fc[i][0]*3600.0;
             for (j=0;j<4;j++)
                 f[i]+=fc[i][j+1]*tt[j];
-            f[i]=fmod(f[i]*rtklib.AS2R,2.0*rtklib.PI);
+            f[i]=f[i]*rtklib.AS2R%(2.0*rtklib.PI);
         }
     }
 
     /* iau 1980 nutation ---------------------------------------------------------*/
-    static void nut_iau1980(double t, final Double[] f, Double[] dpsi, Double[] deps)
+    static void nut_iau1980(double t, final double[] f, double[] dpsi, double[] deps)
     {
         // Sizes nut[106][10]
         final double[][] nut = {
@@ -2032,58 +4198,41 @@ final String[] formatstrs = new String[]{    /* stream format strings */
             ang=0.0;
             for (j=0;j<5;j++)
                 ang+=nut[i][j]*f[j];
-            dpsi[i]+=(nut[i][6]+nut[i][7]*t)*Math.sin(ang);
-            deps[i]+=(nut[i][8]+nut[i][9]*t)*Math.cos(ang);
+            dpsi[0]+=(nut[i][6]+nut[i][7]*t)*Math.sin(ang);
+            deps[0]+=(nut[i][8]+nut[i][9]*t)*Math.cos(ang);
         }
 
-        dpsi[106]*=1E-4*rtklib.AS2R; /* 0.1 mas . rad */
-        deps[106]*=1E-4*rtklib.AS2R;
+        dpsi[0]*=1E-4*rtklib.AS2R; /* 0.1 mas . rad */
+        deps[0]*=1E-4*rtklib.AS2R;
     }
 
-    /* eci to ecef transformation matrix -------------------------------------------
-     * compute eci to ecef transformation matrix
-     * args   : gtime_t tutc     I   time in utc
-     *          double *erpv     I   erp values {xp,yp,ut1_utc,lod} (rad,rad,s,s/d)
-     *          double *U        O   eci to ecef transformation matrix (3 x 3)
-     *          double *gmst     IO  greenwich mean sidereal time (rad)
-     *                               (null: no output)
-     * return : none
-     * note   : see ref [3] chap 5
-     *          not thread-safe
-     *-----------------------------------------------------------------------------*/
-    public static void eci2ecef(rtklib.gtime_t tutc, final double[] erpv, Double U, Double gmst)
-    {
-        final double ep2000[]={2000,1,1,12,0,0};
-        rtklib.gtime_t tutc_;
-        double[] U_ = new double[9];
-        double gmst_;
-        rtklib.gtime_t tgps;
-        double eps,ze,th,z,t,t2,t3,dpsi,deps,gast;
-        double[] f = new double[5];
-        double[] R1 = new double[9];
-        double[] R2 = new double[9];
-        double[] R3 = new double[9];
-        double[] R = new double[9];
-        double[] W = new double[9];
-        double[] N = new double[9];
-        double[] P = new double[9];
-        double[] NP = new double[9];
-        int i;
+    /* eci to ecef transformation cache -----------------------------------------*/
+    static final double ECINODE  = 600.0;  /* interval of precession/nutation nodes (s) */
+    static final int    NECINODE = 1024;   /* number of cached nodes (power of 2) */
+    static final long   J2000_TIME = 946728000L; /* 2000/1/1 12:00:00 (time_t) */
 
-        trace(4,"eci2ecef: tutc=%s\n",time_str(tutc,3));
+    static final AtomicReferenceArray<rtklib.ecinode_t> ecinode_ =
+        new AtomicReferenceArray<rtklib.ecinode_t>(NECINODE);
 
-        if (Math.abs(timediff(tutc,tutc_))<0.01) { /* read cache */
-            for (i=0;i<9;i++)
-                U[i]=U_[i];
-            if (gmst)
-                *gmst=gmst_;
-            return;
-        }
-        tutc_=tutc;
+    /* eci to ecef transformation workspace by thread {NP,R1,R2,R3,W,R} ----------*/
+    static final ThreadLocal<double[][]> eciws=
+        ThreadLocal.withInitial(() -> new double[6][9]);
+
+    /* precession/nutation node --------------------------------------------------*/
+    static rtklib.ecinode_t ecinode(long k)
+    {
+        rtklib.ecinode_t node=ecinode_.get((int)(k&(NECINODE-1)));
+        double eps,ze,th,z,t,t2,t3;
+        double[] dpsi,deps,f,R1,R2,R3,R,N,P;
+
+        if (node!=null&&node.k==k) return node;
 
-        /* terrestrial time */
-        tgps=utc2gpst(tutc_);
-        t=(timediff(tgps,epoch2time(ep2000))+19.0+32.184)/86400.0/36525.0;
+        dpsi=new double[1]; deps=new double[1]; f=new double[5];
+        R1=new double[9]; R2=new double[9]; R3=new double[9];
+        R=new double[9]; N=new double[9]; P=new double[9];
+
+        /* terrestrial time (julian century from J2000) */
+        t=k*ECINODE/86400.0/36525.0;
         t2=t*t; t3=t2*t;
 
         /* astronomical arguments */
@@ -2094,36 +4243,85 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         th=(2004.3109*t-0.42665*t2-0.041833*t3)*rtklib.AS2R;
         z =(2306.2181*t+1.09468*t2+0.018203*t3)*rtklib.AS2R;
         eps=(84381.448-46.8150*t-0.00059*t2+0.001813*t3)*rtklib.AS2R;
-        Rz(-z,R1); Ry(th,rtklib.R2); Rz(-ze,rtklib.R3);
-        matmul("NN",3,3,3,1.0,R1,R2,0.0,R);
-        matmul("NN",3,3,3,1.0,R, R3,0.0,P); /* P=Rz(-z)*Ry(th)*Rz(-ze) */
+        Rz(-z,R1); Ry(th,R2); Rz(-ze,R3);
+        matmul3(R1,R2,R);
+        matmul3(R, R3,P); /* P=Rz(-z)*Ry(th)*Rz(-ze) */
 
         /* iau 1980 nutation */
-        nut_iau1980(t,f,&dpsi,&deps);
-        Rx(-eps-deps,R1); Rz(-dpsi,R2); Rx(eps,R3);
-        matmul("NN",3,3,3,1.0,R1,R2,0.0,R);
-        matmul("NN",3,3,3,1.0,R ,R3,0.0,N); /* N=Rx(-eps)*Rz(-dspi)*Rx(eps) */
+        nut_iau1980(t,f,dpsi,deps);
+        Rx(-eps-deps[0],R1); Rz(-dpsi[0],R2); Rx(eps,R3);
+        matmul3(R1,R2,R);
+        matmul3(R ,R3,N); /* N=Rx(-eps)*Rz(-dspi)*Rx(eps) */
+
+        node=new rtklib.ecinode_t();
+        node.k=k;
+        matmul3(N,P,node.NP);
+
+        /* equation of equinoxes */
+        node.eqeq=dpsi[0]*Math.cos(eps);
+        node.eqeq+=(0.00264*Math.sin(f[4])+0.000063*Math.sin(2.0*f[4]))*rtklib.AS2R;
+
+        ecinode_.set((int)(k&(NECINODE-1)),node);
+        return node;
+    }
+
+    /* eci to ecef transformation matrix -------------------------------------------
+     * compute eci to ecef transformation matrix
+     * args   : gtime_t tutc     I   time in utc
+     *          double *erpv     I   erp values {xp,yp,ut1_utc,lod} (rad,rad,s,s/d)
+     *          double *U        O   eci to ecef transformation matrix (3 x 3)
+     *          double *gmst     IO  greenwich mean sidereal time (rad)
+     *                               (null: no output)
+     * return : none
+     * note   : see ref [3] chap 5
+     *          precession, nutation and equation of equinoxes are computed at
+     *          nodes of ECINODE interval and linearly interpolated (error
+     *          <1E-11 rad). the nodes are cached in a bounded table shared by
+     *          threads. earth rotation and polar motion are computed exactly.
+     *          no object is created except for new nodes
+     *-----------------------------------------------------------------------------*/
+    public static void eci2ecef(rtklib.gtime_t tutc, final double[] erpv, double[] U, double[] gmst)
+    {
+        rtklib.leapidx_t idx=leapidx;
+        rtklib.ecinode_t n0,n1;
+        double tt,a,gmst_,gast;
+        double[][] ws=eciws.get();
+        double[] NP=ws[0],R1=ws[1],R2=ws[2],R3=ws[3],W=ws[4],R=ws[5];
+        long k;
+        int i;
+
+        if (gettracelevel()>=4) {
+            trace(4,"eci2ecef: tutc=%s\n",time_str(tutc,3));
+        }
+        /* terrestrial time (s from J2000) (tt=gpst+19+32.184) */
+        i=leapsearch(idx,idx.tutc,tutc.time,tutc.sec);
+        tt=(tutc.time-J2000_TIME)+tutc.sec-(i<0?0.0:idx.ls[i])+19.0+32.184;
+
+        /* interpolate precession/nutation between nodes */
+        k=(long)Math.floor(tt/ECINODE);
+        a=tt/ECINODE-k;
+        n0=ecinode(k);
+        n1=ecinode(k+1);
+        for (i=0;i<9;i++) NP[i]=n0.NP[i]+(n1.NP[i]-n0.NP[i])*a;
 
         /* greenwich aparent sidereal time (rad) */
-        gmst_=utc2gmst(tutc_,erpv[2]);
-        gast=gmst_+dpsi*Math.cos(eps);
-        gast+=(0.00264*Math.sin(f[4])+0.000063*Math.sin(2.0*f[4]))*AS2R;
+        gmst_=utc2gmst(tutc.time,tutc.sec,erpv[2]);
+        gast=gmst_+n0.eqeq+(n1.eqeq-n0.eqeq)*a;
 
         /* eci to ecef transformation matrix */
         Ry(-erpv[0],R1); Rx(-erpv[1],R2); Rz(gast,R3);
-        matmul("NN",3,3,3,1.0,R1,R2,0.0,W );
-        matmul("NN",3,3,3,1.0,W ,R3,0.0,R ); /* W=Ry(-xp)*Rx(-yp) */
-        matmul("NN",3,3,3,1.0,N ,P ,0.0,NP);
-        matmul("NN",3,3,3,1.0,R ,NP,0.0,U_); /* U=W*Rz(gast)*N*P */
+        matmul3(R1,R2,W );
+        matmul3(W ,R3,R ); /* W=Ry(-xp)*Rx(-yp) */
+        matmul3(R ,NP,U ); /* U=W*Rz(gast)*N*P */
 
-        for (i=0;i<9;i++) U[i]=U_[i];
-        if (gmst) *gmst=gmst_;
+        if (gmst!=null) gmst[0]=gmst_;
 
-        trace(5,"gmst=%.12f gast=%.12f\n",gmst_,gast);
-        trace(5,"P=\n"); tracemat(5,P,3,3,15,12);
-        trace(5,"N=\n"); tracemat(5,N,3,3,15,12);
-        trace(5,"W=\n"); tracemat(5,W,3,3,15,12);
-        trace(5,"U=\n"); tracemat(5,U,3,3,15,12);
+        if (gettracelevel()>=5) {
+            trace(5,"gmst=%.12f gast=%.12f\n",gmst_,gast);
+            trace(5,"NP=\n"); tracemat(5,NP,3,3,15,12);
+            trace(5,"W=\n"); tracemat(5,W,3,3,15,12);
+            trace(5,"U=\n"); tracemat(5,U,3,3,15,12);
+        }
     }
 
     /* decode antenna parameter field --------------------------------------------*/
@@ -2756,7 +4954,8 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         rtklib.geph_t geph0={0};
         char buff[4096],*p;
         long toe_time,tof_time,toc_time,ttr_time;
-        int i,sat,prn;
+        int i,sat;
+        int[] prn=new int[1];
 
         trace(3,"loadnav: file=%s\n",file);
 
@@ -2776,21 +4975,21 @@ final String[] formatstrs = new String[]{    /* stream format strings */
             }
             if ((p=strchr(buff,','))) *p='\0'; else continue;
             if (!(sat=satid2no(buff))) continue;
-            if (satsys(sat,&prn)==rtklib.SYS_GLO) {
-                nav.geph[prn-1]=geph0;
-                nav.geph[prn-1].sat=sat;
+            if (satsys(sat,prn)==rtklib.SYS_GLO) {
+                nav.geph[prn[0]-1]=geph0;
+                nav.geph[prn[0]-1].sat=sat;
                 toe_time=tof_time=0;
                 sscanf(p+1,"%d,%d,%d,%d,%d,%ld,%ld,%lf,%lf,%lf,%lf,%lf,%lf,%lf,%lf,"
                         "%lf,%lf,%lf,%lf",
-                        &nav.geph[prn-1].iode,&nav.geph[prn-1].frq,&nav.geph[prn-1].svh,
-                   &nav.geph[prn-1].sva,&nav.geph[prn-1].age,
+                        &nav.geph[prn[0]-1].iode,&nav.geph[prn[0]-1].frq,&nav.geph[prn[0]-1].svh,
+                   &nav.geph[prn[0]-1].sva,&nav.geph[prn[0]-1].age,
                    &toe_time,&tof_time,
-                   &nav.geph[prn-1].pos[0],&nav.geph[prn-1].pos[1],&nav.geph[prn-1].pos[2],
-                   &nav.geph[prn-1].vel[0],&nav.geph[prn-1].vel[1],&nav.geph[prn-1].vel[2],
-                   &nav.geph[prn-1].acc[0],&nav.geph[prn-1].acc[1],&nav.geph[prn-1].acc[2],
-                   &nav.geph[prn-1].taun  ,&nav.geph[prn-1].gamn  ,&nav.geph[prn-1].dtaun);
-                nav.geph[prn-1].toe.time=toe_time;
-                nav.geph[prn-1].tof.time=tof_time;
+                   &nav.geph[prn[0]-1].pos[0],&nav.geph[prn[0]-1].pos[1],&nav.geph[prn[0]-1].pos[2],
+                   &nav.geph[prn[0]-1].vel[0],&nav.geph[prn[0]-1].vel[1],&nav.geph[prn[0]-1].vel[2],
+                   &nav.geph[prn[0]-1].acc[0],&nav.geph[prn[0]-1].acc[1],&nav.geph[prn[0]-1].acc[2],
+                   &nav.geph[prn[0]-1].taun  ,&nav.geph[prn[0]-1].gamn  ,&nav.geph[prn[0]-1].dtaun);
+                nav.geph[prn[0]-1].toe.time=toe_time;
+                nav.geph[prn[0]-1].tof.time=tof_time;
             }
         else {
                 nav.eph[sat-1]=eph0;
@@ -2821,7 +5020,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     {
         String fp = new String();
         int i;
-        char id[32];
+        String id;
 
         trace(3,"savenav: file=%s\n",file);
 
@@ -2829,7 +5028,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
 
         for (i=0;i<rtklib.MAXSAT;i++) {
             if (nav.eph[i].ttr.time==0) continue;
-            satno2id(nav.eph.get(i).sat,id);
+            id=satno2id(nav.eph.get(i).sat);
             String.format(fp,"%s,%d,%d,%d,%d,%d,%d,%d,%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,"
                     "%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,"
                     "%.14E,%.14E,%.14E,%.14E,%.14E,%d,%d\n",
@@ -2846,7 +5045,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         }
         for (i=0;i<rtklib.MAXPRNGLO;i++) {
             if (nav.geph[i].tof.time==0) continue;
-            satno2id(nav.geph[i].sat,id);
+            id=satno2id(nav.geph[i].sat);
             fprintf(fp,"%s,%d,%d,%d,%d,%d,%d,%d,%.14E,%.14E,%.14E,%.14E,%.14E,%.14E,"
                     "%.14E,%.14E,%.14E,%.14E,%.14E,%.14E\n",
                     id,nav.geph[i].iode,nav.geph[i].frq,nav.geph[i].svh,
@@ -2898,11 +5097,27 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         if (opt&0x80) {free(nav.fcb ); nav.fcb =null; nav.nf=nav.nfmax=0;}
     }
     /* debug trace functions -----------------------------------------------------*/
+    static volatile int level_trace=0; /* level of trace */
+
+    public static void tracelevel(int level)
+    {
+        level_trace=level;
+    }
+    /* get trace level -------------------------------------------------------------
+     * get level of trace set by tracelevel()
+     * args   : none
+     * return : level of trace (0:no trace)
+     * notes  : used to skip formatting of trace arguments when the level of the
+     *          message is over the trace level
+     *-----------------------------------------------------------------------------*/
+    public static int gettracelevel()
+    {
+        return level_trace;
+    }
 #ifdef TRACE
 
     static File *fp_trace=null;     /* file pointer of trace */
     static char file_trace[1024];   /* trace file */
-    static int level_trace=0;       /* level of trace */
     static unsigned int tick_trace=0; /* tick time at traceopen (ms) */
     static gtime_t time_trace={0};  /* time at traceopen */
     static lock_t lock_trace;       /* lock for trace */
@@ -2950,10 +5165,6 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         fp_trace=null;
         file_trace[0]='\0';
     }
-    public static void tracelevel(int level)
-    {
-        level_trace=level;
-    }
     public static void trace(int level, final char *format, ...)
     {
         va_list ap;
@@ -2985,13 +5196,14 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     }
     public static void traceobs(int level, final obsd_t *obs, int n)
     {
-        char str[64],id[16];
+        char str[64];
+        String id;
         int i;
 
         if (!fp_trace||level>level_trace) return;
         for (i=0;i<n;i++) {
             time2str(obs[i].time,str,3);
-            satno2id(obs[i].sat,id);
+            id=satno2id(obs[i].sat);
             fprintf(fp_trace," (%2d) %s %-3s rcv%d %13.3f %13.3f %13.3f %13.3f %d %d %d %d %3.1f %3.1f\n",
                     i+1,str,id,obs[i].rcv,obs[i].L[0],obs[i].L[1],obs[i].P[0],
                     obs[i].P[1],obs[i].LLI[0],obs[i].LLI[1],obs[i].code[0],
@@ -3001,14 +5213,15 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     }
     public static void tracenav(int level, final nav_t *nav)
     {
-        char s1[64],s2[64],id[16];
+        char s1[64],s2[64];
+        String id;
         int i;
 
         if (!fp_trace||level>level_trace) return;
         for (i=0;i<nav.n;i++) {
             time2str(nav.eph[i].toe,s1,0);
             time2str(nav.eph[i].ttr,s2,0);
-            satno2id(nav.eph[i].sat,id);
+            id=satno2id(nav.eph[i].sat);
             fprintf(fp_trace,"(%3d) %-3s : %s %s %3d %3d %02x\n",i+1,
                     id,s1,s2,nav.eph[i].iode,nav.eph[i].iodc,nav.eph[i].svh);
         }
@@ -3021,35 +5234,38 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     }
     public static void tracegnav(int level, final nav_t *nav)
     {
-        char s1[64],s2[64],id[16];
+        char s1[64],s2[64];
+        String id;
         int i;
 
         if (!fp_trace||level>level_trace) return;
         for (i=0;i<nav.ng;i++) {
             time2str(nav.geph[i].toe,s1,0);
             time2str(nav.geph[i].tof,s2,0);
-            satno2id(nav.geph[i].sat,id);
+            id=satno2id(nav.geph[i].sat);
             fprintf(fp_trace,"(%3d) %-3s : %s %s %2d %2d %8.3f\n",i+1,
                     id,s1,s2,nav.geph[i].frq,nav.geph[i].svh,nav.geph[i].taun*1E6);
         }
     }
     public static void tracehnav(int level, final nav_t *nav)
     {
-        char s1[64],s2[64],id[16];
+        char s1[64],s2[64];
+        String id;
         int i;
 
         if (!fp_trace||level>level_trace) return;
         for (i=0;i<nav.ns;i++) {
             time2str(nav.seph[i].t0,s1,0);
             time2str(nav.seph[i].tof,s2,0);
-            satno2id(nav.seph[i].sat,id);
+            id=satno2id(nav.seph[i].sat);
             fprintf(fp_trace,"(%3d) %-3s : %s %s %2d %2d\n",i+1,
                     id,s1,s2,nav.seph[i].svh,nav.seph[i].sva);
         }
     }
     public static void tracepeph(int level, final nav_t *nav)
     {
-        char s[64],id[16];
+        char s[64];
+        String id;
         int i,j;
 
         if (!fp_trace||level>level_trace) return;
@@ -3057,7 +5273,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         for (i=0;i<nav.ne;i++) {
             time2str(nav.peph[i].time,s,0);
             for (j=0;j<rtklib.MAXSAT;j++) {
-                satno2id(j+1,id);
+                id=satno2id(j+1);
                 fprintf(fp_trace,"%-3s %d %-3s %13.3f %13.3f %13.3f %13.3f %6.3f %6.3f %6.3f %6.3f\n",
                         s,nav.peph[i].index,id,
                         nav.peph[i].pos[j][0],nav.peph[i].pos[j][1],
@@ -3069,7 +5285,8 @@ final String[] formatstrs = new String[]{    /* stream format strings */
     }
     public static void tracepclk(int level, final nav_t *nav)
     {
-        char s[64],id[16];
+        char s[64];
+        String id;
         int i,j;
 
         if (!fp_trace||level>level_trace) return;
@@ -3077,7 +5294,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         for (i=0;i<nav.nc;i++) {
             time2str(nav.pclk[i].time,s,0);
             for (j=0;j<rtklib.MAXSAT;j++) {
-                satno2id(j+1,id);
+                id=satno2id(j+1);
                 fprintf(fp_trace,"%-3s %d %-3s %13.3f %6.3f\n",
                         s,nav.pclk[i].index,id,
                         nav.pclk[i].clk[j][0]*1E9,nav.pclk[i].std[j][0]*1E9);
@@ -3094,7 +5311,6 @@ final String[] formatstrs = new String[]{    /* stream format strings */
 #else
     public static void traceopen(final char *file) {}
     public static void traceclose(void) {}
-    public static void tracelevel(int level) {}
     public static void trace   (int level, final char *format, ...) {}
     public static void tracet  (int level, final char *format, ...) {}
     public static void tracemat(int level, final double *A, int n, int m, int p, int q) {}
@@ -3406,7 +5622,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * return : geometric distance (m) (0>:error/no satellite position)
      * notes  : distance includes sagnac effect correction
      *-----------------------------------------------------------------------------*/
-    public static double geodist(final double *rs, final double *rr, double *e)
+    public static double geodist(final double[] rs, final double[] rr, double[] e)
     {
         double r;
         int i;
@@ -3425,17 +5641,18 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *                               (0.0<=azel[0]<2*pi,-pi/2<=azel[1]<=pi/2)
      * return : elevation angle (rad)
      *-----------------------------------------------------------------------------*/
-    public static double satazel(final double *pos, final double *e, double *azel)
+    public static double satazel(final double[] pos, final double[] e, double[] azel)
     {
-        double az=0.0,el=rtklib.PI/2.0,enu[3];
+        double az=0.0,el=rtklib.PI/2.0;
+        double[] enu = new double[3];
 
         if (pos[2]>-rtklib.RE_WGS84) {
             ecef2enu(pos,e,enu);
-            az=dot(enu,enu,2)<1E-12?0.0:atan2(enu[0],enu[1]);
-            if (az<0.0) az+=2*PI;
-            el=asin(enu[2]);
+            az=dot(enu,enu,2)<1E-12?0.0:Math.atan2(enu[0],enu[1]);
+            if (az<0.0) az+=2*rtklib.PI;
+            el=Math.asin(enu[2]);
         }
-        if (azel) {azel[0]=az; azel[1]=el;}
+        if (azel!=null) {azel[0]=az; azel[1]=el;}
         return el;
     }
     /* compute dops ----------------------------------------------------------------
@@ -3448,9 +5665,10 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      * notes  : dop[0]-[3] return 0 in case of dop computation error
      *-----------------------------------------------------------------------------*/
 
-    public static void dops(int ns, final double *azel, double elmin, double *dop)
+    public static void dops(int ns, final double[] azel, double elmin, double[] dop)
     {
-        double H[4*rtklib.MAXSAT],Q[16],cosel,sinel;
+        double[] Q = new double[16];
+        double cosel,sinel,h0,h1,h2;
         int i,n;
 
         for (i=0;i<4;i++) dop[i]=0.0;
@@ -3458,19 +5676,24 @@ final String[] formatstrs = new String[]{    /* stream format strings */
             if (azel[1+i*2]<elmin||azel[1+i*2]<=0.0) continue;
             cosel=Math.cos(azel[1+i*2]);
             sinel=Math.sin(azel[1+i*2]);
-            H[  4*n]=cosel*sin(azel[i*2]);
-            H[1+4*n]=cosel*cos(azel[i*2]);
-            H[2+4*n]=sinel;
-            H[3+4*n++]=1.0;
+            h0=cosel*Math.sin(azel[i*2]);
+            h1=cosel*Math.cos(azel[i*2]);
+            h2=sinel;
+
+            /* Q=H*H' (upper triangle) with H(:,n)={h0,h1,h2,1} */
+            Q[ 0]+=h0*h0; Q[ 4]+=h0*h1; Q[ 8]+=h0*h2; Q[12]+=h0;
+                          Q[ 5]+=h1*h1; Q[ 9]+=h1*h2; Q[13]+=h1;
+                                        Q[10]+=h2*h2; Q[14]+=h2;
+            n++;
         }
         if (n<4) return;
 
-        matmul("NT",4,4,n,1.0,H,H,0.0,Q);
-        if (!matinv(Q,4)) {
-            dop[0]=SQRT(Q[0]+Q[5]+Q[10]+Q[15]); /* GDOP */
-            dop[1]=SQRT(Q[0]+Q[5]+Q[10]);       /* PDOP */
-            dop[2]=SQRT(Q[0]+Q[5]);             /* HDOP */
-            dop[3]=SQRT(Q[10]);                 /* VDOP */
+        Q[15]=n;
+        if (matinv4(Q)==0) {
+            dop[0]=Math.sqrt(Q[0]+Q[5]+Q[10]+Q[15]); /* GDOP */
+            dop[1]=Math.sqrt(Q[0]+Q[5]+Q[10]);       /* PDOP */
+            dop[2]=Math.sqrt(Q[0]+Q[5]);             /* HDOP */
+            dop[3]=Math.sqrt(Q[10]);                 /* VDOP */
         }
     }
     /* ionosphere model ------------------------------------------------------------
@@ -3683,7 +5906,7 @@ final String[] formatstrs = new String[]{    /* stream format strings */
         mjd=51544.5+(timediff(time,epoch2time(ep)))/86400.0;
         lat=pos[0];
         lon=pos[1];
-        hgt=pos[2]-geoidh(pos); /* height in m (mean sea level) */
+        hgt=pos[2]-geoid.geoidh(pos); /* height in m (mean sea level) */
         zd =PI/2.0-azel[1];
 
         /* call GMF */
@@ -3804,26 +6027,29 @@ final String[] formatstrs = new String[]{    /* stream format strings */
      *          double *gmst     O   gmst (rad)
      * return : none
      *-----------------------------------------------------------------------------*/
-    public static void sunmoonpos(gtime_t tutc, final double *erpv, double *rsun,
-                           double *rmoon, double *gmst)
+    public static void sunmoonpos(rtklib.gtime_t tutc, final double[] erpv, double[] rsun,
+                           double[] rmoon, double[] gmst)
     {
-        gtime_t tut;
-        double rs[3],rm[3],U[9],gmst_;
+        rtklib.gtime_t tut;
+        double[] rs = new double[3];
+        double[] rm = new double[3];
+        double[] U = new double[9];
+        double[] gmst_ = new double[1];
 
         trace(4,"sunmoonpos: tutc=%s\n",time_str(tutc,3));
 
         tut=timeadd(tutc,erpv[2]); /* utc . ut1 */
 
         /* sun and moon position in eci */
-        sunmoonpos_eci(tut,rsun?rs:null,rmoon?rm:null);
+        sunmoonpos_eci(tut,rsun!=null?rs:null,rmoon!=null?rm:null);
 
         /* eci to ecef transformation matrix */
-        eci2ecef(tutc,erpv,U,&gmst_);
+        eci2ecef(tutc,erpv,U,gmst_);
 
         /* sun and moon postion in ecef */
-        if (rsun ) matmul("NN",3,1,3,1.0,U,rs,0.0,rsun );
-        if (rmoon) matmul("NN",3,1,3,1.0,U,rm,0.0,rmoon);
-        if (gmst ) *gmst=gmst_;
+        if (rsun !=null) matmul("NN",3,1,3,1.0,U,rs,0.0,rsun );
+        if (rmoon!=null) matmul("NN",3,1,3,1.0,U,rm,0.0,rmoon);
+        if (gmst !=null) gmst[0]=gmst_[0];
     }
     /* carrier smoothing -----------------------------------------------------------
      * carrier smoothing by Hatch filter
@@ -31,8 +31,12 @@
  *-----------------------------------------------------------------------------*/
 
 import java.lang.String;
-import java.time.Instant;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class rtklib {
@@ -151,8 +155,13 @@ public class rtklib {
 
     public static final int MAXSAT      = (NSATGPS+NSATGLO+NSATGAL+NSATQZS+NSATCMP+NSATIRN+NSATSBS+NSATLEO);
             /* max satellite number (1 to MAXSAT) */
+    public static final int NSATW       = ((MAXSAT+63)/64);    /* number of words of satellite set */
     public static final int MAXSTA      = 255;
 
+    public static final int CRC_32      = 0;                   /* crc type: crc-32 (novatel) */
+    public static final int CRC_24Q     = 1;                   /* crc type: crc-24q (sbas,rtcm3) */
+    public static final int CRC_16      = 2;                   /* crc type: crc-16 (binex,nvs) */
+
 
     public static final int MAXOBS      = 64;                  /* max number of obs in an epoch */
 
@@ -327,6 +336,28 @@ public class rtklib {
     public static final int EPHOPT_SSRCOM = 4;                 /* ephemeris option: broadcast + SSR_COM */
     public static final int EPHOPT_LEX  = 5;                   /* ephemeris option: QZSS LEX ephemeris */
 
+    public static final int FILTER_LU   = 0;                   /* kalman filter update: LU inverse, (I-K*H')*P */
+    public static final int FILTER_CHOL = 1;                   /* kalman filter update: cholesky, symmetric P-W'*W */
+
+    /* state key (kind,sat,idx) of state store (see xstore_slot()):
+     *   XK_POS,XK_VEL,XK_ACC : sat=0, idx=axis (0:x,1:y,2:z)
+     *   XK_CLK               : sat=0, idx=system index (xstore_sysidx(SYS_???))
+     *   XK_TRP               : sat=receiver (0:rover,1:base), idx=0:zenith wet delay,
+     *                          1:north gradient,2:east gradient
+     *   XK_ION               : sat=satellite number, idx=0
+     *   XK_GLO               : sat=0, idx=frequency index
+     *   XK_AMB               : sat=satellite number, idx=frequency index */
+    public static final int XK_POS = 0;                        /* state kind: position */
+    public static final int XK_VEL = 1;                        /* state kind: velocity */
+    public static final int XK_ACC = 2;                        /* state kind: acceleration */
+    public static final int XK_CLK = 3;                        /* state kind: receiver clock */
+    public static final int XK_TRP = 4;                        /* state kind: troposphere */
+    public static final int XK_ION = 5;                        /* state kind: ionosphere (per sat) */
+    public static final int XK_GLO = 6;                        /* state kind: glonass hardware bias */
+    public static final int XK_AMB = 7;                        /* state kind: ambiguity (per sat/freq) */
+    public static final int NXKIND = 8;                        /* number of state kinds */
+    public static final int NXIDX  = Math.max(NFREQ,8);        /* number of state indices (axes,systems,freqs) */
+
     public static final int ARMODE_OFF  = 0;                   /* AR mode: off */
     public static final int ARMODE_CONT = 1;                   /* AR mode: continuous */
     public static final int ARMODE_INST = 2;                   /* AR mode: instantaneous */
@@ -395,6 +426,7 @@ public class rtklib {
     public static final int GEOID_EGM2008_M10 = 3;             /* geoid model: EGM2008 1.0x1.0" */
     public static final int GEOID_GSI2000_M15 = 4;             /* geoid model: GSI geoid 2000 1.0x1.5" */
     public static final int GEOID_RAF09       = 5;             /* geoid model: IGN RAF09 for France 1.5"x2" */
+    public static final int GEOID_ISG         = 6;             /* geoid model: ISG format grid */
 
     public static final String COMMENTH    = "%";                 /* comment line indicator for solution */
     public static final String MSG_DISCONN = "$_DISCONNECT\r\n";  /* disconnect message */
@@ -440,10 +472,72 @@ public class rtklib {
     /* type definitions ----------------------------------------------------------*/
 
     public static class gtime_t {        /* time struct */
-        Instant time;        /* time (s) expressed by standard time_t */
+        long time;          /* time (s) expressed by standard time_t */
         double sec;         /* fraction of second under 1 s */
     };
 
+    public static class ecinode_t {      /* precession/nutation node type */
+        long k;             /* node index (node time: k*ECINODE s from J2000 in TT) */
+        double[] NP = new double[9]; /* nutation*precession matrix N*P (3 x 3) */
+        double eqeq;        /* equation of equinoxes (gast-gmst) (rad) */
+    };
+
+    public static class geocell_t {      /* geoid grid cell type */
+        int i,j;            /* grid index of south-west corner {lon,lat} */
+        int interp=-1;      /* interpolation of values (0:bilinear,1:bicubic,-1:none) */
+        double[] v = new double[16]; /* geoid heights of cell (m) (see geoid.geoidh()) */
+    };
+
+    public static class geoid_t {        /* geoid grid type */
+        int model;          /* geoid model (GEOID_???) */
+        FloatBuffer data;   /* mapped geoid heights (m) [i+j*nlon] (NaN: no data) */
+        int nlon,nlat;      /* number of grid points of longitude/latitude */
+        double lon0,lat0;   /* longitude/latitude of south-west grid point (deg) */
+        double dlon,dlat;   /* grid interval of longitude/latitude (deg) */
+        int wrap;           /* longitude wraps around (0:regional,1:global) */
+        int interp;         /* interpolation (0:bilinear,1:bicubic) */
+        MappedByteBuffer map; /* mapped grid file for output (null: read-only) */
+        final ThreadLocal<geocell_t> cell= /* last used cell by thread */
+            ThreadLocal.withInitial(geocell_t::new);
+    };
+
+    public static class locframe_t {     /* local coordinate frame type */
+        double[] pos = new double[3]; /* geodetic position of origin {lat,lon,h} (rad,m) */
+        double[] rr = new double[3];  /* ecef position of origin {x,y,z} (m) */
+        double[] E = new double[9];   /* ecef to local coord transformation matrix (3x3) */
+    };
+
+    public static class crc_t {          /* incremental crc type */
+        int type;           /* crc type (CRC_32,CRC_24Q,CRC_16) */
+        int crc;            /* crc register (crc-24q,crc-16: left-aligned to 32 bits) */
+        long n;             /* number of bytes fed */
+    };
+
+    public static class bitbuf_t {       /* bit stream buffer type */
+        ByteBuffer buff;    /* byte data (bit 0: msb of byte at index 0) */
+        int pos;            /* bit cursor from start of data (bits) */
+        int end;            /* end of data (bits) */
+        int err;            /* overrun flag (1: read/write over end of data) */
+    };
+
+    public static class codepri_t {      /* code priority matrix type */
+        String opt;         /* code options applied (null: none) */
+        codepri_t base;     /* matrix without options (null: this) */
+        byte[] pri;         /* priority [sys*(MAXCODE+1)+code] (15:highest-1:lowest,0:error) */
+    };
+
+    public static class satset_t {       /* satellite set type */
+        long[] w = new long[NSATW]; /* satellite bits (bit (sat-1)%64 of word (sat-1)/64) */
+    };
+
+    public static class leapidx_t {      /* leap seconds index type */
+        int n;              /* number of leap seconds */
+        long[] tutc;        /* start of leap seconds in utc (time_t) (ascending) */
+        long[] tgps;        /* start of leap seconds in gpst (time_t) (ascending) */
+        double[] ls;        /* utc-gpst (s) */
+        int hit;            /* index of last hit (search hint) */
+    };
+
     public  static class obsd_t {        /* observation data record */
         gtime_t time;       /* receiver sampling time (GPST) */
         byte sat,rcv; /* satellite/receiver number */
@@ -876,7 +970,7 @@ public class rtklib {
         solstat_t data;    /* solution status data */
     }
 
-    public class rtcm_t {        /* RTCM control struct type */
+    public static class rtcm_t {         /* RTCM control struct type */
         int staid;          /* station id */
         int stah;           /* station health */
         int seqno;          /* sequence number for rtcm 2 or iods msm */
@@ -904,6 +998,8 @@ public class rtklib {
         long word;  /* word buffer for rtcm 2 */
         long[] nmsg2 = new long[100]; /* message count of RTCM 2 (1-99:1-99,0:other) */
         long[] nmsg3 = new long[400]; /* message count of RTCM 3 (1-299:1001-1299,300-399:2000-2099,0:ohter) */
+        crc_t crc = new crc_t(); /* incremental crc of RTCM 3 frame in message buffer */
+        rtcm3dec_t[] dec3;  /* RTCM 3 decoders by message type (index as nmsg3) (null: none) */
         char[] opt = new char[256];      /* RTCM dependent options */
     }
 
@@ -1118,21 +1214,114 @@ public class rtklib {
         char[] flags = new char[MAXSAT]; /* fix flags */
     } ;
 
+    public interface gemm_t {   /* matrix multiply kernel type */
+        /* C=alpha*op(A)*op(B)+beta*C, tr: 0:NN,1:NT,2:TN,3:TT (see matmul()) */
+        void gemm(int tr, int n, int k, int m, double alpha, final double[] A,
+                  final double[] B, double beta, double[] C);
+    }
+
+    public interface timesrc_t { /* time source type */
+        /* current time in utc (without time offset by timeset()) */
+        void now(gtime_t t);
+        /* current tick (ms) (monotonic) */
+        long tick();
+        /* sleep ms in time of the source */
+        void sleep(int ms);
+    }
+
+    public interface rtcm3dec_t { /* RTCM 3 message decoder type */
+        /* decode RTCM 3 message frame (read-only, index 0: preamble) (see input_rtcm3()) */
+        int decode(rtcm_t rtcm, ByteBuffer msg, int type);
+    }
+
+    public interface la_t {     /* linear algebra backend type */
+        String name();      /* backend name */
+        /* C=alpha*op(A)*op(B)+beta*C (see matmul()) */
+        void matmul(final String tr, int n, int k, int m, double alpha, final double[] A,
+                    final double[] B, double beta, double[] C);
+        /* inverse of matrix (see matinv()) */
+        int matinv(double[] A, int n);
+        /* solve linear equation (see solve()) */
+        int solve(final String tr, final double[] A, final double[] Y, int n, int m,
+                  double[] X);
+        /* cholesky decomposition, lower triangle (see chol()) */
+        int chol(double[] A, int n);
+        /* LU decomposition with row interchanges (see ludcmp()) */
+        int lu(double[] A, int n, int[] indx, double[] d);
+    }
+
+    public static class filterws_t { /* kalman filter workspace type */
+        int mode;           /* update mode (FILTER_???) */
+        int nmax,mmax;      /* max number of states/measurements */
+        int[] ix;           /* index of estimated states */
+        double[] x_,xp_;    /* compacted states before/after update */
+        double[] P_,Pp_;    /* compacted covariance before/after update */
+        double[] H_;        /* compacted design matrix */
+        double[] F,Q,K,I;   /* P*H, innovation covariance, gain, I-K*H' */
+        double[] B;         /* LU decomposition of innovation covariance */
+        int[] indx;         /* LU pivot index */
+        double[] vv;        /* LU implicit scaling */
+        double[] d = new double[1]; /* LU row interchange parity */
+        int[] jp,jx;        /* nonzero rows of P*H by measurement (sparse update) */
+    } ;
+
+    public static class lsqinc_t { /* incremental least square type */
+        int n,m;            /* number of parameters and measurements */
+        double[] R;         /* upper triangular factor (n x n) (A*A'=R'*R) */
+        double[] z;         /* transformed measurements (n x 1) (R'*z=A*y) */
+        double rss;         /* residual sum of squares */
+        double[] w,c,s;     /* work vectors (n x 1) */
+        double[] W;         /* work matrix (n x n) */
+    } ;
+
+    public static class sph_t {  /* sparse design matrix type (H by measurement) */
+        int n,m;            /* number of states and measurements */
+        int nz,nzmax;       /* number of nonzero elements and allocated */
+        int[] p;            /* start of measurement j in idx/val (m+1 x 1) */
+        int[] idx;          /* state index of nonzero elements */
+        double[] val;       /* value of nonzero elements */
+    } ;
+
+    public static class statelog_t { /* forward state log type (combined mode) */
+        FileChannel ch;     /* log file channel */
+        ByteBuffer buff;    /* window buffer of log file (nseg records) */
+        int n;              /* number of states */
+        int recsize;        /* record size (bytes) */
+        int nseg;           /* number of records in a window */
+        long seg=-1;        /* window index in buffer (-1:none) */
+        long nrec;          /* number of records */
+        long cur;           /* record cursor for backward pass */
+        int mode;           /* 0:write (forward pass),1:read (backward pass) */
+        gtime_t tf = new gtime_t(); /* forward state time */
+        double[] xf,Qf;     /* forward states and covariance */
+        filterws_t ws = new filterws_t(); /* smoother workspace */
+    } ;
+
+    public static class xstore_t { /* contiguous state store type (empty as init_xstore(st,1)) */
+        int n;              /* number of states in use (slots 0..n-1) */
+        int nmax = 1;       /* capacity (leading dimension of P,Pa) */
+        double[] x = new double[1], P = new double[1]; /* float states (nmax x 1) and covariance (nmax x nmax) */
+        double[] xa = new double[1], Pa = new double[1]; /* fixed states (nmax x 1) and covariance (nmax x nmax) */
+        int[] slot = new int[NXKIND*(MAXSAT+1)*NXIDX]; /* slot by state key (-1:none) */
+        int[] key = new int[1]; /* state key by slot (nmax x 1) */
+        {
+            Arrays.fill(slot,-1);
+        }
+    } ;
+
     public class rtk_t {        /* RTK control/result type */
         sol_t  sol;         /* RTK solution */
         double[] rb = new double[6];       /* base position/velocity (ecef) (m|m/s) */
         int nx,na;          /* number of float states/fixed states */
         double tt;          /* time difference between current and previous (s) */
-        List<Double> x = new ArrayList<Double>();
-        List<Double> P = new ArrayList<Double>();      /* float states and their covariance */
-        List<Double> xa = new ArrayList<Double>();
-        List<Double> Pa = new ArrayList<Double>();     /* fixed states and their covariance */
+        xstore_t xs = new xstore_t(); /* float/fixed states and their covariance */
         int nfix;           /* number of continuous fixes of ambiguity */
         ambc_t[] ambc = new ambc_t[MAXSAT]; /* ambibuity control */
         ssat_t[] ssat = new ssat_t[MAXSAT]; /* satellite status */
         int neb;            /* bytes in error message buffer */
         char[] errbuf = new char[MAXERRMSG]; /* error message buffer */
         prcopt_t opt;       /* processing options */
+        filterws_t ws = new filterws_t(); /* kalman filter workspace (sized by filter()) */
     } ;
 
     public class half_cyc_t {  /* half-cycle correction list type */
@@ -0,0 +1,127 @@
+/*------------------------------------------------------------------------------
+ * timesrc.java : time sources
+ *
+ * notes   : time sources implement rtklib.timesrc_t and are set to the process
+ *           by rtkcmn.settimesrc(). timeget(), timeset(), tickget() and
+ *           sleepms() of rtkcmn refer the time source, so the functions using
+ *           them run in the time of the source.
+ *
+ *           monotonic : utc anchored once and advanced by System.nanoTime()
+ *           simulated : utc from given start time advanced by given speed
+ *                       (x real time) or stepped only by sleepms() (speed=0)
+ *                       to replay recorded streams faster than real time
+ *
+ * version : $Revision:$ $Date:$
+ *-----------------------------------------------------------------------------*/
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class timesrc {
+    /* monotonic time source -----------------------------------------------------*/
+    static class monotonic implements rtklib.timesrc_t {
+        final long time0;   /* utc at anchor (time_t) */
+        final long nsec0;   /* fraction of second at anchor (ns) */
+        final long nano0;   /* System.nanoTime() at anchor (ns) */
+
+        monotonic()
+        {
+            Instant now=Instant.now();
+            nano0=System.nanoTime();
+            time0=now.getEpochSecond();
+            nsec0=now.getNano();
+        }
+        public void now(rtklib.gtime_t t)
+        {
+            long ns=nsec0+(System.nanoTime()-nano0);
+
+            t.time=time0+Math.floorDiv(ns,1000000000L);
+            t.sec=Math.floorMod(ns,1000000000L)*1E-9;
+        }
+        public long tick()
+        {
+            return (System.nanoTime()-nano0)/1000000L;
+        }
+        public void sleep(int ms)
+        {
+            sleepns(ms*1000000L);
+        }
+    }
+
+    /* simulated time source -----------------------------------------------------*/
+    static class simulated implements rtklib.timesrc_t {
+        final long time0;   /* start time in utc (time_t) */
+        final double sec0;  /* start time fraction of second */
+        final double speed; /* speed (x real time) (0: stepped by sleep only) */
+        final long nano0;   /* System.nanoTime() at start (ns) */
+        final AtomicLong step=new AtomicLong(); /* time stepped by sleep (ns) */
+
+        simulated(rtklib.gtime_t start, double speed)
+        {
+            time0=start.time;
+            sec0=start.sec;
+            this.speed=Math.max(speed,0.0);
+            nano0=System.nanoTime();
+        }
+        /* elapsed time from start (ns) */
+        long elapsed()
+        {
+            return (speed>0.0?(long)((System.nanoTime()-nano0)*speed):0L)+step.get();
+        }
+        public void now(rtklib.gtime_t t)
+        {
+            long ns=elapsed();
+
+            t.time=time0+Math.floorDiv(ns,1000000000L);
+            t.sec=sec0+Math.floorMod(ns,1000000000L)*1E-9;
+            if (t.sec>=1.0) {t.time++; t.sec-=1.0;}
+        }
+        public long tick()
+        {
+            return elapsed()/1000000L;
+        }
+        public void sleep(int ms)
+        {
+            if (speed>0.0) sleepns((long)(ms*1E6/speed));
+            else step.addAndGet(ms*1000000L);
+        }
+    }
+
+    /* sleep ns in real time -----------------------------------------------------*/
+    static void sleepns(long ns)
+    {
+        try {
+            TimeUnit.NANOSECONDS.sleep(ns);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* time source with time offset (immutable) ----------------------------------*/
+    static final class timeref {
+        final rtklib.timesrc_t src; /* time source */
+        final double offset;        /* time offset by timeset() (s) */
+
+        timeref(rtklib.timesrc_t src, double offset)
+        {
+            this.src=src;
+            this.offset=offset;
+        }
+    }
+
+    public static final rtklib.timesrc_t MONOTONIC = new monotonic();
+
+    /* simulated time source ---------------------------------------------------------
+     * generate simulated time source
+     * args   : gtime_t start    I   start time in utc
+     *          double speed     I   speed of time (x real time)
+     *                               (0: time is advanced only by sleepms())
+     * return : time source
+     * notes  : the time starts when generated. tickget() returns ms from start
+     *-----------------------------------------------------------------------------*/
+    public static rtklib.timesrc_t simtime(rtklib.gtime_t start, double speed)
+    {
+        return new simulated(start,speed);
+    }
+}
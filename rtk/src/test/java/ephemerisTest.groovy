@@ -0,0 +1,128 @@
+class ephemerisTest extends groovy.util.GroovyTestCase {
+
+    /* gpst of week and time of week */
+    static rtklib.gtime_t gpst(int week, double tow) {
+        return rtkcmn.gpst2time(week,tow);
+    }
+
+    /* gps broadcast ephemeris */
+    static rtklib.eph_t eph(int sat, double e) {
+        rtklib.eph_t eph=new rtklib.eph_t();
+        eph.sat=sat;
+        eph.A=26560E3d; eph.e=e; eph.i0=0.96d; eph.OMG0=1.2d; eph.omg=0.5d; eph.M0=-2.1d;
+        eph.deln=4.5E-9d; eph.OMGd=-8.0E-9d; eph.idot=2.0E-10d;
+        eph.crc=200.0d; eph.crs=-40.0d; eph.cuc=-2.0E-6d; eph.cus=8.0E-6d; eph.cic=1.0E-7d; eph.cis=-5.0E-8d;
+        eph.toe=gpst(2200,302400.0d); eph.toes=302400.0d;
+        eph.toc=gpst(2200,302500.0d);
+        eph.f0=1.5E-4d; eph.f1=2.0E-11d; eph.f2=0.0d;
+        return eph;
+    }
+
+    /* glonass broadcast ephemeris */
+    static rtklib.geph_t geph(int sat) {
+        rtklib.geph_t geph=new rtklib.geph_t();
+        geph.sat=sat;
+        geph.toe=gpst(2200,302418.0d);
+        geph.taun=-5.0E-5d; geph.gamn=1.0E-12d;
+        geph.pos[0]=1.2E7d; geph.pos[1]=-1.5E7d; geph.pos[2]=1.6E7d;
+        geph.vel[0]=1.5E3d; geph.vel[1]=2.2E3d; geph.vel[2]=1.0E3d;
+        return geph;
+    }
+
+    /* sbas ephemeris */
+    static rtklib.seph_t seph(int sat) {
+        rtklib.seph_t seph=new rtklib.seph_t();
+        seph.sat=sat;
+        seph.t0=gpst(2200,302400.0d);
+        seph.af0=1.0E-8d; seph.af1=1.0E-12d;
+        seph.pos[0]=4.2E7d; seph.vel[1]=0.1d; seph.acc[2]=1.0E-6d;
+        return seph;
+    }
+
+    /* allocated bytes by current thread */
+    static long allocated() {
+        return ((com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /* call primitive time overloads n times and return allocated bytes */
+    @groovy.transform.CompileStatic
+    static long callprim(rtklib.eph_t e, rtklib.geph_t g, rtklib.seph_t s, int n) {
+        double[] rs=new double[3],dts=new double[1],var=new double[1];
+        long time=e.toe.time,bytes;
+        double sec=0.25d,clk=0.0d;
+
+        bytes=allocated();
+        for (int i=0;i<n;i++) {
+            clk+=ephemeris.eph2clk(time+i,sec,e);
+            ephemeris.eph2pos(time+i,sec,e,rs,dts,var);
+            clk+=ephemeris.geph2clk(time+i,sec,g);
+            ephemeris.geph2pos(time+i,sec,g,rs,dts,var);
+            clk+=ephemeris.seph2clk(time+i,sec,s);
+            ephemeris.seph2pos(time+i,sec,s,rs,dts,var);
+        }
+        bytes=allocated()-bytes;
+        assertTrue(!Double.isNaN(clk));
+        return bytes;
+    }
+
+    void testPrimitiveTimeMatchesGtime() {
+        double[] rs1=new double[3],dts1=new double[1],var1=new double[1];
+        double[] rs2=new double[3],dts2=new double[1],var2=new double[1];
+        rtklib.eph_t e=eph(rtkcmn.satno(rtklib.SYS_GPS,5),0.01d);
+        rtklib.geph_t g=geph(rtkcmn.satno(rtklib.SYS_GLO,3));
+        rtklib.seph_t s=seph(rtkcmn.satno(rtklib.SYS_SBS,129));
+
+        for (int k=0;k<20;k++) {
+            rtklib.gtime_t t=rtkcmn.timeadd(e.toe,-3600.0d+k*377.125d);
+
+            ephemeris.eph2pos(t,e,rs1,dts1,var1);
+            ephemeris.eph2pos(t.time,t.sec,e,rs2,dts2,var2);
+            assertTrue(Arrays.equals(rs1,rs2));
+            assertEquals(dts1[0],dts2[0],0.0d);
+            assertEquals(ephemeris.eph2clk(t,e),ephemeris.eph2clk(t.time,t.sec,e),0.0d);
+
+            ephemeris.geph2pos(t,g,rs1,dts1,var1);
+            ephemeris.geph2pos(t.time,t.sec,g,rs2,dts2,var2);
+            assertTrue(Arrays.equals(rs1,rs2));
+            assertEquals(dts1[0],dts2[0],0.0d);
+
+            ephemeris.seph2pos(t,s,rs1,dts1,var1);
+            ephemeris.seph2pos(t.time,t.sec,s,rs2,dts2,var2);
+            assertTrue(Arrays.equals(rs1,rs2));
+            assertEquals(dts1[0],dts2[0],0.0d);
+        }
+    }
+
+    void testEph2posClockAtToc() {
+        double[] rs=new double[3],dts=new double[1],var=new double[1];
+        rtklib.eph_t e=eph(rtkcmn.satno(rtklib.SYS_GPS,12),0.0d);
+        rtklib.gtime_t t=rtkcmn.timeadd(e.toc,1234.5d);
+
+        /* no relativity correction with e=0: clock polynomial about toc */
+        ephemeris.eph2pos(t.time,t.sec,e,rs,dts,var);
+        assertEquals(e.f0+e.f1*1234.5d,dts[0],1E-18d);
+    }
+
+    void testPrimitiveTimeNoAllocation() {
+        rtklib.eph_t e=eph(rtkcmn.satno(rtklib.SYS_GPS,5),0.01d);
+        rtklib.geph_t g=geph(rtkcmn.satno(rtklib.SYS_GLO,3));
+        rtklib.seph_t s=seph(rtkcmn.satno(rtklib.SYS_SBS,129));
+        int level=rtkcmn.gettracelevel();
+
+        try {
+            /* trace off: no time string formatted and no workspace allocated */
+            rtkcmn.tracelevel(0);
+            callprim(e,g,s,20000);
+            assertTrue(callprim(e,g,s,10000)<1024L);
+
+            /* trace on: time string formatted for each call */
+            rtkcmn.tracelevel(4);
+            callprim(e,g,s,1000);
+            assertTrue(callprim(e,g,s,1000)>=6L*1000L*16L);
+        }
+        finally {
+            rtkcmn.tracelevel(level);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+class geoidTest extends groovy.util.GroovyTestCase {
+
+    static final double NODATA=-9999.0d;
+
+    /* temporary file path */
+    static String tmpfile(String ext) throws IOException {
+        File f=File.createTempFile("geoid",ext);
+        f.deleteOnExit();
+        new File(f.getPath()+".grd").deleteOnExit();
+        return f.getPath();
+    }
+
+    /* write text file */
+    static void writefile(String file, String text) throws IOException {
+        Writer w=new FileWriter(file);
+        try {
+            w.write(text);
+        }
+        finally {
+            w.close();
+        }
+    }
+
+    /* geoid height at lat/lon (deg) */
+    static double geoidh(double lat, double lon) {
+        double[] pos=new double[3];
+        pos[0]=lat*rtklib.D2R; pos[1]=lon*rtklib.D2R;
+        return geoid.geoidh(pos);
+    }
+
+    /* synthetic geoid height at grid point (m) (rounded to float) */
+    static double val(int i, int j) {
+        return (double)(float)(10.0d+3.0d*Math.sin(0.7d*i+0.2d)+2.0d*Math.cos(1.3d*j)+0.01d*i*j);
+    }
+
+    /* cubic convolution at cell centre */
+    static double cubicc(double y0, double y1, double y2, double y3) {
+        return (-y0+9.0d*y1+9.0d*y2-y3)/16.0d;
+    }
+
+    /* ISG format grid text (values from north to south) */
+    static String isgtext(int nlon, int nlat, double lon0, double lat0, double d, int ni, int nj) {
+        StringBuilder s=new StringBuilder();
+
+        s.append("begin_of_head ================================================\n");
+        s.append("model name     : synthetic\n");
+        s.append("lat min        =   ").append(lat0).append("\n");
+        s.append("lat max        =   ").append(lat0+(nlat-1)*d).append("\n");
+        s.append("lon min        =   ").append(lon0).append("\n");
+        s.append("lon max        =   ").append(lon0+(nlon-1)*d).append("\n");
+        s.append("delta lat      =   ").append(d).append("\n");
+        s.append("delta lon      =   ").append(d).append("\n");
+        s.append("nrows          =   ").append(nlat).append("\n");
+        s.append("ncols          =   ").append(nlon).append("\n");
+        s.append("nodata         =   ").append(NODATA).append("\n");
+        s.append("coord units    =   deg\n");
+        s.append("end_of_head ==================================================\n");
+        for (int j=nlat-1;j>=0;j--) {
+            for (int i=0;i<nlon;i++) {
+                s.append(i==ni&&j==nj?"-9999.0000":String.format("%.7f",val(i,j))).append(i<nlon-1?" ":"\n");
+            }
+        }
+        return s.toString();
+    }
+
+    protected void tearDown() throws Exception {
+        geoid.closegeoid();
+    }
+
+    void testIsgGlobal() throws IOException {
+        String infile=tmpfile(".isg"),outfile=infile+".grd";
+        double[] h=new double[4];
+        double lat,h00,h10,h01,h11;
+        int i,j;
+
+        /* 30 deg global grid: lon 0-330 (12), lat -90-90 (7), no data at (4,5) */
+        writefile(infile,isgtext(12,7,0.0d,-90.0d,30.0d,4,5));
+        assertEquals(1,geoid.geoidconv(rtklib.GEOID_ISG,infile,outfile));
+        assertEquals(1,geoid.opengeoid(rtklib.GEOID_ISG,outfile,0));
+        assertEquals(1,geoid.geoid_.wrap);
+
+        /* bilinear at nodes and cell centres (except cells with no data) */
+        for (j=0;j<7;j++) for (i=0;i<12;i++) {
+            if ((i==3||i==4)&&j>=4) continue;
+            assertEquals(val(i,j),geoidh(-90.0d+j*30.0d,i*30.0d),1E-6d);
+        }
+        for (j=1;j<5;j++) for (i=0;i<11;i++) {
+            if (i>=3&&i<=4&&j>=4) continue;
+            h00=val(i,j); h10=val(i+1,j); h01=val(i,j+1); h11=val(i+1,j+1);
+            assertEquals((h00+h10+h01+h11)/4.0d,geoidh(-75.0d+j*30.0d,15.0d+i*30.0d),1E-6d);
+        }
+        /* longitude wrap across 0 deg */
+        lat=-45.0d;
+        h[0]=(val(11,1)+val(0,1)+val(11,2)+val(0,2))/4.0d;
+        assertEquals(h[0],geoidh(lat,345.0d),1E-6d);
+        assertEquals(h[0],geoidh(lat,-15.0d),1E-6d);
+        assertEquals(h[0],geoidh(lat,705.0d),1E-6d);
+        assertEquals(val(0,2),geoidh(-30.0d,360.0d),1E-6d);
+        assertEquals(val(11,2),geoidh(-30.0d,-30.0d),1E-6d);
+
+        /* no data at a corner of cell */
+        assertEquals(0.0d,geoidh(60.0d,120.0d),0.0d);
+        assertEquals(0.0d,geoidh(30.0d,90.0d),0.0d);
+        assertEquals(0.0d,geoidh(45.0d,105.0d),0.0d);
+        assertEquals(0.0d,geoidh(75.0d,135.0d),0.0d);
+
+        /* bicubic at nodes and cell centres */
+        assertEquals(1,geoid.opengeoid(rtklib.GEOID_ISG,outfile,1));
+        for (j=0;j<3;j++) for (i=0;i<12;i++) {
+            assertEquals(val(i,j),geoidh(-90.0d+j*30.0d,i*30.0d),1E-6d);
+        }
+        for (j=1;j<3;j++) for (i=0;i<12;i++) {
+            for (int k=0;k<4;k++) {
+                int l=j-1+k;
+                h[k]=cubicc(val(Math.floorMod(i-1,12),l),val(i,l),val((i+1)%12,l),val((i+2)%12,l));
+            }
+            assertEquals(cubicc(h[0],h[1],h[2],h[3]),geoidh(-75.0d+j*30.0d,15.0d+i*30.0d),1E-6d);
+        }
+        /* no data in 4x4 points around cell */
+        assertEquals(0.0d,geoidh(45.0d,75.0d),0.0d);
+        assertEquals(0.0d,geoidh(15.0d,165.0d),0.0d);
+        assertTrue(geoidh(15.0d,195.0d)!=0.0d);
+    }
+
+    void testGsiRegional() throws IOException {
+        String infile=tmpfile(".asc"),outfile=infile+".grd";
+        StringBuilder s=new StringBuilder();
+        double[] h=new double[4];
+        double lat0=20.0d,lon0=120.0d,dlat=1.0d/60.0d,dlon=1.5d/60.0d;
+        int nlat=5,nlon=5,i,j;
+
+        /* GSI geoid 2000 format with header interval rounded, 999: no data */
+        s.append("20.00000 120.00000 0.016667 0.025000 5 5 1 ver4.0\n");
+        for (j=0;j<nlat;j++) {
+            for (i=0;i<nlon;i++) s.append(i==0&&j==4?"999.0000":String.format("%.7f",val(i,j))).append(i<nlon-1?" ":"\n");
+        }
+        writefile(infile,s.toString());
+        assertEquals(1,geoid.geoidconv(rtklib.GEOID_GSI2000_M15,infile,outfile));
+        assertEquals(1,geoid.opengeoid(rtklib.GEOID_GSI2000_M15,outfile));
+        assertEquals(0,geoid.geoid_.wrap);
+        assertEquals(dlat,geoid.geoid_.dlat,1E-15d);
+        assertEquals(dlon,geoid.geoid_.dlon,1E-15d);
+
+        /* bilinear at nodes and cell centres (except cells with no data) */
+        for (j=0;j<4;j++) for (i=0;i<nlon;i++) {
+            if (i==0&&j==3) continue;
+            assertEquals(val(i,j),geoidh(lat0+j*dlat,lon0+i*dlon),1E-6d);
+        }
+        for (j=0;j<4;j++) for (i=0;i<nlon-1;i++) {
+            if (i==0&&j==3) continue;
+            assertEquals((val(i,j)+val(i+1,j)+val(i,j+1)+val(i+1,j+1))/4.0d,
+                         geoidh(lat0+(j+0.5d)*dlat,lon0+(i+0.5d)*dlon),1E-6d);
+        }
+        /* no data and out of range */
+        assertEquals(0.0d,geoidh(lat0+3.5d*dlat,lon0+0.5d*dlon),0.0d);
+        assertEquals(0.0d,geoidh(lat0-0.5d*dlat,lon0+0.5d*dlon),0.0d);
+        assertEquals(0.0d,geoidh(lat0+0.5d*dlat,lon0+4.5d*dlon),0.0d);
+
+        /* bicubic at interior cell centre */
+        assertEquals(1,geoid.opengeoid(rtklib.GEOID_GSI2000_M15,outfile,1));
+        for (int k=0;k<4;k++) h[k]=cubicc(val(1,k),val(2,k),val(3,k),val(4,k));
+        assertEquals(cubicc(h[0],h[1],h[2],h[3]),geoidh(lat0+1.5d*dlat,lon0+2.5d*dlon),1E-6d);
+        assertEquals(val(2,1),geoidh(lat0+dlat,lon0+2.0d*dlon),1E-6d);
+    }
+
+    void testMalformedFile() throws IOException {
+        String infile=tmpfile(".isg"),outfile=infile+".grd";
+        String text=isgtext(12,7,0.0d,-90.0d,30.0d,-1,-1);
+
+        /* truncated values: no grid file */
+        writefile(infile,text.substring(0,text.length()-40));
+        assertEquals(0,geoid.geoidconv(rtklib.GEOID_ISG,infile,outfile));
+        assertFalse(new File(outfile).exists());
+        assertFalse(new File(outfile+".tmp").exists());
+        assertEquals(0,geoid.opengeoid(rtklib.GEOID_ISG,outfile));
+
+        /* no geoid opened */
+        geoid.closegeoid();
+        assertEquals(0.0d,geoidh(35.0d,135.0d),0.0d);
+    }
+}
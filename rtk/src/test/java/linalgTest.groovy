@@ -0,0 +1,163 @@
+class linalgTest extends groovy.util.GroovyTestCase {
+
+    /* random matrix (n x m) in [-1,1) */
+    static double[] randmat(Random r, int n, int m) {
+        double[] A=new double[n*m];
+        for (int i=0;i<n*m;i++) A[i]=2.0d*r.nextDouble()-1.0d;
+        return A;
+    }
+
+    /* random symmetric positive definite matrix (A*A'+d*I) */
+    static double[] randspd(Random r, int n, double d) {
+        double[] A=randmat(r,n,n),S=new double[n*n];
+        linalg.BUILTIN.matmul("NT",n,n,n,1.0d,A,A,0.0d,S);
+        for (int i=0;i<n;i++) S[i+i*n]+=d;
+        return S;
+    }
+
+    /* max absolute difference of arrays */
+    static double maxdiff(double[] a, double[] b, int n) {
+        double d=0.0d;
+        for (int i=0;i<n;i++) d=Math.max(d,Math.abs(a[i]-b[i]));
+        return d;
+    }
+
+    /* random matrix with max absolute value 1 of each row (+-1 in distinct columns) */
+    static double[] randrow1(Random r, int n) {
+        double[] A=randmat(r,n,n);
+        int[] col=new int[n];
+        int j,t;
+
+        for (int i=0;i<n;i++) col[i]=i;
+        for (int i=n-1;i>0;i--) {j=r.nextInt(i+1); t=col[i]; col[i]=col[j]; col[j]=t;}
+        for (int i=0;i<n;i++) A[i+col[i]*n]=r.nextBoolean()?1.0d:-1.0d;
+        return A;
+    }
+
+    protected void tearDown() throws Exception {
+        rtkcmn.setlabackend(null);
+    }
+
+    void testMatmul() {
+        String[] tr=new String[4];
+        Random r=new Random(10);
+
+        tr[0]="NN"; tr[1]="NT"; tr[2]="TN"; tr[3]="TT";
+        for (int k=0;k<40;k++) {
+            int n=1+r.nextInt(12),l=1+r.nextInt(12),m=1+r.nextInt(12);
+            double alpha=2.0d*r.nextDouble()-1.0d,beta=k%2==0?0.0d:r.nextDouble();
+            double[] A=randmat(r,n,m),B=randmat(r,m,l),C0=randmat(r,n,l),C1=C0.clone();
+
+            linalg.BUILTIN.matmul(tr[k%4],n,l,m,alpha,A,B,beta,C0);
+            linalg.COMMONS.matmul(tr[k%4],n,l,m,alpha,A,B,beta,C1);
+            assertEquals(0.0d,maxdiff(C0,C1,n*l),1E-14d*(m+1));
+        }
+    }
+
+    void testMatinvSolve() {
+        Random r=new Random(11);
+
+        for (int k=0;k<30;k++) {
+            int n=1+r.nextInt(10),m=1+r.nextInt(4);
+            double[] A=randspd(r,n,0.5d),B=randmat(r,n,n),A0=A.clone(),A1=A.clone();
+            double[] Y=randmat(r,n,m),X0=new double[n*m],X1=new double[n*m];
+
+            /* inverse */
+            assertEquals(0,linalg.BUILTIN.matinv(A0,n));
+            assertEquals(0,linalg.COMMONS.matinv(A1,n));
+            assertEquals(0.0d,maxdiff(A0,A1,n*n),1E-10d);
+
+            /* solve with general matrix */
+            for (int i=0;i<n;i++) B[i+i*n]+=n;
+            assertEquals(0,linalg.BUILTIN.solve("N",B,Y,n,m,X0));
+            assertEquals(0,linalg.COMMONS.solve("N",B,Y,n,m,X1));
+            assertEquals(0.0d,maxdiff(X0,X1,n*m),1E-12d);
+            assertEquals(0,linalg.BUILTIN.solve("T",B,Y,n,m,X0));
+            assertEquals(0,linalg.COMMONS.solve("T",B,Y,n,m,X1));
+            assertEquals(0.0d,maxdiff(X0,X1,n*m),1E-12d);
+        }
+        /* singular matrix */
+        double[] S=new double[9];
+        S[0]=1.0d; S[4]=1.0d;
+        assertEquals(-1,linalg.BUILTIN.matinv(S.clone(),3));
+        assertEquals(-1,linalg.COMMONS.matinv(S.clone(),3));
+        assertEquals(-1,linalg.COMMONS.solve("N",S,new double[3],3,1,new double[3]));
+    }
+
+    void testChol() {
+        Random r=new Random(12);
+
+        for (int k=0;k<30;k++) {
+            int n=1+r.nextInt(12);
+            double[] A=randspd(r,n,0.1d),A0=A.clone(),A1=A.clone();
+
+            /* upper triangle not referenced nor modified */
+            for (int j=1;j<n;j++) for (int i=0;i<j;i++) A1[i+j*n]=A0[i+j*n]=99.0d;
+            assertEquals(0,linalg.BUILTIN.chol(A0,n));
+            assertEquals(0,linalg.COMMONS.chol(A1,n));
+            assertEquals(0.0d,maxdiff(A0,A1,n*n),1E-12d);
+        }
+        /* not positive definite */
+        double[] N=new double[4];
+        N[0]=1.0d; N[1]=2.0d; N[2]=2.0d; N[3]=1.0d;
+        assertEquals(-1,linalg.BUILTIN.chol(N.clone(),2));
+        assertEquals(-1,linalg.COMMONS.chol(N.clone(),2));
+    }
+
+    void testLuPivot() {
+        Random r=new Random(13);
+
+        for (int k=0;k<60;k++) {
+            int n=1+r.nextInt(10);
+            double[] A=k%2==0?randrow1(r,n):randmat(r,n,n),A0=A.clone(),A1=A.clone();
+            double[] b=randmat(r,n,1),x0=b.clone(),x1=b.clone(),d0=new double[1],d1=new double[1];
+            int[] indx0=new int[n],indx1=new int[n];
+            double det0,det1;
+
+            assertEquals(0,linalg.BUILTIN.lu(A0,n,indx0,d0));
+            assertEquals(0,linalg.COMMONS.lu(A1,n,indx1,d1));
+
+            /* same pivots and factors if scales of rows are equal */
+            if (k%2==0) {
+                assertTrue(Arrays.equals(indx0,indx1));
+                assertEquals(d0[0],d1[0],0.0d);
+                assertEquals(0.0d,maxdiff(A0,A1,n*n),1E-12d);
+            }
+            /* factors solve the same system and give the same determinant */
+            rtkcmn.lubksb(A0,n,indx0,x0);
+            rtkcmn.lubksb(A1,n,indx1,x1);
+            assertEquals(0.0d,maxdiff(x0,x1,n),1E-9d);
+            det0=d0[0]; det1=d1[0];
+            for (int i=0;i<n;i++) {det0*=A0[i+i*n]; det1*=A1[i+i*n];}
+            assertEquals(det0,det1,1E-12d*Math.max(1.0d,Math.abs(det0)));
+        }
+    }
+
+    void testBackendDispatch() {
+        Random r=new Random(14);
+        int n=7;
+        double[] A=randspd(r,n,0.5d),A0=A.clone(),A1=A.clone(),C0=new double[n*n],C1=new double[n*n];
+        int[] indx0=new int[n],indx1=new int[n];
+        double[] d0=new double[1],d1=new double[1];
+
+        rtkcmn.setlabackend(null);
+        rtkcmn.matmul("NT",n,n,n,1.0d,A,A,0.0d,C0);
+        assertEquals(0,rtkcmn.matinv(A0,n));
+        rtkcmn.setlabackend(linalg.getbackend("commons"));
+        rtkcmn.matmul("NT",n,n,n,1.0d,A,A,0.0d,C1);
+        assertEquals(0,rtkcmn.matinv(A1,n));
+        assertEquals(0.0d,maxdiff(C0,C1,n*n),1E-13d);
+        assertEquals(0.0d,maxdiff(A0,A1,n*n),1E-10d);
+
+        A0=randrow1(r,n); A1=A0.clone();
+        rtkcmn.setlabackend(null);
+        assertEquals(0,rtkcmn.ludcmp(A0,n,indx0,d0));
+        rtkcmn.setlabackend(linalg.COMMONS);
+        assertEquals(0,rtkcmn.ludcmp(A1,n,indx1,d1));
+        assertTrue(Arrays.equals(indx0,indx1));
+        assertEquals(0.0d,maxdiff(A0,A1,n*n),1E-12d);
+
+        assertSame(linalg.BUILTIN,linalg.getbackend("builtin"));
+        assertNull(linalg.getbackend("lapack"));
+    }
+}
@@ -0,0 +1,121 @@
+class postposTest extends groovy.util.GroovyTestCase {
+
+    /* random matrix (n x m) in [-1,1) */
+    static double[] randmat(Random r, int n, int m) {
+        double[] A=new double[n*m];
+        for (int i=0;i<n*m;i++) A[i]=2.0d*r.nextDouble()-1.0d;
+        return A;
+    }
+
+    /* random symmetric positive definite matrix (A*A'+d*I) */
+    static double[] randspd(Random r, int n, double d) {
+        double[] A=randmat(r,n,n),S=new double[n*n];
+        rtkcmn.matmul("NT",n,n,n,1.0d,A,A,0.0d,S);
+        for (int i=0;i<n;i++) S[i+i*n]+=d;
+        return S;
+    }
+
+    /* max absolute difference of arrays */
+    static double maxdiff(double[] a, double[] b, int n) {
+        double d=0.0d;
+        for (int i=0;i<n;i++) d=Math.max(d,Math.abs(a[i]-b[i]));
+        return d;
+    }
+
+    /* states of record k */
+    static void states(int k, int n, double[] x, double[] P) {
+        for (int i=0;i<n;i++) {
+            x[i]=k*1000.0d+i+0.25d;
+            for (int j=0;j<=i;j++) {
+                P[i+j*n]=P[j+i*n]=k+i*1E-3d+j*1E-6d;
+            }
+        }
+    }
+
+    /* temporary state log file */
+    static String tmpfile() throws IOException {
+        File f=File.createTempFile("statelog",".bin");
+        f.deleteOnExit();
+        return f.getPath();
+    }
+
+    void testStatelogWindows() throws IOException {
+        rtklib.statelog_t log=new rtklib.statelog_t();
+        rtklib.gtime_t t0=rtkcmn.gpst2time(2200,0.0d),time=new rtklib.gtime_t();
+        int n=200,nrec=1000;
+        double[] x=new double[n],P=new double[n*n],xr=new double[n],Pr=new double[n*n];
+        Random r=new Random(8);
+
+        assertEquals(1,postpos.openstatelog(log,tmpfile(),n));
+        try {
+            /* 1000 records over three windows */
+            assertTrue(log.nseg<nrec&&2*log.nseg<nrec&&3*log.nseg>=nrec);
+
+            for (int k=0;k<nrec;k++) {
+                states(k,n,x,P);
+                assertEquals(1,postpos.writestatelog(log,rtkcmn.timeadd(t0,k*0.5d),x,P));
+            }
+            assertEquals(1,postpos.rewindstatelog(log));
+            assertEquals((long)nrec,log.nrec);
+            assertEquals(postpos.LOGHEAD+(long)nrec*log.recsize,log.ch.size());
+            assertEquals(0,postpos.writestatelog(log,t0,x,P));
+
+            /* read back backward and in random order */
+            for (int m=0;m<2*nrec;m++) {
+                int k=m<nrec?nrec-1-m:r.nextInt(nrec);
+
+                assertEquals(1,postpos.readstatelog(log,k,time,xr,Pr));
+                states(k,n,x,P);
+                assertEquals(0.0d,rtkcmn.timediff(time,rtkcmn.timeadd(t0,k*0.5d)),0.0d);
+                assertTrue(Arrays.equals(x,xr));
+                assertTrue(Arrays.equals(P,Pr));
+            }
+            assertEquals(0,postpos.readstatelog(log,nrec,time,xr,Pr));
+            assertEquals(0,postpos.readstatelog(log,-1,time,xr,Pr));
+        }
+        finally {
+            postpos.closestatelog(log);
+        }
+    }
+
+    void testCombstatelogMatchesSmoother() throws IOException {
+        rtklib.statelog_t log=new rtklib.statelog_t();
+        rtklib.gtime_t t0=rtkcmn.gpst2time(2200,100.0d);
+        int n=4,nep=30;
+        double[][] xf=new double[nep][],Qf=new double[nep][];
+        double[] xb,Qb,xs=new double[n],Qs=new double[n*n],xs0=new double[n],Qs0=new double[n*n];
+        Random r=new Random(5);
+
+        for (int k=0;k<nep;k++) {
+            xf[k]=randmat(r,n,1); Qf[k]=randspd(r,n,0.5d);
+        }
+        assertEquals(1,postpos.openstatelog(log,tmpfile(),n));
+        try {
+            /* forward pass without epochs 10 and 20 */
+            for (int k=0;k<nep;k++) {
+                if (k==10||k==20) continue;
+                assertEquals(1,postpos.writestatelog(log,rtkcmn.timeadd(t0,k),xf[k],Qf[k]));
+            }
+            assertEquals(-1,postpos.combstatelog(log,t0,xf[0],Qf[0],xs,Qs));
+            assertEquals(1,postpos.rewindstatelog(log));
+
+            /* backward pass in reverse time order */
+            for (int k=nep-1;k>=0;k--) {
+                xb=randmat(r,n,1); Qb=randspd(r,n,0.5d);
+
+                if (k==10||k==20) {
+                    assertEquals(0,postpos.combstatelog(log,rtkcmn.timeadd(t0,k),xb,Qb,xs,Qs));
+                    continue;
+                }
+                assertEquals(1,postpos.combstatelog(log,rtkcmn.timeadd(t0,k+1E-4d),xb,Qb,xs,Qs));
+                assertEquals(0,rtkcmn.smoother(xf[k],Qf[k],xb,Qb,n,xs0,Qs0));
+                assertEquals(0.0d,maxdiff(xs0,xs,n),1E-12d);
+                assertEquals(0.0d,maxdiff(Qs0,Qs,n*n),1E-12d);
+            }
+            assertEquals(0,postpos.combstatelog(log,rtkcmn.timeadd(t0,-1.0d),xf[0],Qf[0],xs,Qs));
+        }
+        finally {
+            postpos.closestatelog(log);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.nio.ByteBuffer;
+
+class rtcmTest extends groovy.util.GroovyTestCase {
+
+    /* decoder recording message types and frames */
+    static class recdec implements rtklib.rtcm3dec_t {
+        List<Integer> types=new ArrayList<Integer>();
+        List<byte[]> frames=new ArrayList<byte[]>();
+
+        public int decode(rtklib.rtcm_t rtcm, ByteBuffer msg, int type) {
+            byte[] b=new byte[msg.remaining()];
+            msg.get(msg.position(),b,0,b.length);
+            types.add(type);
+            frames.add(b);
+            return 1;
+        }
+    }
+
+    /* hex string to bytes */
+    static byte[] hexbytes(String s) {
+        byte[] b=new byte[s.length()/2];
+        for (int i=0;i<b.length;i++) b[i]=(byte)Integer.parseInt(s.substring(2*i,2*i+2),16);
+        return b;
+    }
+
+    /* generate RTCM 3 frame of message type with n bytes payload */
+    static byte[] frame(int type, int n, Random r) {
+        byte[] b=new byte[n+6];
+        long crc;
+
+        for (int i=5;i<n+3;i++) b[i]=(byte)r.nextInt(256);
+        b[0]=(byte)0xD3;
+        b[1]=(byte)(n>>8);
+        b[2]=(byte)n;
+        b[3]=(byte)(type>>4);
+        b[4]=(byte)((type&0xF)<<4|(b[4]&0xF));
+        crc=rtkcmn.rtk_crc24q(b,n+3);
+        b[n+3]=(byte)(crc>>16);
+        b[n+4]=(byte)(crc>>8);
+        b[n+5]=(byte)crc;
+        return b;
+    }
+
+    /* concatenate bytes */
+    static byte[] concat(byte[] a, byte[] b) {
+        byte[] c=Arrays.copyOf(a,a.length+b.length);
+        System.arraycopy(b,0,c,a.length,b.length);
+        return c;
+    }
+
+    /* input data split at offset k to RTCM 3 framer */
+    static recdec input(byte[] data, int k) {
+        rtklib.rtcm_t rc=new rtklib.rtcm_t();
+        recdec dec=new recdec();
+        ByteBuffer in;
+
+        rc.dec3=new rtklib.rtcm3dec_t[400];
+        Arrays.fill(rc.dec3,dec);
+
+        in=ByteBuffer.wrap(data,0,k);
+        while (in.hasRemaining()) rtcm.input_rtcm3(rc,in);
+        in=ByteBuffer.wrap(data,k,data.length-k);
+        while (in.hasRemaining()) rtcm.input_rtcm3(rc,in);
+        return dec;
+    }
+
+    void testSplitEveryOffset() {
+        Random r=new Random(11);
+        byte[] f1=hexbytes("D300133ED7D30202980EDEEF34B4BD62AC0941986F33360B98");
+        byte[] f2=frame(1077,300,r),f3=frame(2001,2,r);
+        byte[] data=concat(concat(concat(hexbytes("00D3FF55"),f1),f2),concat(f3,f1));
+
+        for (int k=0;k<=data.length;k++) {
+            recdec dec=input(data,k);
+
+            assertEquals(4,dec.types.size());
+            assertEquals(1005,(int)dec.types.get(0));
+            assertEquals(1077,(int)dec.types.get(1));
+            assertEquals(2001,(int)dec.types.get(2));
+            assertEquals(1005,(int)dec.types.get(3));
+            assertTrue(Arrays.equals(f1,dec.frames.get(0)));
+            assertTrue(Arrays.equals(f2,dec.frames.get(1)));
+            assertTrue(Arrays.equals(f3,dec.frames.get(2)));
+            assertTrue(Arrays.equals(f1,dec.frames.get(3)));
+        }
+    }
+
+    void testCrcError() {
+        Random r=new Random(12);
+        byte[] f1=frame(1019,61,r),f2=frame(1005,19,r);
+        byte[] bad=f1.clone();
+
+        bad[30]^=0x10;
+        for (int k=0;k<=bad.length+f2.length;k++) {
+            rtklib.rtcm_t rc=new rtklib.rtcm_t();
+            byte[] data=concat(bad,f2);
+            ByteBuffer in;
+
+            in=ByteBuffer.wrap(data,0,k);
+            while (in.hasRemaining()) assertEquals(0,rtcm.input_rtcm3(rc,in));
+            in=ByteBuffer.wrap(data,k,data.length-k);
+            while (in.hasRemaining()) assertEquals(0,rtcm.input_rtcm3(rc,in));
+
+            /* only the frame with valid crc is counted */
+            assertEquals(0L,rc.nmsg3[rtcm.rtcm3idx(1019)]);
+            assertEquals(1L,rc.nmsg3[rtcm.rtcm3idx(1005)]);
+        }
+    }
+
+    void testFalsePreamble() {
+        Random r=new Random(13);
+        byte[] f1=frame(1005,19,r),f2=frame(1230,40,r);
+
+        /* false preamble with length over the following frames */
+        byte[] data=concat(concat(hexbytes("D30030"),f1),concat(hexbytes("D3"),f2));
+
+        for (int k=0;k<=data.length;k++) {
+            recdec dec=input(data,k);
+
+            assertEquals(2,dec.types.size());
+            assertEquals(1005,(int)dec.types.get(0));
+            assertEquals(1230,(int)dec.types.get(1));
+            assertTrue(Arrays.equals(f1,dec.frames.get(0)));
+            assertTrue(Arrays.equals(f2,dec.frames.get(1)));
+        }
+    }
+}
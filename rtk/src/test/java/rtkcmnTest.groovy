@@ -1,2 +1,1315 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 class rtkcmnTest extends groovy.util.GroovyTestCase {
+
+    /* random matrix (n x m) in [-1,1) */
+    static double[] randmat(Random r, int n, int m) {
+        double[] A=new double[n*m];
+        for (int i=0;i<n*m;i++) A[i]=2.0d*r.nextDouble()-1.0d;
+        return A;
+    }
+
+    /* random symmetric positive definite matrix (A*A'+d*I) */
+    static double[] randspd(Random r, int n, double d) {
+        double[] A=randmat(r,n,n),S=new double[n*n];
+        rtkcmn.matmul("NT",n,n,n,1.0d,A,A,0.0d,S);
+        for (int i=0;i<n;i++) S[i+i*n]+=d;
+        return S;
+    }
+
+    /* max absolute difference of arrays */
+    static double maxdiff(double[] a, double[] b, int n) {
+        double d=0.0d;
+        for (int i=0;i<n;i++) d=Math.max(d,Math.abs(a[i]-b[i]));
+        return d;
+    }
+
+    void testFilterCholMatchesLu() {
+        Random r=new Random(3);
+        int n=12,m=5;
+
+        for (int k=0;k<20;k++) {
+            double[] x=randmat(r,n,1),P=randspd(r,n,1.0d),H=randmat(r,n,m);
+            double[] R=randspd(r,m,0.1d),v=randmat(r,m,1);
+            double[] xp1=new double[n],Pp1=new double[n*n],xp2=new double[n],Pp2=new double[n*n];
+            rtklib.filterws_t ws=new rtklib.filterws_t();
+
+            rtkcmn.init_filterws(ws,n,m);
+            assertEquals(0,rtkcmn.filter_(x,P,H,v,R,n,m,xp1,Pp1,ws));
+            ws.mode=rtklib.FILTER_CHOL;
+            assertEquals(0,rtkcmn.filter_(x,P,H,v,R,n,m,xp2,Pp2,ws));
+
+            assertEquals(0.0d,maxdiff(xp1,xp2,n),1E-9d);
+            assertEquals(0.0d,maxdiff(Pp1,Pp2,n*n),1E-9d);
+            for (int i=0;i<n;i++) for (int j=0;j<n;j++) {
+                assertTrue(Pp2[i+j*n]==Pp2[j+i*n]);
+            }
+        }
+    }
+
+    void testFilterCholNotSpd() {
+        Random r=new Random(4);
+        int n=6,m=3;
+        double[] x=randmat(r,n,1),P=randspd(r,n,1.0d),H=randmat(r,n,m),v=randmat(r,m,1);
+        double[] R=new double[m*m],x0=x.clone(),P0=P.clone();
+        rtklib.filterws_t ws=new rtklib.filterws_t();
+
+        /* H'*P*H+R negative definite */
+        for (int i=0;i<m;i++) R[i+i*m]=-1E4d;
+        ws.mode=rtklib.FILTER_CHOL;
+
+        assertTrue(rtkcmn.filter(x,P,H,v,R,n,m,ws)<0);
+        assertEquals(0.0d,maxdiff(x,x0,n),0.0d);
+        assertEquals(0.0d,maxdiff(P,P0,n*n),0.0d);
+    }
+
+    void testSparseFilterMatchesDense() {
+        Random r=new Random(5);
+        int n=40,m=8;
+
+        for (int mode=0;mode<2;mode++) {
+            double[] x=randmat(r,n,1),P=randspd(r,n,1.0d),H=new double[n*m];
+            double[] R=randspd(r,m,0.1d),v=randmat(r,m,1);
+            rtklib.filterws_t ws1=new rtklib.filterws_t(),ws2=new rtklib.filterws_t();
+            rtklib.sph_t S=new rtklib.sph_t();
+
+            /* states 30-39 uncorrelated, states 20 and 35 inactive */
+            for (int i=30;i<n;i++) for (int j=0;j<n;j++) {
+                if (i!=j) P[i+j*n]=P[j+i*n]=0.0d;
+            }
+            x[20]=x[35]=0.0d;
+
+            /* position and two ambiguities per measurement */
+            for (int j=0;j<m;j++) {
+                for (int i=0;i<3;i++) H[i+j*n]=2.0d*r.nextDouble()-1.0d;
+                H[3+r.nextInt(n-3)+j*n]=1.0d;
+                H[3+r.nextInt(n-3)+j*n]=-1.0d;
+            }
+            H[20+0*n]=H[35+1*n]=1.0d;
+
+            double[] x1=x.clone(),P1=P.clone(),x2=x.clone(),P2=P.clone();
+            ws1.mode=ws2.mode=mode;
+            rtkcmn.sparseh(H,n,m,S);
+            assertEquals(0,rtkcmn.filter(x1,P1,H,v,R,n,m,ws1));
+            assertEquals(0,rtkcmn.filter(x2,P2,S,v,R,n,m,ws2));
+
+            assertEquals(0.0d,maxdiff(x1,x2,n),1E-9d);
+            assertEquals(0.0d,maxdiff(P1,P2,n*n),1E-9d);
+            assertEquals(x[20],x2[20],0.0d);
+            assertEquals(P[35+35*n],P2[35+35*n],0.0d);
+        }
+    }
+
+    void testSparseFilterSize() {
+        Random r=new Random(6);
+        int n=10,m=3;
+        double[] x=randmat(r,n,1),P=randspd(r,n,1.0d),H=randmat(r,n,m);
+        double[] R=randspd(r,m,0.1d),v=randmat(r,m,1),x0=x.clone(),P0=P.clone();
+        rtklib.filterws_t ws=new rtklib.filterws_t();
+        rtklib.sph_t S=new rtklib.sph_t();
+
+        rtkcmn.sparseh(H,n,m,S);
+        assertTrue(rtkcmn.filter(x,P,S,v,R,n+1,m,ws)<0);
+        assertTrue(rtkcmn.filter(x,P,S,v,R,n,m-1,ws)<0);
+        assertEquals(0.0d,maxdiff(x,x0,n),0.0d);
+        assertEquals(0.0d,maxdiff(P,P0,n*n),0.0d);
+    }
+
+    /* residual sum of squares of least square solution */
+    static double lsqrss(double[] A, double[] y, int n, int m, double[] x) {
+        double rss=0.0d,e;
+        for (int j=0;j<m;j++) {
+            e=y[j];
+            for (int i=0;i<n;i++) e-=A[i+j*n]*x[i];
+            rss+=e*e;
+        }
+        return rss;
+    }
+
+    void testLsqincMatchesLsq() {
+        Random r=new Random(7);
+        int n=4,m=40;
+        double[] A=randmat(r,n,m),y=randmat(r,m,1);
+        double[] x1=new double[n],Q1=new double[n*n],x2=new double[n],Q2=new double[n*n];
+        rtklib.lsqinc_t S=new rtklib.lsqinc_t();
+
+        rtkcmn.lsqinc_init(S,n);
+        for (int j=0;j<m;j++) rtkcmn.lsqinc_add(S,A,j*n,y[j]);
+
+        assertEquals(0,rtkcmn.lsq(A,y,n,m,x1,Q1));
+        assertEquals(0,rtkcmn.lsqinc_solve(S,x2,Q2));
+        assertEquals(0.0d,maxdiff(x1,x2,n),1E-12d);
+        assertEquals(0.0d,maxdiff(Q1,Q2,n*n),1E-12d);
+        assertEquals(lsqrss(A,y,n,m,x1),S.rss,1E-10d);
+    }
+
+    void testLsqincLeaveOneOut() {
+        Random r=new Random(8);
+        int n=4,m=40;
+        double[] A=randmat(r,n,m),y=randmat(r,m,1),A1=new double[n*(m-1)],y1=new double[m-1];
+        double[] x1=new double[n],Q1=new double[n*n],x2=new double[n],Q2=new double[n*n];
+        rtklib.lsqinc_t S=new rtklib.lsqinc_t(),D=new rtklib.lsqinc_t();
+
+        rtkcmn.lsqinc_init(S,n);
+        for (int j=0;j<m;j++) rtkcmn.lsqinc_add(S,A,j*n,y[j]);
+
+        for (int k=0;k<m;k++) {
+            int l=0;
+            for (int j=0;j<m;j++) {
+                if (j==k) continue;
+                for (int i=0;i<n;i++) A1[i+l*n]=A[i+j*n];
+                y1[l++]=y[j];
+            }
+            rtkcmn.lsqinc_copy(D,S);
+            assertEquals(0,rtkcmn.lsqinc_del(D,A,k*n,y[k]));
+            assertEquals(m-1,D.m);
+
+            assertEquals(0,rtkcmn.lsq(A1,y1,n,m-1,x1,Q1));
+            assertEquals(0,rtkcmn.lsqinc_solve(D,x2,Q2));
+            assertEquals(0.0d,maxdiff(x1,x2,n),1E-10d);
+            assertEquals(0.0d,maxdiff(Q1,Q2,n*n),1E-10d);
+            assertEquals(lsqrss(A1,y1,n,m-1,x1),D.rss,1E-9d);
+        }
+    }
+
+    void testLsqincDelSingular() {
+        Random r=new Random(9);
+        int n=3;
+        double[] A=randmat(r,n,n),y=randmat(r,n,1),x=new double[n];
+        rtklib.lsqinc_t S=new rtklib.lsqinc_t();
+
+        /* removing a row of a square system leaves it rank deficient */
+        rtkcmn.lsqinc_init(S,n);
+        for (int j=0;j<n;j++) rtkcmn.lsqinc_add(S,A,j*n,y[j]);
+        assertEquals(0,rtkcmn.lsqinc_solve(S,x,null));
+        assertTrue(rtkcmn.lsqinc_del(S,A,0,y[0])<0);
+    }
+
+    void testCodepriOptions() {
+        String[] opts=new String[3];
+        int c1p=2,c1w=3;
+
+        opts[0]="-GL1P"; opts[1]="-GL1W"; opts[2]="-GL2X -RL1C";
+
+        /* code numbers by obscodes */
+        assertEquals("1C",rtkcmn.obscodes[1]);
+        assertEquals("1P",rtkcmn.obscodes[c1p]);
+        assertEquals("1W",rtkcmn.obscodes[c1w]);
+
+        assertEquals(15,rtkcmn.getcodepri(rtklib.SYS_GPS,c1p,opts[0]));
+        assertEquals(0,rtkcmn.getcodepri(rtklib.SYS_GPS,1,opts[0]));
+        assertEquals(15,rtkcmn.getcodepri(rtklib.SYS_GPS,c1w,opts[1]));
+        assertEquals(0,rtkcmn.getcodepri(rtklib.SYS_GPS,c1p,opts[1]));
+        assertEquals(rtkcmn.getcodepri(rtklib.SYS_GPS,1,null),
+                     rtkcmn.getcodepri(rtklib.SYS_GPS,1,opts[2]));
+        assertEquals(3,rtkcmn.codepriopt_.length);
+
+        /* alternating options (rover, base, corrections) do not rebuild the matrices */
+        rtklib.codepri_t[] cache=rtkcmn.codepriopt_;
+        for (int k=0;k<30;k++) {
+            rtkcmn.getcodepri(rtklib.SYS_GPS,c1p,opts[k%3]);
+            assertSame(cache,rtkcmn.codepriopt_);
+        }
+        /* changed code priorities drop the matrices by options */
+        rtkcmn.setcodepri(rtklib.SYS_GPS,1,"CPYWMNSL");
+        assertEquals(0,rtkcmn.codepriopt_.length);
+        assertEquals(15,rtkcmn.getcodepri(rtklib.SYS_GPS,c1p,opts[0]));
+    }
+
+    /* hex string to bytes */
+    static byte[] hexbytes(String s) {
+        byte[] b=new byte[s.length()/2];
+        for (int i=0;i<b.length;i++) b[i]=(byte)Integer.parseInt(s.substring(2*i,2*i+2),16);
+        return b;
+    }
+
+    void testCrcCheckValues() {
+        byte[] b="123456789".getBytes();
+
+        /* crc-32 (novatel: reflected 0xEDB88320, init 0, no final xor) */
+        assertEquals(0x2DFD2D88L,rtkcmn.rtk_crc32(b,b.length));
+        /* crc-24q (crc-24/lte-a) */
+        assertEquals(0xCDE703L,rtkcmn.rtk_crc24q(b,b.length));
+        /* crc-16 (binex: crc-16/xmodem) */
+        assertEquals(0x31C3,rtkcmn.rtk_crc16(b,b.length));
+    }
+
+    void testCrcRtcm1005() {
+        /* rtcm 10403 sample message 1005 (station 2003) with crc-24q */
+        byte[] b=hexbytes("D300133ED7D30202980EDEEF34B4BD62AC0941986F33360B98");
+
+        assertEquals(1005L,(long)rtkcmn.getbitu(b,24,12));
+        assertEquals(2003L,(long)rtkcmn.getbitu(b,36,12));
+        assertEquals(0x360B98L,rtkcmn.rtk_crc24q(b,b.length-3));
+        assertEquals(0L,rtkcmn.rtk_crc24q(b,b.length));
+    }
+
+    void testCrcNovatel() {
+        /* novatel oem bestposb log (28 byte header, 72 byte body) with crc-32 */
+        byte[] b=hexbytes("AA44121C2A00022048000000"+"90B49305B0ABB91200000000"+
+                          "4561BC0A0000000010000000"+"1B0450B3F28E494016FA6BBE"+
+                          "7C825CC00060769F449F9040"+"A62A82C13D000000125ACB3F"+
+                          "CD9E983FDB66404000303030"+"0000000000000000"+
+                          "0B0B000000060003"+"42DC4C48");
+
+        assertEquals(28L,b[3]&0xFFL);
+        assertEquals(72L,(b[8]&0xFFL)|(b[9]&0xFFL)<<8);
+        assertEquals(0x484CDC42L,rtkcmn.rtk_crc32(b,100));
+        assertEquals(0x484CDC42L,rtkcmn.rtk_crc32(ByteBuffer.wrap(b),0,100));
+        assertEquals(0L,rtkcmn.rtk_crc32(b,b.length));
+    }
+
+    void testCrcChunked() {
+        Random r=new Random(10);
+        byte[] b=new byte[300];
+        long[] c=new long[3];
+        rtklib.crc_t crc=new rtklib.crc_t();
+
+        r.nextBytes(b);
+        c[rtklib.CRC_32 ]=rtkcmn.rtk_crc32 (b,b.length);
+        c[rtklib.CRC_24Q]=rtkcmn.rtk_crc24q(b,b.length);
+        c[rtklib.CRC_16 ]=rtkcmn.rtk_crc16 (b,b.length);
+
+        for (int type=0;type<3;type++) {
+            for (int k=0;k<=b.length;k++) {
+                rtkcmn.crcinit(crc,type);
+                rtkcmn.crcupdate(crc,b,0,k);
+                rtkcmn.crcupdate(crc,b,k,b.length-k);
+                assertEquals(c[type],rtkcmn.crcvalue(crc));
+
+                rtkcmn.crcinit(crc,type);
+                rtkcmn.crcupdate(crc,ByteBuffer.wrap(b),0,k);
+                rtkcmn.crcupdate(crc,ByteBuffer.wrap(b),k,b.length-k);
+                assertEquals(c[type],rtkcmn.crcvalue(crc));
+            }
+            /* byte by byte */
+            rtkcmn.crcinit(crc,type);
+            for (int k=0;k<b.length;k++) rtkcmn.crcupdate(crc,b,k,1);
+            assertEquals(c[type],rtkcmn.crcvalue(crc));
+        }
+    }
+
+    /* array of values */
+    static double[] vec(double... a) {
+        return a;
+    }
+
+    /* geodetic position by iteration until converged (reference) */
+    static void ecef2posref(double[] r, double[] pos) {
+        double e2=rtklib.FE_WGS84*(2.0d-rtklib.FE_WGS84),r2=r[0]*r[0]+r[1]*r[1];
+        double z=r[2],zk=1E9d,v=rtklib.RE_WGS84,sinp;
+
+        for (int i=0;i<1000&&z!=zk;i++) {
+            zk=z;
+            sinp=z/Math.sqrt(r2+z*z);
+            v=rtklib.RE_WGS84/Math.sqrt(1.0d-e2*sinp*sinp);
+            z=r[2]+v*e2*sinp;
+        }
+        pos[0]=Math.atan2(z,Math.sqrt(r2));
+        pos[1]=r2>0.0d?Math.atan2(r[1],r[0]):0.0d;
+        pos[2]=Math.sqrt(r2+z*z)-v;
+    }
+
+    /* check ecef2pos() by converged iteration and round trip */
+    static void checkecef2pos(double[] r) {
+        checkecef2pos(r,true);
+    }
+
+    static void checkecef2pos(double[] r, boolean lat) {
+        double[] pos=new double[3],ref=new double[3],rr=new double[3];
+
+        rtkcmn.ecef2pos(r,pos);
+        ecef2posref(r,ref);
+        rtkcmn.pos2ecef(pos,rr);
+
+        if (lat) assertEquals(ref[0]*rtklib.RE_WGS84,pos[0]*rtklib.RE_WGS84,1E-8d);
+        assertEquals(ref[1]*rtklib.RE_WGS84,pos[1]*rtklib.RE_WGS84,1E-8d);
+        assertEquals(ref[2],pos[2],1E-8d);
+        assertEquals(0.0d,maxdiff(r,rr,3),1E-8d);
+    }
+
+    void testEcef2posPole() {
+        double[] r=new double[3],pos=new double[3];
+        double b=rtklib.RE_WGS84*(1.0d-rtklib.FE_WGS84);
+        double[] hs=vec(-1000.0d,0.0d,0.001d,400.0d,2E7d);
+
+        for (double h:hs) for (int sign=-1;sign<=1;sign+=2) {
+            r[0]=r[1]=0.0d; r[2]=sign*(b+h);
+            rtkcmn.ecef2pos(r,pos);
+            assertEquals(sign*rtklib.PI/2.0d,pos[0],0.0d);
+            assertEquals(h,pos[2],1E-8d);
+            checkecef2pos(r);
+
+            /* 1 mm off the axis */
+            r[0]=1E-3d;
+            checkecef2pos(r);
+        }
+    }
+
+    void testEcef2posEquator() {
+        double[] r=new double[3],pos=new double[3];
+        double[] hs=vec(-1000.0d,0.0d,0.001d,400.0d,2E7d);
+
+        for (double h:hs) for (int i=0;i<12;i++) {
+            double lon=(i*30.0d-165.0d)*rtklib.D2R;
+            r[0]=(rtklib.RE_WGS84+h)*Math.cos(lon);
+            r[1]=(rtklib.RE_WGS84+h)*Math.sin(lon);
+            r[2]=0.0d;
+            rtkcmn.ecef2pos(r,pos);
+            assertEquals(0.0d,pos[0],0.0d);
+            assertEquals(lon,pos[1],1E-15d);
+            assertEquals(h,pos[2],1E-8d);
+            checkecef2pos(r);
+        }
+    }
+
+    void testEcef2posNearCenter() {
+        double[] r=new double[3];
+        double[] rs=vec(1E6d,1E5d,5E4d,4E4d,1E4d);
+
+        /* outside and inside of the evolute (a*e^2 ~ 43 km) of the ellipsoid
+           (latitude inside is ill-conditioned, checked by round trip) */
+        for (double rad:rs) for (int i=0;i<=12;i++) {
+            double lat=(i*15.0d-90.0d+1.0d)*rtklib.D2R;
+            r[0]=rad*Math.cos(lat)*0.6d;
+            r[1]=rad*Math.cos(lat)*0.8d;
+            r[2]=rad*Math.sin(lat);
+            checkecef2pos(r,rad>=5E4d);
+        }
+    }
+
+    void testDays2civil() {
+        assertEquals(19700101L,rtkcmn.days2civil(0L));
+        assertEquals(19691231L,rtkcmn.days2civil(-1L));
+        assertEquals(20000229L,rtkcmn.days2civil(11016L));
+        assertEquals(20000301L,rtkcmn.days2civil(11017L));
+        assertEquals(20160229L,rtkcmn.days2civil(16860L));
+        assertEquals(20991231L,rtkcmn.days2civil(47481L));
+        assertEquals(21000301L,rtkcmn.days2civil(47541L)); /* 2100 not leap year */
+        assertEquals(19000301L,rtkcmn.days2civil(-25508L)); /* 1900 not leap year */
+        assertEquals(16000229L,rtkcmn.days2civil(-135081L));
+
+        /* every day in 1970-2099 against epoch2time() */
+        double[] ep=new double[6];
+        for (long days=0;days<=47481L;days++) {
+            long ymd=rtkcmn.days2civil(days);
+            ep[0]=ymd/10000; ep[1]=ymd/100%100; ep[2]=ymd%100;
+            assertEquals(days*86400L,rtkcmn.epoch2time(ep).time);
+        }
+    }
+
+    /* time to epoch by primitive time and check */
+    static void checkepoch(long time, double sec, double[] ep) {
+        double[] e=new double[6];
+        rtkcmn.time2epoch(time,sec,e);
+        for (int i=0;i<5;i++) assertEquals(ep[i],e[i],0.0d);
+        assertEquals(ep[5],e[5],1E-9d);
+    }
+
+    void testTime2epoch() {
+        checkepoch(0L,0.0d,vec(1970,1,1,0,0,0));
+        checkepoch(16860L*86400L+43200L,0.25d,vec(2016,2,29,12,0,0.25d));
+        checkepoch(4102444799L,0.5d,vec(2099,12,31,23,59,59.5d));
+        checkepoch(4102444800L,0.0d,vec(2100,1,1,0,0,0));
+        checkepoch(-1L,0.0d,vec(1969,12,31,23,59,59));
+
+        /* negative fraction borrows from seconds */
+        checkepoch(16861L*86400L,-0.25d,vec(2016,2,29,23,59,59.75d));
+        checkepoch(16860L*86400L,-1.5d,vec(2016,2,28,23,59,58.5d));
+    }
+
+    /* time to string with both overloads */
+    static String timestr(long time, double sec, int n) {
+        rtklib.gtime_t t=new rtklib.gtime_t();
+        byte[] buff=new byte[40];
+        String s;
+        int p;
+
+        t.time=time; t.sec=sec;
+        s=rtkcmn.time2str(t,new StringBuilder(),n).toString();
+        p=rtkcmn.time2str(t,buff,0,n);
+        assertEquals(s,new String(buff,0,p));
+        assertEquals(s,rtkcmn.time_str(time,sec,n));
+        assertEquals(s,rtkcmn.time_str(t,n));
+        return s;
+    }
+
+    void testTime2str() {
+        long t=1483228799L; /* 2016/12/31 23:59:59 */
+
+        assertEquals("1970/01/01 00:00:00",timestr(0L,0.0d,0));
+        assertEquals("2016/02/29 12:00:00.250",timestr(16860L*86400L+43200L,0.25d,3));
+        assertEquals("2099/12/31 23:59:59.5",timestr(4102444799L,0.5d,1));
+        assertEquals("2016/12/31 23:59:59.999",timestr(t,0.9994d,3));
+
+        /* round up to next minute, day and year */
+        assertEquals("2017/01/01 00:00:00.000",timestr(t,0.9995d,3));
+        assertEquals("2017/01/01 00:00:00",timestr(t,0.5d,0));
+        assertEquals("2016/12/31 23:59:59",timestr(t,0.4d,0));
+        assertEquals("2100/01/01 00:00:00",timestr(4102444799L,0.9d,0));
+
+        /* negative fraction */
+        assertEquals("2016/12/31 23:59:58.750",timestr(t,-0.25d,3));
+        assertEquals("2016/12/31 23:59:59",timestr(t,-0.0001d,0));
+        assertEquals("2016/12/31 23:59:58",timestr(t,-0.6d,0));
+
+        /* number of decimals limited to 0-12 */
+        assertEquals("2016/12/31 23:59:59",timestr(t,0.25d,-1));
+        assertEquals("2016/12/31 23:59:59.250000000000",timestr(t,0.25d,13));
+    }
+
+    /* check utc to gpst and gpst to utc at epoch */
+    static void checkleap(double[] utc, double[] gpst) {
+        rtklib.gtime_t tu=rtkcmn.epoch2time(utc),tg=rtkcmn.epoch2time(gpst);
+
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.utc2gpst(tu),tg),1E-9d);
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.gpst2utc(tg),tu),1E-9d);
+    }
+
+    void testLeapBoundary() {
+        /* 2017/1/1 (utc-gpst: -17 -> -18 s) */
+        checkleap(vec(2016,12,31,23,59,58),vec(2017,1,1,0,0,15));
+        checkleap(vec(2016,12,31,23,59,59),vec(2017,1,1,0,0,16));
+        checkleap(vec(2016,12,31,23,59,59.999d),vec(2017,1,1,0,0,16.999d));
+        checkleap(vec(2017,1,1,0,0,0),vec(2017,1,1,0,0,18));
+        checkleap(vec(2017,1,1,0,0,1),vec(2017,1,1,0,0,19));
+
+        /* 2015/7/1 (utc-gpst: -16 -> -17 s) */
+        checkleap(vec(2015,6,30,23,59,59),vec(2015,7,1,0,0,15));
+        checkleap(vec(2015,7,1,0,0,0),vec(2015,7,1,0,0,17));
+        checkleap(vec(2015,7,1,0,0,1),vec(2015,7,1,0,0,18));
+
+        /* inserted second of gpst maps to start of new utc day */
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.gpst2utc(rtkcmn.epoch2time(vec(2017,1,1,0,0,17))),
+                                          rtkcmn.epoch2time(vec(2017,1,1,0,0,0))),1E-9d);
+
+        /* before the first leap seconds: no correction */
+        checkleap(vec(1980,1,6,0,0,0),vec(1980,1,6,0,0,0));
+        checkleap(vec(1981,6,30,23,59,59),vec(1981,6,30,23,59,59));
+        checkleap(vec(1981,7,1,0,0,0),vec(1981,7,1,0,0,1));
+    }
+
+    void testLeapsearch() {
+        rtklib.leapidx_t idx=rtkcmn.newleapidx(rtkcmn.leaps);
+        rtklib.gtime_t t;
+        Random r=new Random(12);
+        int n=idx.n,i,j;
+
+        /* index sorted by utc with the latest entry last */
+        assertEquals(18,n);
+        assertEquals(rtkcmn.epoch2time(vec(1981,7,1,0,0,0)).time,idx.tutc[0]);
+        assertEquals(rtkcmn.epoch2time(vec(2017,1,1,0,0,0)).time,idx.tutc[n-1]);
+        assertEquals(-18.0d,idx.ls[n-1],0.0d);
+        assertEquals(idx.tutc[n-1]+18L,idx.tgps[n-1]);
+
+        assertEquals(n-1,rtkcmn.leapsearch(idx,idx.tutc,idx.tutc[n-1],0.0d));
+        assertEquals(n-2,rtkcmn.leapsearch(idx,idx.tutc,idx.tutc[n-1]-1L,0.0d));
+        assertEquals(n-2,rtkcmn.leapsearch(idx,idx.tutc,idx.tutc[n-1],-1E-6d));
+        assertEquals(n-2,rtkcmn.leapsearch(idx,idx.tgps,idx.tgps[n-1]-1L,0.999d));
+        assertEquals(-1,rtkcmn.leapsearch(idx,idx.tutc,idx.tutc[0]-1L,0.0d));
+        assertEquals(0,rtkcmn.leapsearch(idx,idx.tutc,idx.tutc[0],0.0d));
+
+        /* random order against linear search (search hint not stale) */
+        for (int k=0;k<2000;k++) {
+            t=rtkcmn.timeadd(rtkcmn.epoch2time(vec(1980,1,1,0,0,0)),r.nextDouble()*1.3E9d);
+            if (k%4==0) t=rtkcmn.timeadd(new rtklib.gtime_t(),(double)idx.tutc[r.nextInt(n)]+r.nextInt(3)-1);
+            for (j=-1;j+1<n&&idx.tutc[j+1]<=t.time;j++) ;
+            i=rtkcmn.leapsearch(idx,idx.tutc,t.time,t.sec);
+            assertEquals(j,i);
+        }
+    }
+
+    void testNewleapidxPublished() {
+        rtklib.leapidx_t idx0=rtkcmn.leapidx;
+        double[][] ls=new double[rtklib.MAXLEAPS+1][7];
+        rtklib.gtime_t t=rtkcmn.epoch2time(vec(2030,1,1,0,0,0));
+
+        /* reloaded table with a new leap seconds */
+        ls[0]=vec(2029,7,1,0,0,0,-19);
+        for (int i=0;i<rtkcmn.leaps.length&&rtkcmn.leaps[i][0]>0;i++) ls[i+1]=rtkcmn.leaps[i].clone();
+        try {
+            assertEquals(-18.0d,rtkcmn.timediff(rtkcmn.gpst2utc(t),t),1E-9d);
+            rtkcmn.leapidx=rtkcmn.newleapidx(ls);
+            assertEquals(-19.0d,rtkcmn.timediff(rtkcmn.gpst2utc(t),t),1E-9d);
+            assertEquals(19.0d,rtkcmn.timediff(rtkcmn.utc2gpst(t),t),1E-9d);
+            checkleap(vec(2029,6,30,23,59,59),vec(2029,7,1,0,0,17));
+            checkleap(vec(2029,7,1,0,0,0),vec(2029,7,1,0,0,19));
+            checkleap(vec(2017,1,1,0,0,0),vec(2017,1,1,0,0,18));
+        }
+        finally {
+            rtkcmn.leapidx=idx0;
+        }
+        assertEquals(-18.0d,rtkcmn.timediff(rtkcmn.gpst2utc(t),t),1E-9d);
+    }
+
+    /* check times by primitive arrays equal to gtime_t */
+    static void checktimes(long[] time, double[] sec, rtklib.gtime_t[] t, int n) {
+        for (int i=0;i<n;i++) {
+            assertEquals("i="+i,t[i].time,time[i]);
+            assertEquals("i="+i,t[i].sec,sec[i],0.0d);
+        }
+    }
+
+    void testBatchTimeMatchesSingle() {
+        int n=400;
+        int[] week=new int[n],wout=new int[n],w=new int[1];
+        double[] tow=new double[n],tw=new double[n],sec=new double[n],sout=new double[n],s2=new double[n];
+        long[] time=new long[n],tout=new long[n],t2=new long[n];
+        rtklib.gtime_t[] t=new rtklib.gtime_t[n];
+        rtklib.gtime_t t0=rtkcmn.epoch2time(vec(2016,12,31,23,58,40.125d));
+        Random r=new Random(15);
+
+        /* column across leap second 2017/1/1 in gpst and utc, and in random order */
+        for (int i=0;i<n;i++) {
+            rtklib.gtime_t ti=rtkcmn.timeadd(t0,i<300?i*0.7d:r.nextDouble()*200.0d);
+            tow[i]=rtkcmn.time2gpst(ti,w); week[i]=w[0];
+        }
+        rtkcmn.gpst2times(week,tow,n,time,sec);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.gpst2time(week[i],tow[i]);
+        checktimes(time,sec,t,n);
+
+        rtkcmn.gst2times(week,tow,n,tout,sout);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.gst2time(week[i],tow[i]);
+        checktimes(tout,sout,t,n);
+        rtkcmn.bdt2times(week,tow,n,tout,sout);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.bdt2time(week[i],tow[i]);
+        checktimes(tout,sout,t,n);
+
+        /* times to week and tow */
+        rtkcmn.time2gpsts(time,sec,n,wout,tw);
+        for (int i=0;i<n;i++) {
+            rtklib.gtime_t ti=rtkcmn.gpst2time(week[i],tow[i]);
+            assertEquals(rtkcmn.time2gpst(ti,w),tw[i],0.0d);
+            assertEquals(w[0],wout[i]);
+        }
+        rtkcmn.time2gsts(time,sec,n,wout,tw);
+        for (int i=0;i<n;i++) {
+            assertEquals(rtkcmn.time2gst(rtkcmn.gpst2time(week[i],tow[i]),w),tw[i],0.0d);
+            assertEquals(w[0],wout[i]);
+        }
+        rtkcmn.time2bdts(time,sec,n,null,tw);
+        for (int i=0;i<n;i++) assertEquals(rtkcmn.time2bdt(rtkcmn.gpst2time(week[i],tow[i]),w),tw[i],0.0d);
+
+        /* gpst to utc and utc to gpst across leap second */
+        rtkcmn.gpst2utcs(time,sec,n,tout,sout);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.gpst2utc(rtkcmn.gpst2time(week[i],tow[i]));
+        checktimes(tout,sout,t,n);
+        assertEquals(-17.0d,rtkcmn.timediff(tout[0],sout[0],time[0],sec[0]),1E-9d);
+        assertEquals(-18.0d,rtkcmn.timediff(tout[299],sout[299],time[299],sec[299]),1E-9d);
+        rtkcmn.utc2gpsts(time,sec,n,tout,sout);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.utc2gpst(rtkcmn.gpst2time(week[i],tow[i]));
+        checktimes(tout,sout,t,n);
+
+        /* in place */
+        System.arraycopy(time,0,t2,0,n); System.arraycopy(sec,0,s2,0,n);
+        rtkcmn.gpst2utcs(t2,s2,n,t2,s2);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.gpst2utc(rtkcmn.gpst2time(week[i],tow[i]));
+        checktimes(t2,s2,t,n);
+
+        /* gpst to bdt and bdt to gpst */
+        System.arraycopy(time,0,t2,0,n); System.arraycopy(sec,0,s2,0,n);
+        rtkcmn.gpst2bdts(t2,s2,n);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.gpst2bdt(rtkcmn.gpst2time(week[i],tow[i]));
+        checktimes(t2,s2,t,n);
+        rtkcmn.bdt2gpsts(t2,s2,n);
+        for (int i=0;i<n;i++) t[i]=rtkcmn.bdt2gpst(t[i]);
+        checktimes(t2,s2,t,n);
+    }
+
+    /* check state store against states and covariances by key */
+    static void checkxstore(rtklib.xstore_t st, int[][] keys, double[] x, double[] P, double[] Pa) {
+        int n=keys.length,N=st.nmax;
+
+        assertEquals(n,st.n);
+        for (int i=0;i<n;i++) {
+            int si=rtkcmn.xstore_slot(st,keys[i][0],keys[i][1],keys[i][2]);
+            assertTrue(si>=0&&si<n);
+            assertEquals(x[i],st.x[si],0.0d);
+            for (int j=0;j<n;j++) {
+                int sj=rtkcmn.xstore_slot(st,keys[j][0],keys[j][1],keys[j][2]);
+                assertEquals(P [i+j*n],st.P [si+sj*N],0.0d);
+                assertEquals(Pa[i+j*n],st.Pa[si+sj*N],0.0d);
+            }
+        }
+        /* unused slots are cleared */
+        for (int i=n;i<N;i++) {
+            assertEquals(0.0d,st.x[i],0.0d);
+            for (int j=0;j<N;j++) {
+                assertEquals(0.0d,st.P[i+j*N],0.0d);
+                assertEquals(0.0d,st.P[j+i*N],0.0d);
+            }
+        }
+    }
+
+    void testXstoreDefault() {
+        rtklib.xstore_t st=new rtklib.xstore_t();
+
+        /* store created without init_xstore() is empty */
+        assertEquals(0,st.n);
+        assertEquals(-1,rtkcmn.xstore_slot(st,rtklib.XK_POS,0,0));
+        assertEquals(-1,rtkcmn.xstore_slot(st,rtklib.XK_AMB,rtklib.MAXSAT,0));
+        assertEquals(0,rtkcmn.xstore_del(st,rtklib.XK_ION,5,0));
+        assertEquals(0,rtkcmn.xstore_add(st,rtklib.XK_ION,5,0,1.5d,4.0d));
+        assertEquals(1,rtkcmn.xstore_add(st,rtklib.XK_ION,6,0,2.5d,9.0d));
+        assertEquals(0,rtkcmn.xstore_slot(st,rtklib.XK_ION,5,0));
+        assertEquals(1,rtkcmn.xstore_slot(st,rtklib.XK_ION,6,0));
+        assertEquals(9.0d,st.P[1+1*st.nmax],0.0d);
+
+        /* invalid keys */
+        assertEquals(-1,rtkcmn.xstore_add(st,rtklib.NXKIND,0,0,0.0d,1.0d));
+        assertEquals(-1,rtkcmn.xstore_add(st,rtklib.XK_AMB,rtklib.MAXSAT+1,0,0.0d,1.0d));
+        assertEquals(-1,rtkcmn.xstore_slot(st,rtklib.XK_AMB,0,rtklib.NXIDX));
+        assertEquals(0,rtkcmn.xstore_del(st,-1,0,0));
+    }
+
+    void testXstoreAddDelResize() {
+        Random r=new Random(9);
+        rtklib.xstore_t st=new rtklib.xstore_t();
+        int n=7;
+        int[][] keys=new int[n][];
+        double[] x=randmat(r,n,1),P=randspd(r,n,1.0d),Pa=randspd(r,n,1.0d);
+
+        rtkcmn.init_xstore(st,2);
+        for (int i=0;i<n;i++) {
+            keys[i]=new int[3];
+            keys[i][0]=rtklib.XK_AMB; keys[i][1]=10+3*i; keys[i][2]=i%2;
+            assertEquals(i,rtkcmn.xstore_add(st,keys[i][0],keys[i][1],keys[i][2],x[i],P[i+i*n]));
+        }
+        assertEquals(8,st.nmax); /* resized 2->4->8 */
+
+        /* set covariances by key */
+        for (int i=0;i<n;i++) {
+            for (int j=0;j<n;j++) {
+                st.P [i+j*st.nmax]=P [i+j*n];
+                st.Pa[i+j*st.nmax]=Pa[i+j*n];
+            }
+        }
+        checkxstore(st,keys,x,P,Pa);
+
+        /* resize keeps states */
+        rtkcmn.xstore_resize(st,11);
+        assertEquals(11,st.nmax);
+        checkxstore(st,keys,x,P,Pa);
+
+        /* delete middle state: last state moved to freed slot */
+        assertEquals(1,rtkcmn.xstore_del(st,keys[2][0],keys[2][1],keys[2][2]));
+        assertEquals(-1,rtkcmn.xstore_slot(st,keys[2][0],keys[2][1],keys[2][2]));
+        assertEquals(2,rtkcmn.xstore_slot(st,keys[n-1][0],keys[n-1][1],keys[n-1][2]));
+        assertEquals(x[n-1],st.x[2],0.0d);
+        assertEquals(P [n-1+(n-1)*n],st.P [2+2*st.nmax],0.0d);
+        assertEquals(Pa[n-1+(n-1)*n],st.Pa[2+2*st.nmax],0.0d);
+        assertEquals(P [0+(n-1)*n],st.P [0+2*st.nmax],0.0d);
+        assertEquals(Pa[(n-1)+3*n],st.Pa[2+3*st.nmax],0.0d);
+
+        int[][] keys2=new int[n-1][];
+        int[] idx=new int[n-1];
+        for (int i=0,j=0;i<n;i++) if (i!=2) {keys2[j]=keys[i]; idx[j++]=i;}
+        double[] x2=new double[n-1],P2=new double[(n-1)*(n-1)],Pa2=new double[(n-1)*(n-1)];
+        for (int i=0;i<n-1;i++) {
+            x2[i]=x[idx[i]];
+            for (int j=0;j<n-1;j++) {
+                P2 [i+j*(n-1)]=P [idx[i]+idx[j]*n];
+                Pa2[i+j*(n-1)]=Pa[idx[i]+idx[j]*n];
+            }
+        }
+        checkxstore(st,keys2,x2,P2,Pa2);
+        assertEquals(0,rtkcmn.xstore_del(st,keys[2][0],keys[2][1],keys[2][2]));
+
+        /* delete last state */
+        assertEquals(1,rtkcmn.xstore_del(st,keys[5][0],keys[5][1],keys[5][2]));
+        assertEquals(n-2,st.n);
+        assertEquals(-1,rtkcmn.xstore_slot(st,keys[5][0],keys[5][1],keys[5][2]));
+
+        /* re-add initializes state at the end without covariances */
+        assertEquals(n-2,rtkcmn.xstore_add(st,keys[2][0],keys[2][1],keys[2][2],5.0d,25.0d));
+        assertEquals(5.0d,st.x[n-2],0.0d);
+        for (int i=0;i<n-1;i++) {
+            assertEquals(i==n-2?25.0d:0.0d,st.P[i+(n-2)*st.nmax],0.0d);
+            assertEquals(0.0d,st.Pa[(n-2)+i*st.nmax],0.0d);
+        }
+
+        /* add existing state reinitializes in place */
+        int s=rtkcmn.xstore_slot(st,keys[0][0],keys[0][1],keys[0][2]);
+        assertEquals(s,rtkcmn.xstore_add(st,keys[0][0],keys[0][1],keys[0][2],-1.0d,4.0d));
+        assertEquals(n-1,st.n);
+        assertEquals(-1.0d,st.x[s],0.0d);
+        assertEquals(4.0d,st.P[s+s*st.nmax],0.0d);
+        assertEquals(0.0d,st.P[s+1*st.nmax],0.0d);
+    }
+
+    /* reference bit extraction by each bit (bits over end of data are 0) */
+    static long refbits(byte[] buff, int pos, int len) {
+        long v=0L;
+        for (int k=0;k<len;k++) {
+            int i=(pos+k)>>3;
+            v=(v<<1)|(i<buff.length?(buff[i]>>(7-((pos+k)&7)))&1:0);
+        }
+        return v;
+    }
+
+    /* reference bit setting by each bit */
+    static void refset(byte[] buff, int pos, int len, long data) {
+        for (int k=0;k<len;k++) {
+            int i=(pos+k)>>3,m=0x80>>((pos+k)&7);
+            if (((data>>>(len-1-k))&1L)!=0) buff[i]|=m; else buff[i]&=~m;
+        }
+    }
+
+    /* random bit length biased to boundaries */
+    static int randlen(Random r, int max) {
+        int k=r.nextInt(8);
+        return k==0?max:k==1?max-1:k==2?1:1+r.nextInt(max);
+    }
+
+    void testGetbitsReference() {
+        Random r=new Random(19);
+        byte[] b=new byte[41];
+        ByteBuffer be,le;
+
+        for (int k=0;k<200000;k++) {
+            if (k%1000==0) r.nextBytes(b);
+            be=ByteBuffer.wrap(b);
+            le=ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+            int len=randlen(r,64);
+            int pos=k%4==0?b.length*8-len+r.nextInt(16)-8:r.nextInt(b.length*8-len+1); /* near end */
+            if (pos<0) pos=0;
+            long ref=refbits(b,pos,len);
+
+            assertEquals(ref,rtkcmn.getbitl(b,pos,len));
+            assertEquals(ref,rtkcmn.getbitl(be,pos,len));
+            assertEquals(ref,rtkcmn.getbitl(le,pos,len));
+            if (len<=32) {
+                assertEquals(ref,rtkcmn.getbitu(b,pos,len));
+                assertEquals((long)(ref<<(64-len)>>(64-len)),(long)rtkcmn.getbits(b,pos,len));
+            }
+        }
+        /* off+len>64 needs 9th byte */
+        b=hexbytes("0123456789ABCDEFFE");
+        assertEquals(0x23456789ABCDEFFEL,rtkcmn.getbitl(b,8,64));
+        assertEquals(0x123456789ABCDEFFL,rtkcmn.getbitl(b,4,64));
+        assertEquals(0x091A2B3C4D5E6F7FL,rtkcmn.getbitl(b,3,64));
+        assertEquals(0x091A2B3C4D5E6F7FL,rtkcmn.getbitl(ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN),3,64));
+        assertEquals(0x091A2B3C4D5E6F78L,rtkcmn.getbitl(Arrays.copyOf(b,8),3,64)); /* no 9th byte */
+
+        /* sign extension at len=32 and 64 */
+        b=hexbytes("80000000FFFFFFFF7FFFFFFF");
+        assertEquals(Integer.MIN_VALUE,rtkcmn.getbits(b,0,32));
+        assertEquals(-1,rtkcmn.getbits(b,32,32));
+        assertEquals(Integer.MAX_VALUE,rtkcmn.getbits(b,64,32));
+        assertEquals(0x80000000FFFFFFFFL,rtkcmn.getbitl(b,0,64));
+        assertEquals(0L,rtkcmn.getbitl(b,0,0));
+        assertEquals(0,rtkcmn.getbits(b,0,0));
+    }
+
+    void testSetbitsReference() {
+        Random r=new Random(20);
+        byte[] b=new byte[41],ref=new byte[41],c=new byte[41];
+        ByteBuffer le=ByteBuffer.wrap(c).order(ByteOrder.LITTLE_ENDIAN);
+
+        r.nextBytes(b); System.arraycopy(b,0,ref,0,b.length); System.arraycopy(b,0,c,0,b.length);
+        for (int k=0;k<200000;k++) {
+            int len=randlen(r,64);
+            int pos=k%4==0?b.length*8-len:r.nextInt(b.length*8-len+1);
+            long data=r.nextLong();
+
+            refset(ref,pos,len,data);
+            rtkcmn.setbitl(b,pos,len,data);
+            rtkcmn.setbitl(le,pos,len,data);
+            assertTrue(Arrays.equals(ref,b));
+            assertTrue(Arrays.equals(ref,c));
+
+            if (len<=32) {
+                int v=(int)(data<<(64-len)>>(64-len));
+                rtkcmn.setbits(b,pos,len,v);
+                refset(ref,pos,len,data);
+                assertTrue(Arrays.equals(ref,b));
+                assertEquals((long)v,(long)rtkcmn.getbits(b,pos,len));
+                rtkcmn.setbitu(b,pos,len,data&(-1L>>>(64-len)));
+                assertTrue(Arrays.equals(ref,b));
+                System.arraycopy(b,0,c,0,b.length);
+            }
+        }
+    }
+
+    void testBitbuf() {
+        Random r=new Random(21);
+        byte[] b=new byte[64];
+        rtklib.bitbuf_t w=new rtklib.bitbuf_t(),rb=new rtklib.bitbuf_t();
+        int[] lens=new int[200];
+        long[] data=new long[200];
+        int n=0,end=b.length*8-5;
+
+        /* write fields until overrun */
+        rtkcmn.initbitbuf(w,ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN),3,end);
+        for (;;n++) {
+            lens[n]=randlen(r,64); data[n]=r.nextLong();
+            rtkcmn.writebitu(w,lens[n],data[n]);
+            if (w.err!=0) break;
+        }
+        assertTrue(n>0);
+        assertTrue(w.pos>end);
+        for (int i=w.pos-lens[n];i<b.length*8;i++) assertEquals(0L,refbits(b,i,1));
+
+        /* read back signed fields until overrun */
+        rtkcmn.initbitbuf(rb,ByteBuffer.wrap(b),3,end);
+        for (int i=0;i<n;i++) {
+            long v=rtkcmn.readbits(rb,lens[i]);
+            assertEquals(data[i]<<(64-lens[i])>>(64-lens[i]),v);
+            assertEquals(0,rb.err);
+        }
+        assertEquals(0L,rtkcmn.readbits(rb,lens[n]));
+        assertEquals(1,rb.err);
+
+        /* read up to end exactly */
+        rtkcmn.initbitbuf(rb,ByteBuffer.wrap(b),end-64,end);
+        rtkcmn.readbitu(rb,64);
+        assertEquals(0,rb.err);
+        assertEquals(0L,rtkcmn.readbitu(rb,1));
+        assertEquals(1,rb.err);
+    }
+
+    /* data bit numbers of lnav parity equation D25-D30 (ref [1] table 20-XIV) */
+    static int[] paritybits(int i) {
+        switch (i) {
+            case 0: return ivec(1,2,3,5,6,10,11,12,13,14,17,18,20,23);
+            case 1: return ivec(2,3,4,6,7,11,12,13,14,15,18,19,21,24);
+            case 2: return ivec(1,3,4,5,7,8,12,13,14,15,16,19,20,22);
+            case 3: return ivec(2,4,5,6,8,9,13,14,15,16,17,20,21,23);
+            case 4: return ivec(1,3,5,6,7,9,10,14,15,16,17,18,21,22,24);
+            default: return ivec(3,5,6,8,9,10,11,13,15,19,22,23,24);
+        }
+    }
+
+    static int[] ivec(int... a) {
+        return a;
+    }
+
+    /* encode lnav word D1-D30 from source data d1-d24 and D29*,D30* (bit 1-0) */
+    static long lnavenc(long data, long prev) {
+        long D29=(prev>>1)&1,D30=prev&1,w=(data^(D30!=0?0xFFFFFFL:0L))<<6;
+
+        for (int i=0;i<6;i++) {
+            long p=(i==1||i==3||i==4)?D30:D29;
+            for (int b:paritybits(i)) p^=(data>>(24-b))&1;
+            w|=p<<(5-i);
+        }
+        return w;
+    }
+
+    /* encode lnav subframe from source data (24 bits x 10) */
+    static long[] lnavsubfrm(long[] data, int d) {
+        long[] words=new long[10];
+        long prev=d;
+
+        for (int i=0;i<10;i++) prev=words[i]=lnavenc(data[i],prev);
+        return words;
+    }
+
+    /* source data of subframe with id and random data */
+    static long[] lnavdata(Random r, int id) {
+        long[] data=new long[10];
+
+        data[0]=0x8B0000L|r.nextInt(0x10000);                 /* TLM */
+        data[1]=((long)r.nextInt(1<<17)<<7)|((long)id<<2);    /* HOW */
+        for (int i=2;i<10;i++) data[i]=r.nextInt(1<<24);
+        return data;
+    }
+
+    void testDecodeSubfrm() {
+        Random r=new Random(17);
+
+        for (int k=0;k<40;k++) {
+            int id=1+k%5,d=k%4;
+            long[] data=lnavdata(r,id),words=lnavsubfrm(data,d);
+            byte[] subfrm=new byte[150],init;
+
+            r.nextBytes(subfrm);
+            init=subfrm.clone();
+
+            /* parity of each word by lnavword() */
+            for (int i=0;i<10;i++) {
+                long prev=i==0?d:words[i-1];
+                assertEquals(data[i],rtkcmn.lnavword(((prev&3)<<30)|words[i]));
+            }
+            assertEquals(id,rtkcmn.decode_subfrm(words,d,subfrm));
+            for (int i=0;i<150;i++) {
+                int j=i-(id-1)*30;
+                if (j>=0&&j<30) assertEquals((byte)(data[j/3]>>(16-j%3*8)),subfrm[i]);
+                else assertEquals(init[i],subfrm[i]);
+            }
+            /* single bit error in any word or in D29*,D30* */
+            for (int b=0;b<302;b++) {
+                long[] w=words.clone();
+                int dd=d;
+                byte[] s=init.clone();
+
+                if (b<300) w[b/30]^=1L<<(b%30); else dd^=1<<(b-300);
+                assertEquals(0,rtkcmn.decode_subfrm(w,dd,s));
+                assertTrue(Arrays.equals(init,s));
+            }
+        }
+        /* invalid subframe id */
+        for (int id=0;id<8;id+=(id==0?6:1)) {
+            long[] words=lnavsubfrm(lnavdata(r,id),0);
+            byte[] subfrm=new byte[150];
+            assertEquals(0,rtkcmn.decode_subfrm(words,0,subfrm));
+            assertTrue(Arrays.equals(new byte[150],subfrm));
+        }
+    }
+
+    void testSatnoRoundTrip() {
+        int[] prn=new int[1];
+        byte[] b=new byte[8];
+
+        for (int sat=1;sat<=rtklib.MAXSAT;sat++) {
+            int sys=rtkcmn.satsys(sat,prn);
+            String id=rtkcmn.satno2id(sat);
+
+            assertTrue(sys!=0);
+            assertEquals(prn[0],rtkcmn.satprn(sat));
+            assertEquals(sat,rtkcmn.satno(sys,prn[0]));
+            assertEquals(sat,rtkcmn.satid2no(id));
+            assertSame(id,rtkcmn.satno2id(sat));
+
+            /* span not starting at index 0 */
+            String t="x:"+id+"/y";
+            assertEquals(sat,rtkcmn.satid2no(t,2,id.length()));
+            for (int i=0;i<id.length();i++) b[3+i]=(byte)id.charAt(i);
+            b[3+id.length()]=(byte)'9';
+            assertEquals(sat,rtkcmn.satid2no(b,3,id.length()));
+        }
+        assertEquals(0,rtkcmn.satsys(0,prn));
+        assertEquals(0,prn[0]);
+        assertEquals(0,rtkcmn.satsys(rtklib.MAXSAT+1,null));
+        assertEquals(0,rtkcmn.satprn(rtklib.MAXSAT+1));
+        assertEquals("",rtkcmn.satno2id(0));
+        assertEquals("",rtkcmn.satno2id(rtklib.MAXSAT+1));
+        assertEquals(0,rtkcmn.satno(rtklib.SYS_GPS,0));
+        assertEquals(0,rtkcmn.satno(rtklib.SYS_GPS|rtklib.SYS_GLO,1));
+        assertEquals(0,rtkcmn.satno(rtklib.SYS_NONE,1));
+    }
+
+    void testSatid2noParse() {
+        assertEquals(rtkcmn.satno(rtklib.SYS_GPS,1),rtkcmn.satid2no("G01"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GPS,5),rtkcmn.satid2no(" 5"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GPS,5),rtkcmn.satid2no("G 5"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_SBS,120),rtkcmn.satid2no("120"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_SBS,120),rtkcmn.satid2no("S20"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_QZS,193),rtkcmn.satid2no("J01"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_QZS,193),rtkcmn.satid2no("193"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GLO,24),rtkcmn.satid2no("R24"));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GPS,1),rtkcmn.satid2no("G01abc")); /* as sscanf */
+        assertEquals(0,rtkcmn.satid2no(""));
+        assertEquals(0,rtkcmn.satid2no("G"));
+        assertEquals(0,rtkcmn.satid2no(" "));
+        assertEquals(0,rtkcmn.satid2no("0"));
+        assertEquals(0,rtkcmn.satid2no("G00"));
+        assertEquals(0,rtkcmn.satid2no("G-1"));
+        assertEquals(0,rtkcmn.satid2no("X01"));
+        assertEquals(0,rtkcmn.satid2no("GXX"));
+        assertEquals(0,rtkcmn.satid2no("99999999999"));
+
+        /* spans not starting at index 0 */
+        assertEquals(rtkcmn.satno(rtklib.SYS_GAL,12),rtkcmn.satid2no("12E12",2,3));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GPS,12),rtkcmn.satid2no("E12",1,2));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GPS,1),rtkcmn.satid2no("G012",0,3));
+        assertEquals(0,rtkcmn.satid2no("G012",3,0));
+        assertEquals(0,rtkcmn.satid2no("G012",0,1));
+        byte[] b="  J02 R03".getBytes();
+        assertEquals(rtkcmn.satno(rtklib.SYS_QZS,194),rtkcmn.satid2no(b,2,3));
+        assertEquals(rtkcmn.satno(rtklib.SYS_GLO,3),rtkcmn.satid2no(b,6,3));
+        assertEquals(0,rtkcmn.satid2no(b,0,2));
+    }
+
+    /* satellite set of satellites */
+    static rtklib.satset_t satset(int... sats) {
+        rtklib.satset_t s=new rtklib.satset_t();
+        for (int sat:sats) rtkcmn.satsetadd(s,sat);
+        return s;
+    }
+
+    /* next satellite in set by linear search */
+    static int nextref(rtklib.satset_t s, int sat) {
+        for (int i=Math.max(sat,0)+1;i<=rtklib.MAXSAT;i++) if (rtkcmn.satsetin(s,i)!=0) return i;
+        return 0;
+    }
+
+    void testSatsetnext() {
+        rtklib.satset_t s=satset(1,63,64,65,128,129,rtklib.MAXSAT);
+        Random r=new Random(18);
+
+        /* iteration across word boundaries */
+        assertEquals(1,rtkcmn.satsetnext(s,0));
+        assertEquals(63,rtkcmn.satsetnext(s,1));
+        assertEquals(64,rtkcmn.satsetnext(s,63));
+        assertEquals(65,rtkcmn.satsetnext(s,64));
+        assertEquals(128,rtkcmn.satsetnext(s,65));
+        assertEquals(129,rtkcmn.satsetnext(s,128));
+        assertEquals(rtklib.MAXSAT,rtkcmn.satsetnext(s,129));
+        assertEquals(0,rtkcmn.satsetnext(s,rtklib.MAXSAT));
+        assertEquals(0,rtkcmn.satsetnext(s,rtklib.MAXSAT+1));
+        assertEquals(1,rtkcmn.satsetnext(s,-1));
+        assertEquals(0,rtkcmn.satsetnext(satset(),0));
+        assertEquals(65,rtkcmn.satsetnext(satset(65),0));
+        assertEquals(rtklib.MAXSAT,rtkcmn.satsetnext(satset(rtklib.MAXSAT),64));
+
+        /* random sets from every satellite against linear search */
+        for (int k=0;k<50;k++) {
+            rtklib.satset_t t=new rtklib.satset_t();
+            int n=0,m=0;
+
+            for (int sat=1;sat<=rtklib.MAXSAT;sat++) {
+                if (r.nextInt(k%5+2)==0) {rtkcmn.satsetadd(t,sat); n++;}
+            }
+            for (int sat=0;sat<=rtklib.MAXSAT;sat++) {
+                assertEquals(nextref(t,sat),rtkcmn.satsetnext(t,sat));
+            }
+            for (int sat=rtkcmn.satsetnext(t,0);sat>0;sat=rtkcmn.satsetnext(t,sat)) m++;
+            assertEquals(n,m);
+            assertEquals(n,rtkcmn.satsetcount(t));
+        }
+    }
+
+    void testSatsetoptMatchesSatexclude() {
+        rtklib.prcopt_t opt=new rtklib().new prcopt_t();
+        rtklib.satset_t s=new rtklib.satset_t();
+        Random r=new Random(19);
+        int n;
+
+        for (int k=0;k<200;k++) {
+            opt.navsys=k<8?1<<k:r.nextInt(256);
+            for (int i=0;i<rtklib.MAXSAT;i++) opt.exsats[i]=(byte)(r.nextInt(4)==0?1+r.nextInt(2):0);
+
+            n=rtkcmn.satsetopt(opt,s);
+            assertEquals(n,rtkcmn.satsetcount(s));
+            for (int sat=1;sat<=rtklib.MAXSAT;sat++) {
+                assertEquals("sat="+sat,rtkcmn.satexclude(sat,0.0d,0,opt)==0?1:0,rtkcmn.satsetin(s,sat));
+            }
+        }
+    }
+
+    /* naive C=alpha*op(A)*op(B)+beta*C (f: 0:NN,1:NT,2:TN,3:TT) */
+    static void naivemul(int f, int n, int k, int m, double alpha, double[] A, double[] B,
+                         double beta, double[] C) {
+        for (int i=0;i<n;i++) for (int j=0;j<k;j++) {
+            double d=0.0d;
+            for (int x=0;x<m;x++) {
+                double a=(f&2)==0?A[i+x*n]:A[x+i*m];
+                double b=(f&1)==0?B[x+j*m]:B[j+x*k];
+                d+=a*b;
+            }
+            C[i+j*n]=alpha*d+(beta==0.0d?0.0d:beta*C[i+j*n]);
+        }
+    }
+
+    /* check matmul kernel against naive multiply */
+    static void checkmul(Random r, int f, int n, int k, int m, double alpha, double beta) {
+        double[] A=randmat(r,n,m),B=randmat(r,m,k),C0=randmat(r,n,k),C1=C0.clone(),C2=C0.clone();
+        double tol=1E-13d*(m+1);
+
+        naivemul(f,n,k,m,alpha,A,B,beta,C0);
+        switch (f) {
+            case 0: rtkcmn.matmul_nn(n,k,m,alpha,A,B,beta,C1); break;
+            case 1: rtkcmn.matmul_nt(n,k,m,alpha,A,B,beta,C1); break;
+            case 2: rtkcmn.matmul_tn(n,k,m,alpha,A,B,beta,C1); break;
+            default: rtkcmn.matmul_tt(n,k,m,alpha,A,B,beta,C1); break;
+        }
+        assertEquals(0.0d,maxdiff(C0,C1,n*k),tol);
+
+        /* dispatch by transpose flags (simd kernels if available) */
+        rtkcmn.matmul(((f&2)==0?"N":"T")+((f&1)==0?"N":"T"),n,k,m,alpha,A,B,beta,C2);
+        assertEquals(0.0d,maxdiff(C0,C2,n*k),tol);
+    }
+
+    void testMatmulKernels() {
+        Random r=new Random(5);
+        int[] sizes=ivec(1,3,5,17,63,65,131);
+        double[] alpha=vec(1.0d,-0.7d,2.5d),beta=vec(0.0d,1.0d,-1.3d);
+
+        for (int f=0;f<4;f++) {
+            for (int n:sizes) for (int k:ivec(1,7,19)) for (int m:ivec(1,3,4,9,129,261)) {
+                checkmul(r,f,n,k,m,alpha[(n+k)%3],beta[(n+m)%3]);
+            }
+            /* empty inner dimension: C=beta*C */
+            checkmul(r,f,9,5,0,0.5d,-1.3d);
+            checkmul(r,f,9,5,0,0.5d,0.0d);
+        }
+    }
+
+    void testMatinv4() {
+        Random r=new Random(6);
+
+        for (int k=0;k<200;k++) {
+            /* normal matrix of positioning (H: m x 4, rows {-e',1}) */
+            int m=4+r.nextInt(8);
+            double[] H=new double[4*m],N=new double[16],Q1,Q2;
+            for (int j=0;j<m;j++) {
+                double az=2.0d*Math.PI*r.nextDouble(),el=0.5d*Math.PI*r.nextDouble();
+                H[0+j*4]=-Math.cos(el)*Math.sin(az);
+                H[1+j*4]=-Math.cos(el)*Math.cos(az);
+                H[2+j*4]=-Math.sin(el);
+                H[3+j*4]=1.0d;
+            }
+            rtkcmn.matmul("NT",4,4,m,1.0d,H,H,0.0d,N);
+            Q1=N.clone(); Q2=N.clone();
+
+            /* lower triangle is not referenced */
+            Q1[1]=Q1[2]=Q1[3]=Q1[6]=Q1[7]=Q1[11]=Double.NaN;
+
+            assertEquals(0,rtkcmn.matinv4(Q1));
+            assertEquals(0,rtkcmn.matinv(Q2,4));
+            double tol=1E-14d*maxabs(N)*maxabs(Q2)*maxabs(Q2); /* eps*cond(N)*|N^-1| */
+            assertEquals(0.0d,maxdiff(Q1,Q2,16),tol);
+            for (int i=0;i<4;i++) for (int j=0;j<4;j++) assertEquals(Q1[i+j*4],Q1[j+i*4],0.0d);
+        }
+        /* singular matrices */
+        double[] S=vec(1,1,2,3, 1,1,2,3, 2,2,5,6, 3,3,6,7);
+        assertEquals(-1,rtkcmn.matinv4(S.clone()));
+        assertEquals(-1,rtkcmn.matinv4(new double[16]));
+        double[] Z=vec(4,0,0,0, 0,0,0,0, 0,0,2,0, 0,0,0,1);
+        assertEquals(-1,rtkcmn.matinv4(Z));
+        double[] X=vec(4,0,0,0, 0,Double.NaN,0,0, 0,0,2,0, 0,0,0,1);
+        assertEquals(-1,rtkcmn.matinv4(X));
+    }
+
+    /* max absolute value of array */
+    static double maxabs(double[] a) {
+        double d=0.0d;
+        for (double v:a) d=Math.max(d,Math.abs(v));
+        return d;
+    }
+
+    void testMatcong3() {
+        Random r=new Random(7);
+        double[] T=new double[9],Q0=new double[9],Q1=new double[9],P0=new double[9],P1=new double[9];
+
+        for (int k=0;k<100;k++) {
+            double[] E=randmat(r,3,3),P=k%2==0?randspd(r,3,0.1d):randmat(r,3,3);
+
+            /* Q=E*P*E' */
+            rtkcmn.matmul("NN",3,3,3,1.0d,E,P,0.0d,T);
+            rtkcmn.matmul("NT",3,3,3,1.0d,T,E,0.0d,Q0);
+            rtkcmn.matcong3(E,P,Q1);
+            assertEquals(0.0d,maxdiff(Q0,Q1,9),1E-14d);
+
+            /* P=E'*Q*E */
+            rtkcmn.matmul("TN",3,3,3,1.0d,E,P,0.0d,T);
+            rtkcmn.matmul("NN",3,3,3,1.0d,T,E,0.0d,P0);
+            rtkcmn.matcong3t(E,P,P1);
+            assertEquals(0.0d,maxdiff(P0,P1,9),1E-14d);
+        }
+    }
+
+    /* eci to ecef transformation matrix by exact iau 1976/1980 at tt (s from J2000) */
+    static void eci2ecefref(double tt, rtklib.gtime_t tutc, double[] erpv, double[] U) {
+        double[] f=new double[5],dpsi=new double[1],deps=new double[1];
+        double[] R1=new double[9],R2=new double[9],R3=new double[9],R=new double[9];
+        double[] P=new double[9],N=new double[9],NP=new double[9],W=new double[9];
+        rtklib.gtime_t tut,tut0=new rtklib.gtime_t();
+        double t=tt/86400.0d/36525.0d,t2=t*t,t3=t2*t,ze,th,z,eps,ut,t1,gmst,gast;
+
+        rtkcmn.ast_args(t,f);
+        ze=(2306.2181d*t+0.30188d*t2+0.017998d*t3)*rtklib.AS2R;
+        th=(2004.3109d*t-0.42665d*t2-0.041833d*t3)*rtklib.AS2R;
+        z =(2306.2181d*t+1.09468d*t2+0.018203d*t3)*rtklib.AS2R;
+        eps=(84381.448d-46.8150d*t-0.00059d*t2+0.001813d*t3)*rtklib.AS2R;
+        rtkcmn.Rz(-z,R1); rtkcmn.Ry(th,R2); rtkcmn.Rz(-ze,R3);
+        rtkcmn.matmul3(R1,R2,R); rtkcmn.matmul3(R,R3,P);
+        rtkcmn.nut_iau1980(t,f,dpsi,deps);
+        rtkcmn.Rx(-eps-deps[0],R1); rtkcmn.Rz(-dpsi[0],R2); rtkcmn.Rx(eps,R3);
+        rtkcmn.matmul3(R1,R2,R); rtkcmn.matmul3(R,R3,N);
+        rtkcmn.matmul3(N,P,NP);
+
+        /* gmst by gtime_t */
+        tut=rtkcmn.timeadd(tutc,erpv[2]);
+        ut=rtkcmn.time2sec(tut,tut0);
+        t1=rtkcmn.timediff(tut0,rtkcmn.epoch2time(vec(2000,1,1,12,0,0)))/86400.0d/36525.0d;
+        gmst=24110.54841d+8640184.812866d*t1+0.093104d*t1*t1-6.2E-6d*t1*t1*t1+1.002737909350795d*ut;
+        gmst=(gmst%86400.0d)*rtklib.PI/43200.0d;
+        gast=gmst+dpsi[0]*Math.cos(eps)+(0.00264d*Math.sin(f[4])+0.000063d*Math.sin(2.0d*f[4]))*rtklib.AS2R;
+
+        rtkcmn.Ry(-erpv[0],R1); rtkcmn.Rx(-erpv[1],R2); rtkcmn.Rz(gast,R3);
+        rtkcmn.matmul3(R1,R2,W); rtkcmn.matmul3(W,R3,R); rtkcmn.matmul3(R,NP,U);
+    }
+
+    /* check eci2ecef against exact computation at utc */
+    static void checkeci2ecef(rtklib.gtime_t tutc, double[] erpv) {
+        double[] U0=new double[9],U1=new double[9],gmst=new double[1];
+        rtklib.gtime_t tgps=rtkcmn.utc2gpst(tutc);
+        double tt=(tgps.time-rtkcmn.J2000_TIME)+tgps.sec+19.0d+32.184d;
+
+        eci2ecefref(tt,tutc,erpv,U0);
+        rtkcmn.eci2ecef(tutc,erpv,U1,gmst);
+        assertEquals(0.0d,maxdiff(U0,U1,9),1E-11d);
+        assertEquals(rtkcmn.utc2gmst(tutc,erpv[2]),gmst[0],0.0d);
+    }
+
+    void testEci2ecefExact() {
+        double[] erpv=vec(1.5E-6d,-2.0E-6d,-0.2d,0.0d);
+        rtklib.gtime_t t0=rtkcmn.epoch2time(vec(2020,3,14,0,0,0)),t;
+        double tt0,s;
+
+        /* epochs between nodes over two days and in random order */
+        Random r=new Random(25);
+        for (int k=0;k<500;k++) {
+            t=rtkcmn.timeadd(t0,k<250?k*691.37d:r.nextDouble()*172800.0d);
+            checkeci2ecef(t,erpv);
+        }
+        /* across node boundaries (tt=k*ECINODE) */
+        tt0=(t0.time-rtkcmn.J2000_TIME)+18.0d+19.0d+32.184d;
+        for (int k=0;k<20;k++) {
+            s=(Math.floor(tt0/rtkcmn.ECINODE)+1+k*37)*rtkcmn.ECINODE-tt0;
+            for (double d:vec(-1E-3d,-1E-9d,0.0d,1E-9d,1E-3d)) {
+                checkeci2ecef(rtkcmn.timeadd(t0,s+d),erpv);
+            }
+        }
+        /* other epochs and leap seconds */
+        double[][] ep=new double[6][];
+        ep[0]=vec(2000,1,1,11,58,55.816d); ep[1]=vec(2008,12,31,23,59,59.5d);
+        ep[2]=vec(2009,1,1,0,0,0.5d);      ep[3]=vec(2016,12,31,23,59,59.9d);
+        ep[4]=vec(2017,1,1,0,0,0);         ep[5]=vec(1995,6,1,12,0,0);
+        for (int i=0;i<6;i++) {
+            checkeci2ecef(rtkcmn.epoch2time(ep[i]),erpv);
+        }
+    }
+
+    /* allocated bytes by current thread */
+    static long allocated() {
+        return ((com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /* call eci2ecef n times within a node interval and return allocated bytes */
+    @groovy.transform.CompileStatic
+    static long calleci(rtklib.gtime_t t, double[] erpv, int n) {
+        double[] U=new double[9];
+        double sum=0.0d;
+        long bytes;
+
+        bytes=allocated();
+        for (int i=0;i<n;i++) {
+            t.sec=(i%500)*1E-3d;
+            rtkcmn.eci2ecef(t,erpv,U,null);
+            sum+=U[0];
+        }
+        bytes=allocated()-bytes;
+        assertTrue(!Double.isNaN(sum));
+        return bytes;
+    }
+
+    void testEci2ecefNoAllocation() {
+        double[] erpv=vec(0.0d,0.0d,0.1d,0.0d);
+        rtklib.gtime_t t=rtkcmn.epoch2time(vec(2021,5,1,0,0,0));
+        int level=rtkcmn.gettracelevel();
+
+        try {
+            rtkcmn.tracelevel(0);
+            calleci(t,erpv,20000);
+            assertTrue(calleci(t,erpv,10000)<1024L);
+        }
+        finally {
+            rtkcmn.tracelevel(level);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+class timesrcTest extends groovy.util.GroovyTestCase {
+
+    /* time of epoch in utc */
+    static rtklib.gtime_t utc(int y, int m, int d, int h, int min, double sec) {
+        double[] ep=new double[6];
+        ep[0]=y; ep[1]=m; ep[2]=d; ep[3]=h; ep[4]=min; ep[5]=sec;
+        return rtkcmn.epoch2time(ep);
+    }
+
+    protected void tearDown() throws Exception {
+        rtkcmn.settimesrc(null);
+    }
+
+    void testSimtimeStepped() {
+        rtklib.gtime_t start=utc(2020,6,30,23,59,59.75d),t=new rtklib.gtime_t();
+
+        rtkcmn.settimesrc(timesrc.simtime(start,0.0d));
+
+        /* not advanced by real time */
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.timeget(),start),0.0d);
+        timesrc.sleepns(20000000L);
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.timeget(t),start),0.0d);
+        assertEquals(0L,rtkcmn.tickget());
+
+        /* advanced only by sleepms() */
+        rtkcmn.sleepms(250);
+        assertEquals(0.25d,rtkcmn.timediff(rtkcmn.timeget(t),start),1E-12d);
+        assertTrue(t.sec>=0.0d&&t.sec<1.0d);
+        assertEquals(utc(2020,7,1,0,0,0).time,t.time);
+        rtkcmn.sleepms(-1);
+        rtkcmn.sleepms(0);
+        for (int i=0;i<1000;i++) rtkcmn.sleepms(3600);
+        assertEquals(3600.25d,rtkcmn.timediff(rtkcmn.timeget(t),start),1E-9d);
+        assertEquals(3600250L,rtkcmn.tickget());
+
+        /* same sequence gives same times */
+        rtkcmn.settimesrc(timesrc.simtime(start,0.0d));
+        rtkcmn.sleepms(250);
+        assertEquals(0.25d,rtkcmn.timediff(rtkcmn.timeget(),start),1E-12d);
+    }
+
+    void testTimesetReplacesOffset() {
+        rtklib.gtime_t start=utc(2021,1,1,0,0,0.0d);
+
+        rtkcmn.settimesrc(timesrc.simtime(start,0.0d));
+        rtkcmn.timeset(rtkcmn.timeadd(start,100.0d));
+        assertEquals(100.0d,rtkcmn.timediff(rtkcmn.timeget(),start),1E-12d);
+
+        /* offset replaced, not accumulated */
+        rtkcmn.timeset(rtkcmn.timeadd(start,50.0d));
+        assertEquals(50.0d,rtkcmn.timediff(rtkcmn.timeget(),start),1E-12d);
+        rtkcmn.timeset(rtkcmn.timeadd(start,50.0d));
+        assertEquals(50.0d,rtkcmn.timediff(rtkcmn.timeget(),start),1E-12d);
+
+        /* offset kept over sleepms() and not reflected to tickget() */
+        rtkcmn.sleepms(1500);
+        assertEquals(51.5d,rtkcmn.timediff(rtkcmn.timeget(),start),1E-12d);
+        assertEquals(1500L,rtkcmn.tickget());
+        rtkcmn.timeset(start);
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.timeget(),start),1E-12d);
+
+        /* offset cleared by settimesrc() */
+        rtkcmn.settimesrc(timesrc.simtime(start,0.0d));
+        assertEquals(0.0d,rtkcmn.timediff(rtkcmn.timeget(),start),0.0d);
+    }
+
+    void testSettimesrcNull() {
+        rtklib.gtime_t start=utc(2000,1,1,0,0,0.0d),t0,t1;
+        long tick;
+
+        rtkcmn.settimesrc(timesrc.simtime(start,0.0d));
+        rtkcmn.timeset(rtkcmn.timeadd(start,-3600.0d));
+        rtkcmn.settimesrc(null);
+        assertSame(timesrc.MONOTONIC,rtkcmn.timeref_.src);
+        assertEquals(0.0d,rtkcmn.timeref_.offset,0.0d);
+
+        /* system time and non-decreasing */
+        t0=rtkcmn.timeget();
+        assertEquals(System.currentTimeMillis()*1E-3d,t0.time+t0.sec,1.0d);
+        tick=rtkcmn.tickget();
+        rtkcmn.sleepms(20);
+        t1=rtkcmn.timeget();
+        assertTrue(rtkcmn.timediff(t1,t0)>=0.019d);
+        assertTrue(rtkcmn.tickget()-tick>=19L);
+    }
+}